@@ -0,0 +1,73 @@
+package nl.mplatvoet.collections.map;
+
+/**
+ * Skeleton for the {@link IntKeyDoubleMap} implementations, adds the unboxed range views.
+ */
+abstract class AbstractIntKeyDoubleMap extends AbstractIntKeyMap<Double> implements IntKeyDoubleMap {
+
+    @Override
+    public IntKeyDoubleMap subMap(int fromKey, int toKey) {
+        return (IntKeyDoubleMap) super.subMap(fromKey, toKey);
+    }
+
+    @Override
+    public IntKeyDoubleMap headMap(int toKey) {
+        return subMap(startKey(), toKey);
+    }
+
+    @Override
+    public IntKeyDoubleMap tailMap(int fromKey) {
+        return subMap(fromKey, endKey());
+    }
+
+    @Override
+    IntKeyDoubleMap newSubMap(int fromKey, int toKey) {
+        return new DoubleSubMap(this, fromKey, toKey);
+    }
+
+    private static final class DoubleSubMap extends SubMap<Double> implements IntKeyDoubleMap {
+        private final AbstractIntKeyDoubleMap map;
+
+        private DoubleSubMap(AbstractIntKeyDoubleMap map, int fromKey, int toKey) {
+            super(map, fromKey, toKey);
+            this.map = map;
+        }
+
+        @Override
+        public double getDouble(int key) {
+            return isLegalRange(key) ? map.getDouble(key) : 0;
+        }
+
+        @Override
+        public double putDouble(int key, double value) {
+            validateLegalRange(key);
+            return map.putDouble(key, value);
+        }
+
+        @Override
+        public double removeDouble(int key) {
+            return isLegalRange(key) ? map.removeDouble(key) : 0;
+        }
+
+        @Override
+        public double addTo(int key, double increment) {
+            validateLegalRange(key);
+            return map.addTo(key, increment);
+        }
+
+        @Override
+        public IntKeyDoubleMap subMap(int fromKey, int toKey) {
+            return (IntKeyDoubleMap) super.subMap(fromKey, toKey);
+        }
+
+        @Override
+        public IntKeyDoubleMap headMap(int toKey) {
+            return subMap(startKey(), toKey);
+        }
+
+        @Override
+        public IntKeyDoubleMap tailMap(int fromKey) {
+            return subMap(fromKey, endKey());
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package nl.mplatvoet.collections.map;
+
+/**
+ * Skeleton for the {@link IntKeyIntMap} implementations, adds the unboxed range views.
+ */
+abstract class AbstractIntKeyIntMap extends AbstractIntKeyMap<Integer> implements IntKeyIntMap {
+
+    @Override
+    public IntKeyIntMap subMap(int fromKey, int toKey) {
+        return (IntKeyIntMap) super.subMap(fromKey, toKey);
+    }
+
+    @Override
+    public IntKeyIntMap headMap(int toKey) {
+        return subMap(startKey(), toKey);
+    }
+
+    @Override
+    public IntKeyIntMap tailMap(int fromKey) {
+        return subMap(fromKey, endKey());
+    }
+
+    @Override
+    IntKeyIntMap newSubMap(int fromKey, int toKey) {
+        return new IntSubMap(this, fromKey, toKey);
+    }
+
+    private static final class IntSubMap extends SubMap<Integer> implements IntKeyIntMap {
+        private final AbstractIntKeyIntMap map;
+
+        private IntSubMap(AbstractIntKeyIntMap map, int fromKey, int toKey) {
+            super(map, fromKey, toKey);
+            this.map = map;
+        }
+
+        @Override
+        public int getInt(int key) {
+            return isLegalRange(key) ? map.getInt(key) : 0;
+        }
+
+        @Override
+        public int putInt(int key, int value) {
+            validateLegalRange(key);
+            return map.putInt(key, value);
+        }
+
+        @Override
+        public int removeInt(int key) {
+            return isLegalRange(key) ? map.removeInt(key) : 0;
+        }
+
+        @Override
+        public int addTo(int key, int increment) {
+            validateLegalRange(key);
+            return map.addTo(key, increment);
+        }
+
+        @Override
+        public IntKeyIntMap subMap(int fromKey, int toKey) {
+            return (IntKeyIntMap) super.subMap(fromKey, toKey);
+        }
+
+        @Override
+        public IntKeyIntMap headMap(int toKey) {
+            return subMap(startKey(), toKey);
+        }
+
+        @Override
+        public IntKeyIntMap tailMap(int fromKey) {
+            return subMap(fromKey, endKey());
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package nl.mplatvoet.collections.map;
+
+/**
+ * Skeleton for the {@link IntKeyLongMap} implementations, adds the unboxed range views.
+ */
+abstract class AbstractIntKeyLongMap extends AbstractIntKeyMap<Long> implements IntKeyLongMap {
+
+    @Override
+    public IntKeyLongMap subMap(int fromKey, int toKey) {
+        return (IntKeyLongMap) super.subMap(fromKey, toKey);
+    }
+
+    @Override
+    public IntKeyLongMap headMap(int toKey) {
+        return subMap(startKey(), toKey);
+    }
+
+    @Override
+    public IntKeyLongMap tailMap(int fromKey) {
+        return subMap(fromKey, endKey());
+    }
+
+    @Override
+    IntKeyLongMap newSubMap(int fromKey, int toKey) {
+        return new LongSubMap(this, fromKey, toKey);
+    }
+
+    private static final class LongSubMap extends SubMap<Long> implements IntKeyLongMap {
+        private final AbstractIntKeyLongMap map;
+
+        private LongSubMap(AbstractIntKeyLongMap map, int fromKey, int toKey) {
+            super(map, fromKey, toKey);
+            this.map = map;
+        }
+
+        @Override
+        public long getLong(int key) {
+            return isLegalRange(key) ? map.getLong(key) : 0;
+        }
+
+        @Override
+        public long putLong(int key, long value) {
+            validateLegalRange(key);
+            return map.putLong(key, value);
+        }
+
+        @Override
+        public long removeLong(int key) {
+            return isLegalRange(key) ? map.removeLong(key) : 0;
+        }
+
+        @Override
+        public long addTo(int key, long increment) {
+            validateLegalRange(key);
+            return map.addTo(key, increment);
+        }
+
+        @Override
+        public IntKeyLongMap subMap(int fromKey, int toKey) {
+            return (IntKeyLongMap) super.subMap(fromKey, toKey);
+        }
+
+        @Override
+        public IntKeyLongMap headMap(int toKey) {
+            return subMap(startKey(), toKey);
+        }
+
+        @Override
+        public IntKeyLongMap tailMap(int fromKey) {
+            return subMap(fromKey, endKey());
+        }
+    }
+}
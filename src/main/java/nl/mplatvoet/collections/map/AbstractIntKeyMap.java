@@ -0,0 +1,757 @@
+package nl.mplatvoet.collections.map;
+
+import java.io.Serializable;
+import java.util.*;
+
+/**
+ * Skeleton for {@link IntKeyMap} implementations that don't need a hand tuned view layer. Implementations provide
+ * a handful of key based primitives for the whole map, this class derives the {@link SortedMap} contract,
+ * the collection views and the sub map views from them.
+ * <p>
+ * Keys are restricted to {@code [0, MAX_KEY)}, just like the array based maps, which allows the primitives to use
+ * {@code -1} as a "no such key" result.
+ */
+abstract class AbstractIntKeyMap<V> implements IntKeyMap<V> {
+    /**
+     * Some VMs reserve some header words in an array.
+     * Kept equal to the maximum array size of the array based maps so all implementations accept the same keys.
+     */
+    static final int MAX_KEY = Integer.MAX_VALUE - 8;
+
+    private transient Set<Integer> keySet = null;
+    private transient Collection<V> values = null;
+    private transient Set<Entry<Integer, V>> entrySet = null;
+
+    int startKey() {
+        return 0;
+    }
+
+    int endKey() {
+        return MAX_KEY;
+    }
+
+    //smallest key >= key or -1
+    abstract int nextKey(int key);
+
+    //largest key <= key or -1
+    abstract int previousKey(int key);
+
+    //counter of structural modifications, used by the iterators to fail fast
+    abstract int modCount();
+
+    int countKeys(int fromKey, int toKey) {
+        int count = 0;
+        for (int key = nextKey(fromKey); key >= 0 && key < toKey; key = nextAfter(key)) {
+            ++count;
+        }
+        return count;
+    }
+
+    void clear(int fromKey, int toKey) {
+        for (int key = nextKey(fromKey); key >= 0 && key < toKey; key = nextAfter(key)) {
+            remove(key);
+        }
+    }
+
+    final int nextAfter(int key) {
+        return key >= endKey() - 1 ? -1 : nextKey(key + 1);
+    }
+
+    final void validateLegalRange(int key) {
+        if (!isLegalRange(key)) {
+            throw new IllegalArgumentException("idx must be " + startKey() + " >= idx < " + endKey());
+        }
+    }
+
+    final boolean isLegalRange(int key) {
+        return key >= startKey() && key < endKey();
+    }
+
+    @Override
+    public int size() {
+        return countKeys(startKey(), endKey());
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return nextKey(startKey()) < 0;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return key instanceof Integer && containsKey((int) (Integer) key);
+    }
+
+    @Override
+    public boolean containsValue(Object value) {
+        for (int key = nextKey(startKey()); key >= 0; key = nextAfter(key)) {
+            if (Objects.equals(get(key), value)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public V get(Object key) {
+        return key instanceof Integer ? get((int) (Integer) key) : null;
+    }
+
+    @Override
+    public V put(Integer key, V value) {
+        if (key == null) {
+            throw new NullPointerException("key can not be null");
+        }
+        return put((int) key, value);
+    }
+
+    @Override
+    public V remove(Object key) {
+        return key instanceof Integer ? remove((int) (Integer) key) : null;
+    }
+
+    @Override
+    public void putAll(Map<? extends Integer, ? extends V> m) {
+        for (Entry<? extends Integer, ? extends V> entry : m.entrySet()) {
+            put(entry.getKey(), entry.getValue());
+        }
+    }
+
+    @Override
+    public void clear() {
+        clear(startKey(), endKey());
+    }
+
+    @Override
+    public void shiftKeys(int fromKey, int delta) {
+        if (fromKey < startKey() || fromKey > endKey()) {
+            throw new IllegalArgumentException("fromKey must be " + startKey() + " >= fromKey <= " + endKey());
+        }
+        if ((long) fromKey + delta < startKey()) {
+            throw new IllegalArgumentException(
+                    String.format("fromKey(%s) + delta(%s) must be >= startKey(%s)", fromKey, delta, startKey()));
+        }
+        if (delta == 0) return;
+
+        final int lastKey = previousKey(endKey() - 1);
+        if (lastKey < fromKey) {
+            if (delta < 0) clear(fromKey + delta, fromKey);
+            return;
+        }
+        if ((long) lastKey + delta >= endKey()) {
+            throw new IllegalArgumentException(
+                    String.format("key(%s) + delta(%s) must be < endKey(%s)", lastKey, delta, endKey()));
+        }
+
+        if (delta > 0) {
+            for (int key = lastKey; key >= fromKey; key = key == fromKey ? -1 : previousKey(key - 1)) {
+                put(key + delta, remove(key));
+            }
+        } else {
+            clear(fromKey + delta, fromKey);
+            for (int key = nextKey(fromKey); key >= 0; key = nextAfter(key)) {
+                put(key + delta, remove(key));
+            }
+        }
+    }
+
+    @Override
+    public Set<Integer> keySet() {
+        if (keySet == null) {
+            keySet = new KeySet();
+        }
+        return keySet;
+    }
+
+    @Override
+    public Collection<V> values() {
+        if (values == null) {
+            values = new Values();
+        }
+        return values;
+    }
+
+    @Override
+    public Set<Entry<Integer, V>> entrySet() {
+        if (entrySet == null) {
+            entrySet = new EntrySet();
+        }
+        return entrySet;
+    }
+
+    @Override
+    public Comparator<? super Integer> comparator() {
+        //natural ordering of the int key
+        return null;
+    }
+
+    @Override
+    public SortedMap<Integer, V> subMap(Integer fromKey, Integer toKey) {
+        return subMap((int) fromKey, (int) toKey);
+    }
+
+    @Override
+    public IntKeyMap<V> subMap(int fromKey, int toKey) {
+        if (fromKey < startKey() || toKey > endKey()) {
+            throw new IllegalArgumentException(
+                    String.format("fromKey(%s) < startKey(%s) || toKey(%s) > endKey(%s) == false",
+                            fromKey, startKey(), toKey, endKey()));
+        }
+        if (fromKey > toKey) {
+            throw new IllegalArgumentException(String.format("fromKey(%s) not smaller than toKey(%s)", fromKey, toKey));
+        }
+        return root().newSubMap(fromKey, toKey);
+    }
+
+    AbstractIntKeyMap<V> root() {
+        return this;
+    }
+
+    //view on the range [fromKey, toKey) of this root map
+    IntKeyMap<V> newSubMap(int fromKey, int toKey) {
+        return new SubMap<>(this, fromKey, toKey);
+    }
+
+    @Override
+    public SortedMap<Integer, V> headMap(Integer toKey) {
+        return headMap((int) toKey);
+    }
+
+    @Override
+    public IntKeyMap<V> headMap(int toKey) {
+        return subMap(startKey(), toKey);
+    }
+
+    @Override
+    public SortedMap<Integer, V> tailMap(Integer fromKey) {
+        return tailMap((int) fromKey);
+    }
+
+    @Override
+    public IntKeyMap<V> tailMap(int fromKey) {
+        return subMap(fromKey, endKey());
+    }
+
+    @Override
+    public Integer firstKey() {
+        final int key = nextKey(startKey());
+        if (key < 0) {
+            throw new NoSuchElementException();
+        }
+        return key;
+    }
+
+    @Override
+    public Integer lastKey() {
+        final int key = previousKey(endKey() - 1);
+        if (key < 0) {
+            throw new NoSuchElementException();
+        }
+        return key;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (o == this) return true;
+
+        if (!(o instanceof Map)) return false;
+
+        Map<?, ?> other = (Map<?, ?>) o;
+        if (other.size() != size()) return false;
+
+        try {
+            for (int key = nextKey(startKey()); key >= 0; key = nextAfter(key)) {
+                final V value = get(key);
+                final Object otherValue = other.get(key);
+                if (value == null) {
+                    if (!(otherValue == null && other.containsKey(key)))
+                        return false;
+                } else {
+                    if (!value.equals(otherValue))
+                        return false;
+                }
+            }
+        } catch (ClassCastException | NullPointerException unused) {
+            return false;
+        }
+
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        int h = 0;
+        for (int key = nextKey(startKey()); key >= 0; key = nextAfter(key)) {
+            final V value = get(key);
+            h += key ^ (value == null ? 0 : value.hashCode());
+        }
+        return h;
+    }
+
+    @Override
+    public String toString() {
+        int key = nextKey(startKey());
+        if (key < 0)
+            return "{}";
+
+        StringBuilder sb = new StringBuilder();
+        sb.append('{');
+        for (; ; ) {
+            V value = get(key);
+            sb.append(key);
+            sb.append('=');
+            sb.append(value == this ? "(this Map)" : value);
+            key = nextAfter(key);
+            if (key < 0)
+                return sb.append('}').toString();
+            sb.append(',').append(' ');
+        }
+    }
+
+    static class SubMap<V> extends AbstractIntKeyMap<V> implements Serializable {
+        private final AbstractIntKeyMap<V> map;
+        private final int fromKey;
+        private final int toKey;
+
+        SubMap(AbstractIntKeyMap<V> map, int fromKey, int toKey) {
+            this.map = map;
+            this.fromKey = fromKey;
+            this.toKey = toKey;
+        }
+
+        @Override
+        int startKey() {
+            return fromKey;
+        }
+
+        @Override
+        int endKey() {
+            return toKey;
+        }
+
+        @Override
+        AbstractIntKeyMap<V> root() {
+            return map;
+        }
+
+        @Override
+        int nextKey(int key) {
+            final int next = map.nextKey(Math.max(key, fromKey));
+            return next < toKey ? next : -1;
+        }
+
+        @Override
+        int previousKey(int key) {
+            if (key < fromKey) return -1;
+            final int previous = map.previousKey(Math.min(key, toKey - 1));
+            return previous >= fromKey ? previous : -1;
+        }
+
+        @Override
+        int modCount() {
+            return map.modCount();
+        }
+
+        @Override
+        int countKeys(int fromKey, int toKey) {
+            return map.countKeys(Math.max(fromKey, this.fromKey), Math.min(toKey, this.toKey));
+        }
+
+        @Override
+        void clear(int fromKey, int toKey) {
+            final int from = Math.max(fromKey, this.fromKey);
+            final int to = Math.min(toKey, this.toKey);
+            if (from < to) {
+                map.clear(from, to);
+            }
+        }
+
+        @Override
+        public boolean containsKey(int key) {
+            return isLegalRange(key) && map.containsKey(key);
+        }
+
+        @Override
+        public V get(int key) {
+            return isLegalRange(key) ? map.get(key) : null;
+        }
+
+        @Override
+        public V put(int key, V value) {
+            validateLegalRange(key);
+            return map.put(key, value);
+        }
+
+        @Override
+        public V remove(int key) {
+            return isLegalRange(key) ? map.remove(key) : null;
+        }
+    }
+
+    private final class KeySet extends AbstractSet<Integer> {
+        @Override
+        public int size() {
+            return AbstractIntKeyMap.this.size();
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return AbstractIntKeyMap.this.isEmpty();
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            if (o == null) {
+                throw new NullPointerException(); //according to spec
+            }
+            return containsKey(o);
+        }
+
+        @Override
+        public boolean remove(Object o) {
+            if (o == null) throw new NullPointerException();
+
+            final int key = (Integer) o;
+            if (!containsKey(key)) return false;
+            AbstractIntKeyMap.this.remove(key);
+            return true;
+        }
+
+        @Override
+        public void clear() {
+            AbstractIntKeyMap.this.clear();
+        }
+
+        @Override
+        public Iterator<Integer> iterator() {
+            return new KeyIterator();
+        }
+    }
+
+    private final class Values extends AbstractCollection<V> {
+        @Override
+        public int size() {
+            return AbstractIntKeyMap.this.size();
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return AbstractIntKeyMap.this.isEmpty();
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            return containsValue(o);
+        }
+
+        @Override
+        public void clear() {
+            AbstractIntKeyMap.this.clear();
+        }
+
+        @Override
+        public Iterator<V> iterator() {
+            return new KeyWalkIterator<V>() {
+                @Override
+                V valueOf(int key) {
+                    return get(key);
+                }
+            };
+        }
+    }
+
+    private final class EntrySet extends AbstractSet<Entry<Integer, V>> {
+        @Override
+        public int size() {
+            return AbstractIntKeyMap.this.size();
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return AbstractIntKeyMap.this.isEmpty();
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            if (o == null) {
+                throw new NullPointerException();
+            }
+            Entry<?, ?> entry = (Entry<?, ?>) o;
+            if (entry.getKey() instanceof Integer) {
+                final int key = (Integer) entry.getKey();
+                return containsKey(key) && Objects.equals(get(key), entry.getValue());
+            }
+            return false;
+        }
+
+        @Override
+        public boolean remove(Object o) {
+            if (contains(o)) {
+                AbstractIntKeyMap.this.remove((int) (Integer) ((Entry<?, ?>) o).getKey());
+                return true;
+            }
+            return false;
+        }
+
+        @Override
+        public void clear() {
+            AbstractIntKeyMap.this.clear();
+        }
+
+        @Override
+        public Iterator<Entry<Integer, V>> iterator() {
+            return new KeyWalkIterator<Entry<Integer, V>>() {
+                @Override
+                Entry<Integer, V> valueOf(int key) {
+                    return new KeyEntry(key);
+                }
+            };
+        }
+    }
+
+    //write through entry, entries are only materialized for entrySet() callers
+    private final class KeyEntry implements Entry<Integer, V> {
+        private final int key;
+        private V value;
+
+        private KeyEntry(int key) {
+            this.key = key;
+            this.value = get(key);
+        }
+
+        @Override
+        public Integer getKey() {
+            return key;
+        }
+
+        @Override
+        public V getValue() {
+            if (containsKey(key)) {
+                value = get(key);
+            }
+            return value;
+        }
+
+        @Override
+        public V setValue(V value) {
+            V current = getValue();
+            if (containsKey(key)) {
+                put(key, value);
+            }
+            this.value = value;
+            return current;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (other instanceof Entry) {
+                Entry<?, ?> entry = (Entry<?, ?>) other;
+                return ((Integer) key).equals(entry.getKey()) && Objects.equals(getValue(), entry.getValue());
+            }
+            return false;
+        }
+
+        @Override
+        public int hashCode() {
+            V value = getValue();
+            return key ^ (value == null ? 0 : value.hashCode());
+        }
+
+        @Override
+        public String toString() {
+            return key + "=" + getValue();
+        }
+    }
+
+    @Override
+    public int floorKey(int key) {
+        return key < startKey() ? -1 : previousKey(Math.min(key, endKey() - 1));
+    }
+
+    @Override
+    public int ceilingKey(int key) {
+        return key >= endKey() ? -1 : nextKey(Math.max(key, startKey()));
+    }
+
+    @Override
+    public int higherKey(int key) {
+        return key >= endKey() - 1 ? -1 : ceilingKey(key + 1);
+    }
+
+    @Override
+    public int lowerKey(int key) {
+        return key <= startKey() ? -1 : floorKey(key - 1);
+    }
+
+    @Override
+    public Entry<Integer, V> pollFirstEntry() {
+        return pollKey(nextKey(startKey()));
+    }
+
+    @Override
+    public Entry<Integer, V> pollLastEntry() {
+        return pollKey(previousKey(endKey() - 1));
+    }
+
+    private Entry<Integer, V> pollKey(int key) {
+        return key < 0 ? null : new AbstractMap.SimpleImmutableEntry<>(key, remove(key));
+    }
+
+    @Override
+    public boolean removeIf(IntObjPredicate<? super V> filter) {
+        Objects.requireNonNull(filter);
+        boolean removed = false;
+        for (int key = nextKey(startKey()); key >= 0; ) {
+            final int next = nextAfter(key);
+            if (filter.test(key, get(key))) {
+                remove(key);
+                removed = true;
+            }
+            key = next;
+        }
+        return removed;
+    }
+
+    @Override
+    public void removeRange(int fromKey, int toKey) {
+        if (fromKey > toKey) {
+            throw new IllegalArgumentException(String.format("fromKey(%s) not smaller than toKey(%s)", fromKey, toKey));
+        }
+        final int from = Math.max(fromKey, startKey());
+        final int to = Math.min(toKey, endKey());
+        if (from < to) {
+            clear(from, to);
+        }
+    }
+
+    @Override
+    public IntKeyCursor<V> cursor() {
+        return new KeyWalkCursor();
+    }
+
+    @Override
+    public PrimitiveIterator.OfInt keyIterator() {
+        return new KeyIterator();
+    }
+
+    private final class KeyWalkCursor implements IntKeyCursor<V> {
+        private int current = -1;
+        private boolean exhausted = false;
+        //false in front of the first mapping, after the last one and after a seek for an absent key
+        private boolean positioned = false;
+        private int expectedModCount = modCount();
+
+        @Override
+        public boolean advance() {
+            if (modCount() != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            if (exhausted) return false;
+            current = current < 0 ? nextKey(startKey()) : nextAfter(current);
+            exhausted = current < 0;
+            positioned = !exhausted;
+            return positioned;
+        }
+
+        @Override
+        public int key() {
+            if (!positioned) {
+                throw new IllegalStateException("cursor is not positioned on a mapping");
+            }
+            return current;
+        }
+
+        @Override
+        public V value() {
+            return get(key());
+        }
+
+        @Override
+        public V setValue(V value) {
+            final int key = key();
+            if (modCount() != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            final V previous = put(key, value);
+            //replacing a value may count as a modification, the cursor's own write must not fail the next advance
+            expectedModCount = modCount();
+            return previous;
+        }
+
+        @Override
+        public boolean seek(int key) {
+            expectedModCount = modCount();
+            exhausted = key >= endKey();
+            positioned = !exhausted && key >= startKey() && containsKey(key);
+            if (positioned) {
+                current = key;
+            } else if (!exhausted) {
+                current = key <= startKey() ? -1 : key - 1;
+            }
+            return positioned;
+        }
+
+        @Override
+        public void reset() {
+            current = -1;
+            exhausted = false;
+            positioned = false;
+            expectedModCount = modCount();
+        }
+    }
+
+    private final class KeyIterator extends KeyWalkIterator<Integer> implements PrimitiveIterator.OfInt {
+        @Override
+        Integer valueOf(int key) {
+            return key;
+        }
+
+        @Override
+        public int nextInt() {
+            return advance();
+        }
+    }
+
+    private abstract class KeyWalkIterator<T> implements Iterator<T> {
+        private int next = nextKey(startKey());
+        private int current = -1;
+        private int expectedModCount = modCount();
+
+        abstract T valueOf(int key);
+
+        @Override
+        public boolean hasNext() {
+            return next >= 0;
+        }
+
+        @Override
+        public T next() {
+            return valueOf(advance());
+        }
+
+        final int advance() {
+            if (modCount() != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            if (next < 0) {
+                throw new NoSuchElementException();
+            }
+            current = next;
+            next = nextAfter(current);
+            return current;
+        }
+
+        @Override
+        public void remove() {
+            if (current < 0) {
+                throw new IllegalStateException("next() has not been called or remove() has already been called");
+            }
+            if (modCount() != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            AbstractIntKeyMap.this.remove(current);
+            current = -1;
+            expectedModCount = modCount();
+        }
+    }
+}
@@ -0,0 +1,264 @@
+package nl.mplatvoet.collections.map;
+
+import java.io.Serializable;
+import java.util.ConcurrentModificationException;
+
+/**
+ * IntKeyMap that picks its own storage. It starts out as a {@link CompactArrayMap} and migrates to a
+ * {@link DirectArrayMap} once the keys fill at least half of their span, and back when they drop below a quarter.
+ * The gap between both thresholds keeps a map near the boundary from migrating back and forth.
+ */
+public class AdaptiveIntKeyMap<V> extends AbstractIntKeyMap<V> implements Serializable {
+    private static final int DEFAULT_CAPACITY = 10;
+    //below this size binary search is cheap enough, density is only checked every CHECK_INTERVAL changes
+    private static final int MIN_DIRECT_SIZE = 32;
+    private static final int CHECK_INTERVAL = 32;
+    private static final double DIRECT_DENSITY = 0.5;
+    private static final double COMPACT_DENSITY = 0.25;
+
+    //exactly one of both is set
+    private CompactArrayMap<V> compact;
+    private DirectArrayMap<V> direct;
+
+    private transient int modCount = 0;
+
+    public AdaptiveIntKeyMap() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public AdaptiveIntKeyMap(int initialCapacity) {
+        compact = new CompactArrayMap<>(initialCapacity);
+    }
+
+    boolean isDirect() {
+        return direct != null;
+    }
+
+    @Override
+    public int size() {
+        return direct != null ? direct.size() : compact.size();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return direct != null ? direct.isEmpty() : compact.isEmpty();
+    }
+
+    @Override
+    int modCount() {
+        //own counter, the delegates also count value replacements and migrations
+        return modCount;
+    }
+
+    @Override
+    int nextKey(int key) {
+        return direct != null ? direct.nextKey(key) : compact.nextKey(key);
+    }
+
+    @Override
+    int previousKey(int key) {
+        return direct != null ? direct.previousKey(key) : compact.previousKey(key);
+    }
+
+    @Override
+    int countKeys(int fromKey, int toKey) {
+        if (fromKey >= toKey) return 0;
+        return direct != null ? direct.countKeys(fromKey, toKey) : compact.countKeys(fromKey, toKey);
+    }
+
+    @Override
+    public IntKeyCursor<V> cursor() {
+        return new DelegateCursor();
+    }
+
+    @Override
+    public boolean containsKey(int key) {
+        return direct != null ? direct.containsKey(key) : compact.containsKey(key);
+    }
+
+    @Override
+    public V get(int key) {
+        return direct != null ? direct.get(key) : compact.get(key);
+    }
+
+    @Override
+    public V put(int key, V value) {
+        validateLegalRange(key);
+        final int size = size();
+        if (direct != null && !direct.covers(key) && size + 1 < directSpanWith(key) * COMPACT_DENSITY) {
+            //growing the direct storage to this key would leave it too sparse
+            toCompact();
+        }
+
+        final V previous = direct != null ? direct.put(key, value) : compact.put(key, value);
+        if (size() != size) {
+            ++modCount;
+            if (direct == null && shouldCheckDensity()) {
+                final int span = compact.lastKey() - compact.firstKey() + 1;
+                if (size() >= span * DIRECT_DENSITY) {
+                    toDirect(span);
+                }
+            }
+        }
+        return previous;
+    }
+
+    @Override
+    public V remove(int key) {
+        final int size = size();
+        final V previous = direct != null ? direct.remove(key) : compact.remove(key);
+        if (size() != size) {
+            ++modCount;
+            checkSparse();
+        }
+        return previous;
+    }
+
+    @Override
+    void clear(int fromKey, int toKey) {
+        if (fromKey >= toKey) return;
+        final int size = size();
+        if (direct != null) {
+            direct.subMap(fromKey, toKey).clear();
+        } else {
+            compact.subMap(fromKey, toKey).clear();
+        }
+        if (size() != size) {
+            ++modCount;
+            checkSparse();
+        }
+    }
+
+    @Override
+    public void trimToSize() {
+        if (direct != null) {
+            direct.trimToSize();
+        } else {
+            compact.trimToSize();
+        }
+    }
+
+    @Override
+    public void shiftKeys(int fromKey, int delta) {
+        if (direct != null) {
+            direct.shiftKeys(fromKey, delta);
+        } else {
+            compact.shiftKeys(fromKey, delta);
+        }
+        ++modCount;
+    }
+
+    private boolean shouldCheckDensity() {
+        final int size = size();
+        return size >= MIN_DIRECT_SIZE && size % CHECK_INTERVAL == 0;
+    }
+
+    private void checkSparse() {
+        if (direct == null) return;
+        if (direct.isEmpty()) {
+            compact = new CompactArrayMap<>();
+            direct = null;
+        } else if (shouldCheckDensity() || size() < MIN_DIRECT_SIZE) {
+            if (size() < (direct.lastKey() - direct.base() + 1L) * COMPACT_DENSITY) {
+                toCompact();
+            }
+        }
+    }
+
+    //slots the direct storage would need to also hold key
+    private long directSpanWith(int key) {
+        return (long) Math.max(direct.lastKey(), key) - Math.min(direct.base(), key) + 1;
+    }
+
+    private void toDirect(int span) {
+        //the direct storage starts at a multiple of 64 at or below the first key
+        final DirectArrayMap<V> target = new DirectArrayMap<>(span + 63);
+        for (int key = compact.nextKey(0); key >= 0; key = key == MAX_KEY - 1 ? -1 : compact.nextKey(key + 1)) {
+            target.put(key, compact.get(key));
+        }
+        direct = target;
+        compact = null;
+    }
+
+    private void toCompact() {
+        final CompactArrayMap<V> target = new CompactArrayMap<>(direct.size());
+        for (int key = direct.nextKey(0); key >= 0; key = key == MAX_KEY - 1 ? -1 : direct.nextKey(key + 1)) {
+            target.put(key, direct.get(key));
+        }
+        compact = target;
+        direct = null;
+    }
+
+    private IntKeyMap<V> delegate() {
+        return direct != null ? direct : compact;
+    }
+
+    //walks the delegate's cursor but fails on this map's modCount only. The delegates count value replacements, so
+    //every step first seeks the delegate's cursor back to its own position, which is O(1) and never fails
+    private final class DelegateCursor implements IntKeyCursor<V> {
+        private IntKeyMap<V> source;
+        private IntKeyCursor<V> cursor;
+        private int position;
+        private boolean started;
+        private int expectedModCount;
+
+        private DelegateCursor() {
+            reset();
+        }
+
+        @Override
+        public boolean advance() {
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            if (started) {
+                cursor.seek(position);
+            }
+            started = true;
+            if (!cursor.advance()) return false;
+            position = cursor.key();
+            return true;
+        }
+
+        @Override
+        public int key() {
+            return cursor.key();
+        }
+
+        @Override
+        public V value() {
+            return cursor.value();
+        }
+
+        @Override
+        public V setValue(V value) {
+            final int key = cursor.key();
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            cursor.seek(key);
+            return cursor.setValue(value);
+        }
+
+        @Override
+        public boolean seek(int key) {
+            if (source != delegate()) {
+                //migrated, the old storage is gone
+                source = delegate();
+                cursor = source.cursor();
+            }
+            expectedModCount = modCount;
+            started = true;
+            position = key;
+            return cursor.seek(key);
+        }
+
+        @Override
+        public void reset() {
+            source = delegate();
+            cursor = source.cursor();
+            started = false;
+            expectedModCount = modCount;
+        }
+    }
+}
@@ -3,14 +3,24 @@ package nl.mplatvoet.collections.map;
 import java.io.IOException;
 import java.io.Serializable;
 import java.util.*;
+import java.util.function.Consumer;
 
 public class CompactArrayMap<V> implements IntKeyMap<V>, Serializable {
     private static final int DEFAULT_CAPACITY = 10;
+    //putAll merges when the source has at least 1/MERGE_RATIO of the size of this map
+    private static final int MERGE_RATIO = 8;
     private final int startKey;
     private final int endKey;
+    private final boolean shrinkWhenSparse;
+    private final ValueCodec<? super V> valueCodec;
 
     private transient ArrayHolder holder;
 
+    //index range of this view in the holder, valid as long as the holder's modCount equals boundsModCount
+    private transient int boundsModCount;
+    private transient int fromIdx;
+    private transient int toIdx = -1;
+
     private transient EntrySet entrySet = null;
     private transient KeySet keySet = null;
     private transient ValuesCollection valuesCollection = null;
@@ -20,13 +30,120 @@ public class CompactArrayMap<V> implements IntKeyMap<V>, Serializable {
     }
 
     public CompactArrayMap(int initialCapacity) {
-        this(new ArrayHolder(Math.max(initialCapacity, DEFAULT_CAPACITY)), 0, ArrayHolder.MAX_ARRAY_SIZE);
+        this(initialCapacity, false);
+    }
+
+    /**
+     * @param shrinkWhenSparse when true the storage halves whenever removals leave less than a quarter of it in use,
+     *                         instead of only ever growing
+     */
+    public CompactArrayMap(int initialCapacity, boolean shrinkWhenSparse) {
+        this(initialCapacity, shrinkWhenSparse, ValueCodec.standard());
     }
 
-    private CompactArrayMap(ArrayHolder holder, int startKey, int endKey) {
+    /**
+     * @param valueCodec writes the values when this map is serialized
+     * @see #CompactArrayMap(int, boolean)
+     */
+    public CompactArrayMap(int initialCapacity, boolean shrinkWhenSparse, ValueCodec<? super V> valueCodec) {
+        this(new ArrayHolder(Math.max(initialCapacity, DEFAULT_CAPACITY), shrinkWhenSparse),
+                0, CompactKeyHolder.MAX_ARRAY_SIZE, Objects.requireNonNull(valueCodec));
+    }
+
+    private CompactArrayMap(ArrayHolder holder, int startKey, int endKey, ValueCodec<? super V> valueCodec) {
         this.holder = holder;
         this.startKey = startKey;
         this.endKey = endKey;
+        this.shrinkWhenSparse = holder.shrinkWhenSparse;
+        this.valueCodec = valueCodec;
+    }
+
+    /**
+     * Creates a map from keys in strictly ascending order and their values in a single pass, without searching or
+     * shifting per key.
+     *
+     * @throws IllegalArgumentException if the keys are not strictly ascending, out of range or the lengths differ
+     */
+    public static <V> CompactArrayMap<V> ofSorted(int[] keys, V[] values) {
+        checkLengths(keys, values);
+        int previous = -1;
+        for (int key : keys) {
+            checkKey(key);
+            if (key <= previous) {
+                throw new IllegalArgumentException(
+                        String.format("keys must be strictly ascending, but %s follows %s", key, previous));
+            }
+            previous = key;
+        }
+        return wrap(keys.clone(), Arrays.copyOf(values, values.length, Object[].class), keys.length);
+    }
+
+    /**
+     * Creates a map from keys in any order. Input that is already sorted is taken over in a single pass, other input
+     * is sorted first. Just like consecutive puts the last value wins for duplicate keys.
+     */
+    public static <V> CompactArrayMap<V> of(int[] keys, V[] values) {
+        return of(keys, values, false);
+    }
+
+    /**
+     * @param parallelSort sort unsorted input with {@link Arrays#parallelSort(long[])}, worthwhile for large inputs
+     * @see #of(int[], Object[])
+     */
+    public static <V> CompactArrayMap<V> of(int[] keys, V[] values, boolean parallelSort) {
+        checkLengths(keys, values);
+        boolean sorted = true;
+        for (int i = 0; i < keys.length; ++i) {
+            checkKey(keys[i]);
+            sorted &= i == 0 || keys[i] > keys[i - 1];
+        }
+        if (sorted) {
+            return wrap(keys.clone(), Arrays.copyOf(values, values.length, Object[].class), keys.length);
+        }
+
+        //key in the high and position in the low bits, so duplicate keys stay in input order
+        final long[] order = new long[keys.length];
+        for (int i = 0; i < keys.length; ++i) {
+            order[i] = (long) keys[i] << 32 | i;
+        }
+        if (parallelSort) {
+            Arrays.parallelSort(order);
+        } else {
+            Arrays.sort(order);
+        }
+
+        final int[] sortedKeys = new int[keys.length];
+        final Object[] sortedValues = new Object[keys.length];
+        int size = 0;
+        for (long entry : order) {
+            final int key = (int) (entry >>> 32);
+            if (size > 0 && sortedKeys[size - 1] == key) {
+                --size;
+            }
+            sortedKeys[size] = key;
+            sortedValues[size++] = values[(int) entry];
+        }
+        return wrap(sortedKeys, sortedValues, size);
+    }
+
+    private static void checkKey(int key) {
+        if (key < 0 || key >= CompactKeyHolder.MAX_ARRAY_SIZE) {
+            throw new IllegalArgumentException("idx must be 0 >= idx < " + CompactKeyHolder.MAX_ARRAY_SIZE);
+        }
+    }
+
+    private static void checkLengths(int[] keys, Object[] values) {
+        if (keys.length != values.length) {
+            throw new IllegalArgumentException(
+                    String.format("keys(%s) and values(%s) must have the same length", keys.length, values.length));
+        }
+    }
+
+    //takes over both arrays without copying
+    static <V> CompactArrayMap<V> wrap(int[] keys, Object[] values, int size) {
+        final CompactArrayMap<V> map = new CompactArrayMap<>(0);
+        map.holder.replace(keys, values, size);
+        return map;
     }
 
     private void validateLegalRange(int idx) {
@@ -39,34 +156,42 @@ public class CompactArrayMap<V> implements IntKeyMap<V>, Serializable {
         return idx >= startKey && idx < endKey;
     }
 
-    @Override
-    public int size() {
-        if (isBaseMap()) {
-            return holder.size;
+    private void updateBounds() {
+        if (toIdx < 0 || boundsModCount != holder.modCount) {
+            //the bounds rarely move far on an edit, the previous ones are the best place to start
+            fromIdx = holder.searchKeyOffset(startKey, fromIdx);
+            toIdx = holder.searchKeyOffset(endKey, toIdx);
+            boundsModCount = holder.modCount;
         }
-        if (startKey == endKey - 1) {
+    }
+
+    //index of the first key within this view
+    private int fromIdx() {
+        if (isBaseMap()) {
             return 0;
         }
+        updateBounds();
+        return fromIdx;
+    }
 
-        final int offset = holder.searchKeyOffset(startKey);
-
-        int size = 0;
-        for (int i = offset; i < holder.size; ++i) {
-            if (holder.entries[i].key >= endKey) return size;
-            ++size;
+    //index after the last key within this view
+    private int toIdx() {
+        if (isBaseMap()) {
+            return holder.size;
         }
-        return size;
+        updateBounds();
+        return toIdx;
+    }
+
+    @Override
+    public int size() {
+        return toIdx() - fromIdx();
     }
 
 
     @Override
     public boolean isEmpty() {
-        if (isBaseMap()) {
-            return holder.size == 0;
-        }
-
-        final int offset = holder.searchKeyOffset(startKey);
-        return offset >= holder.size || holder.entries[offset].key >= endKey;
+        return toIdx() == fromIdx();
     }
 
     @Override
@@ -92,13 +217,8 @@ public class CompactArrayMap<V> implements IntKeyMap<V>, Serializable {
     }
 
     private int containValueIdx(Object value) {
-        final int offset = holder.searchKeyOffset(startKey);
-
-        for (int i = offset; i < holder.size; ++i) {
-            KeyEntry entry = holder.entries[i];
-            if (entry.key >= endKey) return -1;
-
-            if (Objects.equals(entry.value, value)) {
+        for (int i = fromIdx(), end = toIdx(); i < end; ++i) {
+            if (Objects.equals(holder.valueAt(i), value)) {
                 return i;
             }
         }
@@ -153,20 +273,224 @@ public class CompactArrayMap<V> implements IntKeyMap<V>, Serializable {
     }
 
 
+    @Override
+    public void shiftKeys(int fromKey, int delta) {
+        if (fromKey < startKey || fromKey > endKey) {
+            throw new IllegalArgumentException("fromKey must be " + startKey + " >= fromKey <= " + endKey);
+        }
+        if ((long) fromKey + delta < startKey) {
+            throw new IllegalArgumentException(
+                    String.format("fromKey(%s) + delta(%s) must be >= startKey(%s)", fromKey, delta, startKey));
+        }
+        if (delta != 0) {
+            holder.shiftKeys(fromKey, endKey, delta);
+        }
+    }
+
+    //smallest key >= key within this view or -1
+    int nextKey(int key) {
+        final int next = holder.nextKey(Math.max(key, startKey));
+        return next < endKey ? next : -1;
+    }
+
+    //largest key <= key within this view or -1
+    int previousKey(int key) {
+        if (key < startKey) return -1;
+        final int previous = holder.previousKey(Math.min(key, endKey - 1));
+        return previous >= startKey ? previous : -1;
+    }
+
+    int countKeys(int fromKey, int toKey) {
+        return holder.countKeys(Math.max(fromKey, startKey), Math.min(toKey, endKey));
+    }
+
+    int modCount() {
+        return holder.modCount;
+    }
+
+    @Override
+    public int floorKey(int key) {
+        return previousKey(key);
+    }
+
+    @Override
+    public int ceilingKey(int key) {
+        return key >= endKey ? -1 : nextKey(key);
+    }
+
+    @Override
+    public int higherKey(int key) {
+        return key >= endKey - 1 ? -1 : nextKey(key + 1);
+    }
+
+    @Override
+    public int lowerKey(int key) {
+        return key <= startKey ? -1 : previousKey(key - 1);
+    }
+
+    @Override
+    public Entry<Integer, V> pollFirstEntry() {
+        return isEmpty() ? null : pollIdx(fromIdx());
+    }
+
+    @Override
+    public Entry<Integer, V> pollLastEntry() {
+        return isEmpty() ? null : pollIdx(toIdx() - 1);
+    }
+
+    @SuppressWarnings("unchecked")
+    private Entry<Integer, V> pollIdx(int idx) {
+        final Entry<Integer, V> entry =
+                new AbstractMap.SimpleImmutableEntry<>(holder.keyAt(idx), (V) holder.valueAt(idx));
+        holder.removeIdx(idx);
+        return entry;
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public void forEachEntry(IntObjConsumer<? super V> action) {
+        Objects.requireNonNull(action);
+        final ArrayHolder holder = this.holder;
+        final int expectedModCount = holder.modCount;
+        for (int i = fromIdx(), end = toIdx(); i < end; ++i) {
+            action.accept(holder.keyAt(i), (V) holder.valueAt(i));
+            if (holder.modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public boolean removeIf(IntObjPredicate<? super V> filter) {
+        Objects.requireNonNull(filter);
+        final ArrayHolder holder = this.holder;
+        return holder.removeMatching(fromIdx(), toIdx(),
+                idx -> filter.test(holder.keyAt(idx), (V) holder.valueAt(idx))) > 0;
+    }
+
+    @Override
+    public void removeRange(int fromKey, int toKey) {
+        if (fromKey > toKey) {
+            throw new IllegalArgumentException(String.format("fromKey(%s) not smaller than toKey(%s)", fromKey, toKey));
+        }
+        final int from = Math.max(fromKey, startKey);
+        final int to = Math.min(toKey, endKey);
+        if (from < to) {
+            holder.clear(from, to);
+        }
+    }
+
+    @Override
+    public IntKeyCursor<V> cursor() {
+        return new ArrayCursor();
+    }
+
+    @Override
+    public PrimitiveIterator.OfInt keyIterator() {
+        return new KeyIterator();
+    }
+
     @Override
     public void putAll(Map<? extends Integer, ? extends V> m) {
-        for (Entry<? extends Integer, ? extends V> entry : m.entrySet()) {
-            put(entry.getKey(), entry.getValue());
+        if (m instanceof CompactArrayMap) {
+            @SuppressWarnings("unchecked")
+            final CompactArrayMap<V> source = (CompactArrayMap<V>) m;
+            //a few keys are cheaper to insert through the gap buffer than copying everything
+            if ((long) source.size() * MERGE_RATIO >= holder.size) {
+                merge(source);
+            } else {
+                source.forEachEntry(this::put);
+            }
+            return;
+        }
+        if ((long) m.size() * MERGE_RATIO < holder.size) {
+            for (Entry<? extends Integer, ? extends V> entry : m.entrySet()) {
+                put(entry.getKey(), entry.getValue());
+            }
+            return;
+        }
+
+        //inserting keys in random order would move the gap across the map for every key, sorting them first keeps a
+        //large load at O(n log n)
+        final int[] keys = new int[m.size()];
+        final Object[] values = new Object[keys.length];
+        int count = 0;
+        if (m instanceof IntKeyMap) {
+            @SuppressWarnings("unchecked")
+            final IntKeyMap<? extends V> source = (IntKeyMap<? extends V>) m;
+            final IntKeyCursor<? extends V> cursor = source.cursor();
+            while (cursor.advance()) {
+                keys[count] = cursor.key();
+                values[count++] = cursor.value();
+            }
+        } else {
+            for (Entry<? extends Integer, ? extends V> entry : m.entrySet()) {
+                keys[count] = entry.getKey();
+                values[count++] = entry.getValue();
+            }
+        }
+        @SuppressWarnings("unchecked")
+        final CompactArrayMap<V> sorted =
+                (CompactArrayMap<V>) of(Arrays.copyOf(keys, count), Arrays.copyOf(values, count));
+        merge(sorted);
+    }
+
+    //merges both sorted key ranges in a single pass, the source wins for keys present in both
+    private void merge(CompactArrayMap<V> source) {
+        final ArrayHolder other = source.holder;
+        final int otherFrom = source.fromIdx();
+        final int otherTo = source.toIdx();
+        if (otherFrom == otherTo) return;
+        validateLegalRange(other.keyAt(otherFrom));
+        validateLegalRange(other.keyAt(otherTo - 1));
+
+        final int size = holder.size;
+        final int[] keys = new int[size + otherTo - otherFrom];
+        final Object[] values = new Object[keys.length];
+        int i = 0;
+        int j = otherFrom;
+        int n = 0;
+        while (i < size && j < otherTo) {
+            final int key = holder.keyAt(i);
+            final int otherKey = other.keyAt(j);
+            if (key < otherKey) {
+                keys[n] = key;
+                values[n++] = holder.valueAt(i++);
+            } else {
+                if (key == otherKey) ++i;
+                keys[n] = otherKey;
+                values[n++] = other.valueAt(j++);
+            }
+        }
+        for (; i < size; ++i, ++n) {
+            keys[n] = holder.keyAt(i);
+            values[n] = holder.valueAt(i);
         }
+        for (; j < otherTo; ++j, ++n) {
+            keys[n] = other.keyAt(j);
+            values[n] = other.valueAt(j);
+        }
+        holder.replace(keys, values, n);
     }
 
     @Override
     public void clear() {
-        if (holder.size != 0 && !isEmpty()) {
+        if (!isEmpty()) {
             holder.clear(startKey, endKey);
         }
     }
 
+    @Override
+    public void trimToSize() {
+        holder.trimToSize();
+    }
+
+    //number of keys that fit without growing
+    int capacity() {
+        return holder.keys.length;
+    }
+
     private boolean isBaseMap() {
         return holder.isBaseMap(startKey, endKey);
     }
@@ -216,7 +540,7 @@ public class CompactArrayMap<V> implements IntKeyMap<V>, Serializable {
         if (fromKey > toKey) {
             throw new IllegalArgumentException(String.format("fromKey(%s) not smaller than toKey(%s)", fromKey, toKey));
         }
-        return new CompactArrayMap<>(holder, fromKey, toKey);
+        return new CompactArrayMap<>(holder, fromKey, toKey, valueCodec);
     }
 
 
@@ -245,7 +569,7 @@ public class CompactArrayMap<V> implements IntKeyMap<V>, Serializable {
         if (isEmpty()) {
             throw new NoSuchElementException();
         }
-        return holder.firstKey(startKey, endKey);
+        return holder.keyAt(fromIdx());
     }
 
     @Override
@@ -253,50 +577,48 @@ public class CompactArrayMap<V> implements IntKeyMap<V>, Serializable {
         if (isEmpty()) {
             throw new NoSuchElementException();
         }
-        return holder.lastKey(startKey, endKey);
+        return holder.keyAt(toIdx() - 1);
     }
 
+    //the keys go first as a block of varint deltas, then the values through the codec
+    @SuppressWarnings("unchecked")
     private void writeObject(java.io.ObjectOutputStream s) throws IOException {
         final int size = size();
         s.defaultWriteObject();
         s.writeInt(size);
 
-        if (size > 0) {
-            final KeyEntry[] entries = holder.entries;
-            final int offset = holder.searchKeyOffset(startKey);
-            final int end = holder.searchKeyOffset(endKey);
-
-            final int requiredCapacity = end - offset;
-            s.writeInt(requiredCapacity);
-
-            int maxLength = Math.min(holder.size, end);
-            for (int i = offset; i < maxLength; ++i) {
-                final KeyEntry entry = entries[i];
-                s.writeInt(entry.key);
-                s.writeObject(entry.value);
-            }
+        final int offset = fromIdx();
+        final int end = toIdx();
+        int previous = 0;
+        for (int i = offset; i < end; ++i) {
+            final int key = holder.keyAt(i);
+            VarInts.write(s, key - previous);
+            previous = key;
+        }
+        for (int i = offset; i < end; ++i) {
+            valueCodec.write(s, (V) holder.valueAt(i));
         }
     }
 
 
-    @SuppressWarnings("unchecked")
     private void readObject(java.io.ObjectInputStream s)
             throws IOException, ClassNotFoundException {
         s.defaultReadObject();
+        toIdx = -1;
         final int size = s.readInt();
-        if (size == 0) {
-            holder = new ArrayHolder(DEFAULT_CAPACITY);
-        } else {
-            final int requiredCapacity = s.readInt();
-            holder = new ArrayHolder(requiredCapacity);
-            holder.size = size;
-
-            final KeyEntry[] entries = holder.entries;
-            for (int i = 0; i < size; i++) {
-                final int idx = s.readInt();
-                final V value = (V) s.readObject();
-                entries[i] = new KeyEntry<>(idx, value);
-            }
+        holder = new ArrayHolder(Math.max(size, DEFAULT_CAPACITY), shrinkWhenSparse);
+        holder.size = size;
+        holder.gapStart = size;
+
+        final int[] keys = holder.keys;
+        final Object[] values = holder.values;
+        int previous = 0;
+        for (int i = 0; i < size; i++) {
+            previous += VarInts.read(s);
+            keys[i] = previous;
+        }
+        for (int i = 0; i < size; i++) {
+            values[i] = valueCodec.read(s);
         }
     }
 
@@ -310,16 +632,17 @@ public class CompactArrayMap<V> implements IntKeyMap<V>, Serializable {
         if (other.size() != size()) return false;
 
         try {
-            final int offset = isBaseMap() ? 0 : holder.searchKeyOffset(startKey);
-            final int maxLength = isBaseMap() ? holder.size : Math.min(holder.size, holder.searchKeyOffset(endKey));
+            final int offset = fromIdx();
+            final int maxLength = toIdx();
             for (int i = offset; i < maxLength; ++i) {
-                final KeyEntry entry = holder.entries[i];
-                final Object otherValue = other.get(entry.key);
-                if (entry.value == null) {
-                    if (!(otherValue == null && other.containsKey(entry.key)))
+                final int key = holder.keyAt(i);
+                final Object value = holder.valueAt(i);
+                final Object otherValue = other.get(key);
+                if (value == null) {
+                    if (!(otherValue == null && other.containsKey(key)))
                         return false;
                 } else {
-                    if (!entry.value.equals(otherValue))
+                    if (!value.equals(otherValue))
                         return false;
                 }
             }
@@ -356,120 +679,70 @@ public class CompactArrayMap<V> implements IntKeyMap<V>, Serializable {
         }
     }
 
-    private static class ArrayHolder {
-        /**
-         * Some VMs reserve some header words in an array.
-         * Attempts to allocate larger arrays may result in
-         * OutOfMemoryError: Requested array size exceeds VM limit
-         */
-        private static final int MAX_ARRAY_SIZE = Integer.MAX_VALUE - 8;
-
-        KeyEntry[] entries;
-        int size = 0;
-        int modCount = 0;
+    static class ArrayHolder extends CompactKeyHolder {
+        Object[] values;
 
         ArrayHolder(int initialCapacity) {
-            if (initialCapacity < 0) {
-                throw new IllegalArgumentException("initialCapacity must be >= 0");
-            }
-            if (initialCapacity > MAX_ARRAY_SIZE) {
-                throw new IllegalArgumentException("initialCapacity exceeds maximum capacity: " + MAX_ARRAY_SIZE);
-            }
-            entries = new KeyEntry[initialCapacity];
+            this(initialCapacity, false);
         }
 
-        @SuppressWarnings("unchecked")
-        <V> V remove(int key) {
-            if (isOutOfRange(key)) return null;
-            int keyIdx = searchKeyIndex(key);
-            if (keyIdx >= 0) {
-                V value = (V) entries[keyIdx].value;
-                System.arraycopy(entries, keyIdx + 1, entries, keyIdx, entries.length - keyIdx - 1);
-                entries[entries.length - 1] = null;
-                --size;
-                ++modCount;
-                return value;
-            }
-            return null;
+        ArrayHolder(int initialCapacity, boolean shrinkWhenSparse) {
+            super(initialCapacity);
+            values = new Object[initialCapacity];
+            this.shrinkWhenSparse = shrinkWhenSparse;
         }
 
-        boolean delete(int key) {
-            if (isOutOfRange(key)) return false;
-            int keyIdx = searchKeyIndex(key);
-            if (keyIdx >= 0) {
-                System.arraycopy(entries, keyIdx + 1, entries, keyIdx, entries.length - keyIdx - 1);
-                entries[entries.length - 1] = null;
-                --size;
-                ++modCount;
-                return true;
-            }
-            return false;
+        //takes over both arrays, the first size keys must be sorted, the rest is free space
+        void replace(int[] keys, Object[] values, int size) {
+            this.keys = keys;
+            this.values = values;
+            this.size = size;
+            this.gapStart = size;
+            ++modCount;
         }
 
-        void clear(int fromKey, int toKey) {
-            if (isBaseMap(fromKey, toKey)) {
-                Arrays.fill(entries, null);
-                if (size > 0) {
-                    ++modCount;
-                }
-                size = 0;
-                return;
-            }
+        @Override
+        void moveValues(int srcPos, int destPos, int length) {
+            System.arraycopy(values, srcPos, values, destPos, length);
+        }
 
-            int startOffset = searchKeyOffset(fromKey);
-            int endIndex = searchKeyOffset(toKey);
-            int delta = endIndex - startOffset;
-            if (delta > 0) {
-                System.arraycopy(entries, startOffset + delta, entries, startOffset, entries.length - startOffset - delta);
-                Arrays.fill(entries, entries.length - delta, entries.length, null);
-                size -= delta;
-                ++modCount;
-            }
+        @Override
+        void releaseValues(int fromIdx, int toIdx) {
+            Arrays.fill(values, fromIdx, toIdx, null);
         }
 
-        private Integer firstKey(int startKey, int endKey) {
-            if (isBaseMap(startKey, endKey)) {
-                return size == 0 ? null : entries[0].key;
-            }
-            final int offset = searchKeyOffset(startKey);
+        @Override
+        void resizeValues(int newCapacity, int splitIdx, int tail) {
+            Object[] newValues = new Object[newCapacity];
+            System.arraycopy(values, 0, newValues, 0, splitIdx);
+            System.arraycopy(values, values.length - tail, newValues, newCapacity - tail, tail);
+            values = newValues;
+        }
 
-            if (offset < size) {
-                final int key = entries[offset].key;
-                if (key < endKey) {
-                    return key;
-                }
-            }
-            return null;
+        Object valueAt(int idx) {
+            return values[physicalIdx(idx)];
         }
 
-        private Integer lastKey(int startKey, int endKey) {
-            if (isBaseMap(startKey, endKey)) {
-                return size == 0 ? null : entries[size - 1].key;
-            }
-            final int offset = searchKeyOffset(endKey) - 1;
+        void setValueAt(int idx, Object value) {
+            values[physicalIdx(idx)] = value;
+        }
 
-            if (offset >= 0 && offset < size) {
-                final int key = entries[offset].key;
-                if (key >= startKey) {
-                    return key;
-                }
+        @SuppressWarnings("unchecked")
+        <V> V remove(int key) {
+            int keyIdx = indexOf(key);
+            if (keyIdx >= 0) {
+                V value = (V) valueAt(keyIdx);
+                removeIdx(keyIdx);
+                return value;
             }
             return null;
-
-        }
-
-
-        private boolean isOutOfRange(int key) {
-            return size == 0 || key < entries[0].key || size > 0 && key > entries[size - 1].key;
         }
 
         @SuppressWarnings("unchecked")
         <V> V get(int key) {
-            if (isOutOfRange(key)) return null;
-
-            int keyIdx = searchKeyIndex(key);
+            int keyIdx = indexOf(key);
             if (keyIdx >= 0) {
-                return (V) entries[keyIdx].value;
+                return (V) valueAt(keyIdx);
             }
             return null;
         }
@@ -479,86 +752,34 @@ public class CompactArrayMap<V> implements IntKeyMap<V>, Serializable {
             int keyIdx = searchKeyIndex(key);
             if (keyIdx < 0) {
                 keyIdx = -(keyIdx + 1); //insertion point
-
-                ++size;
-                if (size - entries.length > 0) {
-                    int newCapacity = determineNewCapacity(size);
-                    KeyEntry[] newEntries = new KeyEntry[newCapacity];
-
-                    System.arraycopy(entries, 0, newEntries, 0, keyIdx);
-                    if (keyIdx + 1 < size) {
-                        System.arraycopy(entries, keyIdx, newEntries, keyIdx + 1, entries.length - keyIdx);
-                    }
-                    entries = newEntries;
-                } else {
-                    System.arraycopy(entries, keyIdx, entries, keyIdx + 1, entries.length - (keyIdx + 1));
-                }
-
-                entries[keyIdx] = new KeyEntry(key, null);
+                final int physicalIdx = insertIdx(keyIdx, key);
+                values[physicalIdx] = value;
+                return null;
             }
 
-            final KeyEntry entry = entries[keyIdx];
-            V oldValue = (V) entry.getValue();
-            entry.setValue(value);
+            final int physicalIdx = physicalIdx(keyIdx);
+            V oldValue = (V) values[physicalIdx];
+            values[physicalIdx] = value;
 
             ++modCount;
             return oldValue;
         }
-
-
-        private int searchKeyIndex(int key) {
-            int low = 0;
-            int high = size - 1;
-
-            while (low <= high) {
-                int mid = (low + high) >>> 1;
-                int midVal = entries[mid].key;
-
-                if (midVal < key)
-                    low = mid + 1;
-                else if (midVal > key)
-                    high = mid - 1;
-                else
-                    return mid;
-            }
-            return -(low + 1);
-        }
-
-        private int searchKeyOffset(int key) {
-            final int offset = searchKeyIndex(key);
-            return offset < 0 ? -(offset + 1) : offset;
-        }
-
-        private void ensureCapacity(int minCapacity) {
-            if (minCapacity - entries.length > 0) {
-                int newCapacity = determineNewCapacity(minCapacity);
-
-                entries = Arrays.copyOf(entries, newCapacity);
-            }
-        }
-
-        private int determineNewCapacity(int minCapacity) {
-            int oldCapacity = entries.length;
-            int newCapacity = oldCapacity + (oldCapacity >> 1);
-            if (newCapacity - minCapacity < 0)
-                newCapacity = minCapacity;
-            if (newCapacity - MAX_ARRAY_SIZE > 0)
-                throw new OutOfMemoryError();
-            return newCapacity;
-        }
-
-        boolean isBaseMap(int startKey, int endKey) {
-            return startKey == 0 && endKey == ArrayHolder.MAX_ARRAY_SIZE;
-        }
     }
 
-    private static class KeyEntry<V> implements Entry<Integer, V> {
+    //entries are only materialized for entrySet() callers, the value is read from and written to the holder. An
+    //entry remembers the index it was created for and only searches its key again after the holder changed
+    private class KeyEntry implements Entry<Integer, V> {
         private final int key;
+        private int index;
+        private int expectedModCount;
         private V value;
 
-        private KeyEntry(int key, V value) {
-            this.key = key;
-            this.value = value;
+        @SuppressWarnings("unchecked")
+        private KeyEntry(int index) {
+            this.key = holder.keyAt(index);
+            this.index = index;
+            this.expectedModCount = holder.modCount;
+            this.value = (V) holder.valueAt(index);
         }
 
         @Override
@@ -566,14 +787,32 @@ public class CompactArrayMap<V> implements IntKeyMap<V>, Serializable {
             return key;
         }
 
+        //index of the key in the holder or -1 if it has been removed
+        private int index() {
+            if (holder.modCount != expectedModCount) {
+                index = holder.searchKeyIndex(key, index);
+                expectedModCount = holder.modCount;
+            }
+            return index;
+        }
+
+        @SuppressWarnings("unchecked")
         @Override
         public V getValue() {
+            final int idx = index();
+            if (idx >= 0) {
+                value = (V) holder.valueAt(idx);
+            }
             return value;
         }
 
         @Override
         public V setValue(V value) {
-            V current = this.value;
+            V current = getValue();
+            final int idx = index();
+            if (idx >= 0) {
+                holder.setValueAt(idx, value);
+            }
             this.value = value;
             return current;
         }
@@ -583,6 +822,7 @@ public class CompactArrayMap<V> implements IntKeyMap<V>, Serializable {
             if (other instanceof Entry) {
                 Entry entry = (Entry) other;
                 if (((Integer) this.key).equals(entry.getKey())) {
+                    Object value = getValue();
                     Object otherValue = entry.getValue();
                     return (value == null && otherValue == null) ||
                             (value != null && value.equals(otherValue));
@@ -593,12 +833,13 @@ public class CompactArrayMap<V> implements IntKeyMap<V>, Serializable {
 
         @Override
         public int hashCode() {
+            V value = getValue();
             return ((Integer) key).hashCode() ^ (value == null ? 0 : value.hashCode());
         }
 
         @Override
         public final String toString() {
-            return key + "=" + value;
+            return key + "=" + getValue();
         }
     }
 
@@ -623,7 +864,7 @@ public class CompactArrayMap<V> implements IntKeyMap<V>, Serializable {
             final int idx = containValueIdx(o);
             if (idx > -1) {
                 //Todo optimize
-                CompactArrayMap.this.remove(holder.entries[idx].key);
+                holder.removeIdx(idx);
                 return true;
             }
             return false;
@@ -633,24 +874,19 @@ public class CompactArrayMap<V> implements IntKeyMap<V>, Serializable {
         public boolean retainAll(Collection<?> c) {
             if (c == null) throw new NullPointerException();
             if (c == this) return false;
-
-            boolean altered = false;
-            final int offset = isBaseMap() ? 0 : holder.searchKeyOffset(startKey);
-            final int maxLength = isBaseMap() ? holder.size : Math.min(holder.size, holder.searchKeyOffset(endKey));
-            for (int i = maxLength - 1; i >= offset; --i) {
-                final KeyEntry entry = holder.entries[i];
-                if (!c.contains(entry.value)) {
-                    CompactArrayMap.this.remove(entry.key);
-                    altered = true;
-                }
-            }
-            return altered;
+            return CompactArrayMap.this.removeIf((key, value) -> !c.contains(value));
         }
 
+        @Override
+        public boolean removeAll(Collection<?> c) {
+            if (c == null) throw new NullPointerException();
+            return CompactArrayMap.this.removeIf((key, value) -> c.contains(value));
+        }
 
+        @SuppressWarnings("unchecked")
         @Override
-        V valueOf(int key, V value) {
-            return value;
+        V valueOf(int idx) {
+            return (V) holder.valueAt(idx);
         }
     }
 
@@ -700,7 +936,22 @@ public class CompactArrayMap<V> implements IntKeyMap<V>, Serializable {
             return toArray(new Object[size()]);
         }
 
-        abstract T valueOf(int key, V value);
+        //element for the holder index idx
+        abstract T valueOf(int idx);
+
+        //characteristics on top of ORDERED, SIZED and SUBSIZED
+        int characteristics() {
+            return 0;
+        }
+
+        Comparator<? super T> comparator() {
+            return null;
+        }
+
+        @Override
+        public Spliterator<T> spliterator() {
+            return new ArraySpliterator<>(this);
+        }
 
         @Override
         @SuppressWarnings("unchecked")
@@ -713,11 +964,10 @@ public class CompactArrayMap<V> implements IntKeyMap<V>, Serializable {
                             .newInstance(a.getClass().getComponentType(), size);
 
             int idx = 0;
-            final int offset = isBaseMap() ? 0 : holder.searchKeyOffset(startKey);
-            final int maxLength = isBaseMap() ? holder.size : Math.min(holder.size, holder.searchKeyOffset(endKey));
+            final int offset = fromIdx();
+            final int maxLength = toIdx();
             for (int i = offset; i < maxLength; ++i) {
-                final KeyEntry entry = holder.entries[i];
-                result[idx] = (E) valueOf(entry.key, (V) entry.value);
+                result[idx] = (E) valueOf(i);
                 ++idx;
             }
 
@@ -840,23 +1090,18 @@ public class CompactArrayMap<V> implements IntKeyMap<V>, Serializable {
             if (c == null) throw new NullPointerException();
             if (c == this) return false;
 
-            boolean altered = false;
-            final int offset = isBaseMap() ? 0 : holder.searchKeyOffset(startKey);
-            final int maxLength = isBaseMap() ? holder.size : Math.min(holder.size, holder.searchKeyOffset(endKey));
-            for (int i = maxLength - 1; i >= offset; --i) {
-                final KeyEntry entry = holder.entries[i];
-                if (!c.contains(entry.key)) {
-                    CompactArrayMap.this.remove(entry.key);
-                    altered = true;
-                }
-            }
-            return altered;
+            return CompactArrayMap.this.removeIf((key, value) -> !c.contains(key));
         }
 
 
         @Override
-        Integer valueOf(int key, V value) {
-            return key;
+        Integer valueOf(int idx) {
+            return holder.keyAt(idx);
+        }
+
+        @Override
+        int characteristics() {
+            return Spliterator.DISTINCT | Spliterator.SORTED | Spliterator.NONNULL;
         }
     }
 
@@ -872,12 +1117,20 @@ public class CompactArrayMap<V> implements IntKeyMap<V>, Serializable {
             return toArray(new Object[size()]);
         }
 
-        @SuppressWarnings("unchecked")
         @Override
-        Entry<Integer, V> valueOf(int key, V value) {
-            return holder.entries[holder.searchKeyIndex(key)];
+        Entry<Integer, V> valueOf(int idx) {
+            return new KeyEntry(idx);
         }
 
+        @Override
+        int characteristics() {
+            return Spliterator.DISTINCT | Spliterator.SORTED | Spliterator.NONNULL;
+        }
+
+        @Override
+        Comparator<? super Entry<Integer, V>> comparator() {
+            return Entry.comparingByKey();
+        }
 
         @Override
         @SuppressWarnings("unchecked")
@@ -890,10 +1143,10 @@ public class CompactArrayMap<V> implements IntKeyMap<V>, Serializable {
                             .newInstance(a.getClass().getComponentType(), size);
 
             int idx = 0;
-            final int offset = isBaseMap() ? 0 : holder.searchKeyOffset(startKey);
-            final int maxLength = isBaseMap() ? holder.size : Math.min(holder.size, holder.searchKeyOffset(endKey));
+            final int offset = fromIdx();
+            final int maxLength = toIdx();
             for (int i = offset; i < maxLength; ++i) {
-                result[idx] = (E) holder.entries[i];
+                result[idx] = (E) new KeyEntry(i);
                 ++idx;
             }
 
@@ -918,9 +1171,8 @@ public class CompactArrayMap<V> implements IntKeyMap<V>, Serializable {
                 Object value = entry.getValue();
                 final int idx = holder.searchKeyIndex(key);
                 if (idx >= 0) {
-                    final KeyEntry e = holder.entries[idx];
-                    if (Objects.equals(value, e.value)) {
-                        holder.remove(key); //TODO removeIdx();
+                    if (Objects.equals(value, holder.valueAt(idx))) {
+                        holder.removeIdx(idx);
                         return true;
                     }
                 }
@@ -944,6 +1196,7 @@ public class CompactArrayMap<V> implements IntKeyMap<V>, Serializable {
             return true;
         }
 
+        @SuppressWarnings("unchecked")
         @Override
         public boolean retainAll(Collection<?> c) {
             //noinspection ConstantConditions
@@ -956,17 +1209,8 @@ public class CompactArrayMap<V> implements IntKeyMap<V>, Serializable {
                 return size > 0;
             }
 
-            boolean altered = false;
-            final int offset = isBaseMap() ? 0 : holder.searchKeyOffset(startKey);
-            final int maxLength = isBaseMap() ? holder.size : Math.min(holder.size, holder.searchKeyOffset(endKey));
-            for (int i = maxLength - 1; i >= offset; --i) {
-                final KeyEntry entry = holder.entries[i];
-                if (!c.contains(entry)) {
-                    holder.remove(entry.key);
-                    altered = true;
-                }
-            }
-            return altered;
+            //nothing moves while the entries are matched, so they can point at their index
+            return holder.removeMatching(fromIdx(), toIdx(), idx -> !c.contains(new KeyEntry(idx))) > 0;
         }
 
         @Override
@@ -981,8 +1225,7 @@ public class CompactArrayMap<V> implements IntKeyMap<V>, Serializable {
                 if (isLegalRange(key)) {
                     final int idx = holder.searchKeyIndex(key);
                     if (idx < 0) return false;
-                    final KeyEntry e = holder.entries[idx];
-                    return e.equals(entry);
+                    return Objects.equals(holder.valueAt(idx), entry.getValue());
                 }
             }
             return false;
@@ -990,28 +1233,200 @@ public class CompactArrayMap<V> implements IntKeyMap<V>, Serializable {
 
         private class ArrayIterator extends AbstractArrayIterator<Entry<Integer, V>> {
             @Override
-            Entry<Integer, V> valueOf(KeyEntry entry) {
-                return entry;
+            Entry<Integer, V> valueOf(int idx) {
+                return new KeyEntry(idx);
             }
         }
     }
 
-    private class KeyIterator extends AbstractArrayIterator<Integer> {
+    private class KeyIterator extends AbstractArrayIterator<Integer> implements PrimitiveIterator.OfInt {
         @Override
-        Integer valueOf(KeyEntry entry) {
-            return entry.key;
+        Integer valueOf(int idx) {
+            return holder.keyAt(idx);
+        }
+
+        @Override
+        public int nextInt() {
+            return holder.keyAt(advance());
         }
     }
 
     private class ValuesIterator extends AbstractArrayIterator<V> {
+        @SuppressWarnings("unchecked")
+        @Override
+        V valueOf(int idx) {
+            return (V) holder.valueAt(idx);
+        }
+    }
+
+    //splits by index range of the holder, the range is bound on first use
+    private class ArraySpliterator<T> implements Spliterator<T> {
+        private final AbstractCollection<T> collection;
+        private int index;
+        private int fence = -1;
+        private int expectedModCount;
+
+        private ArraySpliterator(AbstractCollection<T> collection) {
+            this.collection = collection;
+        }
+
+        private ArraySpliterator(AbstractCollection<T> collection, int index, int fence, int expectedModCount) {
+            this.collection = collection;
+            this.index = index;
+            this.fence = fence;
+            this.expectedModCount = expectedModCount;
+        }
+
+        private int getFence() {
+            if (fence < 0) {
+                expectedModCount = holder.modCount;
+                index = fromIdx();
+                fence = toIdx();
+            }
+            return fence;
+        }
+
+        @Override
+        public Spliterator<T> trySplit() {
+            final int hi = getFence();
+            final int lo = index;
+            final int mid = (lo + hi) >>> 1;
+            if (lo >= mid) return null;
+            index = mid;
+            return new ArraySpliterator<>(collection, lo, mid, expectedModCount);
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        public boolean tryAdvance(Consumer<? super T> action) {
+            if (action == null) throw new NullPointerException();
+            final int hi = getFence();
+            if (index >= hi) return false;
+            if (holder.modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            action.accept(collection.valueOf(index++));
+            return true;
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        public void forEachRemaining(Consumer<? super T> action) {
+            if (action == null) throw new NullPointerException();
+            final int hi = getFence();
+            final ArrayHolder holder = CompactArrayMap.this.holder;
+            for (int i = index; i < hi && holder.modCount == expectedModCount; ++i) {
+                action.accept(collection.valueOf(i));
+            }
+            index = hi;
+            if (holder.modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+        }
+
+        @Override
+        public long estimateSize() {
+            return getFence() - index;
+        }
+
+        @Override
+        public int characteristics() {
+            return Spliterator.ORDERED | Spliterator.SIZED | Spliterator.SUBSIZED | collection.characteristics();
+        }
+
+        @Override
+        public Comparator<? super T> getComparator() {
+            if (hasCharacteristics(Spliterator.SORTED)) {
+                return collection.comparator();
+            }
+            throw new IllegalStateException();
+        }
+    }
+
+    private class ArrayCursor implements IntKeyCursor<V> {
+        private int start = fromIdx();
+        private int end = toIdx();
+        private int index = start - 1;
+        //false in front of the first mapping, after the last one and after a seek for an absent key
+        private boolean positioned = false;
+        private int expectedModCount = holder.modCount;
+
+        @Override
+        public boolean advance() {
+            if (holder.modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            if (index < end) {
+                ++index;
+            }
+            positioned = index < end;
+            return positioned;
+        }
+
+        private int checkedIndex() {
+            if (!positioned) {
+                throw new IllegalStateException("cursor is not positioned on a mapping");
+            }
+            return index;
+        }
+
+        @Override
+        public int key() {
+            return holder.keyAt(checkedIndex());
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        public V value() {
+            return (V) holder.valueAt(checkedIndex());
+        }
+
+        @SuppressWarnings("unchecked")
         @Override
-        V valueOf(KeyEntry entry) {
-            return (V) entry.value;
+        public V setValue(V value) {
+            final int idx = checkedIndex();
+            if (holder.modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            final V previous = (V) holder.valueAt(idx);
+            holder.setValueAt(idx, value);
+            return previous;
+        }
+
+        @Override
+        public boolean seek(int key) {
+            if (holder.modCount != expectedModCount) {
+                start = fromIdx();
+                end = toIdx();
+                expectedModCount = holder.modCount;
+            }
+            //the current index is the finger, after a modification it is still a valid place to start
+            final int keyIdx = holder.searchKeyIndex(key, Math.max(index, start));
+            final int offset = keyIdx < 0 ? -(keyIdx + 1) : keyIdx;
+            if (offset < start) {
+                index = start - 1;
+            } else if (offset >= end) {
+                index = end;
+            } else {
+                index = keyIdx < 0 ? offset - 1 : offset;
+            }
+            positioned = keyIdx >= 0 && offset >= start && offset < end;
+            return positioned;
+        }
+
+        @Override
+        public void reset() {
+            start = fromIdx();
+            end = toIdx();
+            index = start - 1;
+            positioned = false;
+            expectedModCount = holder.modCount;
         }
     }
 
     private abstract class AbstractArrayIterator<T> implements Iterator<T> {
-        private int start = holder.searchKeyOffset(startKey);
+        private final int start = fromIdx();
+        private int end = toIdx();
         private int index = start - 1;
         private boolean removed = false;
         private int expectedModCount;
@@ -1022,26 +1437,27 @@ public class CompactArrayMap<V> implements IntKeyMap<V>, Serializable {
 
         @Override
         public boolean hasNext() {
-            final int next = index + 1;
-            return next < holder.size && holder.entries[next].key < endKey;
+            return index + 1 < end;
         }
 
-        abstract T valueOf(KeyEntry entry);
+        abstract T valueOf(int idx);
 
         @Override
         public T next() {
+            return valueOf(advance());
+        }
+
+        //moves to the next index and returns it
+        final int advance() {
             if (holder.modCount != expectedModCount) {
                 throw new ConcurrentModificationException();
             }
 
             final int next = index + 1;
-            if (next < holder.size) {
-                KeyEntry entry = holder.entries[next];
-                if (entry.key < endKey) {
-                    removed = false;
-                    ++index;
-                    return valueOf(entry);
-                }
+            if (next < end) {
+                removed = false;
+                ++index;
+                return next;
             }
             throw new NoSuchElementException();
         }
@@ -1057,10 +1473,10 @@ public class CompactArrayMap<V> implements IntKeyMap<V>, Serializable {
             if (removed) {
                 throw new IllegalStateException("remove() has already been called");
             }
-            //TODO optimize
-            CompactArrayMap.this.remove(holder.entries[index].key);
+            holder.removeIdx(index);
             expectedModCount = holder.modCount;
             --index;
+            --end;
             removed = true;
         }
     }
@@ -0,0 +1,205 @@
+package nl.mplatvoet.collections.map;
+
+import java.io.IOException;
+import java.io.Serializable;
+
+/**
+ * Sorted key {@link IntKeyDoubleMap} for sparse keys, the double counterpart of {@link CompactArrayMap}.
+ */
+public class CompactDoubleArrayMap extends AbstractIntKeyDoubleMap implements Serializable {
+    private static final int DEFAULT_CAPACITY = 10;
+
+    private transient DoubleHolder holder;
+
+    public CompactDoubleArrayMap() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public CompactDoubleArrayMap(int initialCapacity) {
+        holder = new DoubleHolder(Math.max(initialCapacity, DEFAULT_CAPACITY));
+    }
+
+    @Override
+    public int size() {
+        return holder.size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return holder.size == 0;
+    }
+
+    @Override
+    int modCount() {
+        return holder.modCount;
+    }
+
+    @Override
+    int nextKey(int key) {
+        return holder.nextKey(key);
+    }
+
+    @Override
+    int previousKey(int key) {
+        return holder.previousKey(key);
+    }
+
+    @Override
+    int countKeys(int fromKey, int toKey) {
+        return holder.countKeys(fromKey, toKey);
+    }
+
+    @Override
+    void clear(int fromKey, int toKey) {
+        holder.clear(fromKey, toKey);
+    }
+
+    @Override
+    public boolean containsKey(int key) {
+        return holder.indexOf(key) >= 0;
+    }
+
+    @Override
+    public double getDouble(int key) {
+        final int keyIdx = holder.indexOf(key);
+        return keyIdx >= 0 ? holder.valueAt(keyIdx) : 0;
+    }
+
+    @Override
+    public Double get(int key) {
+        final int keyIdx = holder.indexOf(key);
+        return keyIdx >= 0 ? holder.valueAt(keyIdx) : null;
+    }
+
+    @Override
+    public double putDouble(int key, double value) {
+        validateLegalRange(key);
+        final int keyIdx = holder.searchKeyIndex(key);
+        if (keyIdx < 0) {
+            holder.insert(-(keyIdx + 1), key, value);
+            return 0;
+        }
+        return holder.replace(keyIdx, value);
+    }
+
+    @Override
+    public Double put(int key, Double value) {
+        if (value == null) {
+            throw new NullPointerException("value can not be null");
+        }
+        validateLegalRange(key);
+        final int keyIdx = holder.searchKeyIndex(key);
+        if (keyIdx < 0) {
+            holder.insert(-(keyIdx + 1), key, value);
+            return null;
+        }
+        return holder.replace(keyIdx, value);
+    }
+
+    @Override
+    public double addTo(int key, double increment) {
+        validateLegalRange(key);
+        final int keyIdx = holder.searchKeyIndex(key);
+        if (keyIdx < 0) {
+            holder.insert(-(keyIdx + 1), key, increment);
+            return increment;
+        }
+        return holder.values[holder.physicalIdx(keyIdx)] += increment;
+    }
+
+    @Override
+    public double removeDouble(int key) {
+        final int keyIdx = holder.indexOf(key);
+        if (keyIdx < 0) return 0;
+        final double value = holder.valueAt(keyIdx);
+        holder.removeIdx(keyIdx);
+        return value;
+    }
+
+    @Override
+    public Double remove(int key) {
+        final int keyIdx = holder.indexOf(key);
+        if (keyIdx < 0) return null;
+        final double value = holder.valueAt(keyIdx);
+        holder.removeIdx(keyIdx);
+        return value;
+    }
+
+    @Override
+    public void shiftKeys(int fromKey, int delta) {
+        if (fromKey < 0 || fromKey > MAX_KEY) {
+            throw new IllegalArgumentException("fromKey must be 0 >= fromKey <= " + MAX_KEY);
+        }
+        if ((long) fromKey + delta < 0) {
+            throw new IllegalArgumentException(
+                    String.format("fromKey(%s) + delta(%s) must be >= 0", fromKey, delta));
+        }
+        if (delta != 0) {
+            holder.shiftKeys(fromKey, MAX_KEY, delta);
+        }
+    }
+
+    private void writeObject(java.io.ObjectOutputStream s) throws IOException {
+        s.defaultWriteObject();
+        s.writeInt(holder.size);
+        for (int i = 0; i < holder.size; ++i) {
+            s.writeInt(holder.keyAt(i));
+            s.writeDouble(holder.valueAt(i));
+        }
+    }
+
+    private void readObject(java.io.ObjectInputStream s) throws IOException, ClassNotFoundException {
+        s.defaultReadObject();
+        final int size = s.readInt();
+        holder = new DoubleHolder(Math.max(size, DEFAULT_CAPACITY));
+        holder.size = size;
+        holder.gapStart = size;
+        for (int i = 0; i < size; i++) {
+            holder.keys[i] = s.readInt();
+            holder.values[i] = s.readDouble();
+        }
+    }
+
+    private static class DoubleHolder extends CompactKeyHolder {
+        double[] values;
+
+        DoubleHolder(int initialCapacity) {
+            super(initialCapacity);
+            values = new double[initialCapacity];
+        }
+
+        @Override
+        void moveValues(int srcPos, int destPos, int length) {
+            System.arraycopy(values, srcPos, values, destPos, length);
+        }
+
+        @Override
+        void releaseValues(int fromIdx, int toIdx) {
+            //primitives hold no references
+        }
+
+        @Override
+        void resizeValues(int newCapacity, int splitIdx, int tail) {
+            double[] newValues = new double[newCapacity];
+            System.arraycopy(values, 0, newValues, 0, splitIdx);
+            System.arraycopy(values, values.length - tail, newValues, newCapacity - tail, tail);
+            values = newValues;
+        }
+
+        double valueAt(int idx) {
+            return values[physicalIdx(idx)];
+        }
+
+        void insert(int keyIdx, int key, double value) {
+            final int physicalIdx = insertIdx(keyIdx, key);
+            values[physicalIdx] = value;
+        }
+
+        double replace(int keyIdx, double value) {
+            final int physicalIdx = physicalIdx(keyIdx);
+            final double previous = values[physicalIdx];
+            values[physicalIdx] = value;
+            return previous;
+        }
+    }
+}
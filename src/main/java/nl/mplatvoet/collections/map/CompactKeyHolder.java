@@ -0,0 +1,354 @@
+package nl.mplatvoet.collections.map;
+
+import java.util.ConcurrentModificationException;
+import java.util.function.IntPredicate;
+
+/**
+ * Sorted key storage shared by the compact maps. Keys are kept in a gap buffer, the unused capacity is a gap at the
+ * last edit point so edits near each other only move the elements between them instead of the whole tail.
+ * Elements are addressed by logical index.
+ * <p>
+ * Subclasses keep their values in a parallel array of their own type and move them along through the hooks.
+ */
+abstract class CompactKeyHolder {
+    /**
+     * Some VMs reserve some header words in an array.
+     * Attempts to allocate larger arrays may result in
+     * OutOfMemoryError: Requested array size exceeds VM limit
+     */
+    static final int MAX_ARRAY_SIZE = Integer.MAX_VALUE - 8;
+    //sparse holders don't shrink below this capacity, so a map that empties and refills doesn't keep reallocating
+    static final int MIN_SHRINK_CAPACITY = 16;
+
+    int[] keys;
+    int size = 0;
+    int gapStart = 0;
+    int modCount = 0;
+    //halve the capacity when removals leave less than a quarter of it in use
+    boolean shrinkWhenSparse = false;
+
+    CompactKeyHolder(int initialCapacity) {
+        if (initialCapacity < 0) {
+            throw new IllegalArgumentException("initialCapacity must be >= 0");
+        }
+        if (initialCapacity > MAX_ARRAY_SIZE) {
+            throw new IllegalArgumentException("initialCapacity exceeds maximum capacity: " + MAX_ARRAY_SIZE);
+        }
+        keys = new int[initialCapacity];
+    }
+
+    //System.arraycopy within the value array
+    abstract void moveValues(int srcPos, int destPos, int length);
+
+    //drop references held by the physical range [fromIdx, toIdx), primitive holders can ignore this
+    abstract void releaseValues(int fromIdx, int toIdx);
+
+    //replace the value array by one of newCapacity, [0, splitIdx) stays in place and the last tail values move to
+    //the end of the new array
+    abstract void resizeValues(int newCapacity, int splitIdx, int tail);
+
+    final int physicalIdx(int idx) {
+        return idx < gapStart ? idx : idx + keys.length - size;
+    }
+
+    final int keyAt(int idx) {
+        return keys[physicalIdx(idx)];
+    }
+
+    //logical index of key or -1, cheaper than searchKeyIndex for keys outside the stored range
+    final int indexOf(int key) {
+        if (isOutOfRange(key)) return -1;
+        final int keyIdx = searchKeyIndex(key);
+        return keyIdx >= 0 ? keyIdx : -1;
+    }
+
+    final boolean delete(int key) {
+        final int keyIdx = indexOf(key);
+        if (keyIdx >= 0) {
+            removeIdx(keyIdx);
+            return true;
+        }
+        return false;
+    }
+
+    final void removeIdx(int keyIdx) {
+        removeRange(keyIdx, keyIdx + 1);
+    }
+
+    //removes the logical range [fromIdx, toIdx) by moving the gap in front of it and widening it
+    final void removeRange(int fromIdx, int toIdx) {
+        moveGap(fromIdx);
+        final int gapEnd = fromIdx + keys.length - size;
+        releaseValues(gapEnd, gapEnd + toIdx - fromIdx);
+        size -= toIdx - fromIdx;
+        ++modCount;
+        shrinkIfSparse();
+    }
+
+    //removes the keys in the logical range [fromIdx, toIdx) that match, in two passes so a failing predicate or a
+    //concurrent modification leaves the holder untouched. Returns the number of removed keys.
+    final int removeMatching(int fromIdx, int toIdx, IntPredicate matcher) {
+        final int expectedModCount = modCount;
+        long[] matched = null;
+        int removed = 0;
+        for (int i = fromIdx; i < toIdx; ++i) {
+            if (matcher.test(i)) {
+                if (matched == null) {
+                    matched = new long[((toIdx - fromIdx - 1) >>> 6) + 1];
+                }
+                matched[(i - fromIdx) >>> 6] |= 1L << (i - fromIdx);
+                ++removed;
+            }
+        }
+        if (modCount != expectedModCount) {
+            throw new ConcurrentModificationException();
+        }
+        if (removed == 0) return 0;
+
+        //with the gap behind the range the surviving keys can be compacted towards the front in place
+        moveGap(toIdx);
+        int write = fromIdx;
+        for (int read = fromIdx; read < toIdx; ++read) {
+            final int offset = read - fromIdx;
+            if ((matched[offset >>> 6] & 1L << offset) == 0) {
+                if (read != write) {
+                    keys[write] = keys[read];
+                    moveValues(read, write, 1);
+                }
+                ++write;
+            }
+        }
+        releaseValues(write, toIdx);
+        gapStart = write;
+        size -= removed;
+        ++modCount;
+        shrinkIfSparse();
+        return removed;
+    }
+
+    private void moveGap(int idx) {
+        if (idx == gapStart) return;
+
+        final int gapLength = keys.length - size;
+        if (gapLength == 0) {
+            gapStart = idx;
+            return;
+        }
+        if (idx < gapStart) {
+            final int moved = gapStart - idx;
+            System.arraycopy(keys, idx, keys, idx + gapLength, moved);
+            moveValues(idx, idx + gapLength, moved);
+            releaseValues(idx, Math.min(gapStart, idx + gapLength));
+        } else {
+            final int moved = idx - gapStart;
+            System.arraycopy(keys, gapStart + gapLength, keys, gapStart, moved);
+            moveValues(gapStart + gapLength, gapStart, moved);
+            releaseValues(Math.max(idx, gapStart + gapLength), idx + gapLength);
+        }
+        gapStart = idx;
+    }
+
+    //opens a slot for key at logical index keyIdx, the value belongs at the returned physical index
+    final int insertIdx(int keyIdx, int key) {
+        if (size == keys.length) {
+            //the gap is exhausted, an empty gap can be anywhere so grow with the new gap at the insertion point
+            gapStart = keyIdx;
+            resize(determineNewCapacity(size + 1));
+        } else {
+            moveGap(keyIdx);
+        }
+
+        keys[keyIdx] = key;
+        ++gapStart;
+        ++size;
+        ++modCount;
+        return keyIdx;
+    }
+
+    final void shiftKeys(int fromKey, int toKey, int delta) {
+        int fromIdx = searchKeyOffset(fromKey);
+        int toIdx = searchKeyOffset(toKey);
+        if (fromIdx < toIdx && (long) keyAt(toIdx - 1) + delta >= toKey) {
+            throw new IllegalArgumentException(
+                    String.format("key(%s) + delta(%s) must be < endKey(%s)", keyAt(toIdx - 1), delta, toKey));
+        }
+
+        if (delta < 0) {
+            final int overwrittenIdx = searchKeyOffset(fromKey + delta);
+            if (overwrittenIdx < fromIdx) {
+                removeRange(overwrittenIdx, fromIdx);
+                toIdx -= fromIdx - overwrittenIdx;
+                fromIdx = overwrittenIdx;
+            }
+        }
+        if (fromIdx == toIdx) return;
+
+        //shifting keys uniformly keeps them sorted, adjust both sides of the gap in place
+        final int gapLength = keys.length - size;
+        for (int i = fromIdx, end = Math.min(toIdx, gapStart); i < end; ++i) {
+            keys[i] += delta;
+        }
+        for (int i = Math.max(fromIdx, gapStart) + gapLength, end = toIdx + gapLength; i < end; ++i) {
+            keys[i] += delta;
+        }
+        ++modCount;
+    }
+
+    final void clear(int fromKey, int toKey) {
+        if (isBaseMap(fromKey, toKey)) {
+            releaseValues(0, keys.length);
+            if (size > 0) {
+                ++modCount;
+            }
+            size = 0;
+            gapStart = 0;
+            shrinkIfSparse();
+            return;
+        }
+
+        int startOffset = searchKeyOffset(fromKey);
+        int endIndex = searchKeyOffset(toKey);
+        if (endIndex > startOffset) {
+            removeRange(startOffset, endIndex);
+        }
+    }
+
+    //smallest key >= key or -1
+    final int nextKey(int key) {
+        final int offset = searchKeyOffset(key);
+        return offset < size ? keyAt(offset) : -1;
+    }
+
+    //largest key <= key or -1
+    final int previousKey(int key) {
+        final int keyIdx = searchKeyIndex(key);
+        if (keyIdx >= 0) return key;
+        final int previous = -(keyIdx + 1) - 1;
+        return previous >= 0 ? keyAt(previous) : -1;
+    }
+
+    final int countKeys(int fromKey, int toKey) {
+        return fromKey < toKey ? searchKeyOffset(toKey) - searchKeyOffset(fromKey) : 0;
+    }
+
+    final boolean isOutOfRange(int key) {
+        return size == 0 || key < keyAt(0) || key > keyAt(size - 1);
+    }
+
+    //searching never writes to the holder, so concurrent readers of an unchanged holder don't interfere
+    final int searchKeyIndex(int key) {
+        final int high = size - 1;
+        //appending needs no search at all
+        if (high < 0 || key > keyAt(high)) return -(size + 1);
+        //keys that run without holes from the first key sit at a known index
+        final int guess = key - keyAt(0);
+        if (guess < 0) return -1;
+        if (guess <= high && keyAt(guess) == key) return guess;
+        return searchRange(0, high, key);
+    }
+
+    //same result as searchKeyIndex(key), but gallops away from hint first. Callers that search in key order, or
+    //search again for a key that barely moved, keep the previous index as hint, any hint is valid
+    final int searchKeyIndex(int key, int hint) {
+        final int high = size - 1;
+        if (high < 0 || key > keyAt(high)) return -(size + 1);
+
+        final int finger = Math.max(0, Math.min(hint, high));
+        final int fingerKey = keyAt(finger);
+        if (fingerKey == key) return finger;
+        if (fingerKey < key) {
+            //gallop up, key <= keyAt(high) bounds the search
+            int low = finger + 1;
+            int bound = 1;
+            while (bound < high - finger && keyAt(finger + bound) < key) {
+                low = finger + bound + 1;
+                bound = bound < (high - finger) >>> 1 ? bound << 1 : high - finger;
+            }
+            return searchRange(low, Math.min(high, finger + bound), key);
+        }
+        int upper = finger - 1;
+        int bound = 1;
+        while (bound <= finger && keyAt(finger - bound) > key) {
+            upper = finger - bound - 1;
+            bound = bound < finger >>> 1 ? bound << 1 : finger + 1;
+        }
+        return searchRange(Math.max(0, finger - bound), upper, key);
+    }
+
+    //binary search of the logical range [low, high], same result as searchKeyIndex
+    private int searchRange(int low, int high, int key) {
+        if (low < gapStart && (high < gapStart || key <= keys[gapStart - 1])) {
+            return search(keys, low, Math.min(high, gapStart - 1), key);
+        }
+        final int gapLength = keys.length - size;
+        final int idx = search(keys, Math.max(low, gapStart) + gapLength, high + gapLength, key);
+        return idx < 0 ? idx + gapLength : idx - gapLength;
+    }
+
+    private static int search(int[] keys, int low, int high, int key) {
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int midVal = keys[mid];
+
+            if (midVal < key)
+                low = mid + 1;
+            else if (midVal > key)
+                high = mid - 1;
+            else
+                return mid;
+        }
+        return -(low + 1);
+    }
+
+    final int searchKeyOffset(int key) {
+        final int offset = searchKeyIndex(key);
+        return offset < 0 ? -(offset + 1) : offset;
+    }
+
+    final int searchKeyOffset(int key, int hint) {
+        final int offset = searchKeyIndex(key, hint);
+        return offset < 0 ? -(offset + 1) : offset;
+    }
+
+    //reallocates at newCapacity >= size, the gap stays at the same logical index
+    private void resize(int newCapacity) {
+        final int tail = size - gapStart;
+        final int[] newKeys = new int[newCapacity];
+        System.arraycopy(keys, 0, newKeys, 0, gapStart);
+        System.arraycopy(keys, keys.length - tail, newKeys, newCapacity - tail, tail);
+        resizeValues(newCapacity, gapStart, tail);
+        keys = newKeys;
+    }
+
+    final void trimToSize() {
+        if (size < keys.length) {
+            resize(size);
+            ++modCount;
+        }
+    }
+
+    private void shrinkIfSparse() {
+        if (!shrinkWhenSparse || size >= keys.length >>> 2) return;
+        int newCapacity = keys.length;
+        while (newCapacity >>> 1 >= MIN_SHRINK_CAPACITY && size < newCapacity >>> 2) {
+            newCapacity >>>= 1;
+        }
+        if (newCapacity < keys.length) {
+            resize(newCapacity);
+        }
+    }
+
+    private int determineNewCapacity(int minCapacity) {
+        int oldCapacity = keys.length;
+        int newCapacity = oldCapacity + (oldCapacity >> 1);
+        if (newCapacity - minCapacity < 0)
+            newCapacity = minCapacity;
+        if (newCapacity - MAX_ARRAY_SIZE > 0)
+            throw new OutOfMemoryError();
+        return newCapacity;
+    }
+
+    final boolean isBaseMap(int startKey, int endKey) {
+        return startKey == 0 && endKey == MAX_ARRAY_SIZE;
+    }
+}
@@ -0,0 +1,265 @@
+package nl.mplatvoet.collections.map;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.AbstractMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.ToIntFunction;
+
+/**
+ * Thread safe, sorted key IntKeyMap for sparse keys. Keys are spread over a fixed number of stripes, each a compact
+ * sorted array guarded by its own {@link StampedLock}. Writers only lock the stripe of their key, readers first try
+ * an optimistic read and only fall back to the read lock when a writer interfered.
+ * <p>
+ * Ordered traversal merges the stripes, so iterating is a bit more expensive than with {@link CompactArrayMap}.
+ * Iterators and views are weakly consistent, they never throw {@link java.util.ConcurrentModificationException}.
+ * Bulk operations like {@code putAll}, {@code clear} and {@code shiftKeys} are not atomic.
+ */
+public class ConcurrentCompactArrayMap<V> extends AbstractIntKeyMap<V> implements Serializable {
+    private static final int DEFAULT_CAPACITY = 10;
+    private static final int STRIPE_BITS = 4;
+    private static final int STRIPE_COUNT = 1 << STRIPE_BITS;
+
+    private transient Stripe[] stripes;
+    private transient AtomicInteger size;
+
+    public ConcurrentCompactArrayMap() {
+        this(DEFAULT_CAPACITY * STRIPE_COUNT);
+    }
+
+    public ConcurrentCompactArrayMap(int initialCapacity) {
+        if (initialCapacity < 0) {
+            throw new IllegalArgumentException("initialCapacity must be >= 0");
+        }
+        init(Math.max(initialCapacity / STRIPE_COUNT, DEFAULT_CAPACITY));
+    }
+
+    private void init(int stripeCapacity) {
+        stripes = new Stripe[STRIPE_COUNT];
+        for (int i = 0; i < STRIPE_COUNT; ++i) {
+            stripes[i] = new Stripe(stripeCapacity);
+        }
+        size = new AtomicInteger();
+    }
+
+    //fibonacci hashing, so neither runs of keys nor keys with a common stride end up in a single stripe
+    private Stripe stripe(int key) {
+        return stripes[key * 0x9E3779B9 >>> (32 - STRIPE_BITS)];
+    }
+
+    @Override
+    public int size() {
+        return size.get();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size.get() == 0;
+    }
+
+    @Override
+    int modCount() {
+        //weakly consistent, iterators never fail
+        return 0;
+    }
+
+    @Override
+    public boolean containsKey(int key) {
+        return stripe(key).read(holder -> holder.indexOf(key)) >= 0;
+    }
+
+    @Override
+    public V get(int key) {
+        return stripe(key).get(key);
+    }
+
+    @Override
+    public V put(int key, V value) {
+        validateLegalRange(key);
+        final Stripe stripe = stripe(key);
+        final long stamp = stripe.lock.writeLock();
+        try {
+            final CompactArrayMap.ArrayHolder holder = stripe.holder;
+            final int keyIdx = holder.searchKeyIndex(key);
+            if (keyIdx < 0) {
+                final int physicalIdx = holder.insertIdx(-(keyIdx + 1), key);
+                holder.values[physicalIdx] = value;
+                size.incrementAndGet();
+                return null;
+            }
+            @SuppressWarnings("unchecked")
+            final V previous = (V) holder.valueAt(keyIdx);
+            holder.setValueAt(keyIdx, value);
+            return previous;
+        } finally {
+            stripe.lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public V remove(int key) {
+        final Stripe stripe = stripe(key);
+        final long stamp = stripe.lock.writeLock();
+        try {
+            final CompactArrayMap.ArrayHolder holder = stripe.holder;
+            final int keyIdx = holder.indexOf(key);
+            if (keyIdx < 0) return null;
+            @SuppressWarnings("unchecked")
+            final V previous = (V) holder.valueAt(keyIdx);
+            holder.removeIdx(keyIdx);
+            size.decrementAndGet();
+            return previous;
+        } finally {
+            stripe.lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    int nextKey(int key) {
+        int next = -1;
+        for (Stripe stripe : stripes) {
+            final int candidate = stripe.read(holder -> holder.nextKey(key));
+            if (candidate >= 0 && (next < 0 || candidate < next)) {
+                next = candidate;
+            }
+        }
+        return next;
+    }
+
+    @Override
+    int previousKey(int key) {
+        int previous = -1;
+        for (Stripe stripe : stripes) {
+            previous = Math.max(previous, stripe.read(holder -> holder.previousKey(key)));
+        }
+        return previous;
+    }
+
+    @Override
+    int countKeys(int fromKey, int toKey) {
+        int count = 0;
+        for (Stripe stripe : stripes) {
+            count += stripe.read(holder -> holder.countKeys(fromKey, toKey));
+        }
+        return count;
+    }
+
+    @Override
+    public Entry<Integer, V> pollFirstEntry() {
+        //another thread may take the key first, then retry with the next one
+        for (int key = nextKey(0); key >= 0; key = nextKey(key)) {
+            final Entry<Integer, V> entry = removeEntry(key);
+            if (entry != null) return entry;
+        }
+        return null;
+    }
+
+    @Override
+    public Entry<Integer, V> pollLastEntry() {
+        for (int key = previousKey(MAX_KEY - 1); key >= 0; key = previousKey(key)) {
+            final Entry<Integer, V> entry = removeEntry(key);
+            if (entry != null) return entry;
+        }
+        return null;
+    }
+
+    private Entry<Integer, V> removeEntry(int key) {
+        final Stripe stripe = stripe(key);
+        final long stamp = stripe.lock.writeLock();
+        try {
+            final CompactArrayMap.ArrayHolder holder = stripe.holder;
+            final int keyIdx = holder.indexOf(key);
+            if (keyIdx < 0) return null;
+            @SuppressWarnings("unchecked")
+            final V value = (V) holder.valueAt(keyIdx);
+            holder.removeIdx(keyIdx);
+            size.decrementAndGet();
+            return new AbstractMap.SimpleImmutableEntry<>(key, value);
+        } finally {
+            stripe.lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    void clear(int fromKey, int toKey) {
+        for (Stripe stripe : stripes) {
+            final long stamp = stripe.lock.writeLock();
+            try {
+                final int before = stripe.holder.size;
+                stripe.holder.clear(fromKey, toKey);
+                size.addAndGet(stripe.holder.size - before);
+            } finally {
+                stripe.lock.unlockWrite(stamp);
+            }
+        }
+    }
+
+    private void writeObject(java.io.ObjectOutputStream s) throws IOException {
+        s.defaultWriteObject();
+        for (int key = nextKey(0); key >= 0; key = nextAfter(key)) {
+            s.writeInt(key);
+            s.writeObject(get(key));
+        }
+        s.writeInt(-1);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void readObject(java.io.ObjectInputStream s) throws IOException, ClassNotFoundException {
+        s.defaultReadObject();
+        init(DEFAULT_CAPACITY);
+        for (int key = s.readInt(); key >= 0; key = s.readInt()) {
+            put(key, (V) s.readObject());
+        }
+    }
+
+    private static final class Stripe {
+        private final StampedLock lock = new StampedLock();
+        private final CompactArrayMap.ArrayHolder holder;
+
+        private Stripe(int initialCapacity) {
+            holder = new CompactArrayMap.ArrayHolder(initialCapacity);
+        }
+
+        //an optimistic read may observe a holder halfway an update, any failure is retried under the read lock
+        private int read(ToIntFunction<CompactArrayMap.ArrayHolder> reader) {
+            long stamp = lock.tryOptimisticRead();
+            if (stamp != 0) {
+                try {
+                    final int result = reader.applyAsInt(holder);
+                    if (lock.validate(stamp)) {
+                        return result;
+                    }
+                } catch (RuntimeException unused) {
+                    //inconsistent read, fall through to the read lock
+                }
+            }
+            stamp = lock.readLock();
+            try {
+                return reader.applyAsInt(holder);
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+
+        private <V> V get(int key) {
+            long stamp = lock.tryOptimisticRead();
+            if (stamp != 0) {
+                try {
+                    final V result = holder.get(key);
+                    if (lock.validate(stamp)) {
+                        return result;
+                    }
+                } catch (RuntimeException unused) {
+                    //inconsistent read, fall through to the read lock
+                }
+            }
+            stamp = lock.readLock();
+            try {
+                return holder.get(key);
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+    }
+}
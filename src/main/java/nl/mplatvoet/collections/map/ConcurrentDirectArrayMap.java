@@ -0,0 +1,225 @@
+package nl.mplatvoet.collections.map;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.AbstractMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Thread safe, directly indexed IntKeyMap. Values live in fixed size {@link AtomicReferenceArray} segments hanging
+ * off a spine that grows on demand, get, put and remove are lock free. Only installing a new segment, which happens
+ * once per {@value #SEGMENT_SIZE} keys, takes a lock.
+ * <p>
+ * Iterators and views are weakly consistent, they never throw {@link java.util.ConcurrentModificationException}.
+ * Bulk operations like {@code putAll}, {@code clear} and {@code shiftKeys} are not atomic.
+ */
+public class ConcurrentDirectArrayMap<V> extends AbstractIntKeyMap<V> implements Serializable {
+    private static final Object NULL_MARKER = new Object();
+
+    private static final int SEGMENT_BITS = 10;
+    private static final int SEGMENT_SIZE = 1 << SEGMENT_BITS;
+    private static final int SEGMENT_MASK = SEGMENT_SIZE - 1;
+
+    private transient volatile AtomicReferenceArray<AtomicReferenceArray<Object>> spine;
+    private transient AtomicInteger size;
+
+    public ConcurrentDirectArrayMap() {
+        this(SEGMENT_SIZE);
+    }
+
+    public ConcurrentDirectArrayMap(int initialCapacity) {
+        if (initialCapacity < 0) {
+            throw new IllegalArgumentException("initialCapacity must be >= 0");
+        }
+        spine = new AtomicReferenceArray<>(Math.max(1, (initialCapacity + SEGMENT_MASK) >>> SEGMENT_BITS));
+        size = new AtomicInteger();
+    }
+
+    private static Object mask(Object value) {
+        return value == null ? NULL_MARKER : value;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <V> V unmask(Object value) {
+        if (value == NULL_MARKER) {
+            return null;
+        }
+        return (V) value;
+    }
+
+    private AtomicReferenceArray<Object> segment(int key) {
+        final AtomicReferenceArray<AtomicReferenceArray<Object>> spine = this.spine;
+        final int segmentIdx = key >>> SEGMENT_BITS;
+        return segmentIdx < spine.length() ? spine.get(segmentIdx) : null;
+    }
+
+    private AtomicReferenceArray<Object> segmentForUpdate(int key) {
+        final AtomicReferenceArray<Object> segment = segment(key);
+        return segment != null ? segment : installSegment(key >>> SEGMENT_BITS);
+    }
+
+    //growing the spine and installing segments share the lock so no segment gets lost in a spine copy
+    private synchronized AtomicReferenceArray<Object> installSegment(int segmentIdx) {
+        AtomicReferenceArray<AtomicReferenceArray<Object>> spine = this.spine;
+        if (segmentIdx >= spine.length()) {
+            final int newLength = Math.max(segmentIdx + 1, spine.length() + (spine.length() >> 1));
+            final AtomicReferenceArray<AtomicReferenceArray<Object>> newSpine = new AtomicReferenceArray<>(newLength);
+            for (int i = 0; i < spine.length(); ++i) {
+                newSpine.set(i, spine.get(i));
+            }
+            this.spine = spine = newSpine;
+        }
+        AtomicReferenceArray<Object> segment = spine.get(segmentIdx);
+        if (segment == null) {
+            segment = new AtomicReferenceArray<>(SEGMENT_SIZE);
+            spine.set(segmentIdx, segment);
+        }
+        return segment;
+    }
+
+    @Override
+    public int size() {
+        return size.get();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size.get() == 0;
+    }
+
+    @Override
+    int modCount() {
+        //weakly consistent, iterators never fail
+        return 0;
+    }
+
+    @Override
+    public boolean containsKey(int key) {
+        return getMasked(key) != null;
+    }
+
+    @Override
+    public V get(int key) {
+        return unmask(getMasked(key));
+    }
+
+    private Object getMasked(int key) {
+        if (key < 0) return null;
+        final AtomicReferenceArray<Object> segment = segment(key);
+        return segment == null ? null : segment.get(key & SEGMENT_MASK);
+    }
+
+    @Override
+    public V put(int key, V value) {
+        validateLegalRange(key);
+        final Object previous = segmentForUpdate(key).getAndSet(key & SEGMENT_MASK, mask(value));
+        if (previous == null) {
+            size.incrementAndGet();
+        }
+        return unmask(previous);
+    }
+
+    @Override
+    public V remove(int key) {
+        if (key < 0) return null;
+        final AtomicReferenceArray<Object> segment = segment(key);
+        if (segment == null) return null;
+        final Object previous = segment.getAndSet(key & SEGMENT_MASK, null);
+        if (previous != null) {
+            size.decrementAndGet();
+        }
+        return unmask(previous);
+    }
+
+    @Override
+    int nextKey(int key) {
+        if (key < 0) key = 0;
+        final AtomicReferenceArray<AtomicReferenceArray<Object>> spine = this.spine;
+        for (int segmentIdx = key >>> SEGMENT_BITS; segmentIdx < spine.length(); ++segmentIdx) {
+            final AtomicReferenceArray<Object> segment = spine.get(segmentIdx);
+            if (segment == null) continue;
+            final int from = segmentIdx == key >>> SEGMENT_BITS ? key & SEGMENT_MASK : 0;
+            for (int i = from; i < SEGMENT_SIZE; ++i) {
+                if (segment.get(i) != null) {
+                    return segmentIdx << SEGMENT_BITS | i;
+                }
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    int previousKey(int key) {
+        if (key < 0) return -1;
+        final AtomicReferenceArray<AtomicReferenceArray<Object>> spine = this.spine;
+        for (int segmentIdx = Math.min(key >>> SEGMENT_BITS, spine.length() - 1); segmentIdx >= 0; --segmentIdx) {
+            final AtomicReferenceArray<Object> segment = spine.get(segmentIdx);
+            if (segment == null) continue;
+            final int from = segmentIdx == key >>> SEGMENT_BITS ? key & SEGMENT_MASK : SEGMENT_MASK;
+            for (int i = from; i >= 0; --i) {
+                if (segment.get(i) != null) {
+                    return segmentIdx << SEGMENT_BITS | i;
+                }
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public Entry<Integer, V> pollFirstEntry() {
+        //another thread may take the key first, then retry with the next one
+        for (int key = nextKey(0); key >= 0; key = nextKey(key)) {
+            final Object previous = segment(key).getAndSet(key & SEGMENT_MASK, null);
+            if (previous != null) {
+                size.decrementAndGet();
+                return new AbstractMap.SimpleImmutableEntry<>(key, unmask(previous));
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public Entry<Integer, V> pollLastEntry() {
+        for (int key = previousKey(MAX_KEY - 1); key >= 0; key = previousKey(key)) {
+            final Object previous = segment(key).getAndSet(key & SEGMENT_MASK, null);
+            if (previous != null) {
+                size.decrementAndGet();
+                return new AbstractMap.SimpleImmutableEntry<>(key, unmask(previous));
+            }
+        }
+        return null;
+    }
+
+    @Override
+    void clear(int fromKey, int toKey) {
+        for (int key = nextKey(fromKey); key >= 0 && key < toKey; key = nextAfter(key)) {
+            final AtomicReferenceArray<Object> segment = segment(key);
+            if (segment.getAndSet(key & SEGMENT_MASK, null) != null) {
+                size.decrementAndGet();
+            }
+        }
+    }
+
+    private void writeObject(java.io.ObjectOutputStream s) throws IOException {
+        s.defaultWriteObject();
+        for (int key = nextKey(0); key >= 0; key = nextAfter(key)) {
+            final Object value = getMasked(key);
+            if (value != null) {
+                s.writeInt(key);
+                s.writeObject(unmask(value));
+            }
+        }
+        s.writeInt(-1);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void readObject(java.io.ObjectInputStream s) throws IOException, ClassNotFoundException {
+        s.defaultReadObject();
+        spine = new AtomicReferenceArray<>(1);
+        size = new AtomicInteger();
+        for (int key = s.readInt(); key >= 0; key = s.readInt()) {
+            put(key, (V) s.readObject());
+        }
+    }
+}
@@ -0,0 +1,327 @@
+package nl.mplatvoet.collections.map;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.AbstractMap;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Consumer;
+
+/**
+ * Thread safe IntKeyMap for read mostly sharing. Readers go through a volatile reference to an immutable sorted
+ * snapshot without any locking, every write copies the snapshot and publishes the copy.
+ * <p>
+ * {@link #snapshot()} hands out the current snapshot as an immutable IntKeyMap in O(1). Use
+ * {@link #mutate(Consumer)} to publish a batch of writes at once instead of copying once per write.
+ * Iterators and views of this map are weakly consistent, they never throw
+ * {@link java.util.ConcurrentModificationException}.
+ */
+public class CopyOnWriteArrayMap<V> extends AbstractIntKeyMap<V> implements Serializable {
+    private transient volatile Snapshot<V> snapshot = Snapshot.empty();
+
+    /**
+     * @return an immutable view of the current content, unaffected by later writes
+     */
+    public IntKeyMap<V> snapshot() {
+        return snapshot;
+    }
+
+    /**
+     * Applies all writes done by {@code mutator} to a private copy and publishes the result as a single snapshot.
+     * Readers never observe the intermediate states. When the mutator throws nothing is published.
+     * The mutator must write to the map it is handed, writes to this map from within the mutator are lost.
+     */
+    public synchronized void mutate(Consumer<? super IntKeyMap<V>> mutator) {
+        final Snapshot<V> current = snapshot;
+        @SuppressWarnings("unchecked")
+        final CompactArrayMap<V> staging = CompactArrayMap.ofSorted(current.keys, (V[]) current.values);
+        mutator.accept(staging);
+
+        final int[] keys = new int[staging.size()];
+        final Object[] values = new Object[keys.length];
+        final IntKeyCursor<V> cursor = staging.cursor();
+        for (int i = 0; cursor.advance(); ++i) {
+            keys[i] = cursor.key();
+            values[i] = cursor.value();
+        }
+        snapshot = new Snapshot<>(keys, values);
+    }
+
+    @Override
+    public int size() {
+        return snapshot.size();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return snapshot.isEmpty();
+    }
+
+    @Override
+    int modCount() {
+        //weakly consistent, iterators never fail
+        return 0;
+    }
+
+    @Override
+    int nextKey(int key) {
+        return snapshot.nextKey(key);
+    }
+
+    @Override
+    int previousKey(int key) {
+        return snapshot.previousKey(key);
+    }
+
+    @Override
+    int countKeys(int fromKey, int toKey) {
+        return snapshot.countKeys(fromKey, toKey);
+    }
+
+    @Override
+    public boolean containsKey(int key) {
+        return snapshot.containsKey(key);
+    }
+
+    @Override
+    public void forEachEntry(IntObjConsumer<? super V> action) {
+        snapshot.forEachEntry(action);
+    }
+
+    @Override
+    public V get(int key) {
+        return snapshot.get(key);
+    }
+
+    @Override
+    public synchronized V put(int key, V value) {
+        validateLegalRange(key);
+        final Snapshot<V> current = snapshot;
+        final int[] keys = current.keys;
+        final int keyIdx = Arrays.binarySearch(keys, key);
+        if (keyIdx >= 0) {
+            //the keys don't change, the new snapshot can share them
+            final Object[] values = current.values.clone();
+            values[keyIdx] = value;
+            snapshot = new Snapshot<>(keys, values);
+            return current.valueAt(keyIdx);
+        }
+
+        final int insertIdx = -(keyIdx + 1);
+        final int[] newKeys = new int[keys.length + 1];
+        final Object[] newValues = new Object[keys.length + 1];
+        System.arraycopy(keys, 0, newKeys, 0, insertIdx);
+        System.arraycopy(current.values, 0, newValues, 0, insertIdx);
+        System.arraycopy(keys, insertIdx, newKeys, insertIdx + 1, keys.length - insertIdx);
+        System.arraycopy(current.values, insertIdx, newValues, insertIdx + 1, keys.length - insertIdx);
+        newKeys[insertIdx] = key;
+        newValues[insertIdx] = value;
+        snapshot = new Snapshot<>(newKeys, newValues);
+        return null;
+    }
+
+    @Override
+    public synchronized V remove(int key) {
+        final Snapshot<V> current = snapshot;
+        final int keyIdx = Arrays.binarySearch(current.keys, key);
+        if (keyIdx < 0) return null;
+        snapshot = current.without(keyIdx, keyIdx + 1);
+        return current.valueAt(keyIdx);
+    }
+
+    @Override
+    synchronized void clear(int fromKey, int toKey) {
+        final Snapshot<V> current = snapshot;
+        final int fromIdx = current.offset(fromKey);
+        final int toIdx = current.offset(toKey);
+        if (fromIdx < toIdx) {
+            snapshot = current.without(fromIdx, toIdx);
+        }
+    }
+
+    /**
+     * Filters the current snapshot into a single copy and publishes it once, readers never observe a partially
+     * filtered map. When the filter throws nothing is published.
+     */
+    @Override
+    public synchronized boolean removeIf(IntObjPredicate<? super V> filter) {
+        Objects.requireNonNull(filter);
+        final Snapshot<V> current = snapshot;
+        final int[] keys = current.keys;
+        final int[] newKeys = new int[keys.length];
+        final Object[] newValues = new Object[keys.length];
+        int size = 0;
+        for (int i = 0; i < keys.length; ++i) {
+            if (!filter.test(keys[i], current.valueAt(i))) {
+                newKeys[size] = keys[i];
+                newValues[size++] = current.values[i];
+            }
+        }
+        if (snapshot != current) {
+            //the filter wrote to this map, those writes would be lost
+            throw new ConcurrentModificationException();
+        }
+        if (size == keys.length) return false;
+        snapshot = new Snapshot<>(Arrays.copyOf(newKeys, size), Arrays.copyOf(newValues, size));
+        return true;
+    }
+
+    @Override
+    public synchronized void removeRange(int fromKey, int toKey) {
+        if (fromKey > toKey) {
+            throw new IllegalArgumentException(String.format("fromKey(%s) not smaller than toKey(%s)", fromKey, toKey));
+        }
+        clear(fromKey, toKey);
+    }
+
+    @Override
+    public synchronized Entry<Integer, V> pollFirstEntry() {
+        final Snapshot<V> current = snapshot;
+        if (current.keys.length == 0) return null;
+        snapshot = current.without(0, 1);
+        return new AbstractMap.SimpleImmutableEntry<>(current.keys[0], current.valueAt(0));
+    }
+
+    @Override
+    public synchronized Entry<Integer, V> pollLastEntry() {
+        final Snapshot<V> current = snapshot;
+        final int lastIdx = current.keys.length - 1;
+        if (lastIdx < 0) return null;
+        snapshot = current.without(lastIdx, lastIdx + 1);
+        return new AbstractMap.SimpleImmutableEntry<>(current.keys[lastIdx], current.valueAt(lastIdx));
+    }
+
+    @Override
+    public void putAll(Map<? extends Integer, ? extends V> m) {
+        mutate(map -> map.putAll(m));
+    }
+
+    @Override
+    public void shiftKeys(int fromKey, int delta) {
+        mutate(map -> map.shiftKeys(fromKey, delta));
+    }
+
+    private void writeObject(java.io.ObjectOutputStream s) throws IOException {
+        s.defaultWriteObject();
+        s.writeObject(snapshot);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void readObject(java.io.ObjectInputStream s) throws IOException, ClassNotFoundException {
+        s.defaultReadObject();
+        snapshot = (Snapshot<V>) s.readObject();
+    }
+
+    private static final class Snapshot<V> extends AbstractIntKeyMap<V> implements Serializable {
+        private static final Snapshot<?> EMPTY = new Snapshot<>(new int[0], new Object[0]);
+
+        private final int[] keys;
+        private final Object[] values;
+
+        private Snapshot(int[] keys, Object[] values) {
+            this.keys = keys;
+            this.values = values;
+        }
+
+        @SuppressWarnings("unchecked")
+        private static <V> Snapshot<V> empty() {
+            return (Snapshot<V>) EMPTY;
+        }
+
+        @SuppressWarnings("unchecked")
+        private <T> T valueAt(int idx) {
+            return (T) values[idx];
+        }
+
+        private int offset(int key) {
+            final int keyIdx = Arrays.binarySearch(keys, key);
+            return keyIdx < 0 ? -(keyIdx + 1) : keyIdx;
+        }
+
+        private Snapshot<V> without(int fromIdx, int toIdx) {
+            final int removed = toIdx - fromIdx;
+            final int[] newKeys = new int[keys.length - removed];
+            final Object[] newValues = new Object[keys.length - removed];
+            System.arraycopy(keys, 0, newKeys, 0, fromIdx);
+            System.arraycopy(values, 0, newValues, 0, fromIdx);
+            System.arraycopy(keys, toIdx, newKeys, fromIdx, keys.length - toIdx);
+            System.arraycopy(values, toIdx, newValues, fromIdx, keys.length - toIdx);
+            return new Snapshot<>(newKeys, newValues);
+        }
+
+        @Override
+        public int size() {
+            return keys.length;
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return keys.length == 0;
+        }
+
+        @Override
+        int modCount() {
+            return 0;
+        }
+
+        @Override
+        int nextKey(int key) {
+            final int offset = offset(key);
+            return offset < keys.length ? keys[offset] : -1;
+        }
+
+        @Override
+        int previousKey(int key) {
+            final int keyIdx = Arrays.binarySearch(keys, key);
+            if (keyIdx >= 0) return key;
+            final int previous = -(keyIdx + 1) - 1;
+            return previous >= 0 ? keys[previous] : -1;
+        }
+
+        @Override
+        int countKeys(int fromKey, int toKey) {
+            return fromKey < toKey ? offset(toKey) - offset(fromKey) : 0;
+        }
+
+        @Override
+        public boolean containsKey(int key) {
+            return Arrays.binarySearch(keys, key) >= 0;
+        }
+
+        @Override
+        public void forEachEntry(IntObjConsumer<? super V> action) {
+            Objects.requireNonNull(action);
+            for (int i = 0; i < keys.length; ++i) {
+                action.accept(keys[i], valueAt(i));
+            }
+        }
+
+        @Override
+        public V get(int key) {
+            final int keyIdx = Arrays.binarySearch(keys, key);
+            return keyIdx >= 0 ? valueAt(keyIdx) : null;
+        }
+
+        @Override
+        public V put(int key, V value) {
+            throw new UnsupportedOperationException("snapshots are immutable");
+        }
+
+        @Override
+        public V remove(int key) {
+            throw new UnsupportedOperationException("snapshots are immutable");
+        }
+
+        @Override
+        void clear(int fromKey, int toKey) {
+            throw new UnsupportedOperationException("snapshots are immutable");
+        }
+
+        @Override
+        public void shiftKeys(int fromKey, int delta) {
+            throw new UnsupportedOperationException("snapshots are immutable");
+        }
+    }
+}
@@ -3,12 +3,15 @@ package nl.mplatvoet.collections.map;
 import java.io.IOException;
 import java.io.Serializable;
 import java.util.*;
+import java.util.function.Consumer;
 
 public class DirectArrayMap<V> implements IntKeyMap<V>, Serializable, Cloneable {
     private static final int DEFAULT_CAPACITY = 10;
     private static final Object NULL_MARKER = new Object();
     private final int startIndex;
     private final int endIndex;
+    private final boolean shrinkWhenSparse;
+    private final ValueCodec<? super V> valueCodec;
 
     private transient ArrayHolder holder;
 
@@ -21,13 +24,32 @@ public class DirectArrayMap<V> implements IntKeyMap<V>, Serializable, Cloneable
     }
 
     public DirectArrayMap(int initialCapacity) {
-        this(new ArrayHolder(Math.max(initialCapacity, DEFAULT_CAPACITY)), 0, ArrayHolder.MAX_ARRAY_SIZE);
+        this(initialCapacity, false);
     }
 
-    private DirectArrayMap(ArrayHolder holder, int startIndex, int endIndex) {
+    /**
+     * @param shrinkWhenSparse when true the storage halves whenever removals leave less than a quarter of it in use
+     *                         and the remaining keys fit, instead of only ever growing
+     */
+    public DirectArrayMap(int initialCapacity, boolean shrinkWhenSparse) {
+        this(initialCapacity, shrinkWhenSparse, ValueCodec.standard());
+    }
+
+    /**
+     * @param valueCodec writes the values when this map is serialized
+     * @see #DirectArrayMap(int, boolean)
+     */
+    public DirectArrayMap(int initialCapacity, boolean shrinkWhenSparse, ValueCodec<? super V> valueCodec) {
+        this(new ArrayHolder(Math.max(initialCapacity, DEFAULT_CAPACITY), shrinkWhenSparse),
+                0, DirectKeyHolder.MAX_ARRAY_SIZE, Objects.requireNonNull(valueCodec));
+    }
+
+    private DirectArrayMap(ArrayHolder holder, int startIndex, int endIndex, ValueCodec<? super V> valueCodec) {
         this.holder = holder;
         this.startIndex = startIndex;
         this.endIndex = endIndex;
+        this.shrinkWhenSparse = holder.shrinkWhenSparse;
+        this.valueCodec = valueCodec;
     }
 
     private static Object mask(Object value) {
@@ -60,20 +82,7 @@ public class DirectArrayMap<V> implements IntKeyMap<V>, Serializable, Cloneable
         if (isBaseMap()) {
             return holder.size;
         }
-        if (startIndex == endIndex - 1) {
-            return 0;
-        }
-
-        final Object[] entries = holder.entries;
-        int subtract = 0;
-        for (int i = 0; i < startIndex; ++i) {
-            if (entries[i] != null) ++subtract;
-        }
-        for (int i = endIndex; i < entries.length; ++i) {
-            if (entries[i] != null) ++subtract;
-        }
-
-        return holder.size - subtract;
+        return holder.countOccupied(startIndex, Math.min(holder.limit(), endIndex));
     }
 
     @Override
@@ -82,12 +91,7 @@ public class DirectArrayMap<V> implements IntKeyMap<V>, Serializable, Cloneable
             return holder.size == 0;
         }
 
-        final Object[] entries = holder.entries;
-        int maxLength = Math.min(entries.length, endIndex);
-        for (int i = startIndex; i < maxLength; ++i) {
-            if (entries[i] != null) return false;
-        }
-        return true;
+        return holder.nextOccupied(startIndex, Math.min(holder.limit(), endIndex)) < 0;
     }
 
     @Override
@@ -101,8 +105,7 @@ public class DirectArrayMap<V> implements IntKeyMap<V>, Serializable, Cloneable
 
     @Override
     public boolean containsKey(int idx) {
-        final Object[] entries = holder.entries;
-        return isLegalRange(idx) && idx < entries.length && entries[idx] != null;
+        return isLegalRange(idx) && holder.covers(idx) && holder.entry(idx) != null;
     }
 
     @Override
@@ -111,13 +114,9 @@ public class DirectArrayMap<V> implements IntKeyMap<V>, Serializable, Cloneable
     }
 
     private int containValueIdx(Object value) {
-        Object[] entries = holder.entries;
-        int maxLength = Math.min(entries.length, endIndex);
-        for (int i = startIndex; i < maxLength; i++) {
-            Object entry = entries[i];
-            if (entry == null) continue;
-
-            V entryValue = unmask(entry);
+        int maxLength = Math.min(holder.limit(), endIndex);
+        for (int i = holder.nextOccupied(startIndex, maxLength); i >= 0; i = holder.nextOccupied(i + 1, maxLength)) {
+            V entryValue = unmask(holder.entry(i));
 
             if (Objects.equals(entryValue, value)) {
                 return i;
@@ -137,10 +136,9 @@ public class DirectArrayMap<V> implements IntKeyMap<V>, Serializable, Cloneable
 
     @Override
     public V get(int idx) {
-        final Object[] entries = holder.entries;
-        if (isLegalRange(idx) && idx < entries.length) {
-            Object entry = entries[idx];
-            return unmask(entry);
+        final ArrayHolder holder = this.holder;
+        if (isLegalRange(idx) && holder.covers(idx)) {
+            return unmask(holder.entries[idx - holder.base]);
         }
         return null;
     }
@@ -157,13 +155,15 @@ public class DirectArrayMap<V> implements IntKeyMap<V>, Serializable, Cloneable
     @Override
     public V put(int idx, V value) {
         validateLegalRange(idx);
-        holder.ensureCapacity(idx + 1);
+        holder.ensureKey(idx);
 
         final Object[] entries = holder.entries;
-        Object previous = entries[idx];
-        entries[idx] = mask(value);
+        final int slot = idx - holder.base;
+        Object previous = entries[slot];
+        entries[slot] = mask(value);
         ++holder.modCount;
         if (previous == null) {
+            holder.markOccupied(idx);
             ++holder.size;
             return null;
         }
@@ -187,13 +187,14 @@ public class DirectArrayMap<V> implements IntKeyMap<V>, Serializable, Cloneable
     }
 
     private Object removeRaw(int idx) {
-        final Object[] entries = holder.entries;
-        if (isLegalRange(idx) && idx < entries.length) {
-            Object entry = entries[idx];
-            entries[idx] = null;
+        if (isLegalRange(idx) && holder.covers(idx)) {
+            Object entry = holder.entry(idx);
+            holder.setEntry(idx, null);
             if (entry != null) {
+                holder.markFree(idx);
                 --holder.size;
                 ++holder.modCount;
+                holder.shrinkIfSparse(idx);
             }
             return unmask(entry);
         }
@@ -201,6 +202,215 @@ public class DirectArrayMap<V> implements IntKeyMap<V>, Serializable, Cloneable
     }
 
 
+    @Override
+    public void shiftKeys(int fromKey, int delta) {
+        if (fromKey < startIndex || fromKey > endIndex) {
+            throw new IllegalArgumentException("fromKey must be " + startIndex + " >= fromKey <= " + endIndex);
+        }
+        if ((long) fromKey + delta < startIndex) {
+            throw new IllegalArgumentException(
+                    String.format("fromKey(%s) + delta(%s) must be >= startIndex(%s)", fromKey, delta, startIndex));
+        }
+        if (delta == 0) return;
+
+        final int lastIdx = holder.previousOccupied(fromKey, Math.min(holder.limit(), endIndex));
+        if (lastIdx >= 0 && (long) lastIdx + delta >= endIndex) {
+            throw new IllegalArgumentException(
+                    String.format("key(%s) + delta(%s) must be < endIndex(%s)", lastIdx, delta, endIndex));
+        }
+
+        final int overwritten = Math.max(fromKey + delta, holder.base);
+        final int overwrittenEnd = Math.min(fromKey, holder.limit());
+        if (overwritten < overwrittenEnd) {
+            holder.size -= holder.countOccupied(overwritten, overwrittenEnd);
+            Arrays.fill(holder.entries, overwritten - holder.base, overwrittenEnd - holder.base, null);
+            holder.markFree(overwritten, overwrittenEnd);
+        }
+
+        final int firstIdx = holder.nextOccupied(fromKey, lastIdx + 1);
+        if (firstIdx >= 0) {
+            //the window may have to grow on either side
+            holder.ensureKey(firstIdx + delta);
+            holder.ensureKey(lastIdx + delta);
+            final Object[] entries = holder.entries;
+            final int base = holder.base;
+
+            final int length = lastIdx + 1 - firstIdx;
+            final int destination = firstIdx + delta;
+            System.arraycopy(entries, firstIdx - base, entries, destination - base, length);
+            if (delta > 0) {
+                Arrays.fill(entries, firstIdx - base, Math.min(destination, lastIdx + 1) - base, null);
+            } else {
+                Arrays.fill(entries, Math.max(lastIdx + 1 + delta, firstIdx) - base, lastIdx + 1 - base, null);
+            }
+
+            //materialized entries carry their key, unwrap them so they can't report a stale key
+            final int from = Math.min(firstIdx, destination);
+            final int to = Math.max(lastIdx + 1, destination + length);
+            holder.markFree(from, to);
+            for (int i = from; i < to; ++i) {
+                final Object entry = entries[i - base];
+                if (entry != null) {
+                    holder.markOccupied(i);
+                    if (entry instanceof DirectArrayMap.KeyEntry) {
+                        entries[i - base] = mask(unmask(entry));
+                    }
+                }
+            }
+        }
+        ++holder.modCount;
+    }
+
+    //smallest key >= key within this view or -1
+    int nextKey(int key) {
+        return holder.nextOccupied(Math.max(key, startIndex), Math.min(holder.limit(), endIndex));
+    }
+
+    //largest key <= key within this view or -1
+    int previousKey(int key) {
+        if (key < startIndex) return -1;
+        final int to = (int) Math.min((long) key + 1, Math.min(holder.limit(), endIndex));
+        return holder.previousOccupied(startIndex, to);
+    }
+
+    int countKeys(int fromKey, int toKey) {
+        final int to = Math.min(toKey, Math.min(holder.limit(), endIndex));
+        return holder.countOccupied(Math.max(fromKey, startIndex), to);
+    }
+
+    int modCount() {
+        return holder.modCount;
+    }
+
+    @Override
+    public int floorKey(int key) {
+        return previousKey(key);
+    }
+
+    @Override
+    public int ceilingKey(int key) {
+        return nextKey(key);
+    }
+
+    @Override
+    public int higherKey(int key) {
+        return key >= endIndex - 1 ? -1 : nextKey(key + 1);
+    }
+
+    @Override
+    public int lowerKey(int key) {
+        return key <= startIndex ? -1 : previousKey(key - 1);
+    }
+
+    @Override
+    public Entry<Integer, V> pollFirstEntry() {
+        return pollKey(nextKey(startIndex));
+    }
+
+    @Override
+    public Entry<Integer, V> pollLastEntry() {
+        return pollKey(previousKey(endIndex - 1));
+    }
+
+    private Entry<Integer, V> pollKey(int key) {
+        return key < 0 ? null : new AbstractMap.SimpleImmutableEntry<>(key, remove(key));
+    }
+
+    @Override
+    public void forEachEntry(IntObjConsumer<? super V> action) {
+        Objects.requireNonNull(action);
+        final ArrayHolder holder = this.holder;
+        final int expectedModCount = holder.modCount;
+        final int maxLength = Math.min(holder.limit(), endIndex);
+        for (int key = holder.nextOccupied(startIndex, maxLength); key >= 0;
+             key = holder.nextOccupied(key + 1, maxLength)) {
+            action.accept(key, unmask(holder.entry(key)));
+            if (holder.modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+        }
+    }
+
+    @Override
+    public boolean removeIf(IntObjPredicate<? super V> filter) {
+        Objects.requireNonNull(filter);
+        final ArrayHolder holder = this.holder;
+        final int expectedModCount = holder.modCount;
+        final int from = Math.max(startIndex, holder.base);
+        final int maxLength = Math.min(holder.limit(), endIndex);
+        //matches are only marked while the filter runs, a throwing filter leaves the map untouched
+        long[] matched = null;
+        int removed = 0;
+        for (int key = holder.nextOccupied(from, maxLength); key >= 0; key = holder.nextOccupied(key + 1, maxLength)) {
+            final boolean matches = filter.test(key, unmask(holder.entry(key)));
+            if (holder.modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            if (matches) {
+                if (matched == null) {
+                    matched = new long[((maxLength - from - 1) >>> 6) + 1];
+                }
+                matched[(key - from) >>> 6] |= 1L << (key - from);
+                ++removed;
+            }
+        }
+        if (removed == 0) return false;
+
+        for (int word = 0; word < matched.length; ++word) {
+            for (long bits = matched[word]; bits != 0; bits &= bits - 1) {
+                final int key = from + (word << 6) + Long.numberOfTrailingZeros(bits);
+                holder.setEntry(key, null);
+                holder.markFree(key);
+            }
+        }
+        holder.size -= removed;
+        ++holder.modCount;
+        holder.shrinkIfSparse(holder.limit() - 1);
+        return true;
+    }
+
+    @Override
+    public void removeRange(int fromKey, int toKey) {
+        if (fromKey > toKey) {
+            throw new IllegalArgumentException(String.format("fromKey(%s) not smaller than toKey(%s)", fromKey, toKey));
+        }
+        final int from = Math.max(fromKey, startIndex);
+        final int to = Math.min(toKey, endIndex);
+        if (from < to) {
+            clearRange(from, to);
+        }
+    }
+
+    @Override
+    public IntKeyCursor<V> cursor() {
+        return new ArrayCursor();
+    }
+
+    @Override
+    public PrimitiveIterator.OfInt keyIterator() {
+        return new KeyIterator();
+    }
+
+    //keys from the current base up to this limit fit without growing
+    int capacity() {
+        return holder.limit();
+    }
+
+    boolean covers(int key) {
+        return holder.covers(key);
+    }
+
+    //first key of the storage window
+    int base() {
+        return holder.base;
+    }
+
+    //shrinks the storage to just fit the smallest and largest key
+    @Override
+    public void trimToSize() {
+        holder.trimToSize();
+    }
+
     @Override
     public void putAll(Map<? extends Integer, ? extends V> m) {
         for (Entry<? extends Integer, ? extends V> entry : m.entrySet()) {
@@ -212,26 +422,32 @@ public class DirectArrayMap<V> implements IntKeyMap<V>, Serializable, Cloneable
     public void clear() {
         if (holder.size == 0 || isEmpty()) return;
 
-        final Object[] entries = holder.entries;
         if (isBaseMap()) {
-            Arrays.fill(entries, null);
+            Arrays.fill(holder.entries, null);
+            Arrays.fill(holder.occupied, 0L);
             holder.size = 0;
+            ++holder.modCount;
+            holder.shrinkIfSparse(holder.limit() - 1);
         } else {
-            int deleted = 0;
-            int maxLength = Math.min(endIndex, entries.length);
-            for (int i = startIndex; i < maxLength; ++i) {
-                if (entries[i] != null) {
-                    entries[i] = null;
-                    ++deleted;
-                }
-            }
-            holder.size -= deleted;
+            clearRange(startIndex, endIndex);
+        }
+    }
+
+    private void clearRange(int fromIdx, int toIdx) {
+        final int from = Math.max(fromIdx, holder.base);
+        final int to = Math.min(toIdx, holder.limit());
+        final int removed = holder.countOccupied(from, to);
+        if (removed > 0) {
+            holder.size -= removed;
+            Arrays.fill(holder.entries, from - holder.base, to - holder.base, null);
+            holder.markFree(from, to);
+            ++holder.modCount;
+            holder.shrinkIfSparse(holder.limit() - 1);
         }
-        ++holder.modCount;
     }
 
     private boolean isBaseMap() {
-        return startIndex == 0 && endIndex == ArrayHolder.MAX_ARRAY_SIZE;
+        return startIndex == 0 && endIndex == DirectKeyHolder.MAX_ARRAY_SIZE;
     }
 
     @Override
@@ -258,20 +474,12 @@ public class DirectArrayMap<V> implements IntKeyMap<V>, Serializable, Cloneable
         return entrySet;
     }
 
-    private int maxSetIndex(Object[] entries) {
-        int maxLength = Math.min(entries.length, endIndex);
-        for (int i = maxLength - 1; i >= startIndex; --i) {
-            if (entries[i] != null) return i;
-        }
-        return -1;
+    private int maxSetIndex() {
+        return holder.previousOccupied(startIndex, Math.min(holder.limit(), endIndex));
     }
 
-    private int minSetIndex(Object[] entries) {
-        int maxLength = Math.min(entries.length, endIndex);
-        for (int i = startIndex; i < maxLength; ++i) {
-            if (entries[i] != null) return i;
-        }
-        return -1;
+    private int minSetIndex() {
+        return holder.nextOccupied(startIndex, Math.min(holder.limit(), endIndex));
     }
 
     @Override
@@ -295,7 +503,7 @@ public class DirectArrayMap<V> implements IntKeyMap<V>, Serializable, Cloneable
         if (fromKey > toKey) {
             throw new IllegalArgumentException(String.format("fromKey(%s) not smaller than toKey(%s)", fromKey, toKey));
         }
-        return new DirectArrayMap<>(holder, fromKey, toKey);
+        return new DirectArrayMap<>(holder, fromKey, toKey, valueCodec);
     }
 
 
@@ -324,7 +532,7 @@ public class DirectArrayMap<V> implements IntKeyMap<V>, Serializable, Cloneable
         if (isEmpty()) {
             throw new NoSuchElementException();
         }
-        return minSetIndex(holder.entries);
+        return minSetIndex();
     }
 
     @Override
@@ -332,34 +540,23 @@ public class DirectArrayMap<V> implements IntKeyMap<V>, Serializable, Cloneable
         if (isEmpty()) {
             throw new NoSuchElementException();
         }
-        return maxSetIndex(holder.entries);
+        return maxSetIndex();
     }
 
+    //the keys go first as a block of varint deltas, then the values through the codec
     private void writeObject(java.io.ObjectOutputStream s) throws IOException {
         final int size = size();
         s.defaultWriteObject();
-        s.writeInt(size());
+        s.writeInt(size);
 
-        if (size > 0) {
-            final Object[] entries = holder.entries;
-            final int requiredCapacity = maxSetIndex(entries) + 1;
-
-            s.writeInt(requiredCapacity);
-
-            int written = 0;
-            int maxLength = Math.min(entries.length, endIndex);
-            for (int i = startIndex; i < maxLength && written < size; ++i) {
-                final Object entry = entries[i];
-                if (entry == null) continue;
-                final V unmasked = unmask(entry);
-                if (unmasked == null) {
-                    s.writeInt(i == 0 ? Integer.MIN_VALUE : -i);
-                } else {
-                    s.writeInt(i);
-                    s.writeObject(unmasked);
-                }
-                ++written;
-            }
+        final int maxLength = Math.min(holder.limit(), endIndex);
+        int previous = 0;
+        for (int i = holder.nextOccupied(startIndex, maxLength); i >= 0; i = holder.nextOccupied(i + 1, maxLength)) {
+            VarInts.write(s, i - previous);
+            previous = i;
+        }
+        for (int i = holder.nextOccupied(startIndex, maxLength); i >= 0; i = holder.nextOccupied(i + 1, maxLength)) {
+            valueCodec.write(s, unmask(holder.entry(i)));
         }
     }
 
@@ -369,21 +566,22 @@ public class DirectArrayMap<V> implements IntKeyMap<V>, Serializable, Cloneable
         s.defaultReadObject();
         final int size = s.readInt();
         if (size == 0) {
-            holder = new ArrayHolder(DEFAULT_CAPACITY);
-        } else {
-            final int requiredCapacity = s.readInt();
-            holder = new ArrayHolder(requiredCapacity);
-            holder.size = size;
-
-            final Object[] entries = holder.entries;
-            for (int i = 0; i < size; i++) {
-                final int idx = s.readInt();
-                if (idx < 0) {
-                    entries[idx == Integer.MIN_VALUE ? 0 : -idx] = NULL_MARKER;
-                } else {
-                    entries[idx] = s.readObject();
-                }
-            }
+            holder = new ArrayHolder(DEFAULT_CAPACITY, shrinkWhenSparse);
+            return;
+        }
+        final int[] keys = new int[size];
+        int previous = 0;
+        for (int i = 0; i < size; i++) {
+            previous += VarInts.read(s);
+            keys[i] = previous;
+        }
+        //the keys arrive in ascending order, size the window to the first and the last key
+        holder = new ArrayHolder(0, shrinkWhenSparse);
+        holder.resetWindow(keys[0], keys[size - 1]);
+        holder.size = size;
+        for (int key : keys) {
+            holder.setEntry(key, mask(valueCodec.read(s)));
+            holder.markOccupied(key);
         }
     }
 
@@ -401,19 +599,23 @@ public class DirectArrayMap<V> implements IntKeyMap<V>, Serializable, Cloneable
 
         final int newSize = size();
 
-        Object[] src = holder.entries;
-        result.holder = new ArrayHolder(maxSetIndex(src) + 1);
+        //the cached views belong to this map
+        result.entrySet = null;
+        result.keySet = null;
+        result.valuesCollection = null;
+        result.holder = new ArrayHolder(0, shrinkWhenSparse);
+        if (newSize > 0) {
+            result.holder.resetWindow(minSetIndex(), maxSetIndex());
+        }
         result.holder.size = newSize;
 
-        final Object[] dest = result.holder.entries;
         int cloned = 0;
-        int maxLength = Math.min(src.length, endIndex);
-        for (int i = startIndex; i < maxLength && cloned < newSize; ++i) {
-            final Object entry = src[i];
-            if (entry == null) continue;
-
+        int maxLength = Math.min(holder.limit(), endIndex);
+        for (int i = holder.nextOccupied(startIndex, maxLength); i >= 0 && cloned < newSize;
+             i = holder.nextOccupied(i + 1, maxLength)) {
             //mask(unmask(entry)) will unwrap any Entry instance
-            dest[i] = mask(unmask(entry));
+            result.holder.setEntry(i, mask(unmask(holder.entry(i))));
+            result.holder.markOccupied(i);
 
             ++cloned;
         }
@@ -430,13 +632,10 @@ public class DirectArrayMap<V> implements IntKeyMap<V>, Serializable, Cloneable
         if (other.size() != size()) return false;
 
         try {
-            Object[] entries = DirectArrayMap.this.holder.entries;
-            int maxLength = Math.min(entries.length, endIndex);
-            for (int key = startIndex; key < maxLength; ++key) {
-                final Object entry = entries[key];
-                if (entry == null) continue;
-
-                V value = unmask(entry);
+            int maxLength = Math.min(holder.limit(), endIndex);
+            for (int key = holder.nextOccupied(startIndex, maxLength); key >= 0;
+                 key = holder.nextOccupied(key + 1, maxLength)) {
+                V value = unmask(holder.entry(key));
                 final Object otherValue = other.get(key);
                 if (value == null) {
                     if (!(otherValue == null && other.containsKey(key)))
@@ -479,39 +678,29 @@ public class DirectArrayMap<V> implements IntKeyMap<V>, Serializable, Cloneable
         }
     }
 
-    private static class ArrayHolder {
-        /**
-         * Some VMs reserve some header words in an array.
-         * Attempts to allocate larger arrays may result in
-         * OutOfMemoryError: Requested array size exceeds VM limit
-         */
-        private static final int MAX_ARRAY_SIZE = Integer.MAX_VALUE - 8;
-
+    private static class ArrayHolder extends DirectKeyHolder {
         Object[] entries;
-        int size = 0;
-        int modCount = 0;
 
-        ArrayHolder(int initialCapacity) {
-            if (initialCapacity < 0) {
-                throw new IllegalArgumentException("initialCapacity must be >= 0");
-            }
-            if (initialCapacity > MAX_ARRAY_SIZE) {
-                throw new IllegalArgumentException("initialCapacity exceeds maximum capacity: " + MAX_ARRAY_SIZE);
-            }
+        ArrayHolder(int initialCapacity, boolean shrinkWhenSparse) {
+            super(initialCapacity);
             entries = new Object[initialCapacity];
+            this.shrinkWhenSparse = shrinkWhenSparse;
         }
 
-        private void ensureCapacity(int minCapacity) {
-            if (minCapacity - entries.length > 0) {
-                int oldCapacity = entries.length;
-                int newCapacity = oldCapacity + (oldCapacity >> 1);
-                if (newCapacity - minCapacity < 0)
-                    newCapacity = minCapacity;
-                if (newCapacity - MAX_ARRAY_SIZE > 0)
-                    throw new OutOfMemoryError();
+        @Override
+        void resizeValues(int newCapacity, int shift) {
+            final Object[] newEntries = new Object[newCapacity];
+            copyShifted(entries, entries.length, newEntries, newCapacity, shift);
+            entries = newEntries;
+        }
 
-                entries = Arrays.copyOf(entries, newCapacity);
-            }
+        //the value slot of key, key must lie within the window
+        Object entry(int key) {
+            return entries[key - base];
+        }
+
+        void setEntry(int key, Object entry) {
+            entries[key - base] = entry;
         }
     }
 
@@ -565,6 +754,30 @@ public class DirectArrayMap<V> implements IntKeyMap<V>, Serializable, Cloneable
         }
     }
 
+    //detached from the holder, only setValue writes to the map
+    private class WriteThroughEntry extends AbstractMap.SimpleEntry<Integer, V> {
+        private WriteThroughEntry(int key, V value) {
+            super(key, value);
+        }
+
+        @Override
+        public V setValue(V value) {
+            final int key = getKey();
+            if (holder.covers(key)) {
+                final Object current = holder.entry(key);
+                if (current instanceof DirectArrayMap.KeyEntry) {
+                    //keep entries handed out by the iterator in sync
+                    @SuppressWarnings("unchecked")
+                    final KeyEntry keyEntry = (KeyEntry) current;
+                    keyEntry.setValue(value);
+                } else if (current != null) {
+                    holder.setEntry(key, mask(value));
+                }
+            }
+            return super.setValue(value);
+        }
+    }
+
     private class ValuesCollection extends AbstractCollection<V> {
         @Override
         public boolean contains(Object o) {
@@ -595,20 +808,13 @@ public class DirectArrayMap<V> implements IntKeyMap<V>, Serializable, Cloneable
         public boolean retainAll(Collection<?> c) {
             if (c == null) throw new NullPointerException();
             if (c == this) return false;
+            return DirectArrayMap.this.removeIf((key, value) -> !c.contains(value));
+        }
 
-            boolean altered = false;
-            Object[] entries = DirectArrayMap.this.holder.entries;
-            int maxLength = Math.min(entries.length, endIndex);
-            for (int i = startIndex; i < maxLength; ++i) {
-                Object entry = entries[i];
-                if (entry == null) continue;
-                Object unmasked = unmask(entry);
-                if (!c.contains(unmasked)) {
-                    DirectArrayMap.this.remove(i);
-                    altered = true;
-                }
-            }
-            return altered;
+        @Override
+        public boolean removeAll(Collection<?> c) {
+            if (c == null) throw new NullPointerException();
+            return DirectArrayMap.this.removeIf((key, value) -> c.contains(value));
         }
 
 
@@ -666,6 +872,20 @@ public class DirectArrayMap<V> implements IntKeyMap<V>, Serializable, Cloneable
 
         abstract T valueOf(int key, V value);
 
+        //characteristics on top of ORDERED, SIZED and SUBSIZED
+        int characteristics() {
+            return 0;
+        }
+
+        Comparator<? super T> comparator() {
+            return null;
+        }
+
+        @Override
+        public Spliterator<T> spliterator() {
+            return new ArraySpliterator<>(this);
+        }
+
         @Override
         @SuppressWarnings("unchecked")
         public <E> E[] toArray(E[] a) {
@@ -677,14 +897,11 @@ public class DirectArrayMap<V> implements IntKeyMap<V>, Serializable, Cloneable
                             .newInstance(a.getClass().getComponentType(), size);
 
             int idx = 0;
-            Object[] entries = DirectArrayMap.this.holder.entries;
-            int maxLength = Math.min(entries.length, endIndex);
-            for (int key = startIndex; key < maxLength && idx < size; ++key) {
-                Object entry = entries[key];
-                if (entry != null) {
-                    result[idx] = (E) valueOf(key, unmask(entry));
-                    ++idx;
-                }
+            int maxLength = Math.min(holder.limit(), endIndex);
+            for (int key = holder.nextOccupied(startIndex, maxLength); key >= 0 && idx < size;
+                 key = holder.nextOccupied(key + 1, maxLength)) {
+                result[idx] = (E) valueOf(key, unmask(holder.entry(key)));
+                ++idx;
             }
 
             for (; idx < result.length; ++idx) {
@@ -806,19 +1023,7 @@ public class DirectArrayMap<V> implements IntKeyMap<V>, Serializable, Cloneable
             if (c == null) throw new NullPointerException();
             if (c == this) return false;
 
-            boolean altered = false;
-            Object[] entries = DirectArrayMap.this.holder.entries;
-            int maxLength = Math.min(entries.length, endIndex);
-            for (int i = startIndex; i < maxLength; i++) {
-                Object entry = entries[i];
-                if (entry == null) continue;
-
-                if (!c.contains(i)) {
-                    DirectArrayMap.this.remove(i);
-                    altered = true;
-                }
-            }
-            return altered;
+            return DirectArrayMap.this.removeIf((key, value) -> !c.contains(key));
         }
 
 
@@ -826,6 +1031,11 @@ public class DirectArrayMap<V> implements IntKeyMap<V>, Serializable, Cloneable
         Integer valueOf(int key, V value) {
             return key;
         }
+
+        @Override
+        int characteristics() {
+            return Spliterator.DISTINCT | Spliterator.SORTED | Spliterator.NONNULL;
+        }
     }
 
     private class EntrySet extends AbstractSet<Entry<Integer, V>> {
@@ -840,9 +1050,20 @@ public class DirectArrayMap<V> implements IntKeyMap<V>, Serializable, Cloneable
             return toArray(new Object[size()]);
         }
 
+        //only used by the spliterator, which may run in parallel and therefore must not install entries in the holder
         @Override
         Entry<Integer, V> valueOf(int key, V value) {
-            return getEntry(key, DirectArrayMap.this.holder.entries[key]);
+            return new WriteThroughEntry(key, value);
+        }
+
+        @Override
+        int characteristics() {
+            return Spliterator.DISTINCT | Spliterator.SORTED | Spliterator.NONNULL;
+        }
+
+        @Override
+        Comparator<? super Entry<Integer, V>> comparator() {
+            return Entry.comparingByKey();
         }
 
         @SuppressWarnings("unchecked")
@@ -852,7 +1073,7 @@ public class DirectArrayMap<V> implements IntKeyMap<V>, Serializable, Cloneable
             }
             V value = currentEntry == NULL_MARKER ? null : (V) currentEntry;
             final KeyEntry keyEntry = new KeyEntry(idx, value);
-            DirectArrayMap.this.holder.entries[idx] = keyEntry;
+            holder.setEntry(idx, keyEntry);
             return keyEntry;
         }
 
@@ -867,14 +1088,11 @@ public class DirectArrayMap<V> implements IntKeyMap<V>, Serializable, Cloneable
                             .newInstance(a.getClass().getComponentType(), size);
 
             int idx = 0;
-            Object[] entries = DirectArrayMap.this.holder.entries;
-            int maxLength = Math.min(entries.length, endIndex);
-            for (int key = startIndex; key < maxLength && idx < size; ++key) {
-                Object entry = entries[key];
-                if (entry != null) {
-                    result[idx] = (E) getEntry(key, entry);
-                    ++idx;
-                }
+            int maxLength = Math.min(holder.limit(), endIndex);
+            for (int key = holder.nextOccupied(startIndex, maxLength); key >= 0 && idx < size;
+                 key = holder.nextOccupied(key + 1, maxLength)) {
+                result[idx] = (E) getEntry(key, holder.entry(key));
+                ++idx;
             }
 
             for (; idx < result.length; ++idx) {
@@ -896,9 +1114,8 @@ public class DirectArrayMap<V> implements IntKeyMap<V>, Serializable, Cloneable
                 if (!isLegalRange(idx)) return false;
 
                 Object masked = mask(entry.getValue());
-                Object[] entries = DirectArrayMap.this.holder.entries;
-                if (idx >= 0 && idx < entries.length) {
-                    if (masked.equals(entries[idx])) {
+                if (holder.covers(idx)) {
+                    if (masked.equals(holder.entry(idx))) {
                         DirectArrayMap.this.remove(idx);
                         return true;
                     }
@@ -935,18 +1152,7 @@ public class DirectArrayMap<V> implements IntKeyMap<V>, Serializable, Cloneable
                 return size > 0;
             }
 
-            boolean modified = false;
-            Object[] entries = DirectArrayMap.this.holder.entries;
-            int maxLength = Math.min(entries.length, endIndex);
-            for (int i = startIndex; i < maxLength; ++i) {
-                Object entry = entries[i];
-                if (entry != null && !c.contains(getEntry(i, entry))) {
-                    DirectArrayMap.this.remove(i);
-                    modified = true;
-                }
-            }
-
-            return modified;
+            return DirectArrayMap.this.removeIf((key, value) -> !c.contains(getEntry(key, holder.entry(key))));
         }
 
         @Override
@@ -958,10 +1164,9 @@ public class DirectArrayMap<V> implements IntKeyMap<V>, Serializable, Cloneable
             Entry entry = (Entry) o;
             if (entry.getKey() instanceof Integer) {
                 int idx = (int) entry.getKey();
-                final Object[] entries = DirectArrayMap.this.holder.entries;
-                if (isLegalRange(idx) && idx < entries.length) {
+                if (isLegalRange(idx) && holder.covers(idx)) {
                     Object value = entry.getValue();
-                    Object rawEntry = entries[idx];
+                    Object rawEntry = holder.entry(idx);
                     if (rawEntry == null) return false;
 
                     V thisValue = unmask(rawEntry);
@@ -981,11 +1186,16 @@ public class DirectArrayMap<V> implements IntKeyMap<V>, Serializable, Cloneable
         }
     }
 
-    private class KeyIterator extends AbstractArrayIterator<Integer> {
+    private class KeyIterator extends AbstractArrayIterator<Integer> implements PrimitiveIterator.OfInt {
         @Override
         Integer valueOf(int key, V value) {
             return key;
         }
+
+        @Override
+        public int nextInt() {
+            return advance();
+        }
     }
 
     private class ValuesIterator extends AbstractArrayIterator<V> {
@@ -995,6 +1205,167 @@ public class DirectArrayMap<V> implements IntKeyMap<V>, Serializable, Cloneable
         }
     }
 
+    //splits by index range of the entries, the range is bound on first use
+    private class ArraySpliterator<T> implements Spliterator<T> {
+        private final AbstractCollection<T> collection;
+        private int index;
+        private int fence = -1;
+        private int expectedModCount;
+
+        private ArraySpliterator(AbstractCollection<T> collection) {
+            this.collection = collection;
+        }
+
+        private ArraySpliterator(AbstractCollection<T> collection, int index, int fence, int expectedModCount) {
+            this.collection = collection;
+            this.index = index;
+            this.fence = fence;
+            this.expectedModCount = expectedModCount;
+        }
+
+        private int getFence() {
+            if (fence < 0) {
+                expectedModCount = holder.modCount;
+                index = Math.max(startIndex, holder.base);
+                fence = Math.max(index, Math.min(holder.limit(), endIndex));
+            }
+            return fence;
+        }
+
+        @Override
+        public Spliterator<T> trySplit() {
+            final int hi = getFence();
+            final int lo = index;
+            final int mid = (lo + hi) >>> 1;
+            if (lo >= mid) return null;
+            index = mid;
+            return new ArraySpliterator<>(collection, lo, mid, expectedModCount);
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super T> action) {
+            if (action == null) throw new NullPointerException();
+            final int hi = getFence();
+            if (holder.modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            final int next = holder.nextOccupied(index, hi);
+            if (next < 0) {
+                index = hi;
+                return false;
+            }
+            index = next + 1;
+            action.accept(collection.valueOf(next, unmask(holder.entry(next))));
+            return true;
+        }
+
+        @Override
+        public void forEachRemaining(Consumer<? super T> action) {
+            if (action == null) throw new NullPointerException();
+            final int hi = getFence();
+            final ArrayHolder holder = DirectArrayMap.this.holder;
+            for (int key = holder.nextOccupied(index, hi); key >= 0 && holder.modCount == expectedModCount;
+                 key = holder.nextOccupied(key + 1, hi)) {
+                action.accept(collection.valueOf(key, unmask(holder.entry(key))));
+            }
+            index = hi;
+            if (holder.modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+        }
+
+        //exact, the occupied bitmap is counted a word at a time
+        @Override
+        public long estimateSize() {
+            final int hi = getFence();
+            return holder.countOccupied(index, hi);
+        }
+
+        @Override
+        public int characteristics() {
+            return Spliterator.ORDERED | Spliterator.SIZED | Spliterator.SUBSIZED | collection.characteristics();
+        }
+
+        @Override
+        public Comparator<? super T> getComparator() {
+            if (hasCharacteristics(Spliterator.SORTED)) {
+                return collection.comparator();
+            }
+            throw new IllegalStateException();
+        }
+    }
+
+    private class ArrayCursor implements IntKeyCursor<V> {
+        private int key = startIndex - 1;
+        private boolean exhausted = false;
+        //false in front of the first mapping, after the last one and after a seek for an absent key
+        private boolean positioned = false;
+        private int expectedModCount = holder.modCount;
+
+        @Override
+        public boolean advance() {
+            if (holder.modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            if (exhausted) return false;
+            key = holder.nextOccupied(key + 1, Math.min(holder.limit(), endIndex));
+            exhausted = key < 0;
+            positioned = !exhausted;
+            return positioned;
+        }
+
+        @Override
+        public int key() {
+            if (!positioned) {
+                throw new IllegalStateException("cursor is not positioned on a mapping");
+            }
+            return key;
+        }
+
+        @Override
+        public V value() {
+            return unmask(holder.entry(key()));
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        public V setValue(V value) {
+            final int key = key();
+            if (holder.modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            final Object current = holder.entry(key);
+            if (current instanceof DirectArrayMap.KeyEntry) {
+                //keep entries handed out by entrySet() in sync
+                return ((KeyEntry) current).setValue(value);
+            }
+            holder.setEntry(key, mask(value));
+            return unmask(current);
+        }
+
+        @Override
+        public boolean seek(int key) {
+            //direct access needs no finger, the cursor only has to continue behind key
+            expectedModCount = holder.modCount;
+            exhausted = key >= endIndex;
+            positioned = containsKey(key);
+            if (key < startIndex) {
+                this.key = startIndex - 1;
+            } else if (!exhausted) {
+                this.key = positioned ? key : key - 1;
+            }
+            return positioned;
+        }
+
+        @Override
+        public void reset() {
+            key = startIndex - 1;
+            exhausted = false;
+            positioned = false;
+            expectedModCount = holder.modCount;
+        }
+    }
+
     private abstract class AbstractArrayIterator<T> implements Iterator<T> {
         private int index = startIndex - 1;
         private boolean removed = false;
@@ -1006,30 +1377,29 @@ public class DirectArrayMap<V> implements IntKeyMap<V>, Serializable, Cloneable
 
         @Override
         public boolean hasNext() {
-            Object[] entries = DirectArrayMap.this.holder.entries;
-            int maxLength = Math.min(entries.length, endIndex);
-            for (int i = index + 1; i < maxLength; ++i) {
-                if (entries[i] != null) return true;
-            }
-            return false;
+            final int maxLength = Math.min(holder.limit(), endIndex);
+            return holder.nextOccupied(index + 1, maxLength) >= 0;
         }
 
         abstract T valueOf(int key, V value);
 
         @Override
         public T next() {
+            final int next = advance();
+            return valueOf(next, unmask(holder.entry(next)));
+        }
+
+        //moves to the next key and returns it
+        final int advance() {
             if (holder.modCount != expectedModCount) {
                 throw new ConcurrentModificationException();
             }
-            Object[] entries = DirectArrayMap.this.holder.entries;
-            int maxLength = Math.min(entries.length, endIndex);
-            for (int i = index + 1; i < maxLength; ++i) {
-                Object entry = entries[i];
-                if (entry != null) {
-                    removed = false;
-                    index = i;
-                    return valueOf(i, unmask(entry));
-                }
+            int maxLength = Math.min(holder.limit(), endIndex);
+            final int next = holder.nextOccupied(index + 1, maxLength);
+            if (next >= 0) {
+                removed = false;
+                index = next;
+                return next;
             }
             throw new NoSuchElementException();
         }
@@ -0,0 +1,179 @@
+package nl.mplatvoet.collections.map;
+
+import java.io.IOException;
+import java.io.Serializable;
+
+/**
+ * Directly indexed {@link IntKeyIntMap} for dense keys, the int counterpart of {@link DirectArrayMap}.
+ */
+public class DirectIntArrayMap extends AbstractIntKeyIntMap implements Serializable {
+    private static final int DEFAULT_CAPACITY = 10;
+
+    private transient IntHolder holder;
+
+    public DirectIntArrayMap() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public DirectIntArrayMap(int initialCapacity) {
+        holder = new IntHolder(Math.max(initialCapacity, DEFAULT_CAPACITY));
+    }
+
+    @Override
+    public int size() {
+        return holder.size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return holder.size == 0;
+    }
+
+    @Override
+    int modCount() {
+        return holder.modCount;
+    }
+
+    @Override
+    int nextKey(int key) {
+        return holder.nextKey(key);
+    }
+
+    @Override
+    int previousKey(int key) {
+        return holder.previousKey(key);
+    }
+
+    @Override
+    int countKeys(int fromKey, int toKey) {
+        return holder.countKeys(fromKey, toKey);
+    }
+
+    @Override
+    void clear(int fromKey, int toKey) {
+        final int to = Math.min(toKey, holder.capacity);
+        final int removed = holder.countOccupied(fromKey, to);
+        if (removed > 0) {
+            holder.markFree(fromKey, to);
+            holder.size -= removed;
+            ++holder.modCount;
+        }
+    }
+
+    private boolean isOccupied(int key) {
+        return key >= 0 && key < holder.capacity && holder.isOccupied(key);
+    }
+
+    @Override
+    public boolean containsKey(int key) {
+        return isOccupied(key);
+    }
+
+    @Override
+    public int getInt(int key) {
+        return isOccupied(key) ? holder.values[key] : 0;
+    }
+
+    @Override
+    public Integer get(int key) {
+        return isOccupied(key) ? holder.values[key] : null;
+    }
+
+    @Override
+    public int putInt(int key, int value) {
+        validateLegalRange(key);
+        final int previous = getInt(key);
+        holder.set(key, value);
+        return previous;
+    }
+
+    @Override
+    public Integer put(int key, Integer value) {
+        if (value == null) {
+            throw new NullPointerException("value can not be null");
+        }
+        validateLegalRange(key);
+        final Integer previous = get(key);
+        holder.set(key, value);
+        return previous;
+    }
+
+    @Override
+    public int addTo(int key, int increment) {
+        validateLegalRange(key);
+        final int value = getInt(key) + increment;
+        holder.set(key, value);
+        return value;
+    }
+
+    @Override
+    public int removeInt(int key) {
+        if (!isOccupied(key)) return 0;
+        holder.free(key);
+        return holder.values[key];
+    }
+
+    @Override
+    public Integer remove(int key) {
+        if (!isOccupied(key)) return null;
+        holder.free(key);
+        return holder.values[key];
+    }
+
+    private void writeObject(java.io.ObjectOutputStream s) throws IOException {
+        s.defaultWriteObject();
+        s.writeInt(holder.size);
+        if (holder.size > 0) {
+            s.writeInt(holder.previousOccupied(0, holder.capacity) + 1);
+            for (int key = holder.nextOccupied(0, holder.capacity); key >= 0;
+                 key = holder.nextOccupied(key + 1, holder.capacity)) {
+                s.writeInt(key);
+                s.writeInt(holder.values[key]);
+            }
+        }
+    }
+
+    private void readObject(java.io.ObjectInputStream s) throws IOException, ClassNotFoundException {
+        s.defaultReadObject();
+        final int size = s.readInt();
+        holder = new IntHolder(size == 0 ? DEFAULT_CAPACITY : s.readInt());
+        for (int i = 0; i < size; i++) {
+            final int key = s.readInt();
+            holder.set(key, s.readInt());
+        }
+        holder.modCount = 0;
+    }
+
+    private static class IntHolder extends DirectKeyHolder {
+        int[] values;
+
+        IntHolder(int initialCapacity) {
+            super(initialCapacity);
+            values = new int[initialCapacity];
+        }
+
+        @Override
+        void resizeValues(int newCapacity, int shift) {
+            final int[] newValues = new int[newCapacity];
+            copyShifted(values, values.length, newValues, newCapacity, shift);
+            values = newValues;
+        }
+
+        void set(int key, int value) {
+            ensureCapacity(key + 1);
+            values[key] = value;
+            if (!isOccupied(key)) {
+                markOccupied(key);
+                ++size;
+                ++modCount;
+            }
+        }
+
+        //the value stays readable until the slot is reused
+        void free(int key) {
+            markFree(key);
+            --size;
+            ++modCount;
+        }
+    }
+}
@@ -0,0 +1,256 @@
+package nl.mplatvoet.collections.map;
+
+import java.util.Arrays;
+
+/**
+ * Occupancy bookkeeping shared by the direct maps, keys are indices into a value array kept by the subclass.
+ * One bit per slot lets range counts and scans skip empty slots a word at a time.
+ * <p>
+ * The arrays cover the window of keys {@code [base, base + capacity)}. The base is a multiple of 64 so a key keeps
+ * its bit position within a word whatever the base, moving the base only moves whole words. Holders that never
+ * call {@link #ensureKey(int)} or {@link #trimToSize()} keep a base of 0 and can address their values by key.
+ */
+abstract class DirectKeyHolder {
+    /**
+     * Some VMs reserve some header words in an array.
+     * Attempts to allocate larger arrays may result in
+     * OutOfMemoryError: Requested array size exceeds VM limit
+     */
+    static final int MAX_ARRAY_SIZE = Integer.MAX_VALUE - 8;
+    //sparse holders don't shrink below this capacity, so a map that empties and refills doesn't keep reallocating
+    static final int MIN_SHRINK_CAPACITY = 16;
+
+    long[] occupied;
+    int base = 0;
+    int capacity;
+    int size = 0;
+    int modCount = 0;
+    //halve the capacity when removals leave less than a quarter of it in use and the keys fit
+    boolean shrinkWhenSparse = false;
+
+    DirectKeyHolder(int initialCapacity) {
+        if (initialCapacity < 0) {
+            throw new IllegalArgumentException("initialCapacity must be >= 0");
+        }
+        if (initialCapacity > MAX_ARRAY_SIZE) {
+            throw new IllegalArgumentException("initialCapacity exceeds maximum capacity: " + MAX_ARRAY_SIZE);
+        }
+        capacity = initialCapacity;
+        occupied = new long[wordCount(initialCapacity)];
+    }
+
+    //replace the value array by one of newCapacity, the value of slot i moves to slot i + shift
+    abstract void resizeValues(int newCapacity, int shift);
+
+    private static int wordCount(int capacity) {
+        return (capacity + 63) >>> 6;
+    }
+
+    //copies the part of src that fits in dest, element i of src ends up at i + shift
+    static void copyShifted(Object src, int srcLength, Object dest, int destLength, int shift) {
+        final int srcPos = Math.max(0, -shift);
+        final int destPos = Math.max(0, shift);
+        final int length = Math.min(srcLength - srcPos, destLength - destPos);
+        if (length > 0) {
+            System.arraycopy(src, srcPos, dest, destPos, length);
+        }
+    }
+
+    //end of the key window, exclusive
+    final int limit() {
+        return base + capacity;
+    }
+
+    final boolean covers(int key) {
+        return key >= base && key - base < capacity;
+    }
+
+    //the single key methods expect a key within the window
+    final boolean isOccupied(int key) {
+        return (occupied[(key - base) >>> 6] & 1L << key) != 0;
+    }
+
+    final void markOccupied(int key) {
+        occupied[(key - base) >>> 6] |= 1L << key;
+    }
+
+    final void markFree(int key) {
+        occupied[(key - base) >>> 6] &= ~(1L << key);
+    }
+
+    //the range methods ignore the part of [fromKey, toKey) outside the window
+    final void markFree(int fromKey, int toKey) {
+        fromKey = Math.max(fromKey, base);
+        toKey = Math.min(toKey, limit());
+        if (fromKey >= toKey) return;
+        final int firstWord = (fromKey - base) >>> 6;
+        final int lastWord = (toKey - 1 - base) >>> 6;
+        final long firstMask = -1L << fromKey;
+        final long lastMask = -1L >>> -toKey;
+        if (firstWord == lastWord) {
+            occupied[firstWord] &= ~(firstMask & lastMask);
+            return;
+        }
+        occupied[firstWord] &= ~firstMask;
+        Arrays.fill(occupied, firstWord + 1, lastWord, 0L);
+        occupied[lastWord] &= ~lastMask;
+    }
+
+    //first occupied key in [fromKey, toKey) or -1
+    final int nextOccupied(int fromKey, int toKey) {
+        fromKey = Math.max(fromKey, base);
+        toKey = Math.min(toKey, limit());
+        if (fromKey >= toKey) return -1;
+        int wordIdx = (fromKey - base) >>> 6;
+        final int lastWord = (toKey - 1 - base) >>> 6;
+        long word = occupied[wordIdx] & (-1L << fromKey);
+        while (true) {
+            if (word != 0) {
+                final int key = base + (wordIdx << 6) + Long.numberOfTrailingZeros(word);
+                return key < toKey ? key : -1;
+            }
+            if (++wordIdx > lastWord) return -1;
+            word = occupied[wordIdx];
+        }
+    }
+
+    //last occupied key in [fromKey, toKey) or -1
+    final int previousOccupied(int fromKey, int toKey) {
+        fromKey = Math.max(fromKey, base);
+        toKey = Math.min(toKey, limit());
+        if (fromKey >= toKey) return -1;
+        int wordIdx = (toKey - 1 - base) >>> 6;
+        final int firstWord = (fromKey - base) >>> 6;
+        long word = occupied[wordIdx] & (-1L >>> -toKey);
+        while (true) {
+            if (word != 0) {
+                final int key = base + (wordIdx << 6) + 63 - Long.numberOfLeadingZeros(word);
+                return key >= fromKey ? key : -1;
+            }
+            if (--wordIdx < firstWord) return -1;
+            word = occupied[wordIdx];
+        }
+    }
+
+    //number of occupied keys in [fromKey, toKey)
+    final int countOccupied(int fromKey, int toKey) {
+        fromKey = Math.max(fromKey, base);
+        toKey = Math.min(toKey, limit());
+        if (fromKey >= toKey) return 0;
+        final int firstWord = (fromKey - base) >>> 6;
+        final int lastWord = (toKey - 1 - base) >>> 6;
+        final long firstMask = -1L << fromKey;
+        final long lastMask = -1L >>> -toKey;
+        if (firstWord == lastWord) {
+            return Long.bitCount(occupied[firstWord] & firstMask & lastMask);
+        }
+        int count = Long.bitCount(occupied[firstWord] & firstMask);
+        for (int i = firstWord + 1; i < lastWord; ++i) {
+            count += Long.bitCount(occupied[i]);
+        }
+        return count + Long.bitCount(occupied[lastWord] & lastMask);
+    }
+
+    //smallest occupied key >= key or -1
+    final int nextKey(int key) {
+        return nextOccupied(key, limit());
+    }
+
+    //largest occupied key <= key or -1
+    final int previousKey(int key) {
+        return key < 0 ? -1 : previousOccupied(0, (int) Math.min((long) key + 1, limit()));
+    }
+
+    final int countKeys(int fromKey, int toKey) {
+        return countOccupied(fromKey, toKey);
+    }
+
+    //grows the window upwards until it ends at or after minLimit
+    final void ensureCapacity(int minLimit) {
+        if (minLimit - limit() > 0) {
+            resizeWindow(base, minLimit);
+        }
+    }
+
+    //grows the window towards key when it falls outside, amortized O(1) in both directions
+    final void ensureKey(int key) {
+        if (covers(key)) return;
+        if (size == 0) {
+            //nothing to move, slide the empty window over the key
+            base = Math.min(key & ~63, (MAX_ARRAY_SIZE - capacity) & ~63);
+            if (covers(key)) return;
+        }
+        if (key < base) {
+            resizeWindow(key & ~63, limit());
+        } else {
+            resizeWindow(base, key + 1);
+        }
+    }
+
+    //points an empty holder at a window that just covers [firstKey, lastKey]
+    final void resetWindow(int firstKey, int lastKey) {
+        final int newBase = firstKey & ~63;
+        resize(newBase, lastKey + 1 - newBase);
+    }
+
+    //grows to cover [minBase, minLimit) by at least half the capacity, extending the side that ran out of room
+    private void resizeWindow(int minBase, int minLimit) {
+        final int required = minLimit - minBase;
+        int newCapacity = capacity + (capacity >> 1);
+        if (newCapacity - required < 0)
+            newCapacity = required;
+        if (newCapacity - MAX_ARRAY_SIZE > 0)
+            newCapacity = MAX_ARRAY_SIZE;
+
+        if (minBase < base) {
+            final int newBase = Math.max(0, minLimit - newCapacity) & ~63;
+            resize(newBase, minLimit - newBase);
+        } else {
+            resize(base, Math.min(newCapacity, MAX_ARRAY_SIZE - base));
+        }
+    }
+
+    //all occupied keys must lie within the new window
+    private void resize(int newBase, int newCapacity) {
+        final int shift = base - newBase;
+        resizeValues(newCapacity, shift);
+        final long[] newOccupied = new long[wordCount(newCapacity)];
+        copyShifted(occupied, occupied.length, newOccupied, newOccupied.length, shift >> 6);
+        occupied = newOccupied;
+        base = newBase;
+        capacity = newCapacity;
+    }
+
+    //shrinks the window to just cover the occupied keys
+    final void trimToSize() {
+        if (size == 0) {
+            if (capacity > 0) {
+                resize(base, 0);
+                ++modCount;
+            }
+            return;
+        }
+        final int newBase = nextOccupied(base, limit()) & ~63;
+        final int newLimit = previousOccupied(base, limit()) + 1;
+        if (newBase > base || newLimit < limit()) {
+            resize(newBase, newLimit - newBase);
+            ++modCount;
+        }
+    }
+
+    //called after removing removedKey, or with limit() - 1 after removing several keys
+    final void shrinkIfSparse(int removedKey) {
+        if (!shrinkWhenSparse || size >= capacity >>> 2 || capacity >>> 1 < MIN_SHRINK_CAPACITY) return;
+        //otherwise nothing changed that could make the upper half free, no need to scan it again
+        if (removedKey - base < capacity >>> 1 && size != (capacity >>> 2) - 1) return;
+
+        final int span = previousOccupied(base, limit()) + 1 - base;
+        int newCapacity = capacity;
+        while (newCapacity >>> 1 >= Math.max(span, MIN_SHRINK_CAPACITY) && size < newCapacity >>> 2) {
+            newCapacity >>>= 1;
+        }
+        if (newCapacity < capacity) {
+            resize(base, newCapacity);
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package nl.mplatvoet.collections.map;
+
+import java.io.IOException;
+import java.io.Serializable;
+
+/**
+ * Directly indexed {@link IntKeyLongMap} for dense keys, the long counterpart of {@link DirectArrayMap}.
+ */
+public class DirectLongArrayMap extends AbstractIntKeyLongMap implements Serializable {
+    private static final int DEFAULT_CAPACITY = 10;
+
+    private transient LongHolder holder;
+
+    public DirectLongArrayMap() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public DirectLongArrayMap(int initialCapacity) {
+        holder = new LongHolder(Math.max(initialCapacity, DEFAULT_CAPACITY));
+    }
+
+    @Override
+    public int size() {
+        return holder.size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return holder.size == 0;
+    }
+
+    @Override
+    int modCount() {
+        return holder.modCount;
+    }
+
+    @Override
+    int nextKey(int key) {
+        return holder.nextKey(key);
+    }
+
+    @Override
+    int previousKey(int key) {
+        return holder.previousKey(key);
+    }
+
+    @Override
+    int countKeys(int fromKey, int toKey) {
+        return holder.countKeys(fromKey, toKey);
+    }
+
+    @Override
+    void clear(int fromKey, int toKey) {
+        final int to = Math.min(toKey, holder.capacity);
+        final int removed = holder.countOccupied(fromKey, to);
+        if (removed > 0) {
+            holder.markFree(fromKey, to);
+            holder.size -= removed;
+            ++holder.modCount;
+        }
+    }
+
+    private boolean isOccupied(int key) {
+        return key >= 0 && key < holder.capacity && holder.isOccupied(key);
+    }
+
+    @Override
+    public boolean containsKey(int key) {
+        return isOccupied(key);
+    }
+
+    @Override
+    public long getLong(int key) {
+        return isOccupied(key) ? holder.values[key] : 0;
+    }
+
+    @Override
+    public Long get(int key) {
+        return isOccupied(key) ? holder.values[key] : null;
+    }
+
+    @Override
+    public long putLong(int key, long value) {
+        validateLegalRange(key);
+        final long previous = getLong(key);
+        holder.set(key, value);
+        return previous;
+    }
+
+    @Override
+    public Long put(int key, Long value) {
+        if (value == null) {
+            throw new NullPointerException("value can not be null");
+        }
+        validateLegalRange(key);
+        final Long previous = get(key);
+        holder.set(key, value);
+        return previous;
+    }
+
+    @Override
+    public long addTo(int key, long increment) {
+        validateLegalRange(key);
+        final long value = getLong(key) + increment;
+        holder.set(key, value);
+        return value;
+    }
+
+    @Override
+    public long removeLong(int key) {
+        if (!isOccupied(key)) return 0;
+        holder.free(key);
+        return holder.values[key];
+    }
+
+    @Override
+    public Long remove(int key) {
+        if (!isOccupied(key)) return null;
+        holder.free(key);
+        return holder.values[key];
+    }
+
+    private void writeObject(java.io.ObjectOutputStream s) throws IOException {
+        s.defaultWriteObject();
+        s.writeInt(holder.size);
+        if (holder.size > 0) {
+            s.writeInt(holder.previousOccupied(0, holder.capacity) + 1);
+            for (int key = holder.nextOccupied(0, holder.capacity); key >= 0;
+                 key = holder.nextOccupied(key + 1, holder.capacity)) {
+                s.writeInt(key);
+                s.writeLong(holder.values[key]);
+            }
+        }
+    }
+
+    private void readObject(java.io.ObjectInputStream s) throws IOException, ClassNotFoundException {
+        s.defaultReadObject();
+        final int size = s.readInt();
+        holder = new LongHolder(size == 0 ? DEFAULT_CAPACITY : s.readInt());
+        for (int i = 0; i < size; i++) {
+            final int key = s.readInt();
+            holder.set(key, s.readLong());
+        }
+        holder.modCount = 0;
+    }
+
+    private static class LongHolder extends DirectKeyHolder {
+        long[] values;
+
+        LongHolder(int initialCapacity) {
+            super(initialCapacity);
+            values = new long[initialCapacity];
+        }
+
+        @Override
+        void resizeValues(int newCapacity, int shift) {
+            final long[] newValues = new long[newCapacity];
+            copyShifted(values, values.length, newValues, newCapacity, shift);
+            values = newValues;
+        }
+
+        void set(int key, long value) {
+            ensureCapacity(key + 1);
+            values[key] = value;
+            if (!isOccupied(key)) {
+                markOccupied(key);
+                ++size;
+                ++modCount;
+            }
+        }
+
+        //the value stays readable until the slot is reused
+        void free(int key) {
+            markFree(key);
+            --size;
+            ++modCount;
+        }
+    }
+}
@@ -0,0 +1,858 @@
+package nl.mplatvoet.collections.map;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+
+/**
+ * IntKeyMap that splits the key space into buckets of 64K keys. Like a roaring bitmap every bucket picks the
+ * container that fits its own density: a sorted array for sparse buckets, a bitmap with a directly indexed value
+ * array for dense buckets and a run container for buckets made up of long consecutive key ranges.
+ * <p>
+ * This makes it a good fit for maps that are dense in some key ranges and very sparse in others, where neither
+ * {@link CompactArrayMap} nor {@link DirectArrayMap} is a good fit for the whole map.
+ */
+public class HybridArrayMap<V> extends AbstractIntKeyMap<V> implements Serializable {
+    private static final Object NULL_MARKER = new Object();
+
+    private static final int BUCKET_BITS = 16;
+    private static final int BUCKET_SIZE = 1 << BUCKET_BITS;
+    private static final int LOW_MASK = BUCKET_SIZE - 1;
+
+    //array containers convert to bitmaps above this size, bitmaps convert back below half of it
+    private static final int ARRAY_MAX_SIZE = BUCKET_SIZE / 4;
+    //array and bitmap containers reconsider their representation every this many inserts
+    private static final int OPTIMIZE_INTERVAL = 1024;
+
+    private static final int[] EMPTY_HIGHS = {};
+    private static final Container[] EMPTY_CONTAINERS = {};
+
+    private transient int[] highs = EMPTY_HIGHS;
+    private transient Container[] containers = EMPTY_CONTAINERS;
+    private transient int bucketCount = 0;
+    private transient int size = 0;
+    private transient int modCount = 0;
+
+    private static Object mask(Object value) {
+        return value == null ? NULL_MARKER : value;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <V> V unmask(Object value) {
+        if (value == NULL_MARKER) {
+            return null;
+        }
+        return (V) value;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @Override
+    int modCount() {
+        return modCount;
+    }
+
+    @Override
+    public boolean containsKey(int key) {
+        return getMasked(key) != null;
+    }
+
+    @Override
+    public V get(int key) {
+        return unmask(getMasked(key));
+    }
+
+    private Object getMasked(int key) {
+        if (key < 0) return null;
+        final int bucket = findBucket(key >>> BUCKET_BITS);
+        return bucket < 0 ? null : containers[bucket].get(key & LOW_MASK);
+    }
+
+    @Override
+    public V put(int key, V value) {
+        validateLegalRange(key);
+        final int high = key >>> BUCKET_BITS;
+        int bucket = findBucket(high);
+        if (bucket < 0) {
+            bucket = -(bucket + 1);
+            insertBucket(bucket, high, new ArrayContainer());
+        }
+        final Container container = containers[bucket];
+        final Object previous = container.put(key & LOW_MASK, mask(value));
+        if (previous == null) {
+            ++size;
+            ++modCount;
+            if (container.optimizeAfterInsert()) {
+                containers[bucket] = optimize(container);
+            }
+        }
+        return unmask(previous);
+    }
+
+    @Override
+    public V remove(int key) {
+        if (key < 0) return null;
+        final int bucket = findBucket(key >>> BUCKET_BITS);
+        if (bucket < 0) return null;
+
+        final Container container = containers[bucket];
+        final Object previous = container.remove(key & LOW_MASK);
+        if (previous != null) {
+            --size;
+            ++modCount;
+            if (container.size() == 0) {
+                removeBucket(bucket);
+            } else if (container.optimizeAfterRemove()) {
+                containers[bucket] = optimize(container);
+            }
+        }
+        return unmask(previous);
+    }
+
+    @Override
+    int nextKey(int key) {
+        if (key < 0) key = 0;
+        final int high = key >>> BUCKET_BITS;
+        int bucket = findBucket(high);
+        if (bucket >= 0) {
+            final int low = containers[bucket].next(key & LOW_MASK);
+            if (low >= 0) {
+                return high << BUCKET_BITS | low;
+            }
+            ++bucket;
+        } else {
+            bucket = -(bucket + 1);
+        }
+        return bucket < bucketCount ? highs[bucket] << BUCKET_BITS | containers[bucket].next(0) : -1;
+    }
+
+    @Override
+    int previousKey(int key) {
+        if (key < 0) return -1;
+        final int high = key >>> BUCKET_BITS;
+        int bucket = findBucket(high);
+        if (bucket >= 0) {
+            final int low = containers[bucket].previous(key & LOW_MASK);
+            if (low >= 0) {
+                return high << BUCKET_BITS | low;
+            }
+            --bucket;
+        } else {
+            bucket = -(bucket + 1) - 1;
+        }
+        return bucket >= 0 ? highs[bucket] << BUCKET_BITS | containers[bucket].previous(LOW_MASK) : -1;
+    }
+
+    @Override
+    int countKeys(int fromKey, int toKey) {
+        if (fromKey >= toKey) return 0;
+        int count = 0;
+        final int lastHigh = (toKey - 1) >>> BUCKET_BITS;
+        for (int bucket = firstBucket(fromKey); bucket < bucketCount && highs[bucket] <= lastHigh; ++bucket) {
+            final int bucketStart = highs[bucket] << BUCKET_BITS;
+            final int fromLow = Math.max(fromKey - bucketStart, 0);
+            final int toLow = Math.min(toKey - bucketStart, BUCKET_SIZE);
+            final Container container = containers[bucket];
+            count += fromLow == 0 && toLow == BUCKET_SIZE ? container.size() : container.count(fromLow, toLow);
+        }
+        return count;
+    }
+
+    @Override
+    void clear(int fromKey, int toKey) {
+        if (fromKey >= toKey) return;
+        final int lastHigh = (toKey - 1) >>> BUCKET_BITS;
+        final int first = firstBucket(fromKey);
+        int last = first;
+        int write = first;
+        int removed = 0;
+        for (; last < bucketCount && highs[last] <= lastHigh; ++last) {
+            final int bucketStart = highs[last] << BUCKET_BITS;
+            final int fromLow = Math.max(fromKey - bucketStart, 0);
+            final int toLow = Math.min(toKey - bucketStart, BUCKET_SIZE);
+            final Container container = containers[last];
+            final int before = container.size();
+            final Container remaining = fromLow == 0 && toLow == BUCKET_SIZE ? null : container.clear(fromLow, toLow);
+            removed += before - (remaining == null ? 0 : remaining.size());
+            if (remaining != null) {
+                highs[write] = highs[last];
+                containers[write++] = remaining;
+            }
+        }
+        if (removed == 0) return;
+
+        System.arraycopy(highs, last, highs, write, bucketCount - last);
+        System.arraycopy(containers, last, containers, write, bucketCount - last);
+        for (int i = bucketCount - (last - write); i < bucketCount; ++i) {
+            containers[i] = null;
+        }
+        bucketCount -= last - write;
+        size -= removed;
+        ++modCount;
+    }
+
+    @Override
+    public void clear() {
+        if (size == 0) return;
+        highs = EMPTY_HIGHS;
+        containers = EMPTY_CONTAINERS;
+        bucketCount = 0;
+        size = 0;
+        ++modCount;
+    }
+
+    private int firstBucket(int key) {
+        final int bucket = findBucket(key >>> BUCKET_BITS);
+        return bucket >= 0 ? bucket : -(bucket + 1);
+    }
+
+    private int findBucket(int high) {
+        int low = 0;
+        int top = bucketCount - 1;
+        while (low <= top) {
+            final int mid = (low + top) >>> 1;
+            final int midHigh = highs[mid];
+            if (midHigh < high) {
+                low = mid + 1;
+            } else if (midHigh > high) {
+                top = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -(low + 1);
+    }
+
+    private void insertBucket(int bucket, int high, Container container) {
+        if (bucketCount == highs.length) {
+            final int newCapacity = Math.max(4, bucketCount + (bucketCount >> 1));
+            final int[] newHighs = new int[newCapacity];
+            final Container[] newContainers = new Container[newCapacity];
+            System.arraycopy(highs, 0, newHighs, 0, bucket);
+            System.arraycopy(containers, 0, newContainers, 0, bucket);
+            System.arraycopy(highs, bucket, newHighs, bucket + 1, bucketCount - bucket);
+            System.arraycopy(containers, bucket, newContainers, bucket + 1, bucketCount - bucket);
+            highs = newHighs;
+            containers = newContainers;
+        } else {
+            System.arraycopy(highs, bucket, highs, bucket + 1, bucketCount - bucket);
+            System.arraycopy(containers, bucket, containers, bucket + 1, bucketCount - bucket);
+        }
+        highs[bucket] = high;
+        containers[bucket] = container;
+        ++bucketCount;
+    }
+
+    private void removeBucket(int bucket) {
+        final int moved = bucketCount - bucket - 1;
+        System.arraycopy(highs, bucket + 1, highs, bucket, moved);
+        System.arraycopy(containers, bucket + 1, containers, bucket, moved);
+        containers[--bucketCount] = null;
+    }
+
+    private static Container optimize(Container container) {
+        final int size = container.size();
+        final int runs = container.runCount();
+
+        //hysteresis, a container keeps its representation until it is clearly outgrown
+        final int runLimit = container instanceof RunContainer ? size / 2 : size / 4;
+        final boolean dense = container instanceof BitmapContainer ? size >= ARRAY_MAX_SIZE / 2 : size > ARRAY_MAX_SIZE;
+
+        if (runs <= runLimit) {
+            return container instanceof RunContainer ? container : new RunContainer(container);
+        }
+        if (dense) {
+            return container instanceof BitmapContainer ? container : new BitmapContainer(container);
+        }
+        return container instanceof ArrayContainer ? container : new ArrayContainer(container);
+    }
+
+    private static Container optimize(int[] lows, Object[] values, int size) {
+        if (size == 0) return null;
+        return optimize(new ArrayContainer(lows, values, size));
+    }
+
+    private void writeObject(ObjectOutputStream s) throws IOException {
+        s.defaultWriteObject();
+        s.writeInt(size);
+        for (int bucket = 0; bucket < bucketCount; ++bucket) {
+            final Container container = containers[bucket];
+            final int bucketStart = highs[bucket] << BUCKET_BITS;
+            for (int low = container.next(0); low >= 0; low = low == LOW_MASK ? -1 : container.next(low + 1)) {
+                s.writeInt(bucketStart | low);
+                s.writeObject(unmask(container.get(low)));
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void readObject(ObjectInputStream s) throws IOException, ClassNotFoundException {
+        s.defaultReadObject();
+        highs = EMPTY_HIGHS;
+        containers = EMPTY_CONTAINERS;
+        final int size = s.readInt();
+        for (int i = 0; i < size; ++i) {
+            final int key = s.readInt();
+            put(key, (V) s.readObject());
+        }
+        modCount = 0;
+    }
+
+    private static abstract class Container {
+        abstract int size();
+
+        abstract int runCount();
+
+        //masked value or null if absent
+        abstract Object get(int low);
+
+        abstract Object put(int low, Object value);
+
+        abstract Object remove(int low);
+
+        //smallest low >= low or -1
+        abstract int next(int low);
+
+        //largest low <= low or -1
+        abstract int previous(int low);
+
+        //number of lows in [fromLow, toLow)
+        abstract int count(int fromLow, int toLow);
+
+        //sorted copy of the content
+        abstract void copyTo(int[] lows, Object[] values);
+
+        boolean optimizeAfterInsert() {
+            return false;
+        }
+
+        boolean optimizeAfterRemove() {
+            return false;
+        }
+
+        //returns the container holding the remaining content or null if nothing remains
+        Container clear(int fromLow, int toLow) {
+            final int size = size();
+            final int[] lows = new int[size];
+            final Object[] values = new Object[size];
+            copyTo(lows, values);
+            int remaining = 0;
+            for (int i = 0; i < size; ++i) {
+                if (lows[i] < fromLow || lows[i] >= toLow) {
+                    lows[remaining] = lows[i];
+                    values[remaining++] = values[i];
+                }
+            }
+            return remaining == size ? this : optimize(lows, values, remaining);
+        }
+    }
+
+    private static final class ArrayContainer extends Container {
+        private char[] lows;
+        private Object[] values;
+        private int size = 0;
+
+        private ArrayContainer() {
+            lows = new char[4];
+            values = new Object[4];
+        }
+
+        private ArrayContainer(int[] lows, Object[] values, int size) {
+            this.lows = new char[size];
+            this.values = new Object[size];
+            for (int i = 0; i < size; ++i) {
+                this.lows[i] = (char) lows[i];
+            }
+            System.arraycopy(values, 0, this.values, 0, size);
+            this.size = size;
+        }
+
+        private ArrayContainer(Container container) {
+            final int size = container.size();
+            final int[] lows = new int[size];
+            this.values = new Object[size];
+            container.copyTo(lows, values);
+            this.lows = new char[size];
+            for (int i = 0; i < size; ++i) {
+                this.lows[i] = (char) lows[i];
+            }
+            this.size = size;
+        }
+
+        @Override
+        int size() {
+            return size;
+        }
+
+        @Override
+        int runCount() {
+            int runs = 0;
+            for (int i = 0; i < size; ++i) {
+                if (i == 0 || lows[i - 1] + 1 != lows[i]) {
+                    ++runs;
+                }
+            }
+            return runs;
+        }
+
+        @Override
+        boolean optimizeAfterInsert() {
+            return size > ARRAY_MAX_SIZE || size % OPTIMIZE_INTERVAL == 0;
+        }
+
+        private int indexOf(int low) {
+            int from = 0;
+            int to = size - 1;
+            while (from <= to) {
+                final int mid = (from + to) >>> 1;
+                final int midLow = lows[mid];
+                if (midLow < low) {
+                    from = mid + 1;
+                } else if (midLow > low) {
+                    to = mid - 1;
+                } else {
+                    return mid;
+                }
+            }
+            return -(from + 1);
+        }
+
+        private int insertionPoint(int low) {
+            final int idx = indexOf(low);
+            return idx >= 0 ? idx : -(idx + 1);
+        }
+
+        @Override
+        Object get(int low) {
+            final int idx = indexOf(low);
+            return idx >= 0 ? values[idx] : null;
+        }
+
+        @Override
+        Object put(int low, Object value) {
+            int idx = indexOf(low);
+            if (idx >= 0) {
+                final Object previous = values[idx];
+                values[idx] = value;
+                return previous;
+            }
+            idx = -(idx + 1);
+            if (size == lows.length) {
+                final int newCapacity = size + (size >> 1) + 1;
+                final char[] newLows = new char[newCapacity];
+                final Object[] newValues = new Object[newCapacity];
+                System.arraycopy(lows, 0, newLows, 0, idx);
+                System.arraycopy(values, 0, newValues, 0, idx);
+                System.arraycopy(lows, idx, newLows, idx + 1, size - idx);
+                System.arraycopy(values, idx, newValues, idx + 1, size - idx);
+                lows = newLows;
+                values = newValues;
+            } else {
+                System.arraycopy(lows, idx, lows, idx + 1, size - idx);
+                System.arraycopy(values, idx, values, idx + 1, size - idx);
+            }
+            lows[idx] = (char) low;
+            values[idx] = value;
+            ++size;
+            return null;
+        }
+
+        @Override
+        Object remove(int low) {
+            final int idx = indexOf(low);
+            if (idx < 0) return null;
+            final Object previous = values[idx];
+            System.arraycopy(lows, idx + 1, lows, idx, size - idx - 1);
+            System.arraycopy(values, idx + 1, values, idx, size - idx - 1);
+            values[--size] = null;
+            return previous;
+        }
+
+        @Override
+        int next(int low) {
+            final int idx = insertionPoint(low);
+            return idx < size ? lows[idx] : -1;
+        }
+
+        @Override
+        int previous(int low) {
+            final int idx = indexOf(low);
+            if (idx >= 0) return low;
+            final int before = -(idx + 1) - 1;
+            return before >= 0 ? lows[before] : -1;
+        }
+
+        @Override
+        int count(int fromLow, int toLow) {
+            return insertionPoint(toLow) - insertionPoint(fromLow);
+        }
+
+        @Override
+        void copyTo(int[] lows, Object[] values) {
+            for (int i = 0; i < size; ++i) {
+                lows[i] = this.lows[i];
+            }
+            System.arraycopy(this.values, 0, values, 0, size);
+        }
+    }
+
+    private static final class BitmapContainer extends Container {
+        private final long[] bits = new long[BUCKET_SIZE >>> 6];
+        private final Object[] values = new Object[BUCKET_SIZE];
+        private int size = 0;
+
+        private BitmapContainer(Container container) {
+            final int size = container.size();
+            final int[] lows = new int[size];
+            final Object[] values = new Object[size];
+            container.copyTo(lows, values);
+            for (int i = 0; i < size; ++i) {
+                final int low = lows[i];
+                bits[low >>> 6] |= 1L << low;
+                this.values[low] = values[i];
+            }
+            this.size = size;
+        }
+
+        @Override
+        int size() {
+            return size;
+        }
+
+        @Override
+        int runCount() {
+            int runs = 0;
+            long carry = 0;
+            for (long word : bits) {
+                //a run starts at every set bit whose lower neighbour is clear
+                runs += Long.bitCount(word & ~(word << 1 | carry));
+                carry = word >>> 63;
+            }
+            return runs;
+        }
+
+        @Override
+        boolean optimizeAfterInsert() {
+            return size % OPTIMIZE_INTERVAL == 0;
+        }
+
+        @Override
+        boolean optimizeAfterRemove() {
+            return size < ARRAY_MAX_SIZE / 2;
+        }
+
+        @Override
+        Object get(int low) {
+            return values[low];
+        }
+
+        @Override
+        Object put(int low, Object value) {
+            final Object previous = values[low];
+            values[low] = value;
+            if (previous == null) {
+                bits[low >>> 6] |= 1L << low;
+                ++size;
+            }
+            return previous;
+        }
+
+        @Override
+        Object remove(int low) {
+            final Object previous = values[low];
+            if (previous != null) {
+                values[low] = null;
+                bits[low >>> 6] &= ~(1L << low);
+                --size;
+            }
+            return previous;
+        }
+
+        @Override
+        int next(int low) {
+            int wordIdx = low >>> 6;
+            long word = bits[wordIdx] & (-1L << low);
+            while (word == 0) {
+                if (++wordIdx == bits.length) return -1;
+                word = bits[wordIdx];
+            }
+            return (wordIdx << 6) + Long.numberOfTrailingZeros(word);
+        }
+
+        @Override
+        int previous(int low) {
+            int wordIdx = low >>> 6;
+            long word = bits[wordIdx] & (-1L >>> (63 - (low & 63)));
+            while (word == 0) {
+                if (--wordIdx < 0) return -1;
+                word = bits[wordIdx];
+            }
+            return (wordIdx << 6) + 63 - Long.numberOfLeadingZeros(word);
+        }
+
+        @Override
+        int count(int fromLow, int toLow) {
+            return rank(toLow) - rank(fromLow);
+        }
+
+        //number of lows < low
+        private int rank(int low) {
+            final int wordIdx = low >>> 6;
+            int count = 0;
+            for (int i = 0; i < wordIdx; ++i) {
+                count += Long.bitCount(bits[i]);
+            }
+            if (wordIdx < bits.length) {
+                count += Long.bitCount(bits[wordIdx] & ~(-1L << low));
+            }
+            return count;
+        }
+
+        @Override
+        void copyTo(int[] lows, Object[] values) {
+            int i = 0;
+            for (int wordIdx = 0; wordIdx < bits.length; ++wordIdx) {
+                long word = bits[wordIdx];
+                while (word != 0) {
+                    final int low = (wordIdx << 6) + Long.numberOfTrailingZeros(word);
+                    lows[i] = low;
+                    values[i++] = this.values[low];
+                    word &= word - 1;
+                }
+            }
+        }
+    }
+
+    //runs of consecutive lows, values are stored packed in key order
+    private static final class RunContainer extends Container {
+        private int[] starts;
+        private int[] lengths;
+        //index of the first value of each run
+        private int[] offsets;
+        private Object[] values;
+        private int runCount = 0;
+        private int size;
+
+        private RunContainer(Container container) {
+            final int size = container.size();
+            final int runs = container.runCount();
+            final int[] lows = new int[size];
+            values = new Object[size];
+            container.copyTo(lows, values);
+            starts = new int[runs];
+            lengths = new int[runs];
+            offsets = new int[runs];
+            for (int i = 0; i < size; ++i) {
+                if (i > 0 && lows[i - 1] + 1 == lows[i]) {
+                    ++lengths[runCount - 1];
+                } else {
+                    starts[runCount] = lows[i];
+                    lengths[runCount] = 1;
+                    offsets[runCount++] = i;
+                }
+            }
+            this.size = size;
+        }
+
+        @Override
+        int size() {
+            return size;
+        }
+
+        @Override
+        int runCount() {
+            return runCount;
+        }
+
+        @Override
+        boolean optimizeAfterInsert() {
+            return runCount > size / 2;
+        }
+
+        @Override
+        boolean optimizeAfterRemove() {
+            return runCount > size / 2;
+        }
+
+        //last run starting at or before low, -1 if none
+        private int findRun(int low) {
+            int from = 0;
+            int to = runCount - 1;
+            while (from <= to) {
+                final int mid = (from + to) >>> 1;
+                if (starts[mid] <= low) {
+                    from = mid + 1;
+                } else {
+                    to = mid - 1;
+                }
+            }
+            return from - 1;
+        }
+
+        private int end(int run) {
+            return starts[run] + lengths[run];
+        }
+
+        @Override
+        Object get(int low) {
+            final int run = findRun(low);
+            return run >= 0 && low < end(run) ? values[offsets[run] + low - starts[run]] : null;
+        }
+
+        @Override
+        Object put(int low, Object value) {
+            final int run = findRun(low);
+            if (run >= 0 && low < end(run)) {
+                final int idx = offsets[run] + low - starts[run];
+                final Object previous = values[idx];
+                values[idx] = value;
+                return previous;
+            }
+
+            final boolean extendsPrevious = run >= 0 && low == end(run);
+            final boolean extendsNext = run + 1 < runCount && low + 1 == starts[run + 1];
+            if (extendsPrevious) {
+                insertValue(offsets[run] + lengths[run], value);
+                ++lengths[run];
+                adjustOffsets(run + 1, 1);
+                if (extendsNext) {
+                    lengths[run] += lengths[run + 1];
+                    removeRun(run + 1);
+                }
+            } else if (extendsNext) {
+                insertValue(offsets[run + 1], value);
+                --starts[run + 1];
+                ++lengths[run + 1];
+                adjustOffsets(run + 2, 1);
+            } else {
+                final int offset = run >= 0 ? offsets[run] + lengths[run] : 0;
+                insertValue(offset, value);
+                insertRun(run + 1, low, 1, offset);
+                adjustOffsets(run + 2, 1);
+            }
+            ++size;
+            return null;
+        }
+
+        @Override
+        Object remove(int low) {
+            final int run = findRun(low);
+            if (run < 0 || low >= end(run)) return null;
+
+            final int idx = offsets[run] + low - starts[run];
+            final Object previous = values[idx];
+            System.arraycopy(values, idx + 1, values, idx, size - idx - 1);
+            values[--size] = null;
+
+            final int end = end(run);
+            if (lengths[run] == 1) {
+                removeRun(run);
+                adjustOffsets(run, -1);
+            } else if (low == starts[run]) {
+                ++starts[run];
+                --lengths[run];
+                adjustOffsets(run + 1, -1);
+            } else if (low == end - 1) {
+                --lengths[run];
+                adjustOffsets(run + 1, -1);
+            } else {
+                lengths[run] = low - starts[run];
+                insertRun(run + 1, low + 1, end - low - 1, offsets[run] + lengths[run]);
+                adjustOffsets(run + 2, -1);
+            }
+            return previous;
+        }
+
+        private void insertValue(int idx, Object value) {
+            if (size == values.length) {
+                final Object[] newValues = new Object[size + (size >> 1) + 1];
+                System.arraycopy(values, 0, newValues, 0, idx);
+                System.arraycopy(values, idx, newValues, idx + 1, size - idx);
+                values = newValues;
+            } else {
+                System.arraycopy(values, idx, values, idx + 1, size - idx);
+            }
+            values[idx] = value;
+        }
+
+        private void insertRun(int run, int start, int length, int offset) {
+            if (runCount == starts.length) {
+                final int newCapacity = runCount + (runCount >> 1) + 1;
+                starts = copyOf(starts, newCapacity);
+                lengths = copyOf(lengths, newCapacity);
+                offsets = copyOf(offsets, newCapacity);
+            }
+            final int moved = runCount - run;
+            System.arraycopy(starts, run, starts, run + 1, moved);
+            System.arraycopy(lengths, run, lengths, run + 1, moved);
+            System.arraycopy(offsets, run, offsets, run + 1, moved);
+            starts[run] = start;
+            lengths[run] = length;
+            offsets[run] = offset;
+            ++runCount;
+        }
+
+        private void removeRun(int run) {
+            final int moved = runCount - run - 1;
+            System.arraycopy(starts, run + 1, starts, run, moved);
+            System.arraycopy(lengths, run + 1, lengths, run, moved);
+            System.arraycopy(offsets, run + 1, offsets, run, moved);
+            --runCount;
+        }
+
+        private void adjustOffsets(int fromRun, int delta) {
+            for (int run = fromRun; run < runCount; ++run) {
+                offsets[run] += delta;
+            }
+        }
+
+        private static int[] copyOf(int[] src, int length) {
+            final int[] dest = new int[length];
+            System.arraycopy(src, 0, dest, 0, Math.min(src.length, length));
+            return dest;
+        }
+
+        @Override
+        int next(int low) {
+            final int run = findRun(low);
+            if (run >= 0 && low < end(run)) return low;
+            return run + 1 < runCount ? starts[run + 1] : -1;
+        }
+
+        @Override
+        int previous(int low) {
+            final int run = findRun(low);
+            return run < 0 ? -1 : Math.min(low, end(run) - 1);
+        }
+
+        @Override
+        int count(int fromLow, int toLow) {
+            return rank(toLow) - rank(fromLow);
+        }
+
+        //number of lows < low
+        private int rank(int low) {
+            final int run = findRun(low - 1);
+            return run < 0 ? 0 : offsets[run] + Math.min(lengths[run], low - starts[run]);
+        }
+
+        @Override
+        void copyTo(int[] lows, Object[] values) {
+            for (int run = 0; run < runCount; ++run) {
+                for (int i = 0; i < lengths[run]; ++i) {
+                    lows[offsets[run] + i] = starts[run] + i;
+                }
+            }
+            System.arraycopy(this.values, 0, values, 0, size);
+        }
+    }
+}
@@ -0,0 +1,205 @@
+package nl.mplatvoet.collections.map;
+
+import java.io.Serializable;
+import java.util.Objects;
+
+/**
+ * Read only IntKeyMap for maps that are built once and queried a lot. The keys are stored in Eytzinger order, the
+ * breadth first order of a balanced search tree, so the first levels of every search share a few cache lines and
+ * the next probe is always at {@code 2k} or {@code 2k + 1}. The values are stored in the same order as the keys.
+ * <p>
+ * Every mutation throws {@link UnsupportedOperationException}. Use {@link IntKeyMap#freeze()} to create one.
+ */
+public final class ImmutableIntKeyMap<V> extends AbstractIntKeyMap<V> implements Serializable {
+    private static final ImmutableIntKeyMap<?> EMPTY = new ImmutableIntKeyMap<>(new int[0], new Object[0]);
+
+    //1 based, the children of k are 2k and 2k + 1, slot 0 is unused
+    private final int[] tree;
+    private final Object[] values;
+    //position of tree[k] in key order, for counting
+    private final int[] ranks;
+    private final int size;
+
+    private ImmutableIntKeyMap(int[] sortedKeys, Object[] sortedValues) {
+        size = sortedKeys.length;
+        tree = new int[size + 1];
+        values = new Object[size + 1];
+        ranks = new int[size + 1];
+        fill(sortedKeys, sortedValues, 0, 1);
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <V> ImmutableIntKeyMap<V> of() {
+        return (ImmutableIntKeyMap<V>) EMPTY;
+    }
+
+    /**
+     * @return an immutable copy of the current mappings of {@code map}
+     */
+    public static <V> ImmutableIntKeyMap<V> copyOf(IntKeyMap<? extends V> map) {
+        if (map instanceof ImmutableIntKeyMap) {
+            @SuppressWarnings("unchecked")
+            final ImmutableIntKeyMap<V> immutable = (ImmutableIntKeyMap<V>) map;
+            return immutable;
+        }
+        if (map.isEmpty()) return of();
+        final int[] keys = new int[map.size()];
+        final Object[] values = new Object[keys.length];
+        final int[] count = {0};
+        map.forEachEntry((key, value) -> {
+            keys[count[0]] = key;
+            values[count[0]++] = value;
+        });
+        return new ImmutableIntKeyMap<>(keys, values);
+    }
+
+    //in order walk of the implicit tree, hands out the sorted entries starting at idx, returns the next index
+    private int fill(int[] sortedKeys, Object[] sortedValues, int idx, int k) {
+        if (k > size) return idx;
+        idx = fill(sortedKeys, sortedValues, idx, k << 1);
+        tree[k] = sortedKeys[idx];
+        values[k] = sortedValues[idx];
+        ranks[k] = idx;
+        return fill(sortedKeys, sortedValues, idx + 1, (k << 1) + 1);
+    }
+
+    //tree index of the smallest key >= key or 0
+    private int lowerBound(int key) {
+        int k = 1;
+        while (k <= size) {
+            //the comparison compiles to a conditional move, there is no branch to mispredict
+            k = (k << 1) + (tree[k] < key ? 1 : 0);
+        }
+        //the answer is the node where the search last went left
+        return k >>> Integer.numberOfTrailingZeros(~k) + 1;
+    }
+
+    //tree index of the largest key <= key or 0
+    private int floorIndex(int key) {
+        int k = 1;
+        while (k <= size) {
+            k = (k << 1) + (tree[k] <= key ? 1 : 0);
+        }
+        //the answer is the node where the search last went right
+        return k >>> Integer.numberOfTrailingZeros(k) + 1;
+    }
+
+    //tree index of the key following tree[k] or 0
+    private int successor(int k) {
+        if ((k << 1) + 1 <= size) {
+            k = (k << 1) + 1;
+            while (k << 1 <= size) {
+                k <<= 1;
+            }
+            return k;
+        }
+        return k >>> Integer.numberOfTrailingZeros(~k) + 1;
+    }
+
+    private int offset(int key) {
+        final int k = lowerBound(key);
+        return k == 0 ? size : ranks[k];
+    }
+
+    @SuppressWarnings("unchecked")
+    private V valueAt(int k) {
+        return (V) values[k];
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @Override
+    int modCount() {
+        return 0;
+    }
+
+    @Override
+    int nextKey(int key) {
+        final int k = lowerBound(key);
+        return k == 0 ? -1 : tree[k];
+    }
+
+    @Override
+    int previousKey(int key) {
+        final int k = floorIndex(key);
+        return k == 0 ? -1 : tree[k];
+    }
+
+    @Override
+    int countKeys(int fromKey, int toKey) {
+        return fromKey < toKey ? offset(toKey) - offset(fromKey) : 0;
+    }
+
+    @Override
+    public boolean containsKey(int key) {
+        final int k = lowerBound(key);
+        return k != 0 && tree[k] == key;
+    }
+
+    @Override
+    public V get(int key) {
+        final int k = lowerBound(key);
+        return k != 0 && tree[k] == key ? valueAt(k) : null;
+    }
+
+    @Override
+    public void forEachEntry(IntObjConsumer<? super V> action) {
+        Objects.requireNonNull(action);
+        for (int k = lowerBound(Integer.MIN_VALUE); k != 0; k = successor(k)) {
+            action.accept(tree[k], valueAt(k));
+        }
+    }
+
+    @Override
+    public ImmutableIntKeyMap<V> freeze() {
+        return this;
+    }
+
+    @Override
+    public V put(int key, V value) {
+        throw new UnsupportedOperationException("map is immutable");
+    }
+
+    @Override
+    public V remove(int key) {
+        throw new UnsupportedOperationException("map is immutable");
+    }
+
+    @Override
+    void clear(int fromKey, int toKey) {
+        throw new UnsupportedOperationException("map is immutable");
+    }
+
+    @Override
+    public void shiftKeys(int fromKey, int delta) {
+        throw new UnsupportedOperationException("map is immutable");
+    }
+
+    @Override
+    public boolean removeIf(IntObjPredicate<? super V> filter) {
+        throw new UnsupportedOperationException("map is immutable");
+    }
+
+    @Override
+    public Entry<Integer, V> pollFirstEntry() {
+        throw new UnsupportedOperationException("map is immutable");
+    }
+
+    @Override
+    public Entry<Integer, V> pollLastEntry() {
+        throw new UnsupportedOperationException("map is immutable");
+    }
+
+    //keeps the empty map a singleton
+    private Object readResolve() {
+        return size == 0 ? EMPTY : this;
+    }
+}
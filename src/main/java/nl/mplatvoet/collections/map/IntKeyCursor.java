@@ -0,0 +1,54 @@
+package nl.mplatvoet.collections.map;
+
+/**
+ * Forward only cursor over the mappings of an {@link IntKeyMap} in ascending key order. Moving the cursor doesn't
+ * allocate, {@link #key()} and {@link #value()} read the current mapping straight from the map.
+ * <p>
+ * Like an iterator the cursor fails fast, structurally modifying the map other than through
+ * {@link #setValue(Object)} makes the next {@link #advance()} throw a
+ * {@link java.util.ConcurrentModificationException}, until {@link #seek(int)} or {@link #reset()} positions the
+ * cursor again.
+ */
+public interface IntKeyCursor<V> {
+
+    /**
+     * Moves to the next mapping.
+     *
+     * @return {@code false} if there are no more mappings
+     */
+    boolean advance();
+
+    /**
+     * @throws IllegalStateException if the cursor is not positioned on a mapping
+     */
+    int key();
+
+    /**
+     * @throws IllegalStateException if the cursor is not positioned on a mapping
+     */
+    V value();
+
+    /**
+     * Replaces the value of the current mapping.
+     *
+     * @return the previous value
+     * @throws IllegalStateException if the cursor is not positioned on a mapping
+     * @throws java.util.ConcurrentModificationException if the map was structurally modified since the cursor was
+     *                                                   positioned, the value is not written
+     */
+    V setValue(V value);
+
+    /**
+     * Moves to the mapping of key, or in front of the first mapping above it if key is not mapped. The search starts
+     * at the current position, so seeking keys in ascending order is amortized O(1) on the array based maps. A seek
+     * doesn't fail after a structural modification, the cursor continues from the map as it is now.
+     *
+     * @return {@code true} if the cursor is positioned on the mapping of key
+     */
+    boolean seek(int key);
+
+    /**
+     * Moves the cursor back in front of the first mapping, so the same cursor can be used for another pass.
+     */
+    void reset();
+}
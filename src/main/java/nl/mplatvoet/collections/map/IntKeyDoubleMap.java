@@ -0,0 +1,36 @@
+package nl.mplatvoet.collections.map;
+
+/**
+ * IntKeyMap that keeps its values as primitive doubles. The primitive accessors never box, absent keys read as
+ * {@code 0}. Null values are not supported.
+ */
+public interface IntKeyDoubleMap extends IntKeyMap<Double> {
+
+    double getDouble(int key);
+
+    /**
+     * @return the previous value or {@code 0} if the key was absent
+     */
+    double putDouble(int key, double value);
+
+    /**
+     * @return the removed value or {@code 0} if the key was absent
+     */
+    double removeDouble(int key);
+
+    /**
+     * Adds {@code increment} to the value of {@code key}, an absent key starts at {@code 0}.
+     *
+     * @return the new value
+     */
+    double addTo(int key, double increment);
+
+    @Override
+    IntKeyDoubleMap subMap(int fromKey, int toKey);
+
+    @Override
+    IntKeyDoubleMap headMap(int toKey);
+
+    @Override
+    IntKeyDoubleMap tailMap(int fromKey);
+}
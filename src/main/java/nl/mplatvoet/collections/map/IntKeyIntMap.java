@@ -0,0 +1,36 @@
+package nl.mplatvoet.collections.map;
+
+/**
+ * IntKeyMap that keeps its values as primitive ints. The primitive accessors never box, absent keys read as
+ * {@code 0}. Null values are not supported.
+ */
+public interface IntKeyIntMap extends IntKeyMap<Integer> {
+
+    int getInt(int key);
+
+    /**
+     * @return the previous value or {@code 0} if the key was absent
+     */
+    int putInt(int key, int value);
+
+    /**
+     * @return the removed value or {@code 0} if the key was absent
+     */
+    int removeInt(int key);
+
+    /**
+     * Adds {@code increment} to the value of {@code key}, an absent key starts at {@code 0}.
+     *
+     * @return the new value
+     */
+    int addTo(int key, int increment);
+
+    @Override
+    IntKeyIntMap subMap(int fromKey, int toKey);
+
+    @Override
+    IntKeyIntMap headMap(int toKey);
+
+    @Override
+    IntKeyIntMap tailMap(int fromKey);
+}
@@ -0,0 +1,36 @@
+package nl.mplatvoet.collections.map;
+
+/**
+ * IntKeyMap that keeps its values as primitive longs. The primitive accessors never box, absent keys read as
+ * {@code 0}. Null values are not supported.
+ */
+public interface IntKeyLongMap extends IntKeyMap<Long> {
+
+    long getLong(int key);
+
+    /**
+     * @return the previous value or {@code 0} if the key was absent
+     */
+    long putLong(int key, long value);
+
+    /**
+     * @return the removed value or {@code 0} if the key was absent
+     */
+    long removeLong(int key);
+
+    /**
+     * Adds {@code increment} to the value of {@code key}, an absent key starts at {@code 0}.
+     *
+     * @return the new value
+     */
+    long addTo(int key, long increment);
+
+    @Override
+    IntKeyLongMap subMap(int fromKey, int toKey);
+
+    @Override
+    IntKeyLongMap headMap(int toKey);
+
+    @Override
+    IntKeyLongMap tailMap(int fromKey);
+}
@@ -1,5 +1,7 @@
 package nl.mplatvoet.collections.map;
 
+import java.util.Objects;
+import java.util.PrimitiveIterator;
 import java.util.SortedMap;
 
 public interface IntKeyMap<V> extends SortedMap<Integer, V> {
@@ -12,6 +14,103 @@ public interface IntKeyMap<V> extends SortedMap<Integer, V> {
 
     V remove(int idx);
 
+    /**
+     * Moves every mapping with a key {@code >= fromKey} to {@code key + delta} in a single pass.
+     * With a negative delta the mappings in the range {@code [fromKey + delta, fromKey)} are overwritten
+     * and therefore removed.
+     *
+     * @throws IllegalArgumentException if a shifted key falls outside the legal range of this map
+     */
+    void shiftKeys(int fromKey, int delta);
+
+    /**
+     * @return the largest key {@code <= key} or {@code -1} if there is no such key
+     */
+    int floorKey(int key);
+
+    /**
+     * @return the smallest key {@code >= key} or {@code -1} if there is no such key
+     */
+    int ceilingKey(int key);
+
+    /**
+     * @return the smallest key {@code > key} or {@code -1} if there is no such key
+     */
+    int higherKey(int key);
+
+    /**
+     * @return the largest key {@code < key} or {@code -1} if there is no such key
+     */
+    int lowerKey(int key);
+
+    /**
+     * Removes the mapping with the lowest key.
+     *
+     * @return the removed mapping or {@code null} if this map is empty
+     */
+    Entry<Integer, V> pollFirstEntry();
+
+    /**
+     * Removes the mapping with the highest key.
+     *
+     * @return the removed mapping or {@code null} if this map is empty
+     */
+    Entry<Integer, V> pollLastEntry();
+
+    /**
+     * Performs the action for every mapping in ascending key order without boxing the keys.
+     *
+     * @throws java.util.ConcurrentModificationException if the action structurally modifies this map
+     */
+    default void forEachEntry(IntObjConsumer<? super V> action) {
+        Objects.requireNonNull(action);
+        final IntKeyCursor<V> cursor = cursor();
+        while (cursor.advance()) {
+            action.accept(cursor.key(), cursor.value());
+        }
+    }
+
+    /**
+     * Removes every mapping the filter matches. The array based maps compact the remaining mappings in a single pass
+     * instead of removing them one by one.
+     *
+     * @return {@code true} if any mapping was removed
+     * @throws java.util.ConcurrentModificationException if the filter structurally modifies this map
+     */
+    boolean removeIf(IntObjPredicate<? super V> filter);
+
+    /**
+     * Removes all mappings with a key in {@code [fromKey, toKey)}, the part of the range outside this map is ignored.
+     *
+     * @throws IllegalArgumentException if {@code fromKey > toKey}
+     */
+    void removeRange(int fromKey, int toKey);
+
+    /**
+     * Releases storage the current mappings don't need. On a view this trims the storage of the whole map, maps
+     * without spare capacity ignore it.
+     */
+    default void trimToSize() {
+    }
+
+    /**
+     * @return an immutable copy of the current mappings laid out for fast lookups, later writes to this map
+     * don't show up in the copy
+     */
+    default ImmutableIntKeyMap<V> freeze() {
+        return ImmutableIntKeyMap.copyOf(this);
+    }
+
+    /**
+     * @return a cursor positioned in front of the first mapping of this map
+     */
+    IntKeyCursor<V> cursor();
+
+    /**
+     * @return an iterator over the keys in ascending order that doesn't box them
+     */
+    PrimitiveIterator.OfInt keyIterator();
+
     IntKeyMap<V> subMap(int fromKey, int toKey);
 
     IntKeyMap<V> headMap(int toKey);
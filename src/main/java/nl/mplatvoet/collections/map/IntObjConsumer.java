@@ -0,0 +1,8 @@
+package nl.mplatvoet.collections.map;
+
+/**
+ * Accepts an int key and its value, the unboxed counterpart of {@link java.util.function.BiConsumer}.
+ */
+public interface IntObjConsumer<V> {
+    void accept(int key, V value);
+}
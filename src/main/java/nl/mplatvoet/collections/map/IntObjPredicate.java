@@ -0,0 +1,8 @@
+package nl.mplatvoet.collections.map;
+
+/**
+ * Predicate on an int key and its value, the unboxed counterpart of {@link java.util.function.BiPredicate}.
+ */
+public interface IntObjPredicate<V> {
+    boolean test(int key, V value);
+}
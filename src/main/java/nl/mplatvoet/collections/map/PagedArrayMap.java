@@ -0,0 +1,323 @@
+package nl.mplatvoet.collections.map;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.Objects;
+
+/**
+ * Directly indexed IntKeyMap for huge key spaces where the keys come in clusters. Values live in pages of
+ * {@value #PAGE_SIZE} slots that are only allocated once a key in their range is put and are released again when
+ * their last key is removed. get and put are O(1) and memory grows with the number of touched pages instead of
+ * with the largest key, as it does for {@link DirectArrayMap}.
+ * <p>
+ * The page directory is split in two levels of {@value #PAGE_SIZE} pages each, so a map holding a handful of high
+ * keys doesn't need a directory spanning all keys below them either.
+ */
+public class PagedArrayMap<V> extends AbstractIntKeyMap<V> implements Serializable {
+    private static final int PAGE_BITS = 10;
+    private static final int PAGE_SIZE = 1 << PAGE_BITS;
+    private static final int PAGE_MASK = PAGE_SIZE - 1;
+    private static final int PAGE_WORDS = PAGE_SIZE >>> 6;
+    //a chunk is the second directory level, it holds PAGE_SIZE pages
+    private static final int CHUNK_SHIFT = PAGE_BITS + PAGE_BITS;
+
+    //indexed by key >>> CHUNK_SHIFT, then by the page within the chunk, unused chunks and pages are null
+    private transient Page[][] chunks = new Page[0][];
+    //number of pages allocated in each chunk, a chunk is released with its last page
+    private transient int[] chunkPages = new int[0];
+    private transient int size = 0;
+    private transient int modCount = 0;
+
+    private static int chunkIdx(int key) {
+        return key >>> CHUNK_SHIFT;
+    }
+
+    private static int pageIdx(int key) {
+        return key >>> PAGE_BITS & PAGE_MASK;
+    }
+
+    private Page page(int key) {
+        final int chunkIdx = chunkIdx(key);
+        if (key < 0 || chunkIdx >= chunks.length) return null;
+        final Page[] chunk = chunks[chunkIdx];
+        return chunk == null ? null : chunk[pageIdx(key)];
+    }
+
+    private Page pageForUpdate(int key) {
+        final int chunkIdx = chunkIdx(key);
+        if (chunkIdx >= chunks.length) {
+            chunks = Arrays.copyOf(chunks, chunkIdx + 1);
+            chunkPages = Arrays.copyOf(chunkPages, chunkIdx + 1);
+        }
+        Page[] chunk = chunks[chunkIdx];
+        if (chunk == null) {
+            chunks[chunkIdx] = chunk = new Page[PAGE_SIZE];
+        }
+        Page page = chunk[pageIdx(key)];
+        if (page == null) {
+            chunk[pageIdx(key)] = page = new Page();
+            ++chunkPages[chunkIdx];
+        }
+        return page;
+    }
+
+    //releases the page of key if it became empty, and its chunk if that held the last page
+    private void releaseIfEmpty(Page page, int key) {
+        if (page.size != 0) return;
+        final int chunkIdx = chunkIdx(key);
+        chunks[chunkIdx][pageIdx(key)] = null;
+        if (--chunkPages[chunkIdx] == 0) {
+            chunks[chunkIdx] = null;
+        }
+    }
+
+    //number of allocated pages
+    int pageCount() {
+        int count = 0;
+        for (int pages : chunkPages) {
+            count += pages;
+        }
+        return count;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @Override
+    int modCount() {
+        return modCount;
+    }
+
+    @Override
+    public boolean containsKey(int key) {
+        final Page page = page(key);
+        return page != null && page.isOccupied(key & PAGE_MASK);
+    }
+
+    @Override
+    public V get(int key) {
+        final Page page = page(key);
+        return page == null ? null : page.valueAt(key & PAGE_MASK);
+    }
+
+    @Override
+    public V put(int key, V value) {
+        validateLegalRange(key);
+        final Page page = pageForUpdate(key);
+        final int slot = key & PAGE_MASK;
+        final V previous = page.valueAt(slot);
+        if (!page.isOccupied(slot)) {
+            page.markOccupied(slot);
+            ++size;
+            ++modCount;
+        }
+        page.values[slot] = value;
+        return previous;
+    }
+
+    @Override
+    public V remove(int key) {
+        final Page page = page(key);
+        final int slot = key & PAGE_MASK;
+        if (page == null || !page.isOccupied(slot)) return null;
+        final V previous = page.valueAt(slot);
+        page.values[slot] = null;
+        page.markFree(slot);
+        --size;
+        ++modCount;
+        releaseIfEmpty(page, key);
+        return previous;
+    }
+
+    @Override
+    int nextKey(int key) {
+        if (key < 0) key = 0;
+        for (int chunkIdx = chunkIdx(key); chunkIdx < chunks.length; ++chunkIdx) {
+            final Page[] chunk = chunks[chunkIdx];
+            if (chunk == null) continue;
+            final int firstPage = chunkIdx == chunkIdx(key) ? pageIdx(key) : 0;
+            for (int pageIdx = firstPage; pageIdx < PAGE_SIZE; ++pageIdx) {
+                final Page page = chunk[pageIdx];
+                if (page == null) continue;
+                final int pageStart = chunkIdx << CHUNK_SHIFT | pageIdx << PAGE_BITS;
+                final int slot = page.nextOccupied(pageStart < key ? key & PAGE_MASK : 0);
+                if (slot >= 0) return pageStart | slot;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    int previousKey(int key) {
+        if (key < 0 || chunks.length == 0) return -1;
+        if (chunkIdx(key) >= chunks.length) {
+            key = (chunks.length << CHUNK_SHIFT) - 1;
+        }
+        for (int chunkIdx = chunkIdx(key); chunkIdx >= 0; --chunkIdx) {
+            final Page[] chunk = chunks[chunkIdx];
+            if (chunk == null) continue;
+            final int lastPage = chunkIdx == chunkIdx(key) ? pageIdx(key) : PAGE_MASK;
+            for (int pageIdx = lastPage; pageIdx >= 0; --pageIdx) {
+                final Page page = chunk[pageIdx];
+                if (page == null) continue;
+                final int pageStart = chunkIdx << CHUNK_SHIFT | pageIdx << PAGE_BITS;
+                final int slot = page.previousOccupied(key - pageStart < PAGE_SIZE ? key & PAGE_MASK : PAGE_MASK);
+                if (slot >= 0) return pageStart | slot;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    int countKeys(int fromKey, int toKey) {
+        int count = 0;
+        for (int key = nextKey(fromKey); key >= 0 && key < toKey; ) {
+            final Page page = page(key);
+            final int pageStart = key & ~PAGE_MASK;
+            if (toKey - pageStart >= PAGE_SIZE && key == pageStart) {
+                //the whole page lies within the range
+                count += page.size;
+            } else {
+                count += page.countOccupied(key & PAGE_MASK, Math.min(toKey - pageStart, PAGE_SIZE));
+            }
+            key = pageStart + PAGE_SIZE < MAX_KEY ? nextKey(pageStart + PAGE_SIZE) : -1;
+        }
+        return count;
+    }
+
+    @Override
+    void clear(int fromKey, int toKey) {
+        boolean modified = false;
+        for (int key = nextKey(fromKey); key >= 0 && key < toKey; ) {
+            final Page page = page(key);
+            final int pageStart = key & ~PAGE_MASK;
+            final int before = page.size;
+            page.clear(key & PAGE_MASK, Math.min(toKey - pageStart, PAGE_SIZE));
+            size -= before - page.size;
+            modified = true;
+            releaseIfEmpty(page, key);
+            key = pageStart + PAGE_SIZE < MAX_KEY ? nextKey(pageStart + PAGE_SIZE) : -1;
+        }
+        if (modified) {
+            ++modCount;
+        }
+    }
+
+    @Override
+    public void forEachEntry(IntObjConsumer<? super V> action) {
+        Objects.requireNonNull(action);
+        final int expectedModCount = modCount;
+        for (int key = nextKey(0); key >= 0; ) {
+            //walk the page of key without going through the directory for every slot
+            final Page page = page(key);
+            final int pageStart = key & ~PAGE_MASK;
+            for (int slot = key & PAGE_MASK; slot >= 0;
+                 slot = slot + 1 < PAGE_SIZE ? page.nextOccupied(slot + 1) : -1) {
+                action.accept(pageStart | slot, page.valueAt(slot));
+                if (modCount != expectedModCount) {
+                    throw new ConcurrentModificationException();
+                }
+            }
+            key = pageStart + PAGE_SIZE < MAX_KEY ? nextKey(pageStart + PAGE_SIZE) : -1;
+        }
+    }
+
+    private void writeObject(java.io.ObjectOutputStream s) throws IOException {
+        s.defaultWriteObject();
+        for (int key = nextKey(0); key >= 0; key = nextAfter(key)) {
+            s.writeInt(key);
+            s.writeObject(get(key));
+        }
+        s.writeInt(-1);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void readObject(java.io.ObjectInputStream s) throws IOException, ClassNotFoundException {
+        s.defaultReadObject();
+        chunks = new Page[0][];
+        chunkPages = new int[0];
+        for (int key = s.readInt(); key >= 0; key = s.readInt()) {
+            put(key, (V) s.readObject());
+        }
+    }
+
+    //slots are key & PAGE_MASK, an occupancy bit per slot tells a null value apart from a missing key
+    private static final class Page {
+        private final Object[] values = new Object[PAGE_SIZE];
+        private final long[] occupied = new long[PAGE_WORDS];
+        private int size = 0;
+
+        @SuppressWarnings("unchecked")
+        private <V> V valueAt(int slot) {
+            return (V) values[slot];
+        }
+
+        private boolean isOccupied(int slot) {
+            return (occupied[slot >>> 6] & 1L << slot) != 0;
+        }
+
+        private void markOccupied(int slot) {
+            occupied[slot >>> 6] |= 1L << slot;
+            ++size;
+        }
+
+        private void markFree(int slot) {
+            occupied[slot >>> 6] &= ~(1L << slot);
+            --size;
+        }
+
+        //first occupied slot >= slot or -1
+        private int nextOccupied(int slot) {
+            int wordIdx = slot >>> 6;
+            long word = occupied[wordIdx] & (-1L << slot);
+            while (word == 0) {
+                if (++wordIdx == PAGE_WORDS) return -1;
+                word = occupied[wordIdx];
+            }
+            return (wordIdx << 6) + Long.numberOfTrailingZeros(word);
+        }
+
+        //last occupied slot <= slot or -1
+        private int previousOccupied(int slot) {
+            int wordIdx = slot >>> 6;
+            long word = occupied[wordIdx] & (-1L >>> (63 - (slot & 63)));
+            while (word == 0) {
+                if (--wordIdx < 0) return -1;
+                word = occupied[wordIdx];
+            }
+            return (wordIdx << 6) + 63 - Long.numberOfLeadingZeros(word);
+        }
+
+        //number of occupied slots in [fromSlot, toSlot)
+        private int countOccupied(int fromSlot, int toSlot) {
+            int count = 0;
+            for (int slot = nextOccupied(fromSlot); slot >= 0 && slot < toSlot; ) {
+                final int wordIdx = slot >>> 6;
+                long word = occupied[wordIdx] & (-1L << slot);
+                if (toSlot < (wordIdx + 1) << 6) {
+                    word &= -1L >>> -toSlot;
+                }
+                count += Long.bitCount(word);
+                slot = wordIdx + 1 < PAGE_WORDS ? nextOccupied((wordIdx + 1) << 6) : -1;
+            }
+            return count;
+        }
+
+        private void clear(int fromSlot, int toSlot) {
+            for (int slot = nextOccupied(fromSlot); slot >= 0 && slot < toSlot; ) {
+                values[slot] = null;
+                markFree(slot);
+                slot = slot + 1 < PAGE_SIZE ? nextOccupied(slot + 1) : -1;
+            }
+        }
+    }
+}
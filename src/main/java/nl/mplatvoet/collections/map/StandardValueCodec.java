@@ -0,0 +1,63 @@
+package nl.mplatvoet.collections.map;
+
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.io.StreamCorruptedException;
+
+//a tag byte per value followed by its compact form, an enum so deserialization keeps the singleton
+enum StandardValueCodec implements ValueCodec<Object> {
+    INSTANCE;
+
+    private static final int NULL = 0;
+    private static final int INTEGER = 1;
+    private static final int LONG = 2;
+    private static final int DOUBLE = 3;
+    private static final int STRING = 4;
+    private static final int OBJECT = 5;
+    //writeUTF is limited to 65535 bytes, a char takes at most 3
+    private static final int MAX_UTF_LENGTH = 65535 / 3;
+
+    @Override
+    public void write(ObjectOutput out, Object value) throws IOException {
+        if (value == null) {
+            out.writeByte(NULL);
+        } else if (value.getClass() == Integer.class) {
+            out.writeByte(INTEGER);
+            VarInts.writeSigned(out, (Integer) value);
+        } else if (value.getClass() == Long.class) {
+            out.writeByte(LONG);
+            VarInts.writeSignedLong(out, (Long) value);
+        } else if (value.getClass() == Double.class) {
+            out.writeByte(DOUBLE);
+            out.writeDouble((Double) value);
+        } else if (value.getClass() == String.class && ((String) value).length() <= MAX_UTF_LENGTH) {
+            out.writeByte(STRING);
+            out.writeUTF((String) value);
+        } else {
+            out.writeByte(OBJECT);
+            out.writeObject(value);
+        }
+    }
+
+    @Override
+    public Object read(ObjectInput in) throws IOException, ClassNotFoundException {
+        final int tag = in.readByte();
+        switch (tag) {
+            case NULL:
+                return null;
+            case INTEGER:
+                return VarInts.readSigned(in);
+            case LONG:
+                return VarInts.readSignedLong(in);
+            case DOUBLE:
+                return in.readDouble();
+            case STRING:
+                return in.readUTF();
+            case OBJECT:
+                return in.readObject();
+            default:
+                throw new StreamCorruptedException("unknown value tag: " + tag);
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package nl.mplatvoet.collections.map;
+
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.io.Serializable;
+
+/**
+ * Writes the values of a map when it is serialized. The array maps write their keys as a block of delta encoded
+ * varints and hand every value to their codec, so a codec only needs to care about the values.
+ * <p>
+ * The codec is serialized along with the map, so it has to be {@link Serializable} itself.
+ */
+public interface ValueCodec<V> extends Serializable {
+
+    void write(ObjectOutput out, V value) throws IOException;
+
+    V read(ObjectInput in) throws IOException, ClassNotFoundException;
+
+    /**
+     * @return the codec the maps use by default. It writes Integers and Longs as varints and Doubles and Strings
+     * without object stream overhead, anything else goes through {@link ObjectOutput#writeObject(Object)}
+     */
+    @SuppressWarnings("unchecked")
+    static <V> ValueCodec<V> standard() {
+        return (ValueCodec<V>) StandardValueCodec.INSTANCE;
+    }
+}
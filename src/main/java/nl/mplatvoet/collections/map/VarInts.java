@@ -0,0 +1,69 @@
+package nl.mplatvoet.collections.map;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+
+/**
+ * LEB128 varints, 7 bits per byte with the high bit set on every byte but the last. Signed values are zigzag
+ * encoded first so small negative numbers stay small.
+ */
+final class VarInts {
+    private VarInts() {
+    }
+
+    static void write(DataOutput out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte(value & 0x7F | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    static int read(DataInput in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            final int b = in.readByte();
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) return value;
+        }
+        throw new StreamCorruptedException("varint too long");
+    }
+
+    static void writeLong(DataOutput out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) value & 0x7F | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    static long readLong(DataInput in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            final int b = in.readByte();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) return value;
+        }
+        throw new StreamCorruptedException("varint too long");
+    }
+
+    static void writeSigned(DataOutput out, int value) throws IOException {
+        write(out, value << 1 ^ value >> 31);
+    }
+
+    static int readSigned(DataInput in) throws IOException {
+        final int value = read(in);
+        return value >>> 1 ^ -(value & 1);
+    }
+
+    static void writeSignedLong(DataOutput out, long value) throws IOException {
+        writeLong(out, value << 1 ^ value >> 63);
+    }
+
+    static long readSignedLong(DataInput in) throws IOException {
+        final long value = readLong(in);
+        return value >>> 1 ^ -(value & 1);
+    }
+}
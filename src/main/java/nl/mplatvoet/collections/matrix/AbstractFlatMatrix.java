@@ -0,0 +1,322 @@
+package nl.mplatvoet.collections.matrix;
+
+
+import nl.mplatvoet.collections.matrix.fn.CellMapFunction;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import static nl.mplatvoet.collections.matrix.args.Arguments.checkArgument;
+import static nl.mplatvoet.collections.matrix.args.Arguments.checkIndex;
+
+/**
+ * Fixed size matrix keeping its values in a single primitive array of the subclass, in row major order. A bit per
+ * cell tells a blank cell apart from a cell holding {@code 0}. Rows, columns and cells are views created on demand.
+ */
+abstract class AbstractFlatMatrix<T> implements Matrix<T> {
+    private final int rowSize;
+    private final int columnSize;
+    private final long[] present;
+
+    AbstractFlatMatrix(int rows, int columns) {
+        checkArgument(rows < 0, "rows must be >= 0 but was %s", rows);
+        checkArgument(columns < 0, "columns must be >= 0 but was %s", columns);
+        checkArgument((long) rows * columns > Integer.MAX_VALUE - 8,
+                "rows[%s] * columns[%s] exceeds the maximum array size", rows, columns);
+        this.rowSize = rows;
+        this.columnSize = columns;
+        this.present = new long[(int) (((long) rows * columns + 63) >>> 6)];
+    }
+
+    //boxed value of the flat index
+    abstract T valueAt(int idx);
+
+    abstract void setValue(int idx, T value);
+
+    //resets the flat index to 0, so a blank cell reads as 0 through the primitive accessors
+    abstract void clearValue(int idx);
+
+    final int index(int row, int column) {
+        checkIndex(row < 0 || row >= rowSize, "row[%s] must be >= 0 and < %s", row, rowSize);
+        checkIndex(column < 0 || column >= columnSize, "column[%s] must be >= 0 and < %s", column, columnSize);
+        return row * columnSize + column;
+    }
+
+    final boolean isPresent(int idx) {
+        return (present[idx >>> 6] & 1L << idx) != 0;
+    }
+
+    final void markPresent(int idx) {
+        present[idx >>> 6] |= 1L << idx;
+    }
+
+    public boolean isBlank(int row, int column) {
+        return !isPresent(index(row, column));
+    }
+
+    /**
+     * Stores the value, {@code null} blanks the cell.
+     *
+     * @return the previous value or {@code null} if the cell was blank
+     */
+    public T put(int row, int column, T value) {
+        final int idx = index(row, column);
+        final T previous = isPresent(idx) ? valueAt(idx) : null;
+        if (value == null) {
+            clearValue(idx);
+            present[idx >>> 6] &= ~(1L << idx);
+        } else {
+            setValue(idx, value);
+            markPresent(idx);
+        }
+        return previous;
+    }
+
+    public void clear(int row, int column) {
+        put(row, column, null);
+    }
+
+    @Override
+    public T get(int row, int column) {
+        final int idx = index(row, column);
+        return isPresent(idx) ? valueAt(idx) : null;
+    }
+
+    @Override
+    public MatrixCell<T> getCell(int row, int column) {
+        index(row, column);
+        return new FlatCell(row, column);
+    }
+
+    @Override
+    public Row<T> getRow(int row) {
+        checkIndex(row < 0 || row >= rowSize, "row[%s] must be >= 0 and < %s", row, rowSize);
+        return new FlatRow(row);
+    }
+
+    @Override
+    public Column<T> getColumn(int column) {
+        checkIndex(column < 0 || column >= columnSize, "column[%s] must be >= 0 and < %s", column, columnSize);
+        return new FlatColumn(column);
+    }
+
+    @Override
+    public Iterable<Row<T>> rows() {
+        return () -> new IndexIterator<Row<T>>(rowSize) {
+            @Override
+            Row<T> get(int idx) {
+                return new FlatRow(idx);
+            }
+        };
+    }
+
+    @Override
+    public Iterable<Column<T>> columns() {
+        return () -> new IndexIterator<Column<T>>(columnSize) {
+            @Override
+            Column<T> get(int idx) {
+                return new FlatColumn(idx);
+            }
+        };
+    }
+
+    @Override
+    public Matrix<T> map() {
+        return ImmutableMatrix.copyOf(this);
+    }
+
+    @Override
+    public <R> Matrix<R> map(CellMapFunction<T, R> map) {
+        return ImmutableMatrix.copyOf(this, map);
+    }
+
+    @Override
+    public Matrix<T> map(Range range) {
+        return ImmutableMatrix.copyOf(this, range);
+    }
+
+    @Override
+    public <R> Matrix<R> map(Range range, CellMapFunction<T, R> map) {
+        return ImmutableMatrix.copyOf(this, range, map);
+    }
+
+    @Override
+    public int getRowSize() {
+        return rowSize;
+    }
+
+    @Override
+    public int getColumnSize() {
+        return columnSize;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        return obj instanceof Matrix && Matrices.equals(this, (Matrix<?>) obj);
+    }
+
+    @Override
+    public int hashCode() {
+        return Matrices.hashCode(this);
+    }
+
+    @Override
+    public String toString() {
+        return Matrices.toString(this);
+    }
+
+    private final class FlatCell implements MatrixCell<T> {
+        private final int row;
+        private final int column;
+
+        private FlatCell(int row, int column) {
+            this.row = row;
+            this.column = column;
+        }
+
+        @Override
+        public Matrix<T> getMatrix() {
+            return AbstractFlatMatrix.this;
+        }
+
+        @Override
+        public Row<T> getRow() {
+            return new FlatRow(row);
+        }
+
+        @Override
+        public Column<T> getColumn() {
+            return new FlatColumn(column);
+        }
+
+        @Override
+        public T getValue() {
+            return get(row, column);
+        }
+
+        @Override
+        public int getColumnIndex() {
+            return column;
+        }
+
+        @Override
+        public int getRowIndex() {
+            return row;
+        }
+
+        @Override
+        public boolean isBlank() {
+            return AbstractFlatMatrix.this.isBlank(row, column);
+        }
+    }
+
+    private abstract class FlatLine implements Line<T> {
+        private final int length;
+
+        private FlatLine(int length) {
+            this.length = length;
+        }
+
+        @Override
+        public Matrix<T> getMatrix() {
+            return AbstractFlatMatrix.this;
+        }
+
+        @Override
+        public Iterable<MatrixCell<T>> cells() {
+            return () -> new IndexIterator<MatrixCell<T>>(length) {
+                @Override
+                MatrixCell<T> get(int idx) {
+                    return getCell(idx);
+                }
+            };
+        }
+
+        @Override
+        public Iterator<T> iterator() {
+            return new IndexIterator<T>(length) {
+                @Override
+                T get(int idx) {
+                    return FlatLine.this.get(idx);
+                }
+            };
+        }
+    }
+
+    private final class FlatRow extends FlatLine implements Row<T> {
+        private final int row;
+
+        private FlatRow(int row) {
+            super(columnSize);
+            this.row = row;
+        }
+
+        @Override
+        public int getRowIndex() {
+            return row;
+        }
+
+        @Override
+        public T get(int idx) {
+            return AbstractFlatMatrix.this.get(row, idx);
+        }
+
+        @Override
+        public MatrixCell<T> getCell(int idx) {
+            return AbstractFlatMatrix.this.getCell(row, idx);
+        }
+    }
+
+    private final class FlatColumn extends FlatLine implements Column<T> {
+        private final int column;
+
+        private FlatColumn(int column) {
+            super(rowSize);
+            this.column = column;
+        }
+
+        @Override
+        public int getColumnIndex() {
+            return column;
+        }
+
+        @Override
+        public T get(int idx) {
+            return AbstractFlatMatrix.this.get(idx, column);
+        }
+
+        @Override
+        public MatrixCell<T> getCell(int idx) {
+            return AbstractFlatMatrix.this.getCell(idx, column);
+        }
+    }
+
+    private static abstract class IndexIterator<E> implements Iterator<E> {
+        private final int length;
+        private int index = -1;
+
+        private IndexIterator(int length) {
+            this.length = length;
+        }
+
+        abstract E get(int idx);
+
+        @Override
+        public boolean hasNext() {
+            return index + 1 < length;
+        }
+
+        @Override
+        public E next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return get(++index);
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
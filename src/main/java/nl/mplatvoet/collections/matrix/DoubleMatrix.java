@@ -0,0 +1,69 @@
+package nl.mplatvoet.collections.matrix;
+
+
+import static nl.mplatvoet.collections.matrix.args.Arguments.checkArgument;
+
+/**
+ * Fixed size matrix of primitive doubles in a single flat array. The primitive accessors never box, blank cells read as
+ * {@code 0}. As a {@code Matrix<Double>} blank cells read as {@code null}.
+ */
+public final class DoubleMatrix extends AbstractFlatMatrix<Double> {
+    private final double[] values;
+
+    private DoubleMatrix(int rows, int columns) {
+        super(rows, columns);
+        values = new double[rows * columns];
+    }
+
+    public static DoubleMatrix of(int rows, int columns) {
+        return new DoubleMatrix(rows, columns);
+    }
+
+    /**
+     * Rows shorter than the longest row are padded with blank cells.
+     */
+    public static DoubleMatrix copyOf(double[][] source) {
+        checkArgument(source == null, "source cannot be null");
+        int columns = 0;
+        for (double[] row : source) {
+            columns = Math.max(columns, row.length);
+        }
+        final DoubleMatrix matrix = new DoubleMatrix(source.length, columns);
+        for (int r = 0; r < source.length; ++r) {
+            for (int c = 0; c < source[r].length; ++c) {
+                matrix.putDouble(r, c, source[r][c]);
+            }
+        }
+        return matrix;
+    }
+
+    public double getDouble(int row, int column) {
+        return values[index(row, column)];
+    }
+
+    /**
+     * @return the previous value or {@code 0} if the cell was blank
+     */
+    public double putDouble(int row, int column, double value) {
+        final int idx = index(row, column);
+        final double previous = values[idx];
+        values[idx] = value;
+        markPresent(idx);
+        return previous;
+    }
+
+    @Override
+    Double valueAt(int idx) {
+        return values[idx];
+    }
+
+    @Override
+    void setValue(int idx, Double value) {
+        values[idx] = value;
+    }
+
+    @Override
+    void clearValue(int idx) {
+        values[idx] = 0;
+    }
+}
@@ -0,0 +1,69 @@
+package nl.mplatvoet.collections.matrix;
+
+
+import static nl.mplatvoet.collections.matrix.args.Arguments.checkArgument;
+
+/**
+ * Fixed size matrix of primitive ints in a single flat array. The primitive accessors never box, blank cells read as
+ * {@code 0}. As a {@code Matrix<Integer>} blank cells read as {@code null}.
+ */
+public final class IntMatrix extends AbstractFlatMatrix<Integer> {
+    private final int[] values;
+
+    private IntMatrix(int rows, int columns) {
+        super(rows, columns);
+        values = new int[rows * columns];
+    }
+
+    public static IntMatrix of(int rows, int columns) {
+        return new IntMatrix(rows, columns);
+    }
+
+    /**
+     * Rows shorter than the longest row are padded with blank cells.
+     */
+    public static IntMatrix copyOf(int[][] source) {
+        checkArgument(source == null, "source cannot be null");
+        int columns = 0;
+        for (int[] row : source) {
+            columns = Math.max(columns, row.length);
+        }
+        final IntMatrix matrix = new IntMatrix(source.length, columns);
+        for (int r = 0; r < source.length; ++r) {
+            for (int c = 0; c < source[r].length; ++c) {
+                matrix.putInt(r, c, source[r][c]);
+            }
+        }
+        return matrix;
+    }
+
+    public int getInt(int row, int column) {
+        return values[index(row, column)];
+    }
+
+    /**
+     * @return the previous value or {@code 0} if the cell was blank
+     */
+    public int putInt(int row, int column, int value) {
+        final int idx = index(row, column);
+        final int previous = values[idx];
+        values[idx] = value;
+        markPresent(idx);
+        return previous;
+    }
+
+    @Override
+    Integer valueAt(int idx) {
+        return values[idx];
+    }
+
+    @Override
+    void setValue(int idx, Integer value) {
+        values[idx] = value;
+    }
+
+    @Override
+    void clearValue(int idx) {
+        values[idx] = 0;
+    }
+}
@@ -0,0 +1,69 @@
+package nl.mplatvoet.collections.matrix;
+
+
+import static nl.mplatvoet.collections.matrix.args.Arguments.checkArgument;
+
+/**
+ * Fixed size matrix of primitive longs in a single flat array. The primitive accessors never box, blank cells read as
+ * {@code 0}. As a {@code Matrix<Long>} blank cells read as {@code null}.
+ */
+public final class LongMatrix extends AbstractFlatMatrix<Long> {
+    private final long[] values;
+
+    private LongMatrix(int rows, int columns) {
+        super(rows, columns);
+        values = new long[rows * columns];
+    }
+
+    public static LongMatrix of(int rows, int columns) {
+        return new LongMatrix(rows, columns);
+    }
+
+    /**
+     * Rows shorter than the longest row are padded with blank cells.
+     */
+    public static LongMatrix copyOf(long[][] source) {
+        checkArgument(source == null, "source cannot be null");
+        int columns = 0;
+        for (long[] row : source) {
+            columns = Math.max(columns, row.length);
+        }
+        final LongMatrix matrix = new LongMatrix(source.length, columns);
+        for (int r = 0; r < source.length; ++r) {
+            for (int c = 0; c < source[r].length; ++c) {
+                matrix.putLong(r, c, source[r][c]);
+            }
+        }
+        return matrix;
+    }
+
+    public long getLong(int row, int column) {
+        return values[index(row, column)];
+    }
+
+    /**
+     * @return the previous value or {@code 0} if the cell was blank
+     */
+    public long putLong(int row, int column, long value) {
+        final int idx = index(row, column);
+        final long previous = values[idx];
+        values[idx] = value;
+        markPresent(idx);
+        return previous;
+    }
+
+    @Override
+    Long valueAt(int idx) {
+        return values[idx];
+    }
+
+    @Override
+    void setValue(int idx, Long value) {
+        values[idx] = value;
+    }
+
+    @Override
+    void clearValue(int idx) {
+        values[idx] = 0;
+    }
+}
@@ -31,6 +31,30 @@ public final class Matrices {
         return ImmutableMatrix.of(rows, columns, fill);
     }
 
+    public static DoubleMatrix doubleOf(int rows, int columns) {
+        return DoubleMatrix.of(rows, columns);
+    }
+
+    public static DoubleMatrix doubleOf(double[][] source) {
+        return DoubleMatrix.copyOf(source);
+    }
+
+    public static LongMatrix longOf(int rows, int columns) {
+        return LongMatrix.of(rows, columns);
+    }
+
+    public static LongMatrix longOf(long[][] source) {
+        return LongMatrix.copyOf(source);
+    }
+
+    public static IntMatrix intOf(int rows, int columns) {
+        return IntMatrix.of(rows, columns);
+    }
+
+    public static IntMatrix intOf(int[][] source) {
+        return IntMatrix.copyOf(source);
+    }
+
     public static <T, C extends Iterable<T>, R extends Iterable<C>> MutableMatrix<T> copyOf(R source) {
         checkArgument(source == null, "source cannot be null");
 
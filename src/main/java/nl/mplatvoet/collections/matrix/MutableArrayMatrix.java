@@ -1,12 +1,16 @@
 package nl.mplatvoet.collections.matrix;
 
 
+import nl.mplatvoet.collections.map.AdaptiveIntKeyMap;
 import nl.mplatvoet.collections.map.CompactArrayMap;
+import nl.mplatvoet.collections.map.IntKeyCursor;
 import nl.mplatvoet.collections.map.IntKeyMap;
 import nl.mplatvoet.collections.matrix.fn.CellMapFunction;
 import nl.mplatvoet.collections.matrix.fn.DetachedCell;
 import nl.mplatvoet.collections.matrix.fn.Functions;
 
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Iterator;
 import java.util.NoSuchElementException;
 
@@ -22,6 +26,15 @@ public class MutableArrayMatrix<T> implements MutableMatrix<T> {
     private MutableColumnsIterable<T> mutableColumnsIterable = null;
     private int maxRowIndex = -1;
     private int maxColumnIndex = -1;
+    //the rows map is the row permutation, the row objects stay put while their index changes, so inserting or
+    //deleting a row renumbers the rows behind it. Columns keep their values in the row maps under a physical slot.
+    //Until the first structural column edit the slot is the column index itself and this is null, after that it
+    //holds the slot of every column up to maxColumnIndex so inserting, deleting and swapping columns only rewrites
+    //this vector. A deleted column leaves its values behind under an orphaned slot, consolidateColumns and compact
+    //renumber the slots and drop those, deleteColumn does so once the orphaned slots outnumber the columns
+    private int[] columnSlots = null;
+    //first slot that has never been handed out, only used while columnSlots is in use
+    private int nextColumnSlot = 0;
 
 
     private MutableArrayMatrix(T[][] source) {
@@ -203,19 +216,14 @@ public class MutableArrayMatrix<T> implements MutableMatrix<T> {
     }
 
     private void putAllIndexMatrix(MutableArrayMatrix<? extends T> matrix, int rowOffset, int columnOffset) {
-        final IntKeyMap<? extends IndexRow<? extends T>> rows = matrix.rows;
-        for (int r = 0, rowLength = rows.size(); r < rowLength; ++r) {
-            final IndexRow<? extends T> row = rows.get(r);
-            if (row == null) continue;
-
-            final IntKeyMap<? extends IndexMatrixCell<? extends T>> cells = row.cells;
-            for (int c = 0, colLength = cells.size(); c < colLength; ++c) {
-                final IndexMatrixCell<? extends T> cell = cells.get(c);
-                if (cell != null && !cell.isBlank()) {
-                    put(r + rowOffset, c + columnOffset, cell.getValue());
-                }
+        //only the stored values are visited, blank cells are not in the row maps
+        final int[] columnBySlot = matrix.columnIndexBySlot();
+        matrix.rows.forEachEntry((r, row) -> row.cells.forEachEntry((slot, value) -> {
+            final int columnIdx = columnIndex(columnBySlot, slot);
+            if (columnIdx >= 0) {
+                put(r + rowOffset, columnIdx + columnOffset, value);
             }
-        }
+        }));
     }
 
     @Override
@@ -223,9 +231,8 @@ public class MutableArrayMatrix<T> implements MutableMatrix<T> {
         checkIndex(row < 0, "row must be >= 0, but was %s", row);
 
         if (row <= maxRowIndex) {
-            for (int idx = maxRowIndex; idx >= row; --idx) {
-                moveRow(idx, idx + 1);
-            }
+            shiftRows(row, 1);
+            ++maxRowIndex;
         }
         maxRowIndex = Math.max(maxRowIndex, row);
         return getRow(row);
@@ -243,11 +250,15 @@ public class MutableArrayMatrix<T> implements MutableMatrix<T> {
         checkIndex(column < 0, "column must be >= 0, but was %s", column);
 
         if (column <= maxColumnIndex) {
-            for (int idx = maxColumnIndex; idx >= column; --idx) {
-                moveColumn(idx, idx + 1);
-            }
-        }
-        maxColumnIndex = Math.max(maxColumnIndex, column);
+            //a fresh slot is blank in every row, no row is touched
+            permuteColumns();
+            ensureColumnSlots(maxColumnIndex + 2);
+            System.arraycopy(columnSlots, column, columnSlots, column + 1, maxColumnIndex + 1 - column);
+            columnSlots[column] = nextColumnSlot++;
+            shiftColumns(column, 1);
+            ++maxColumnIndex;
+        }
+        growColumns(column);
         return getColumn(column);
     }
 
@@ -262,9 +273,7 @@ public class MutableArrayMatrix<T> implements MutableMatrix<T> {
         checkIndex(row < 0 || row > maxRowIndex, "row must be >= 0 and <= %s, but was %s", maxRowIndex, row);
 
         evictRow(row);
-        for (int idx = row + 1; idx <= maxRowIndex; ++idx) {
-            moveRow(idx, idx - 1);
-        }
+        shiftRows(row + 1, -1);
         --maxRowIndex;
     }
 
@@ -288,10 +297,17 @@ public class MutableArrayMatrix<T> implements MutableMatrix<T> {
         checkIndex(column < 0 || column > maxColumnIndex, "column must be >= 0 and <= %s, but was %s", maxColumnIndex, column);
 
         evictColumn(column);
-        for (int idx = column + 1; idx <= maxColumnIndex; ++idx) {
-            moveColumn(idx, idx - 1);
-        }
+        //no row is touched, the values of the column stay behind under a slot no column refers to anymore. Walks
+        //over the stored values skip such orphaned slots and renumbering the slots drops them
+        permuteColumns();
+        System.arraycopy(columnSlots, column + 1, columnSlots, column, maxColumnIndex - column);
+        shiftColumns(column + 1, -1);
         --maxColumnIndex;
+        //once orphaned slots outnumber the columns they are dropped, a pass over all values per as many deletes as
+        //there are columns keeps deleting amortized O(1) and the storage bounded
+        if (nextColumnSlot > 2 * (maxColumnIndex + 1)) {
+            renumberColumnSlots();
+        }
     }
 
     @Override
@@ -328,12 +344,12 @@ public class MutableArrayMatrix<T> implements MutableMatrix<T> {
         rows.remove(secondRow);
 
         if (first != null) {
-            updateRowIndices(first, secondRow);
+            first.rowIndex = secondRow;
             rows.put(secondRow, first);
         }
 
         if (second != null) {
-            updateRowIndices(second, firstRow);
+            second.rowIndex = firstRow;
             rows.put(firstRow, second);
         }
     }
@@ -368,151 +384,202 @@ public class MutableArrayMatrix<T> implements MutableMatrix<T> {
             second.columnIndex = firstColumn;
             columns.put(firstColumn, second);
         }
-        for (int r = 0, rowLength = rows.size(); r < rowLength; ++r) {
-            final IndexRow<T> row = rows.get(r);
-            if (row == null) continue;
 
-            IndexMatrixCell<T> firstCell = row.cells.get(firstColumn);
-            IndexMatrixCell<T> secondCell = row.cells.get(secondColumn);
-            row.cells.remove(firstColumn);
-            row.cells.remove(secondColumn);
+        permuteColumns();
+        final int slot = columnSlots[firstColumn];
+        columnSlots[firstColumn] = columnSlots[secondColumn];
+        columnSlots[secondColumn] = slot;
+    }
 
-            if (firstCell != null) {
-                firstCell.columnIndex = secondColumn;
-                row.cells.put(secondColumn, firstCell);
-            }
+    //moves all rows from fromIdx onwards by delta, target rows must have been evicted. Cells find their position
+    //through their row, so this doesn't touch any cell
+    private void shiftRows(int fromIdx, int delta) {
+        rows.shiftKeys(fromIdx, delta);
+        rows.tailMap(fromIdx + delta).forEachEntry((rowIdx, row) -> row.rowIndex = rowIdx);
+    }
 
-            if (secondCell != null) {
-                secondCell.columnIndex = firstColumn;
-                row.cells.put(firstColumn, secondCell);
+    //moves all column objects from fromIdx onwards by delta, target columns must have been evicted. The values stay
+    //in their slots
+    private void shiftColumns(int fromIdx, int delta) {
+        columns.shiftKeys(fromIdx, delta);
+        columns.tailMap(fromIdx + delta).forEachEntry((columnIdx, column) -> column.columnIndex = columnIdx);
+    }
+
+    //switches from slot == column index to the slot vector
+    private void permuteColumns() {
+        if (columnSlots != null) return;
+        columnSlots = new int[Math.max(maxColumnIndex + 1, 8)];
+        for (int columnIdx = 0; columnIdx <= maxColumnIndex; ++columnIdx) {
+            columnSlots[columnIdx] = columnIdx;
+        }
+        nextColumnSlot = maxColumnIndex + 1;
+    }
+
+    private void ensureColumnSlots(int length) {
+        if (columnSlots.length < length) {
+            columnSlots = Arrays.copyOf(columnSlots, Math.max(length, columnSlots.length + (columnSlots.length >> 1)));
+        }
+    }
+
+    //raises maxColumnIndex to column, new columns get fresh slots
+    private void growColumns(int column) {
+        if (column <= maxColumnIndex) return;
+        if (columnSlots != null) {
+            ensureColumnSlots(column + 1);
+            for (int columnIdx = maxColumnIndex + 1; columnIdx <= column; ++columnIdx) {
+                columnSlots[columnIdx] = nextColumnSlot++;
             }
         }
+        maxColumnIndex = column;
     }
 
-    //expects fromIdx to be within bounds
-    private void moveRow(int fromIdx, int toIdx) {
-        maxRowIndex = Math.max(maxRowIndex, toIdx);
-        evictRow(toIdx);
+    //unchecked, column must be <= maxColumnIndex
+    private int columnSlot(int column) {
+        return columnSlots == null ? column : columnSlots[column];
+    }
 
-        IndexRow<T> row = rows.get(fromIdx);
-        if (row != null) {
-            updateRowIndices(row, toIdx);
-            rows.put(toIdx, row);
+    //inverse of columnSlots, -1 for unused slots, or null if every slot is its column index
+    private int[] columnIndexBySlot() {
+        if (columnSlots == null) return null;
+        final int[] columnBySlot = new int[nextColumnSlot];
+        Arrays.fill(columnBySlot, -1);
+        for (int columnIdx = 0; columnIdx <= maxColumnIndex; ++columnIdx) {
+            columnBySlot[columnSlots[columnIdx]] = columnIdx;
         }
+        return columnBySlot;
+    }
 
-        rows.remove(fromIdx);
+    private static int columnIndex(int[] columnBySlot, int slot) {
+        return columnBySlot == null ? slot : columnBySlot[slot];
     }
 
-    //expects fromIdx to be within bounds
-    private void moveColumn(int fromIdx, int toIdx) {
-        maxColumnIndex = Math.max(maxColumnIndex, toIdx);
-        evictColumn(toIdx);
+    //the physical compaction, moves the values of every row from their slot to target[column] in a single pass per
+    //row and drops the ones with a negative target or an orphaned slot. The slot of a column is its index afterwards
+    private void renumberColumns(int[] target) {
+        final int[] columnBySlot = columnIndexBySlot();
+        rows.forEachEntry((rowIdx, row) -> {
+            final IntKeyMap<T> cells = row.cells;
+            if (cells.isEmpty()) return;
 
-        IndexColumn<T> column = columns.get(fromIdx);
-        if (column != null) {
-            column.columnIndex = toIdx;
-            columns.put(toIdx, column);
-            columns.remove(fromIdx);
-        }
-        for (int r = 0, rowLength = rows.size(); r < rowLength; ++r) {
-            final IndexRow<T> row = rows.get(r);
-            if (row == null) continue;
-            IndexMatrixCell<T> cell = row.cells.get(fromIdx);
-            if (cell != null) {
-                cell.columnIndex = toIdx;
-                row.cells.put(toIdx, cell);
-                row.cells.remove(fromIdx);
+            final int[] slots = new int[cells.size()];
+            final Object[] values = new Object[slots.length];
+            final int[] count = {0};
+            cells.forEachEntry((slot, value) -> {
+                slots[count[0]] = slot;
+                values[count[0]++] = value;
+            });
+            cells.clear();
+            for (int i = 0; i < slots.length; ++i) {
+                final int column = columnIndex(columnBySlot, slots[i]);
+                final int columnIdx = column >= 0 ? target[column] : -1;
+                if (columnIdx >= 0) {
+                    @SuppressWarnings("unchecked")
+                    final T value = (T) values[i];
+                    cells.put(columnIdx, value);
+                }
             }
+        });
+        columnSlots = null;
+        nextColumnSlot = 0;
+    }
+
+    //lays the values out in column order again and drops the orphaned slots, the slot of every column is its index
+    private void renumberColumnSlots() {
+        final int[] target = new int[maxColumnIndex + 1];
+        for (int columnIdx = 0; columnIdx < target.length; ++columnIdx) {
+            target[columnIdx] = columnIdx;
         }
+        renumberColumns(target);
+        columns.forEachEntry((columnIdx, column) -> column.slot = columnIdx);
+    }
 
+    //slots handed out to columns, orphaned ones included
+    int columnSlotCount() {
+        return columnSlots == null ? maxColumnIndex + 1 : nextColumnSlot;
     }
 
     @Override
     public void consolidateRows() {
+        //the remaining rows are collected in order, the row map is rebuilt in one go instead of moving row by row
+        final int[] columnBySlot = columnIndexBySlot();
+        final int[] keys = new int[rows.size()];
+        @SuppressWarnings("unchecked")
+        final IndexRow<T>[] kept = (IndexRow<T>[]) new IndexRow[keys.length];
         int targetIdx = 0;
-        int removed = 0;
-        for (int rowIdx = 0; rowIdx <= maxRowIndex; ++rowIdx) {
-            final IndexRow<T> row = rows.get(rowIdx);
-            if (row == null) {
-                ++removed;
-            } else if (isBlankRow(row)) {
-                ++removed;
-                evictRow(rowIdx);
+        final IntKeyCursor<IndexRow<T>> cursor = rows.cursor();
+        while (cursor.advance()) {
+            final IndexRow<T> row = cursor.value();
+            if (isBlankRow(row, columnBySlot)) {
+                row.delete();
             } else {
-                if (rowIdx != targetIdx) {
-                    updateRowIndices(row, targetIdx);
-                    rows.remove(rowIdx);
-                    rows.put(targetIdx, row);
-                }
-                ++targetIdx;
+                row.rowIndex = targetIdx;
+                keys[targetIdx] = targetIdx;
+                kept[targetIdx++] = row;
             }
         }
 
-        maxRowIndex -= removed;
+        rows = CompactArrayMap.ofSorted(Arrays.copyOf(keys, targetIdx), Arrays.copyOf(kept, targetIdx));
+        maxRowIndex = targetIdx - 1;
     }
 
     @Override
     public void consolidateColumns() {
-        int targetIdx = 0;
-        int removed = 0;
-        for (int columnIdx = 0; columnIdx <= maxColumnIndex; ++columnIdx) {
-            if (isBlankColumn(columnIdx)) {
-                evictColumn(columnIdx);
-                ++removed;
-            } else {
-                if (targetIdx != columnIdx) {
-                    IndexColumn<T> column = columns.remove(columnIdx);
-                    if (column != null) {
-                        column.columnIndex = targetIdx;
-                        columns.put(targetIdx, column);
-                    }
-                    for (IndexRow<T> row : rows.values()) {
-                        IndexMatrixCell<T> cell = row.cells.remove(columnIdx);
-                        if (cell != null) {
-                            cell.columnIndex = targetIdx;
-                            row.cells.put(targetIdx, cell);
-                        }
-                    }
-                }
-                ++targetIdx;
+        //a single pass over all stored values finds the used columns, they are renumbered in one pass per row
+        final int[] columnBySlot = columnIndexBySlot();
+        final BitSet used = new BitSet(maxColumnIndex + 1);
+        rows.forEachEntry((rowIdx, row) -> row.cells.forEachEntry((slot, value) -> {
+            final int columnIdx = columnIndex(columnBySlot, slot);
+            if (columnIdx >= 0) {
+                used.set(columnIdx);
             }
+        }));
+
+        final int[] target = new int[maxColumnIndex + 1];
+        Arrays.fill(target, -1);
+        int targetIdx = 0;
+        for (int columnIdx = used.nextSetBit(0); columnIdx >= 0; columnIdx = used.nextSetBit(columnIdx + 1)) {
+            target[columnIdx] = targetIdx++;
         }
+        renumberColumns(target);
 
-        maxColumnIndex -= removed;
+        final int[] keys = new int[columns.size()];
+        @SuppressWarnings("unchecked")
+        final IndexColumn<T>[] kept = (IndexColumn<T>[]) new IndexColumn[keys.length];
+        final int[] count = {0};
+        columns.forEachEntry((columnIdx, column) -> {
+            if (target[columnIdx] < 0) {
+                column.delete();
+            } else {
+                column.columnIndex = column.slot = keys[count[0]] = target[columnIdx];
+                kept[count[0]++] = column;
+            }
+        });
+        columns = CompactArrayMap.ofSorted(Arrays.copyOf(keys, count[0]), Arrays.copyOf(kept, count[0]));
+        maxColumnIndex = targetIdx - 1;
     }
 
-
-    private boolean isBlankRow(IndexRow<T> row) {
-        if (row == null) return true;
-        final IntKeyMap<IndexMatrixCell<T>> cells = row.cells;
-        if (cells.isEmpty()) return true;
-
-        for (IndexMatrixCell<T> cell : cells.values()) {
-            if (!cell.isBlank()) return false;
+    @Override
+    public void compact() {
+        if (columnSlots != null) {
+            renumberColumnSlots();
         }
-        return true;
+        rows.trimToSize();
+        columns.trimToSize();
+        rows.forEachEntry((rowIdx, row) -> row.cells.trimToSize());
     }
 
-    private boolean isBlankColumn(int columnIdx) {
-        if (columnIdx > maxColumnIndex) return true;
 
-        for (IndexRow<T> row : rows.values()) {
-            final IndexMatrixCell<T> cell = row.cells.get(columnIdx);
-            if (cell != null && !cell.isBlank()) {
-                return false;
-            }
+    private static boolean isBlankRow(IndexRow<?> row, int[] columnBySlot) {
+        //blank cells are not stored, but values of deleted columns may linger under an orphaned slot
+        if (row == null || row.cells.isEmpty()) return true;
+        if (columnBySlot == null) return false;
+        final IntKeyCursor<?> cursor = row.cells.cursor();
+        while (cursor.advance()) {
+            if (columnBySlot[cursor.key()] >= 0) return false;
         }
         return true;
     }
 
-    //unchecked method, everything must be within bounds
-    private void updateRowIndices(IndexRow<T> row, int newIdx) {
-        row.rowIndex = newIdx;
-        for (IndexMatrixCell<T> cell : row.cells.values()) {
-            cell.rowIndex = newIdx;
-        }
-    }
-
     private void evictRow(int row) {
         IndexRow<T> r = rows.get(row);
         if (r != null) {
@@ -535,7 +602,43 @@ public class MutableArrayMatrix<T> implements MutableMatrix<T> {
 
     @Override
     public T get(int row, int column) {
-        return getCell(row, column).getValue();
+        checkIndex(row < 0, "row must be >= 0, but was %s", row);
+        checkIndex(column < 0, "column must be >= 0, but was %s", column);
+        //reading never creates a row, a blank position has none
+        final IndexRow<T> r = rows.get(row);
+        return r != null ? r.get(column) : null;
+    }
+
+    //same as get(row, column) for walks in row or column order, the fingers keep their lookups amortized O(1)
+    private T get(int row, int column, Finger<IndexRow<T>> rowFinger, Finger<T> cellFinger) {
+        checkIndex(row < 0, "row must be >= 0, but was %s", row);
+        checkIndex(column < 0, "column must be >= 0, but was %s", column);
+        final IndexRow<T> r = rowFinger.get(rows, row);
+        return r != null ? r.get(column, cellFinger) : null;
+    }
+
+    //unchecked, the read paths below don't create rows or columns
+    private boolean isBlank(int row, int column) {
+        final IndexRow<T> r = rows.get(row);
+        return r == null || column > maxColumnIndex || !r.cells.containsKey(columnSlot(column));
+    }
+
+    private void clearCell(int row, int column) {
+        final IndexRow<T> r = rows.get(row);
+        if (r != null && column <= maxColumnIndex) {
+            r.cells.remove(columnSlot(column));
+        }
+    }
+
+    //the existing row or a read only view of the blank one
+    private Row<T> readRow(int row) {
+        final IndexRow<T> r = rows.get(row);
+        return r != null ? r : new RowView<>(this, row);
+    }
+
+    private Column<T> readColumn(int column) {
+        final IndexColumn<T> c = columns.get(column);
+        return c != null ? c : new ColumnView<>(this, column);
     }
 
     @Override
@@ -551,21 +654,22 @@ public class MutableArrayMatrix<T> implements MutableMatrix<T> {
 
     @Override
     public MutableColumn<T> getColumn(int column) {
+        return indexColumn(column);
+    }
+
+    private IndexColumn<T> indexColumn(int column) {
         IndexColumn<T> c = columns.get(column);
         if (c == null) {
-            c = new IndexColumn<>(this, column);
+            growColumns(column);
+            c = new IndexColumn<>(this, column, columnSlot(column));
             columns.put(column, c);
-            maxColumnIndex = Math.max(columns.lastKey(), maxColumnIndex);
         }
         return c;
     }
 
     @Override
     public void clear() {
-        for (int r = 0, rowLength = rows.size(); r < rowLength; ++r) {
-            final IndexRow<T> row = rows.get(r);
-            row.clear();
-        }
+        rows.forEachEntry((rowIdx, row) -> row.clear());
     }
 
     @Override
@@ -648,26 +752,34 @@ public class MutableArrayMatrix<T> implements MutableMatrix<T> {
     private static final class IndexColumn<T> implements MutableColumn<T> {
         private final MutableArrayMatrix<T> matrix;
         private int columnIndex;
+        //key of the values of this column in the row maps
+        private int slot;
         private ColumnCellsIterable<T> cellsIterable = null;
         private MutableColumnCellsIterable<T> mutableCellsIterable = null;
 
         private boolean deleted = false;
 
 
-        private IndexColumn(MutableArrayMatrix<T> matrix, int columnIndex) {
+        private IndexColumn(MutableArrayMatrix<T> matrix, int columnIndex, int slot) {
             this.columnIndex = columnIndex;
+            this.slot = slot;
             this.matrix = matrix;
         }
 
         @Override
         public T get(int row) {
+            return get(row, null);
+        }
+
+        //a walk in row order passes its finger on the rows, a single lookup searches from scratch
+        private T get(int row, Finger<IndexRow<T>> rowFinger) {
             assertState();
             if (row < 0) {
                 throw new IndexOutOfBoundsException("Row must be >= 0, but was: " + row);
             }
             if (row > matrix.maxRowIndex) return null;
 
-            IndexRow<T> r = matrix.rows.get(row);
+            IndexRow<T> r = rowFinger != null ? rowFinger.get(matrix.rows, row) : matrix.rows.get(row);
             return r != null ? r.get(columnIndex) : null;
         }
 
@@ -736,31 +848,11 @@ public class MutableArrayMatrix<T> implements MutableMatrix<T> {
         @Override
         public void clear() {
             assertState();
-            for (int r = 0, rowLength = matrix.rows.size(); r < rowLength; ++r) {
-                final IndexRow<T> row = matrix.rows.get(r);
-
-                if (row == null) continue;
-                IndexMatrixCell<T> cell = row.cells.get(columnIndex);
-                if (cell != null) {
-                    cell.clear();
-                }
-            }
+            matrix.rows.forEachEntry((rowIdx, row) -> row.cells.remove(slot));
         }
 
+        //cells of this column see the flag and fail from now on, the values are dropped by the matrix
         private void delete() {
-            if (deleted) return;
-
-            for (int r = 0, rowLength = matrix.rows.size(); r < rowLength; ++r) {
-                final IndexRow<T> row = matrix.rows.get(r);
-                if (row == null) continue;
-
-                IndexMatrixCell<T> cell = row.cells.get(columnIndex);
-                if (cell != null) {
-                    cell.delete();
-                    row.cells.remove(columnIndex);
-                }
-            }
-
             deleted = true;
         }
 
@@ -773,7 +865,8 @@ public class MutableArrayMatrix<T> implements MutableMatrix<T> {
 
 
     private static final class IndexRow<T> implements MutableRow<T> {
-        private final IntKeyMap<IndexMatrixCell<T>> cells;
+        //the values by column, a blank cell has no key. Null is a value like any other
+        private final IntKeyMap<T> cells;
         private final MutableArrayMatrix<T> matrix;
         private int rowIndex;
 
@@ -786,7 +879,7 @@ public class MutableArrayMatrix<T> implements MutableMatrix<T> {
             this.matrix = matrix;
             this.rowIndex = rowIndex;
             //prevents excess array resizing
-            cells = new CompactArrayMap<>(matrix.maxRowIndex + 1);
+            cells = new AdaptiveIntKeyMap<>(matrix.maxRowIndex + 1);
         }
 
         @Override
@@ -803,20 +896,8 @@ public class MutableArrayMatrix<T> implements MutableMatrix<T> {
 
         public T put(int column, T value) {
             assertState();
-            T previous = null;
-            IndexMatrixCell<T> cell = cells.get(column);
-            if (cell == null) {
-                cell = new IndexMatrixCell<>(matrix, rowIndex, column);
-                cells.put(column, cell);
-            } else {
-                previous = cell.getValue();
-            }
-            cell.setValue(value);
-
-            if (matrix.maxColumnIndex < column) {
-                matrix.maxColumnIndex = column;
-            }
-            return previous;
+            matrix.growColumns(column);
+            return cells.put(matrix.columnSlot(column), value);
         }
 
         @Override
@@ -825,17 +906,18 @@ public class MutableArrayMatrix<T> implements MutableMatrix<T> {
             if (column < 0) {
                 throw new IndexOutOfBoundsException("Column must be >= 0, but was: " + column);
             }
-            IndexMatrixCell<T> cell = cells.get(column);
-            if (cell == null) {
-                cell = new IndexMatrixCell<>(matrix, rowIndex, column);
-                cells.put(column, cell);
-                matrix.maxColumnIndex = Math.max(cells.lastKey(), matrix.maxColumnIndex);
-            }
-            return cell;
+            //a view, it finds its value through its row and column so it follows both when they move
+            return new IndexMatrixCell<>(this, matrix.indexColumn(column));
         }
 
         @Override
         public T get(int column) {
+            return get(column, null);
+        }
+
+        //a walk in column order passes its finger on the cells, a single lookup searches from scratch. Permuted
+        //columns make the walk jump between slots, the finger is still correct then but no faster
+        private T get(int column, Finger<T> cellFinger) {
             assertState();
             if (column < 0) {
                 throw new IndexOutOfBoundsException("Column must be >= 0, but was: " + column);
@@ -843,16 +925,14 @@ public class MutableArrayMatrix<T> implements MutableMatrix<T> {
             if (column > matrix.maxColumnIndex) {
                 return null;
             }
-            IndexMatrixCell<T> cell = cells.get(column);
-            return cell != null ? cell.getValue() : null;
+            final int slot = matrix.columnSlot(column);
+            return cellFinger != null ? cellFinger.get(cells, slot) : cells.get(slot);
         }
 
         @Override
         public void clear() {
             assertState();
-            for (IndexMatrixCell<T> cell : cells.values()) {
-                cell.clear();
-            }
+            cells.clear();
         }
 
         @Override
@@ -892,10 +972,6 @@ public class MutableArrayMatrix<T> implements MutableMatrix<T> {
             if (deleted) return;
 
 
-            for (IndexMatrixCell<T> cell : cells.values()) {
-                cell.delete();
-            }
-
             cells.clear();
             deleted = true;
         }
@@ -909,97 +985,78 @@ public class MutableArrayMatrix<T> implements MutableMatrix<T> {
 
 
     private static final class IndexMatrixCell<T> implements MutableMatrixCell<T> {
-        private static final Object BLANK = new Object();
-
-        private MutableArrayMatrix<T> matrix;
-        private int rowIndex;
-        private int columnIndex;
-        private T value;
-
-        private boolean deleted = false;
-
-        private IndexMatrixCell(MutableArrayMatrix<T> matrix, int rowIndex, int columnIndex, T value) {
-            this.matrix = matrix;
-            this.rowIndex = rowIndex;
-            this.columnIndex = columnIndex;
-            this.value = value;
-        }
-
-        private IndexMatrixCell(MutableArrayMatrix<T> matrix, int rowIndex, int columnIndex) {
-            this(matrix, rowIndex, columnIndex, IndexMatrixCell.blank());
-        }
+        private final IndexRow<T> row;
+        private final IndexColumn<T> column;
 
-        @SuppressWarnings("unchecked")
-        private static <T> T blank() {
-            return (T) BLANK;
+        private IndexMatrixCell(IndexRow<T> row, IndexColumn<T> column) {
+            this.row = row;
+            this.column = column;
         }
 
         @Override
         public MutableMatrix<T> getMatrix() {
             assertState();
-            return matrix;
+            return row.matrix;
         }
 
         @Override
         public MutableRow<T> getRow() {
             assertState();
-            return matrix.getRow(rowIndex);
+            return row;
         }
 
         @Override
         public MutableColumn<T> getColumn() {
             assertState();
-            return matrix.getColumn(columnIndex);
+            return column;
         }
 
         @Override
         public T getValue() {
             assertState();
-            return value == BLANK ? null : value;
+            return row.cells.get(column.slot);
         }
 
         @Override
         public T setValue(T value) {
             assertState();
-            T prev = this.value;
-            this.value = value;
-            return prev;
+            return row.put(column.columnIndex, value);
         }
 
         @Override
         public void clear() {
             assertState();
-            this.value = blank();
+            row.cells.remove(column.slot);
         }
 
         @Override
         public int getColumnIndex() {
             assertState();
-            return columnIndex;
+            return column.columnIndex;
         }
 
         @Override
         public int getRowIndex() {
             assertState();
-            return rowIndex;
+            return row.rowIndex;
         }
 
         @Override
         public boolean isBlank() {
             assertState();
-            return value == BLANK;
+            return !row.cells.containsKey(column.slot);
         }
 
         @Override
         public String toString() {
             StringBuilder sb = new StringBuilder();
             sb.append("(Cell ");
-            if (deleted) {
+            if (row.deleted || column.deleted) {
                 sb.append("--deleted--");
             } else {
-                sb.append(rowIndex);
+                sb.append(row.rowIndex);
                 sb.append(":");
-                sb.append(columnIndex);
+                sb.append(column.columnIndex);
                 if (!isBlank()) {
                     sb.append(" [");
                     sb.append(getValue());
@@ -1010,23 +1067,236 @@ public class MutableArrayMatrix<T> implements MutableMatrix<T> {
             return sb.toString();
         }
 
-        private void delete() {
-            if (deleted) return;
+        private void assertState() {
+            if (row.deleted || column.deleted) {
+                throw new IllegalStateException("cell has been deleted");
+            }
+        }
+    }
 
-            //prevent leaking
-            value = null;
-            matrix = null;
 
-            deleted = true;
+    //read only view of a position, it reads through the matrix and never creates a row or a column
+    private static final class CellView<T> implements MatrixCell<T> {
+        private final MutableArrayMatrix<T> matrix;
+        private final int rowIndex;
+        private final int columnIndex;
+
+        private CellView(MutableArrayMatrix<T> matrix, int rowIndex, int columnIndex) {
+            this.matrix = matrix;
+            this.rowIndex = rowIndex;
+            this.columnIndex = columnIndex;
         }
 
-        private void assertState() {
-            if (deleted) {
-                throw new IllegalStateException("row has been deleted");
+        @Override
+        public Matrix<T> getMatrix() {
+            return matrix;
+        }
+
+        @Override
+        public Row<T> getRow() {
+            return matrix.readRow(rowIndex);
+        }
+
+        @Override
+        public Column<T> getColumn() {
+            return matrix.readColumn(columnIndex);
+        }
+
+        @Override
+        public T getValue() {
+            return matrix.get(rowIndex, columnIndex);
+        }
+
+        @Override
+        public int getColumnIndex() {
+            return columnIndex;
+        }
+
+        @Override
+        public int getRowIndex() {
+            return rowIndex;
+        }
+
+        @Override
+        public boolean isBlank() {
+            return matrix.isBlank(rowIndex, columnIndex);
+        }
+    }
+
+    //read only view of a row that has no IndexRow
+    private static final class RowView<T> implements Row<T> {
+        private final MutableArrayMatrix<T> matrix;
+        private final int rowIndex;
+
+        private RowView(MutableArrayMatrix<T> matrix, int rowIndex) {
+            this.matrix = matrix;
+            this.rowIndex = rowIndex;
+        }
+
+        @Override
+        public Matrix<T> getMatrix() {
+            return matrix;
+        }
+
+        @Override
+        public int getRowIndex() {
+            return rowIndex;
+        }
+
+        @Override
+        public T get(int column) {
+            return matrix.get(rowIndex, column);
+        }
+
+        @Override
+        public MatrixCell<T> getCell(int column) {
+            checkIndex(column < 0, "column must be >= 0, but was %s", column);
+            return new CellView<>(matrix, rowIndex, column);
+        }
+
+        @Override
+        public Iterable<MatrixCell<T>> cells() {
+            return () -> new LineCellIterator<>(matrix, rowIndex, -1);
+        }
+
+        @Override
+        public Iterator<T> iterator() {
+            return new LineValueIterator<>(matrix, rowIndex, -1);
+        }
+    }
+
+    //read only view of a column that has no IndexColumn
+    private static final class ColumnView<T> implements Column<T> {
+        private final MutableArrayMatrix<T> matrix;
+        private final int columnIndex;
+
+        private ColumnView(MutableArrayMatrix<T> matrix, int columnIndex) {
+            this.matrix = matrix;
+            this.columnIndex = columnIndex;
+        }
+
+        @Override
+        public Matrix<T> getMatrix() {
+            return matrix;
+        }
+
+        @Override
+        public int getColumnIndex() {
+            return columnIndex;
+        }
+
+        @Override
+        public T get(int row) {
+            return matrix.get(row, columnIndex);
+        }
+
+        @Override
+        public MatrixCell<T> getCell(int row) {
+            checkIndex(row < 0, "row must be >= 0, but was %s", row);
+            return new CellView<>(matrix, row, columnIndex);
+        }
+
+        @Override
+        public Iterable<MatrixCell<T>> cells() {
+            return () -> new LineCellIterator<>(matrix, -1, columnIndex);
+        }
+
+        @Override
+        public Iterator<T> iterator() {
+            return new LineValueIterator<>(matrix, -1, columnIndex);
+        }
+    }
+
+    //the position of a walk in a map, a cursor that is sought to every next key instead of searching each key from
+    //scratch. It follows the map it is handed, so rebuilding the rows or moving on to another row is picked up
+    private static final class Finger<V> {
+        private IntKeyMap<V> map;
+        private IntKeyCursor<V> cursor;
+
+        private V get(IntKeyMap<V> map, int key) {
+            if (this.map != map) {
+                this.map = map;
+                cursor = map.cursor();
+            }
+            return cursor.seek(key) ? cursor.value() : null;
+        }
+    }
+
+    //walks a row (column == -1) or a column (row == -1) by position without creating rows or columns
+    private static abstract class LineIterator<T, E> implements Iterator<E> {
+        final MutableArrayMatrix<T> matrix;
+        private final int row;
+        private final int column;
+        private int index = -1;
+        private boolean deleted = false;
+
+        private LineIterator(MutableArrayMatrix<T> matrix, int row, int column) {
+            this.matrix = matrix;
+            this.row = row;
+            this.column = column;
+        }
+
+        abstract E get(int row, int column);
+
+        private int maxIndex() {
+            return row >= 0 ? matrix.maxColumnIndex : matrix.maxRowIndex;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return index < maxIndex();
+        }
+
+        @Override
+        public E next() {
+            if (++index > maxIndex()) {
+                throw new NoSuchElementException();
+            }
+            deleted = false;
+            return row >= 0 ? get(row, index) : get(index, column);
+        }
+
+        @Override
+        public void remove() {
+            if (index < 0 || deleted) {
+                throw new IllegalStateException();
+            }
+            deleted = true;
+            if (row >= 0) {
+                matrix.clearCell(row, index);
+            } else {
+                matrix.clearCell(index, column);
             }
         }
     }
 
+    private static final class LineCellIterator<T> extends LineIterator<T, MatrixCell<T>> {
+        private LineCellIterator(MutableArrayMatrix<T> matrix, int row, int column) {
+            super(matrix, row, column);
+        }
+
+        @Override
+        MatrixCell<T> get(int row, int column) {
+            return new CellView<>(matrix, row, column);
+        }
+    }
+
+    private static final class LineValueIterator<T> extends LineIterator<T, T> {
+        private final Finger<IndexRow<T>> rowFinger = new Finger<>();
+        //only a row walk stays within one cells map
+        private final Finger<T> cellFinger;
+
+        private LineValueIterator(MutableArrayMatrix<T> matrix, int row, int column) {
+            super(matrix, row, column);
+            cellFinger = row >= 0 ? new Finger<>() : null;
+        }
+
+        @Override
+        T get(int row, int column) {
+            return matrix.get(row, column, rowFinger, cellFinger);
+        }
+    }
+
 
     private static abstract class AbstractRowsIterator<T, R extends Row<T>> implements Iterator<R> {
         final MutableArrayMatrix<T> matrix;
@@ -1082,7 +1352,7 @@ public class MutableArrayMatrix<T> implements MutableMatrix<T> {
 
         @Override
         protected Row<T> rowForIndex(int idx) {
-            return matrix.getRow(idx);
+            return matrix.readRow(idx);
         }
     }
 
@@ -1131,7 +1401,7 @@ public class MutableArrayMatrix<T> implements MutableMatrix<T> {
 
         @Override
         protected Column<T> columnForIndex(int idx) {
-            return matrix.getColumn(idx);
+            return matrix.readColumn(idx);
         }
     }
 
@@ -1148,6 +1418,7 @@ public class MutableArrayMatrix<T> implements MutableMatrix<T> {
 
     private static class RowIterator<T> implements Iterator<T> {
         private final IndexRow<T> row;
+        private final Finger<T> cellFinger = new Finger<>();
         private int index = -1;
         private boolean deleted = false;
 
@@ -1166,7 +1437,7 @@ public class MutableArrayMatrix<T> implements MutableMatrix<T> {
                 throw new NoSuchElementException();
             }
             deleted = false;
-            return row.get(index);
+            return row.get(index, cellFinger);
         }
 
         @Override
@@ -1175,15 +1446,13 @@ public class MutableArrayMatrix<T> implements MutableMatrix<T> {
                 throw new IllegalStateException();
             }
             deleted = true;
-            IndexMatrixCell<T> cell = row.cells.get(index);
-            if (cell != null) {
-                cell.clear();
-            }
+            row.cells.remove(row.matrix.columnSlot(index));
         }
     }
 
     private static class ColumnIterator<T> implements Iterator<T> {
         private final IndexColumn<T> column;
+        private final Finger<IndexRow<T>> rowFinger = new Finger<>();
         private int index = -1;
         private boolean deleted = false;
 
@@ -1202,7 +1471,7 @@ public class MutableArrayMatrix<T> implements MutableMatrix<T> {
             if (++index > column.matrix.maxRowIndex) {
                 throw new NoSuchElementException();
             }
-            return column.get(index);
+            return column.get(index, rowFinger);
         }
 
         @Override
@@ -1213,45 +1482,8 @@ public class MutableArrayMatrix<T> implements MutableMatrix<T> {
             deleted = true;
             IndexRow<T> row = column.matrix.rows.get(index);
             if (row != null) {
-                IndexMatrixCell<T> cell = row.cells.get(column.columnIndex);
-                if (cell != null) {
-                    cell.clear();
-                }
-            }
-        }
-    }
-
-    private static class RowCellIterator<T> implements Iterator<MatrixCell<T>> {
-        private final IndexRow<T> row;
-        private int index = -1;
-        private boolean deleted = false;
-
-
-        private RowCellIterator(IndexRow<T> row) {
-            this.row = row;
-        }
-
-        @Override
-        public boolean hasNext() {
-            return index < row.matrix.maxColumnIndex;
-        }
-
-        @Override
-        public MatrixCell<T> next() {
-            if (++index > row.matrix.maxColumnIndex) {
-                throw new NoSuchElementException();
-            }
-            deleted = false;
-            return row.getCell(index);
-        }
-
-        @Override
-        public void remove() {
-            if (index < 0 || deleted) {
-                throw new IllegalStateException();
+                row.cells.remove(column.slot);
             }
-            deleted = true;
-            row.getCell(index).clear();
         }
     }
 
@@ -1289,40 +1521,6 @@ public class MutableArrayMatrix<T> implements MutableMatrix<T> {
         }
     }
 
-    private static class ColumnCellIterator<T> implements Iterator<MatrixCell<T>> {
-        private final IndexColumn<T> column;
-        private int index = -1;
-        private boolean deleted = false;
-
-
-        private ColumnCellIterator(IndexColumn<T> column) {
-            this.column = column;
-        }
-
-        @Override
-        public boolean hasNext() {
-            return index < column.matrix.maxRowIndex;
-        }
-
-        @Override
-        public MatrixCell<T> next() {
-            if (++index > column.matrix.maxRowIndex) {
-                throw new NoSuchElementException();
-            }
-            deleted = false;
-            return column.getCell(index);
-        }
-
-        @Override
-        public void remove() {
-            if (index < 0 || deleted) {
-                throw new IllegalStateException();
-            }
-            deleted = true;
-            column.getCell(index).clear();
-        }
-    }
-
     private static class MutableColumnCellIterator<T> implements Iterator<MutableMatrixCell<T>> {
         private final IndexColumn<T> column;
         private int index = -1;
@@ -1366,7 +1564,7 @@ public class MutableArrayMatrix<T> implements MutableMatrix<T> {
 
         @Override
         public Iterator<MatrixCell<T>> iterator() {
-            return new ColumnCellIterator<>(column);
+            return new LineCellIterator<>(column.matrix, -1, column.columnIndex);
         }
     }
 
@@ -1392,7 +1590,7 @@ public class MutableArrayMatrix<T> implements MutableMatrix<T> {
 
         @Override
         public Iterator<MatrixCell<T>> iterator() {
-            return new RowCellIterator<>(row);
+            return new LineCellIterator<>(row.matrix, row.rowIndex, -1);
         }
     }
 
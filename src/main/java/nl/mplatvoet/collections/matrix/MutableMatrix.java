@@ -14,6 +14,12 @@ public interface MutableMatrix<T> extends Matrix<T> {
 
     void consolidateColumns();
 
+    /**
+     * Releases storage capacity left behind by deleted or consolidated rows and columns. Implementations that move
+     * rows and columns through an index vector also lay out the values in index order again.
+     */
+    void compact();
+
     MutableMatrixCell<T> getCell(int row, int column);
 
     T get(int row, int column);
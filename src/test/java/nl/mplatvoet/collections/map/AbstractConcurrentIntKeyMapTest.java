@@ -0,0 +1,356 @@
+package nl.mplatvoet.collections.map;
+
+import com.google.common.collect.testing.SampleElements;
+import com.google.common.collect.testing.SortedMapTestSuiteBuilder;
+import com.google.common.collect.testing.TestSortedMapGenerator;
+import com.google.common.collect.testing.features.CollectionFeature;
+import com.google.common.collect.testing.features.CollectionSize;
+import com.google.common.collect.testing.features.MapFeature;
+import junit.framework.TestSuite;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.SortedMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+import static com.google.common.collect.testing.Helpers.mapEntry;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+
+/**
+ * The contract of the thread safe maps, run by {@link ConcurrentCompactArrayMapTest} and
+ * {@link ConcurrentDirectArrayMapTest}. Besides the single threaded behaviour this runs readers against contending
+ * writers, every read must see either the absent or the written value of a key, never a torn one.
+ */
+public abstract class AbstractConcurrentIntKeyMapTest extends IntKeyMapContractTest {
+    private static final int THREADS = 4;
+    //keys that are a multiple of STRIDE are never touched by the writers, the others are churned
+    private static final int STRIDE = 4;
+    private static final int KEY_RANGE = 4096;
+    private static final int WRITES_PER_WRITER = 50000;
+
+    @Override
+    protected boolean failsFast() {
+        return false;
+    }
+
+    @Test
+    public void iterator_isWeaklyConsistent() {
+        final IntKeyMap<String> map = createMap();
+        map.put(1, "1");
+        map.put(2, "2");
+        final Iterator<Integer> iterator = map.keySet().iterator();
+        assertThat(iterator.next(), is(1));
+        map.put(3, "3");
+        map.remove(1);
+        assertThat(iterator.next(), is(2));
+        assertThat(iterator.next(), is(3));
+        assertThat(iterator.hasNext(), is(false));
+    }
+
+    @Test
+    public void put_fromConcurrentWriters() throws Exception {
+        final IntKeyMap<String> map = createMap();
+        final int writers = 8;
+        final int keysPerWriter = 5000;
+        final List<Callable<Void>> tasks = new ArrayList<>();
+        for (int w = 0; w < writers; ++w) {
+            final int writer = w;
+            tasks.add(() -> {
+                //interleaved keys so the writers contend for the same ranges
+                for (int i = 0; i < keysPerWriter; ++i) {
+                    final int key = i * writers + writer;
+                    map.put(key, value(key));
+                }
+                return null;
+            });
+        }
+        runConcurrently(tasks);
+        assertThat(map.size(), is(writers * keysPerWriter));
+        int expectedKey = 0;
+        for (Map.Entry<Integer, String> entry : map.entrySet()) {
+            assertThat(entry.getKey(), is(expectedKey));
+            assertThat(entry.getValue(), is(value(expectedKey)));
+            ++expectedKey;
+        }
+    }
+
+    @Test
+    public void get_duringConcurrentWrites() throws Exception {
+        final IntKeyMap<String> map = populatedStableKeys();
+        final AtomicBoolean writing = new AtomicBoolean(true);
+        final List<Callable<Void>> tasks = churningWriters(map, writing);
+        for (int r = 0; r < THREADS; ++r) {
+            final Random random = new Random(r);
+            tasks.add(() -> {
+                //keep reading until every writer is done, so the reads overlap with the writes
+                int reads = 0;
+                while (writing.get() || reads < WRITES_PER_WRITER) {
+                    final int key = random.nextInt(KEY_RANGE);
+                    final String value = map.get(key);
+                    if (key % STRIDE == 0) {
+                        assertThat("stable key " + key, value, is(value(key)));
+                        assertThat("stable key " + key, map.containsKey(key), is(true));
+                    } else if (value != null) {
+                        assertThat("churned key " + key, value, is(value(key)));
+                    }
+                    ++reads;
+                }
+                return null;
+            });
+        }
+        runConcurrently(tasks);
+        assertStableKeys(map);
+    }
+
+    @Test
+    public void get_retriesReadsInvalidatedByShiftingWrites() throws Exception {
+        //every write inserts or removes a key below all the stable keys, so within a compact stripe each write moves
+        //the stable keys to another index. An optimistic read that is not validated and retried ends up at the
+        //wrong index and returns a wrong value or nothing at all.
+        final IntKeyMap<String> map = createMap();
+        for (int key = KEY_RANGE; key < 2 * KEY_RANGE; key += STRIDE) {
+            map.put(key, value(key));
+        }
+        final AtomicBoolean writing = new AtomicBoolean(true);
+        final CountDownLatch writersDone = new CountDownLatch(THREADS);
+        final List<Callable<Void>> tasks = new ArrayList<>();
+        for (int w = 0; w < THREADS; ++w) {
+            final int writer = w;
+            tasks.add(() -> {
+                try {
+                    for (int round = 0; round < WRITES_PER_WRITER / KEY_RANGE + 1; ++round) {
+                        for (int key = writer; key < KEY_RANGE; key += THREADS) {
+                            map.put(key, value(key));
+                        }
+                        for (int key = writer; key < KEY_RANGE; key += THREADS) {
+                            map.remove(key);
+                        }
+                    }
+                } finally {
+                    writersDone.countDown();
+                    if (writersDone.getCount() == 0) writing.set(false);
+                }
+                return null;
+            });
+        }
+        for (int r = 0; r < THREADS; ++r) {
+            final Random random = new Random(r);
+            tasks.add(() -> {
+                while (writing.get()) {
+                    final int key = KEY_RANGE + random.nextInt(KEY_RANGE / STRIDE) * STRIDE;
+                    assertThat("stable key " + key, map.get(key), is(value(key)));
+                }
+                return null;
+            });
+        }
+        runConcurrently(tasks);
+        assertThat(map.size(), is(KEY_RANGE / STRIDE));
+    }
+
+    @Test
+    public void iterator_duringConcurrentWrites() throws Exception {
+        final IntKeyMap<String> map = populatedStableKeys();
+        final AtomicBoolean writing = new AtomicBoolean(true);
+        final List<Callable<Void>> tasks = churningWriters(map, writing);
+        for (int r = 0; r < THREADS; ++r) {
+            tasks.add(() -> {
+                do {
+                    //weakly consistent, the churned keys may or may not show up but the order and values must hold
+                    int previous = -1;
+                    int stableKeys = 0;
+                    for (Map.Entry<Integer, String> entry : map.entrySet()) {
+                        final int key = entry.getKey();
+                        assertThat("keys must ascend", key > previous, is(true));
+                        final String value = entry.getValue();
+                        if (value != null) {
+                            assertThat("key " + key, value, is(value(key)));
+                        }
+                        if (key % STRIDE == 0) ++stableKeys;
+                        previous = key;
+                    }
+                    assertThat(stableKeys, is(KEY_RANGE / STRIDE));
+                } while (writing.get());
+                return null;
+            });
+        }
+        runConcurrently(tasks);
+        assertStableKeys(map);
+    }
+
+    private IntKeyMap<String> populatedStableKeys() {
+        final IntKeyMap<String> map = createMap();
+        for (int key = 0; key < KEY_RANGE; key += STRIDE) {
+            map.put(key, value(key));
+        }
+        return map;
+    }
+
+    //writers that put and remove random churned keys, writing is cleared once all of them are done
+    private static List<Callable<Void>> churningWriters(IntKeyMap<String> map, AtomicBoolean writing) {
+        final CountDownLatch writersDone = new CountDownLatch(THREADS);
+        final List<Callable<Void>> tasks = new ArrayList<>();
+        for (int w = 0; w < THREADS; ++w) {
+            final Random random = new Random(-w - 1);
+            tasks.add(() -> {
+                try {
+                    for (int i = 0; i < WRITES_PER_WRITER; ++i) {
+                        final int key = random.nextInt(KEY_RANGE);
+                        if (key % STRIDE == 0) continue;
+                        if (random.nextBoolean()) {
+                            map.put(key, value(key));
+                        } else {
+                            map.remove(key);
+                        }
+                    }
+                } finally {
+                    writersDone.countDown();
+                    if (writersDone.getCount() == 0) writing.set(false);
+                }
+                return null;
+            });
+        }
+        return tasks;
+    }
+
+    private static void assertStableKeys(IntKeyMap<String> map) {
+        for (int key = 0; key < KEY_RANGE; ++key) {
+            final String value = map.get(key);
+            if (key % STRIDE == 0 || value != null) {
+                assertThat("key " + key, value, is(value(key)));
+            }
+        }
+    }
+
+    private static String value(int key) {
+        return "v" + key;
+    }
+
+    //starts all tasks at once and rethrows the first failure, assertion errors included
+    private static void runConcurrently(List<Callable<Void>> tasks) throws Exception {
+        final ExecutorService executor = Executors.newFixedThreadPool(tasks.size());
+        final CountDownLatch start = new CountDownLatch(1);
+        try {
+            final List<Future<Void>> futures = new ArrayList<>();
+            for (Callable<Void> task : tasks) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    return task.call();
+                }));
+            }
+            start.countDown();
+            for (Future<Void> future : futures) {
+                try {
+                    future.get(60, TimeUnit.SECONDS);
+                } catch (ExecutionException e) {
+                    final Throwable cause = e.getCause();
+                    if (cause instanceof Error) throw (Error) cause;
+                    throw e;
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    static TestSuite guavaSuite(String name, Supplier<IntKeyMap<Integer>> factory) {
+        return SortedMapTestSuiteBuilder
+                .using(new DefaultTestMapGenerator(factory))
+                .named(name)
+                .withFeatures(
+                        CollectionSize.ANY,
+                        MapFeature.SUPPORTS_REMOVE,
+                        MapFeature.ALLOWS_NULL_VALUE_QUERIES,
+                        MapFeature.ALLOWS_NULL_VALUES,
+                        MapFeature.RESTRICTS_KEYS,
+                        MapFeature.SUPPORTS_PUT,
+                        CollectionFeature.SUPPORTS_ITERATOR_REMOVE,
+                        CollectionFeature.SERIALIZABLE
+                ).createTestSuite();
+    }
+
+    private static class DefaultTestMapGenerator implements TestSortedMapGenerator<Integer, Integer> {
+        private final Supplier<IntKeyMap<Integer>> factory;
+
+        private DefaultTestMapGenerator(Supplier<IntKeyMap<Integer>> factory) {
+            this.factory = factory;
+        }
+
+        @Override
+        public SampleElements<Map.Entry<Integer, Integer>> samples() {
+            return new SampleElements<>(
+                    mapEntry(10, 1),
+                    mapEntry(11, 3),
+                    mapEntry(12, 2),
+                    mapEntry(13, 4),
+                    mapEntry(20, 5));
+        }
+
+        @Override
+        public SortedMap<Integer, Integer> create(Object... elements) {
+            final IntKeyMap<Integer> map = factory.get();
+            for (Object e : elements) {
+                Map.Entry<?, ?> entry = (Map.Entry<?, ?>) e;
+                if (entry == null) {
+                    map.put(null, null);
+                } else {
+                    map.put((Integer) entry.getKey(), (Integer) entry.getValue());
+                }
+            }
+            return map;
+        }
+
+        @Override
+        public Map.Entry<Integer, Integer> belowSamplesLesser() {
+            return mapEntry(1, 40);
+        }
+
+        @Override
+        public Map.Entry<Integer, Integer> belowSamplesGreater() {
+            return mapEntry(5, 20);
+        }
+
+        @Override
+        public Map.Entry<Integer, Integer> aboveSamplesLesser() {
+            return mapEntry(30, 10);
+        }
+
+        @Override
+        public Map.Entry<Integer, Integer> aboveSamplesGreater() {
+            return mapEntry(40, 7);
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        public Map.Entry<Integer, Integer>[] createArray(int length) {
+            return new Map.Entry[length];
+        }
+
+        @Override
+        public Iterable<Map.Entry<Integer, Integer>> order(List<Map.Entry<Integer, Integer>> insertionOrder) {
+            return insertionOrder;
+        }
+
+        @Override
+        public Integer[] createKeyArray(int length) {
+            return new Integer[length];
+        }
+
+        @Override
+        public Integer[] createValueArray(int length) {
+            return new Integer[length];
+        }
+    }
+}
@@ -0,0 +1,217 @@
+package nl.mplatvoet.collections.map;
+
+import com.google.common.collect.testing.SampleElements;
+import com.google.common.collect.testing.SortedMapTestSuiteBuilder;
+import com.google.common.collect.testing.TestSortedMapGenerator;
+import com.google.common.collect.testing.features.CollectionFeature;
+import com.google.common.collect.testing.features.CollectionSize;
+import com.google.common.collect.testing.features.MapFeature;
+import junit.framework.TestSuite;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Suite;
+
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+
+import static com.google.common.collect.testing.Helpers.mapEntry;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+
+@RunWith(Suite.class)
+@Suite.SuiteClasses({
+        AdaptiveIntKeyMapTest.GuavaTests.class,
+        AdaptiveIntKeyMapTest.AdditionalTests.class,
+})
+public class AdaptiveIntKeyMapTest {
+
+    public static class AdditionalTests extends IntKeyMapContractTest {
+
+        @Override
+        protected <V> IntKeyMap<V> createMap() {
+            return new AdaptiveIntKeyMap<>();
+        }
+
+        @Test
+        public void put_denseKeysMigrateToDirect() {
+            final AdaptiveIntKeyMap<String> map = new AdaptiveIntKeyMap<>();
+            for (int key = 0; key < 1000; ++key) {
+                map.put(key, "v" + key);
+            }
+            assertThat(map.isDirect(), is(true));
+            assertThat(map.size(), is(1000));
+            assertThat(map.get(999), is("v999"));
+        }
+
+        @Test
+        public void put_sparseKeysStayCompact() {
+            final AdaptiveIntKeyMap<String> map = new AdaptiveIntKeyMap<>();
+            for (int key = 0; key < 1000; ++key) {
+                map.put(key * 10, "v" + key);
+            }
+            assertThat(map.isDirect(), is(false));
+            assertThat(map.get(9990), is("v999"));
+        }
+
+        @Test
+        public void put_farKeyMigratesBackToCompact() {
+            final AdaptiveIntKeyMap<String> map = new AdaptiveIntKeyMap<>();
+            for (int key = 0; key < 1000; ++key) {
+                map.put(key, "v" + key);
+            }
+            map.put(1000000, "far");
+            assertThat(map.isDirect(), is(false));
+            assertThat(map.size(), is(1001));
+            assertThat(map.get(500), is("v500"));
+            assertThat(map.get(1000000), is("far"));
+        }
+
+        @Test
+        public void remove_sparseKeysMigrateBackToCompact() {
+            final AdaptiveIntKeyMap<String> map = new AdaptiveIntKeyMap<>();
+            for (int key = 0; key < 1024; ++key) {
+                map.put(key, "v" + key);
+            }
+            for (int key = 0; key < 1000; ++key) {
+                map.remove(key);
+            }
+            assertThat(map.isDirect(), is(false));
+            assertThat(map.size(), is(24));
+            assertThat(map.firstKey(), is(1000));
+        }
+
+        @Test
+        public void entrySetValue_doesNotBreakIteration() {
+            final AdaptiveIntKeyMap<String> map = new AdaptiveIntKeyMap<>();
+            for (int key = 0; key < 100; ++key) {
+                map.put(key, "v" + key);
+            }
+            for (Map.Entry<Integer, String> entry : map.entrySet()) {
+                entry.setValue("x");
+            }
+            assertThat(map.get(99), is("x"));
+        }
+
+        @Test
+        public void cursor_replacingValuesDoesNotBreakIteration() {
+            //dense keys end up direct, sparse keys stay compact, both count replacements in their own modCount
+            for (int step : new int[]{1, 10}) {
+                final AdaptiveIntKeyMap<String> map = new AdaptiveIntKeyMap<>();
+                for (int key = 0; key < 100; ++key) {
+                    map.put(key * step, "v" + key);
+                }
+                assertThat(map.isDirect(), is(step == 1));
+                final IntKeyCursor<String> cursor = map.cursor();
+                int visited = 0;
+                while (cursor.advance()) {
+                    map.put(cursor.key(), "x");
+                    ++visited;
+                }
+                assertThat(visited, is(100));
+                assertThat(map.get(99 * step), is("x"));
+            }
+        }
+
+        @Test
+        public void forEachEntry_replacingValuesDoesNotBreakIteration() {
+            for (int step : new int[]{1, 10}) {
+                final AdaptiveIntKeyMap<String> map = new AdaptiveIntKeyMap<>();
+                for (int key = 0; key < 100; ++key) {
+                    map.put(key * step, "v" + key);
+                }
+                map.forEachEntry((key, value) -> map.put(key, value + "!"));
+                assertThat(map.get(0), is("v0!"));
+                assertThat(map.get(99 * step), is("v99!"));
+            }
+        }
+    }
+
+    public static class GuavaTests {
+        public static TestSuite suite() {
+            return SortedMapTestSuiteBuilder
+                    .using(new DefaultTestMapGenerator())
+                    .named("AdaptiveIntKeyMapGuavaTest")
+                    .withFeatures(
+                            CollectionSize.ANY,
+                            MapFeature.SUPPORTS_REMOVE,
+                            MapFeature.ALLOWS_NULL_VALUE_QUERIES,
+                            MapFeature.ALLOWS_NULL_VALUES,
+                            MapFeature.RESTRICTS_KEYS,
+                            MapFeature.SUPPORTS_PUT,
+                            MapFeature.SUPPORTS_REMOVE,
+                            MapFeature.FAILS_FAST_ON_CONCURRENT_MODIFICATION,
+                            CollectionFeature.SUPPORTS_ITERATOR_REMOVE,
+                            CollectionFeature.SERIALIZABLE
+                    ).createTestSuite();
+        }
+    }
+
+    private static class DefaultTestMapGenerator implements TestSortedMapGenerator<Integer, Integer> {
+        @Override
+        public SampleElements<Map.Entry<Integer, Integer>> samples() {
+            return new SampleElements<>(
+                    mapEntry(10, 1),
+                    mapEntry(11, 3),
+                    mapEntry(12, 2),
+                    mapEntry(13, 4),
+                    mapEntry(20, 5));
+        }
+
+        @Override
+        public SortedMap<Integer, Integer> create(Object... elements) {
+            AdaptiveIntKeyMap<Integer> map = new AdaptiveIntKeyMap<>();
+            for (Object e : elements) {
+                Map.Entry<?, ?> entry = (Map.Entry<?, ?>) e;
+                if (entry == null) {
+                    map.put(null, null);
+                } else {
+                    map.put((Integer) entry.getKey(), (Integer) entry.getValue());
+                }
+            }
+            return map;
+        }
+
+        @Override
+        public Map.Entry<Integer, Integer> belowSamplesLesser() {
+            return mapEntry(1, 40);
+        }
+
+        @Override
+        public Map.Entry<Integer, Integer> belowSamplesGreater() {
+            return mapEntry(5, 20);
+        }
+
+        @Override
+        public Map.Entry<Integer, Integer> aboveSamplesLesser() {
+            return mapEntry(30, 10);
+        }
+
+        @Override
+        public Map.Entry<Integer, Integer> aboveSamplesGreater() {
+            return mapEntry(40, 7);
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        public Map.Entry<Integer, Integer>[] createArray(int length) {
+            return new Map.Entry[length];
+        }
+
+        @Override
+        public Iterable<Map.Entry<Integer, Integer>> order(
+                List<Map.Entry<Integer, Integer>> insertionOrder) {
+            return insertionOrder;
+        }
+
+        @Override
+        public Integer[] createKeyArray(int length) {
+            return new Integer[length];
+        }
+
+        @Override
+        public Integer[] createValueArray(int length) {
+            return new Integer[length];
+        }
+    }
+}
\ No newline at end of file
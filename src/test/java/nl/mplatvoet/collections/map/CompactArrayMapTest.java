@@ -6,14 +6,22 @@ import com.google.common.collect.testing.TestSortedMapGenerator;
 import com.google.common.collect.testing.features.CollectionFeature;
 import com.google.common.collect.testing.features.CollectionSize;
 import com.google.common.collect.testing.features.MapFeature;
+import com.google.common.testing.SerializableTester;
 import junit.framework.TestSuite;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.junit.runners.Suite;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
 import java.util.SortedMap;
+import java.util.Spliterator;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
 
 import static com.google.common.collect.testing.Helpers.mapEntry;
 import static org.hamcrest.MatcherAssert.assertThat;
@@ -26,45 +34,374 @@ import static org.hamcrest.core.Is.is;
 })
 public class CompactArrayMapTest {
 
-    public static class AdditionalTests {
+    public static class AdditionalTests extends IntKeyMapContractTest {
 
-        private <V> SortedMap<Integer, V> createNewSortedMap() {
+        private static void assertHolderKeys(CompactArrayMap.ArrayHolder holder, int... keys) {
+            assertThat(holder.size, is(keys.length));
+            for (int i = 0; i < keys.length; ++i) {
+                assertThat(holder.keyAt(i), is(keys[i]));
+                assertThat(holder.<Integer>get(keys[i]), is(keys[i]));
+            }
+        }
+
+        @Override
+        protected <V> IntKeyMap<V> createMap() {
             return new CompactArrayMap<>();
         }
 
+        @Test
+        public void ofSorted_takesOverKeysAndValues() {
+            final CompactArrayMap<String> map = CompactArrayMap.ofSorted(new int[]{1, 4, 9}, new String[]{"1", "4", "9"});
+            assertThat(map.size(), is(3));
+            assertThat(map.get(4), is("4"));
+            map.put(5, "5");
+            assertThat(new ArrayList<>(map.keySet()), is(Arrays.asList(1, 4, 5, 9)));
+        }
+
         @Test(expected = IllegalArgumentException.class)
-        public void put_negativeKeyShouldThrow() throws Exception {
-            createNewSortedMap().put(-1, "");
+        public void ofSorted_unsortedKeysShouldThrow() {
+            CompactArrayMap.ofSorted(new int[]{1, 4, 4}, new String[]{"1", "4", "4"});
         }
 
         @Test
-        public void clear_tailMap() {
-            final SortedMap<Integer, Integer> map = createNewSortedMap();
-            map.put(1, 5);
-            map.put(2, 5);
-            map.put(4, 5);
-            map.tailMap(2).clear();
-            assertThat("should only clear the tailMap portion", map.size(), is(1));
+        public void of_sortsAndLastDuplicateWins() {
+            for (boolean parallel : new boolean[]{false, true}) {
+                final CompactArrayMap<String> map = CompactArrayMap.of(
+                        new int[]{7, 2, 7, 0}, new String[]{"a", "b", "c", "d"}, parallel);
+                assertThat(new ArrayList<>(map.keySet()), is(Arrays.asList(0, 2, 7)));
+                assertThat(map.get(7), is("c"));
+            }
         }
 
         @Test
-        public void clear_headMap() {
-            final SortedMap<Integer, Integer> map = createNewSortedMap();
-            map.put(1, 5);
-            map.put(2, 5);
-            map.put(4, 5);
-            map.headMap(2).clear();
-            assertThat("should only clear the headMap portion", map.size(), is(2));
+        public void putAll_mergesCompactArrayMaps() {
+            final IntKeyMap<String> map = new CompactArrayMap<>();
+            map.put(1, "1");
+            map.put(5, "5");
+            map.put(9, "9");
+            final IntKeyMap<String> other = new CompactArrayMap<>();
+            other.put(0, "0");
+            other.put(5, "five");
+            other.put(12, "12");
+            map.putAll(other);
+            assertThat(new ArrayList<>(map.keySet()), is(Arrays.asList(0, 1, 5, 9, 12)));
+            assertThat(map.get(5), is("five"));
+
+            map.subMap(0, 2).putAll(other.headMap(1));
+            assertThat(map.size(), is(5));
+        }
+
+        @Test(expected = IllegalArgumentException.class)
+        public void putAll_mergeOutsideSubMapShouldThrow() {
+            final IntKeyMap<String> map = new CompactArrayMap<>();
+            final IntKeyMap<String> other = new CompactArrayMap<>();
+            other.put(3, "3");
+            other.put(12, "12");
+            map.subMap(0, 10).putAll(other);
+        }
+
+        @Test(expected = ConcurrentModificationException.class)
+        public void removeIf_modificationShouldThrow() {
+            final IntKeyMap<String> map = new CompactArrayMap<>();
+            for (int i = 0; i < 10; ++i) {
+                map.put(i, Integer.toString(i));
+            }
+            map.removeIf((key, value) -> map.put(key + 100, value) == null);
         }
 
         @Test
-        public void clear_subMap() {
-            final SortedMap<Integer, Integer> map = createNewSortedMap();
-            map.put(1, 5);
-            map.put(2, 5);
-            map.put(4, 5);
-            map.subMap(2, 3).clear();
-            assertThat("should only clear the subMap portion", map.size(), is(2));
+        public void trimToSize_keepsMappings() {
+            final CompactArrayMap<String> map = new CompactArrayMap<>(1000);
+            for (int i = 0; i < 100; i += 3) {
+                map.put(i, Integer.toString(i));
+            }
+            map.subMap(0, 50).trimToSize();
+            assertThat(map.capacity(), is(map.size()));
+            assertThat(map.get(99), is("99"));
+            map.put(500, "500");
+            assertThat(map.get(500), is("500"));
+            assertThat(map.size(), is(35));
+        }
+
+        @Test
+        public void shrinkWhenSparse_halvesAfterRemovals() {
+            final CompactArrayMap<String> map = new CompactArrayMap<>(10, true);
+            for (int i = 0; i < 1000; ++i) {
+                map.put(i, Integer.toString(i));
+            }
+            final int capacity = map.capacity();
+            for (int i = 999; i >= 20; --i) {
+                map.remove(i);
+            }
+            assertThat(map.capacity() <= capacity / 8, is(true));
+            assertThat(map.size(), is(20));
+            assertThat(map.get(19), is("19"));
+            map.removeRange(0, 20);
+            assertThat(map.isEmpty(), is(true));
+            map.put(3, "3");
+            assertThat(map.get(3), is("3"));
+        }
+
+        @Test
+        public void shrinkWhenSparse_disabledByDefault() {
+            final CompactArrayMap<String> map = new CompactArrayMap<>();
+            for (int i = 0; i < 1000; ++i) {
+                map.put(i, Integer.toString(i));
+            }
+            final int capacity = map.capacity();
+            map.clear();
+            assertThat(map.capacity(), is(capacity));
+        }
+
+        @Test
+        public void get_alternatingDirectionsAfterEdits() {
+            final CompactArrayMap<Integer> map = new CompactArrayMap<>();
+            final TreeMap<Integer, Integer> expected = new TreeMap<>();
+            for (int key = 0; key < 3000; key += 3) {
+                map.put(key, (Integer) key);
+                expected.put(key, key);
+            }
+            //leave the gap in the middle, so searches have to cross it
+            map.put(1501, (Integer) 1501);
+            expected.put(1501, 1501);
+            map.remove(900);
+            expected.remove(900);
+            for (int step : new int[]{1, -1, 7, -13, 997, -1501}) {
+                int key = step > 0 ? -2 : 3002;
+                for (int i = 0; i < 3005; ++i, key += step) {
+                    final int probe = Math.floorMod(key, 3005) - 2;
+                    assertThat(map.get(probe), is(expected.get(probe)));
+                    assertThat(map.ceilingKey(probe), is(orMinusOne(expected.ceilingKey(probe))));
+                }
+            }
+        }
+
+        @Test
+        public void searchKeyIndex_anyHintGivesTheSameResult() {
+            final CompactArrayMap.ArrayHolder holder = new CompactArrayMap.ArrayHolder(10);
+            for (int key = 0; key < 600; ++key) {
+                holder.put(key, (Integer) key);
+            }
+            //holes in the run from the first key, the last one leaves the gap in the middle
+            holder.remove(90);
+            holder.remove(300);
+            final Random random = new Random(7);
+            for (int i = 0; i < 20000; ++i) {
+                final int key = random.nextInt(610) - 2;
+                final int hint = random.nextInt(holder.size + 20) - 10;
+                assertThat("key " + key + " hint " + hint, holder.searchKeyIndex(key, hint),
+                        is(holder.searchKeyIndex(key)));
+            }
+        }
+
+        @Test
+        public void cursor_seekInKeyOrderDoesNotSearchFromScratch() {
+            final int size = 1001;
+            final int[] keys = new int[size];
+            final Object[] values = new Object[size];
+            for (int i = 0; i < size; ++i) {
+                keys[i] = i * 10;
+                values[i] = "v" + keys[i];
+            }
+            final CompactArrayMap<String> map = CompactArrayMap.wrap(keys, values, size);
+            //a binary search over the whole map probes the middle key first, this tripwire sends it the wrong way.
+            //A cursor seeking in key order only looks around its own position and never gets there
+            final int middle = (size - 1) >>> 1;
+            final IntKeyCursor<String> cursor = map.cursor();
+            for (int key = 0; key < (size - 1) * 10; ++key) {
+                final int idx = key / 10;
+                final boolean nearMiddle = Math.abs(idx - middle) <= 2;
+                keys[middle] = nearMiddle ? middle * 10 : key < middle * 10 ? -1 : Integer.MAX_VALUE;
+                if (!nearMiddle && key % 10 == 0 && key > 0) {
+                    assertThat("tripwire must catch a search from scratch", map.containsKey(key), is(false));
+                }
+                assertThat("key " + key, cursor.seek(key), is(key % 10 == 0));
+                if (key % 10 == 0) {
+                    assertThat(cursor.value(), is("v" + key));
+                }
+            }
+        }
+
+        private static int orMinusOne(Integer key) {
+            return key == null ? -1 : key;
+        }
+
+        @Test
+        public void serialization_keepsValuesOfEveryKind() {
+            final StringBuilder longString = new StringBuilder();
+            for (int i = 0; i < 30000; ++i) {
+                longString.append('\u20ac');
+            }
+            final Object[] values = {null, -1, Integer.MIN_VALUE, Long.MAX_VALUE, -0.5d, "", "text",
+                    longString.toString(), new ArrayList<>(Arrays.asList(1, 2)), 'c'};
+            final CompactArrayMap<Object> map = new CompactArrayMap<>();
+            for (int i = 0; i < values.length; ++i) {
+                map.put(i * 1000 + 70000, values[i]);
+            }
+            final CompactArrayMap<Object> copy = SerializableTester.reserialize(map);
+            assertThat(copy.equals(map), is(true));
+            assertThat(copy.subMap(71000, 75000).equals(map.subMap(71000, 75000)), is(true));
+            assertThat(SerializableTester.reserialize(map.subMap(71000, 75000)).size(), is(4));
+        }
+
+        @Test
+        public void serialization_usesValueCodec() {
+            final CompactArrayMap<String> map = new CompactArrayMap<>(10, false, new UpperCaseCodec());
+            map.put(3, "a");
+            map.put(500, "b");
+            final IntKeyMap<String> copy = SerializableTester.reserialize(map);
+            assertThat(copy.get(3), is("A"));
+            assertThat(copy.get(500), is("B"));
+        }
+
+        @Test
+        public void size_singleKeySubMap() {
+            final IntKeyMap<String> map = new CompactArrayMap<>();
+            map.put(4, "4");
+            assertThat(map.subMap(4, 5).size(), is(1));
+            assertThat(map.subMap(5, 6).size(), is(0));
+        }
+
+        @Test
+        public void entry_followsItsKeyAfterModifications() {
+            final IntKeyMap<String> map = new CompactArrayMap<>();
+            map.put(10, "10");
+            map.put(20, "20");
+            final Map.Entry<Integer, String> entry = map.entrySet().iterator().next();
+            map.put(5, "5");
+            map.put(15, "15");
+            assertThat(entry.getValue(), is("10"));
+            entry.setValue("ten");
+            assertThat(map.get(10), is("ten"));
+            map.remove(10);
+            assertThat("a removed entry keeps its last value", entry.getValue(), is("ten"));
+        }
+
+        @Test
+        public void gap_followsEditsInBothDirections() {
+            final CompactArrayMap.ArrayHolder holder = new CompactArrayMap.ArrayHolder(32);
+            for (int key = 0; key < 20; key += 2) {
+                holder.put(key, key);
+            }
+            assertThat(holder.gapStart, is(10));
+            holder.put(5, 5);
+            assertThat("gap must move back to the insert", holder.gapStart, is(4));
+            holder.put(17, 17);
+            assertThat("gap must move forward to the insert", holder.gapStart, is(11));
+            holder.remove(2);
+            assertThat("gap must move back to the removal", holder.gapStart, is(1));
+            assertHolderKeys(holder, 0, 4, 5, 6, 8, 10, 12, 14, 16, 17, 18);
+        }
+
+        @Test
+        public void gap_resizeWithGapInTheMiddle() {
+            final CompactArrayMap.ArrayHolder holder = new CompactArrayMap.ArrayHolder(4);
+            holder.put(0, 0);
+            holder.put(2, 2);
+            holder.put(4, 4);
+            holder.put(6, 6);
+            holder.put(3, 3);
+            assertThat(holder.keys.length > 4, is(true));
+            assertThat(holder.gapStart, is(3));
+            assertHolderKeys(holder, 0, 2, 3, 4, 6);
+        }
+
+        @Test
+        public void removeRange_acrossTheGap() {
+            final CompactArrayMap<Integer> map = new CompactArrayMap<>(32);
+            for (int key = 0; key < 20; ++key) {
+                map.put(key, (Integer) key);
+            }
+            //moves the gap to the middle of the range that is removed next
+            map.remove(10);
+            map.removeRange(5, 15);
+            assertThat(new ArrayList<>(map.keySet()), is(Arrays.asList(0, 1, 2, 3, 4, 15, 16, 17, 18, 19)));
+            for (int key : map.keySet()) {
+                assertThat(map.get(key), is(key));
+            }
+            map.put(7, (Integer) 7);
+            assertThat(map.headMap(10).size(), is(6));
+        }
+
+        @Test
+        public void putAll_unsortedBulkLoad() {
+            final CompactArrayMap<Integer> map = new CompactArrayMap<>();
+            map.put(3, (Integer) (-3));
+            final Map<Integer, Integer> source = new java.util.HashMap<>();
+            final java.util.Random random = new java.util.Random(42);
+            final TreeMap<Integer, Integer> expected = new TreeMap<>(map);
+            for (int i = 0; i < 10_000; ++i) {
+                final int key = random.nextInt(1_000_000);
+                source.put(key, (Integer) i);
+            }
+            source.put(3, (Integer) 3);
+            expected.putAll(source);
+            map.putAll(source);
+            assertThat(map, is((Map<Integer, Integer>) expected));
+            assertThat(new ArrayList<>(map.keySet()), is(new ArrayList<>(expected.keySet())));
+        }
+
+        @Test
+        public void size_subMapFollowsModifications() {
+            final IntKeyMap<String> map = new CompactArrayMap<>();
+            final IntKeyMap<String> view = map.subMap(10, 20);
+            map.put(15, "15");
+            assertThat(view.size(), is(1));
+            map.put(5, "5");
+            map.put(25, "25");
+            map.put(10, "10");
+            assertThat(view.size(), is(2));
+            assertThat(view.firstKey(), is(10));
+            assertThat(view.lastKey(), is(15));
+            map.remove(10);
+            assertThat(view.size(), is(1));
+            assertThat(view.firstKey(), is(15));
+            map.shiftKeys(0, 10);
+            assertThat(view.size(), is(1));
+            assertThat(view.firstKey(), is(15));
+        }
+
+        @Test
+        public void spliterator_subMapIsSizedAndSorted() {
+            final IntKeyMap<String> map = new CompactArrayMap<>();
+            for (int i = 0; i < 100; ++i) {
+                map.put(i * 2, Integer.toString(i));
+            }
+            final Spliterator<Integer> keys = map.subMap(10, 30).keySet().spliterator();
+            assertThat(keys.hasCharacteristics(Spliterator.SIZED | Spliterator.SUBSIZED | Spliterator.ORDERED
+                    | Spliterator.SORTED | Spliterator.DISTINCT | Spliterator.NONNULL), is(true));
+            assertThat(keys.getExactSizeIfKnown(), is(10L));
+
+            final Spliterator<Integer> prefix = keys.trySplit();
+            assertThat(prefix.getExactSizeIfKnown() + keys.getExactSizeIfKnown(), is(10L));
+            final List<Integer> visited = new ArrayList<>();
+            prefix.forEachRemaining(visited::add);
+            keys.forEachRemaining(visited::add);
+            assertThat(visited, is(new ArrayList<>(map.subMap(10, 30).keySet())));
+        }
+
+        @Test
+        public void values_parallelStreamVisitsAll() {
+            final IntKeyMap<String> map = new CompactArrayMap<>();
+            long expected = 0;
+            for (int i = 0; i < 100_000; i += 3) {
+                map.put(i, Integer.toString(i));
+                expected += i;
+            }
+            assertThat(map.values().parallelStream().mapToLong(Long::parseLong).sum(), is(expected));
+            assertThat(map.entrySet().parallelStream().map(Map.Entry::getKey).collect(Collectors.toList()),
+                    is(new ArrayList<>(map.keySet())));
+        }
+
+        @Test(expected = ConcurrentModificationException.class)
+        public void spliterator_modificationShouldThrow() {
+            final IntKeyMap<String> map = new CompactArrayMap<>();
+            map.put(1, "1");
+            map.put(2, "2");
+            final Spliterator<String> values = map.values().spliterator();
+            values.tryAdvance(value -> map.put(3, "3"));
+            values.tryAdvance(value -> {
+            });
         }
     }
 
@@ -0,0 +1,26 @@
+package nl.mplatvoet.collections.map;
+
+import junit.framework.TestSuite;
+import org.junit.runner.RunWith;
+import org.junit.runners.Suite;
+
+@RunWith(Suite.class)
+@Suite.SuiteClasses({
+        ConcurrentCompactArrayMapTest.GuavaTests.class,
+        ConcurrentCompactArrayMapTest.AdditionalTests.class,
+})
+public class ConcurrentCompactArrayMapTest {
+
+    public static class AdditionalTests extends AbstractConcurrentIntKeyMapTest {
+        @Override
+        protected <V> IntKeyMap<V> createMap() {
+            return new ConcurrentCompactArrayMap<>();
+        }
+    }
+
+    public static class GuavaTests {
+        public static TestSuite suite() {
+            return AbstractConcurrentIntKeyMapTest.guavaSuite("ConcurrentCompactArrayMapGuavaTest", ConcurrentCompactArrayMap::new);
+        }
+    }
+}
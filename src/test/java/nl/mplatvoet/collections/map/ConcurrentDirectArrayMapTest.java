@@ -0,0 +1,26 @@
+package nl.mplatvoet.collections.map;
+
+import junit.framework.TestSuite;
+import org.junit.runner.RunWith;
+import org.junit.runners.Suite;
+
+@RunWith(Suite.class)
+@Suite.SuiteClasses({
+        ConcurrentDirectArrayMapTest.GuavaTests.class,
+        ConcurrentDirectArrayMapTest.AdditionalTests.class,
+})
+public class ConcurrentDirectArrayMapTest {
+
+    public static class AdditionalTests extends AbstractConcurrentIntKeyMapTest {
+        @Override
+        protected <V> IntKeyMap<V> createMap() {
+            return new ConcurrentDirectArrayMap<>();
+        }
+    }
+
+    public static class GuavaTests {
+        public static TestSuite suite() {
+            return AbstractConcurrentIntKeyMapTest.guavaSuite("ConcurrentDirectArrayMapGuavaTest", ConcurrentDirectArrayMap::new);
+        }
+    }
+}
@@ -0,0 +1,250 @@
+package nl.mplatvoet.collections.map;
+
+import com.google.common.collect.testing.SampleElements;
+import com.google.common.collect.testing.SortedMapTestSuiteBuilder;
+import com.google.common.collect.testing.TestSortedMapGenerator;
+import com.google.common.collect.testing.features.CollectionFeature;
+import com.google.common.collect.testing.features.CollectionSize;
+import com.google.common.collect.testing.features.MapFeature;
+import junit.framework.TestSuite;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Suite;
+
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+
+import static com.google.common.collect.testing.Helpers.mapEntry;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+
+@RunWith(Suite.class)
+@Suite.SuiteClasses({
+        CopyOnWriteArrayMapTest.GuavaTests.class,
+        CopyOnWriteArrayMapTest.SnapshotGuavaTests.class,
+        CopyOnWriteArrayMapTest.AdditionalTests.class,
+})
+public class CopyOnWriteArrayMapTest {
+
+    public static class AdditionalTests extends IntKeyMapContractTest {
+
+        @Override
+        protected <V> IntKeyMap<V> createMap() {
+            return new CopyOnWriteArrayMap<>();
+        }
+
+        @Override
+        protected boolean failsFast() {
+            return false;
+        }
+
+        @Test
+        public void snapshot_isUnaffectedByLaterWrites() {
+            final CopyOnWriteArrayMap<String> map = new CopyOnWriteArrayMap<>();
+            map.put(1, "1");
+            map.put(2, "2");
+            final IntKeyMap<String> snapshot = map.snapshot();
+            map.put(3, "3");
+            map.put(1, "one");
+            map.remove(2);
+            assertThat(snapshot.size(), is(2));
+            assertThat(snapshot.get(1), is("1"));
+            assertThat(snapshot.get(2), is("2"));
+            assertThat(snapshot.containsKey(3), is(false));
+        }
+
+        @Test(expected = UnsupportedOperationException.class)
+        public void snapshot_putShouldThrow() {
+            final CopyOnWriteArrayMap<String> map = new CopyOnWriteArrayMap<>();
+            map.snapshot().put(1, "1");
+        }
+
+        @Test
+        public void mutate_publishesOncePerBatch() {
+            final CopyOnWriteArrayMap<String> map = new CopyOnWriteArrayMap<>();
+            map.put(1, "1");
+            final IntKeyMap<String> before = map.snapshot();
+            map.mutate(batch -> {
+                batch.put(2, "2");
+                batch.put(3, "3");
+                batch.remove(1);
+                assertThat("intermediate writes must not be visible", map.snapshot(), is(before));
+                assertThat("intermediate writes must not be visible", map.containsKey(2), is(false));
+            });
+            assertThat(map.size(), is(2));
+            assertThat(map.get(2), is("2"));
+            assertThat(map.get(3), is("3"));
+            assertThat(map.containsKey(1), is(false));
+        }
+
+        @Test
+        public void mutate_throwingMutatorPublishesNothing() {
+            final CopyOnWriteArrayMap<String> map = new CopyOnWriteArrayMap<>();
+            map.put(1, "1");
+            try {
+                map.mutate(batch -> {
+                    batch.put(2, "2");
+                    throw new IllegalStateException();
+                });
+            } catch (IllegalStateException expected) {
+                //expected
+            }
+            assertThat(map.size(), is(1));
+            assertThat(map.containsKey(2), is(false));
+        }
+
+        @Test
+        public void removeIf_publishesOnce() {
+            final CopyOnWriteArrayMap<String> map = new CopyOnWriteArrayMap<>();
+            for (int key = 0; key < 10; ++key) {
+                map.put(key, "" + key);
+            }
+            final IntKeyMap<String> before = map.snapshot();
+            assertThat(map.removeIf((key, value) -> {
+                assertThat("intermediate removals must not be visible", map.snapshot(), is(before));
+                return key % 2 == 0;
+            }), is(true));
+            assertThat(map.size(), is(5));
+            assertThat(map.firstKey(), is(1));
+            assertThat(map.get(9), is("9"));
+            assertThat(map.removeIf((key, value) -> false), is(false));
+        }
+
+        @Test
+        public void removeIf_throwingFilterPublishesNothing() {
+            final CopyOnWriteArrayMap<String> map = new CopyOnWriteArrayMap<>();
+            map.put(1, "1");
+            map.put(2, "2");
+            try {
+                map.removeIf((key, value) -> {
+                    if (key == 2) throw new IllegalStateException();
+                    return true;
+                });
+            } catch (IllegalStateException expected) {
+                //expected
+            }
+            assertThat(map.size(), is(2));
+        }
+
+        @Test
+        public void removeRange_removesTheRangeOnly() {
+            final CopyOnWriteArrayMap<String> map = new CopyOnWriteArrayMap<>();
+            map.put(1, "1");
+            map.put(2, "2");
+            map.put(4, "4");
+            map.removeRange(2, 5);
+            assertThat(map.size(), is(1));
+            assertThat(map.get(1), is("1"));
+        }
+    }
+
+    public static class GuavaTests {
+        public static TestSuite suite() {
+            return SortedMapTestSuiteBuilder
+                    .using(new DefaultTestMapGenerator())
+                    .named("CopyOnWriteArrayMapGuavaTest")
+                    .withFeatures(
+                            CollectionSize.ANY,
+                            MapFeature.SUPPORTS_REMOVE,
+                            MapFeature.ALLOWS_NULL_VALUE_QUERIES,
+                            MapFeature.ALLOWS_NULL_VALUES,
+                            MapFeature.RESTRICTS_KEYS,
+                            MapFeature.SUPPORTS_PUT,
+                            MapFeature.SUPPORTS_REMOVE,
+                            CollectionFeature.SUPPORTS_ITERATOR_REMOVE,
+                            CollectionFeature.SERIALIZABLE
+                    ).createTestSuite();
+        }
+    }
+
+    public static class SnapshotGuavaTests {
+        public static TestSuite suite() {
+            return SortedMapTestSuiteBuilder
+                    .using(new SnapshotTestMapGenerator())
+                    .named("CopyOnWriteArrayMapSnapshotGuavaTest")
+                    .withFeatures(
+                            CollectionSize.ANY,
+                            MapFeature.ALLOWS_NULL_VALUE_QUERIES,
+                            MapFeature.ALLOWS_NULL_VALUES,
+                            MapFeature.RESTRICTS_KEYS,
+                            CollectionFeature.SERIALIZABLE
+                    ).createTestSuite();
+        }
+    }
+
+    private static class SnapshotTestMapGenerator extends DefaultTestMapGenerator {
+        @Override
+        public SortedMap<Integer, Integer> create(Object... elements) {
+            return ((CopyOnWriteArrayMap<Integer>) super.create(elements)).snapshot();
+        }
+    }
+
+    private static class DefaultTestMapGenerator implements TestSortedMapGenerator<Integer, Integer> {
+        @Override
+        public SampleElements<Map.Entry<Integer, Integer>> samples() {
+            return new SampleElements<>(
+                    mapEntry(10, 1),
+                    mapEntry(11, 3),
+                    mapEntry(12, 2),
+                    mapEntry(13, 4),
+                    mapEntry(20, 5));
+        }
+
+        @Override
+        public SortedMap<Integer, Integer> create(Object... elements) {
+            CopyOnWriteArrayMap<Integer> map = new CopyOnWriteArrayMap<>();
+            for (Object e : elements) {
+                Map.Entry<?, ?> entry = (Map.Entry<?, ?>) e;
+                if (entry == null) {
+                    map.put(null, null);
+                } else {
+                    map.put((Integer) entry.getKey(), (Integer) entry.getValue());
+                }
+            }
+            return map;
+        }
+
+        @Override
+        public Map.Entry<Integer, Integer> belowSamplesLesser() {
+            return mapEntry(1, 40);
+        }
+
+        @Override
+        public Map.Entry<Integer, Integer> belowSamplesGreater() {
+            return mapEntry(5, 20);
+        }
+
+        @Override
+        public Map.Entry<Integer, Integer> aboveSamplesLesser() {
+            return mapEntry(30, 10);
+        }
+
+        @Override
+        public Map.Entry<Integer, Integer> aboveSamplesGreater() {
+            return mapEntry(40, 7);
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        public Map.Entry<Integer, Integer>[] createArray(int length) {
+            return new Map.Entry[length];
+        }
+
+        @Override
+        public Iterable<Map.Entry<Integer, Integer>> order(
+                List<Map.Entry<Integer, Integer>> insertionOrder) {
+            return insertionOrder;
+        }
+
+        @Override
+        public Integer[] createKeyArray(int length) {
+            return new Integer[length];
+        }
+
+        @Override
+        public Integer[] createValueArray(int length) {
+            return new Integer[length];
+        }
+    }
+}
\ No newline at end of file
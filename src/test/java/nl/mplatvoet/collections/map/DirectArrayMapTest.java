@@ -6,14 +6,20 @@ import com.google.common.collect.testing.TestSortedMapGenerator;
 import com.google.common.collect.testing.features.CollectionFeature;
 import com.google.common.collect.testing.features.CollectionSize;
 import com.google.common.collect.testing.features.MapFeature;
+import com.google.common.testing.SerializableTester;
 import junit.framework.TestSuite;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.junit.runners.Suite;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
 import java.util.List;
 import java.util.Map;
 import java.util.SortedMap;
+import java.util.Spliterator;
+import java.util.stream.Collectors;
 
 import static com.google.common.collect.testing.Helpers.mapEntry;
 import static org.hamcrest.MatcherAssert.assertThat;
@@ -26,45 +32,237 @@ import static org.hamcrest.core.Is.is;
 })
 public class DirectArrayMapTest {
 
-    public static class AdditionalTests {
+    public static class AdditionalTests extends IntKeyMapContractTest {
 
-        private <V> SortedMap<Integer, V> createNewSortedMap() {
+        @Override
+        protected <V> IntKeyMap<V> createMap() {
             return new DirectArrayMap<>();
         }
 
-        @Test(expected = IllegalArgumentException.class)
-        public void put_negativeKeyShouldThrow() throws Exception {
-            createNewSortedMap().put(-1, "");
+        @Test
+        public void size_subMapCountsOnlyItsRange() {
+            final IntKeyMap<String> map = new DirectArrayMap<>();
+            map.put(1, "1");
+            map.put(64, "64");
+            map.put(65, "65");
+            map.put(200, "200");
+            assertThat("should only count the subMap portion", map.subMap(64, 66).size(), is(2));
+            assertThat("single key subMap should count its key", map.subMap(64, 65).size(), is(1));
+            assertThat("subMap beyond capacity should be empty", map.subMap(1000, 2000).size(), is(0));
+            assertThat("tailMap should count its portion", map.tailMap(65).size(), is(2));
+        }
+
+        @Test(expected = ConcurrentModificationException.class)
+        public void removeIf_modificationShouldThrow() {
+            final IntKeyMap<String> map = new DirectArrayMap<>();
+            for (int i = 0; i < 10; ++i) {
+                map.put(i, Integer.toString(i));
+            }
+            map.removeIf((key, value) -> map.put(key + 100, value) == null);
+        }
+
+        @Test
+        public void removeIf_throwingFilterRemovesNothing() {
+            final IntKeyMap<String> map = new DirectArrayMap<>();
+            for (int i = 0; i < 200; ++i) {
+                map.put(i, Integer.toString(i));
+            }
+            try {
+                map.removeIf((key, value) -> {
+                    if (key == 150) throw new IllegalStateException();
+                    return key % 2 == 0;
+                });
+            } catch (IllegalStateException expected) {
+                //expected
+            }
+            assertThat(map.size(), is(200));
+            assertThat(map.get(0), is("0"));
+            assertThat(map.subMap(100, 200).removeIf((key, value) -> key % 2 == 0), is(true));
+            assertThat(map.size(), is(150));
+            assertThat(map.containsKey(98), is(true));
+            assertThat(map.containsKey(130), is(false));
+            assertThat(map.containsKey(199), is(true));
+        }
+
+        @Test
+        public void trimToSize_keepsMappings() {
+            final DirectArrayMap<String> map = new DirectArrayMap<>(1000);
+            for (int i = 0; i < 100; i += 3) {
+                map.put(i, Integer.toString(i));
+            }
+            map.subMap(0, 50).trimToSize();
+            assertThat(map.capacity(), is(map.lastKey() + 1));
+            assertThat(map.get(99), is("99"));
+            map.put(500, "500");
+            assertThat(map.get(500), is("500"));
+            assertThat(map.size(), is(35));
+        }
+
+        @Test
+        public void shrinkWhenSparse_halvesAfterRemovals() {
+            final DirectArrayMap<String> map = new DirectArrayMap<>(10, true);
+            for (int i = 0; i < 1000; ++i) {
+                map.put(i, Integer.toString(i));
+            }
+            final int capacity = map.capacity();
+            for (int i = 999; i >= 20; --i) {
+                map.remove(i);
+            }
+            assertThat(map.capacity() <= capacity / 8, is(true));
+            assertThat(map.size(), is(20));
+            assertThat(map.get(19), is("19"));
+            map.removeRange(0, 20);
+            assertThat(map.isEmpty(), is(true));
+            map.put(3, "3");
+            assertThat(map.get(3), is("3"));
+        }
+
+        @Test
+        public void shrinkWhenSparse_disabledByDefault() {
+            final DirectArrayMap<String> map = new DirectArrayMap<>();
+            for (int i = 0; i < 1000; ++i) {
+                map.put(i, Integer.toString(i));
+            }
+            final int capacity = map.capacity();
+            map.clear();
+            assertThat(map.capacity(), is(capacity));
+        }
+
+        @Test
+        public void put_highKeysOnlyAllocateTheirWindow() {
+            final DirectArrayMap<String> map = new DirectArrayMap<>();
+            for (int key = 5000000; key < 5000100; ++key) {
+                map.put(key, Integer.toString(key));
+            }
+            assertThat(map.capacity() - map.base() < 1000, is(true));
+            assertThat(map.firstKey(), is(5000000));
+            assertThat(map.get(5000050), is("5000050"));
+            assertThat(map.get(50), is((String) null));
+            assertThat(map.containsKey(4999999), is(false));
+        }
+
+        @Test
+        public void put_growsDownwards() {
+            final DirectArrayMap<String> map = new DirectArrayMap<>();
+            for (int key = 5000000; key > 4990000; --key) {
+                map.put(key, Integer.toString(key));
+            }
+            assertThat(map.size(), is(10000));
+            assertThat(map.capacity() - map.base() < 20000, is(true));
+            assertThat(map.firstKey(), is(4990001));
+            assertThat(map.lastKey(), is(5000000));
+            assertThat(map.get(4995000), is("4995000"));
+            assertThat(map.headMap(4990101).size(), is(100));
+        }
+
+        @Test
+        public void shiftKeys_belowWindow() {
+            final DirectArrayMap<String> map = new DirectArrayMap<>();
+            map.put(1000000, "a");
+            map.put(1000010, "b");
+            map.shiftKeys(1000000, -999990);
+            assertThat(map.size(), is(2));
+            assertThat(map.get(10), is("a"));
+            assertThat(map.get(20), is("b"));
+            assertThat(map.firstKey(), is(10));
+        }
+
+        @Test
+        public void trimToSize_movesWindowToFirstKey() {
+            final DirectArrayMap<String> map = new DirectArrayMap<>();
+            for (int key = 0; key < 1000; ++key) {
+                map.put(key, Integer.toString(key));
+            }
+            map.headMap(900).clear();
+            map.trimToSize();
+            assertThat(map.base(), is(896));
+            assertThat(map.capacity(), is(1000));
+            assertThat(map.get(950), is("950"));
+            assertThat(map.firstKey(), is(900));
+        }
+
+        @Test
+        public void serialization_keepsValuesOfEveryKind() {
+            final StringBuilder longString = new StringBuilder();
+            for (int i = 0; i < 30000; ++i) {
+                longString.append('\u20ac');
+            }
+            final Object[] values = {null, -1, Integer.MIN_VALUE, Long.MAX_VALUE, -0.5d, "", "text",
+                    longString.toString(), new ArrayList<>(Arrays.asList(1, 2)), 'c'};
+            final DirectArrayMap<Object> map = new DirectArrayMap<>();
+            for (int i = 0; i < values.length; ++i) {
+                map.put(i * 1000 + 70000, values[i]);
+            }
+            final DirectArrayMap<Object> copy = SerializableTester.reserialize(map);
+            assertThat(copy.equals(map), is(true));
+            assertThat(copy.subMap(71000, 75000).equals(map.subMap(71000, 75000)), is(true));
+            assertThat(SerializableTester.reserialize(map.subMap(71000, 75000)).size(), is(4));
         }
 
         @Test
-        public void clear_tailMap() {
-            final SortedMap<Integer, Integer> map = createNewSortedMap();
-            map.put(1, 5);
-            map.put(2, 5);
-            map.put(3, 5);
-            map.tailMap(2).clear();
-            assertThat("should only clear the tailMap portion", map.size(), is(1));
+        public void serialization_usesValueCodec() {
+            final DirectArrayMap<String> map = new DirectArrayMap<>(10, false, new UpperCaseCodec());
+            map.put(3, "a");
+            map.put(500, "b");
+            final IntKeyMap<String> copy = SerializableTester.reserialize(map);
+            assertThat(copy.get(3), is("A"));
+            assertThat(copy.get(500), is("B"));
         }
 
         @Test
-        public void clear_headMap() {
-            final SortedMap<Integer, Integer> map = createNewSortedMap();
-            map.put(1, 5);
-            map.put(2, 5);
-            map.put(3, 5);
-            map.headMap(2).clear();
-            assertThat("should only clear the headMap portion", map.size(), is(2));
+        public void spliterator_subMapIsSizedAndSorted() {
+            final IntKeyMap<String> map = new DirectArrayMap<>();
+            for (int i = 0; i < 100; ++i) {
+                map.put(i * 2, Integer.toString(i));
+            }
+            final Spliterator<Integer> keys = map.subMap(10, 30).keySet().spliterator();
+            assertThat(keys.hasCharacteristics(Spliterator.SIZED | Spliterator.SUBSIZED | Spliterator.ORDERED
+                    | Spliterator.SORTED | Spliterator.DISTINCT | Spliterator.NONNULL), is(true));
+            assertThat(keys.getExactSizeIfKnown(), is(10L));
+
+            final Spliterator<Integer> prefix = keys.trySplit();
+            assertThat(prefix.getExactSizeIfKnown() + keys.getExactSizeIfKnown(), is(10L));
+            final List<Integer> visited = new ArrayList<>();
+            prefix.forEachRemaining(visited::add);
+            keys.forEachRemaining(visited::add);
+            assertThat(visited, is(new ArrayList<>(map.subMap(10, 30).keySet())));
         }
 
         @Test
-        public void clear_subMap() {
-            final SortedMap<Integer, Integer> map = createNewSortedMap();
-            map.put(1, 5);
-            map.put(2, 5);
-            map.put(3, 5);
-            map.subMap(2, 3).clear();
-            assertThat("should only clear the subMap portion", map.size(), is(2));
+        public void values_parallelStreamVisitsAll() {
+            final IntKeyMap<String> map = new DirectArrayMap<>();
+            long expected = 0;
+            for (int i = 0; i < 100_000; i += 3) {
+                map.put(i, Integer.toString(i));
+                expected += i;
+            }
+            assertThat(map.values().parallelStream().mapToLong(Long::parseLong).sum(), is(expected));
+            assertThat(map.entrySet().parallelStream().map(Map.Entry::getKey).collect(Collectors.toList()),
+                    is(new ArrayList<>(map.keySet())));
+        }
+
+        @Test(expected = ConcurrentModificationException.class)
+        public void spliterator_modificationShouldThrow() {
+            final IntKeyMap<String> map = new DirectArrayMap<>();
+            map.put(1, "1");
+            map.put(2, "2");
+            final Spliterator<String> values = map.values().spliterator();
+            values.tryAdvance(value -> map.put(3, "3"));
+            values.tryAdvance(value -> {
+            });
+        }
+
+        @Test
+        public void spliterator_entriesAreNotInstalledInTheMap() {
+            final IntKeyMap<String> map = new DirectArrayMap<>();
+            map.put(1, "1");
+            final List<Map.Entry<Integer, String>> streamed = map.entrySet().stream().collect(Collectors.toList());
+            final Map.Entry<Integer, String> iterated = map.entrySet().iterator().next();
+            assertThat("streamed entries must be detached", streamed.get(0) != iterated, is(true));
+
+            assertThat(streamed.get(0).setValue("one"), is("1"));
+            assertThat("setValue must write through", map.get(1), is("one"));
+            assertThat("iterator entries must stay in sync", iterated.getValue(), is("one"));
         }
     }
 
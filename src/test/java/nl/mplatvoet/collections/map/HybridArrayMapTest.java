@@ -0,0 +1,168 @@
+package nl.mplatvoet.collections.map;
+
+import com.google.common.collect.testing.SampleElements;
+import com.google.common.collect.testing.SortedMapTestSuiteBuilder;
+import com.google.common.collect.testing.TestSortedMapGenerator;
+import com.google.common.collect.testing.features.CollectionFeature;
+import com.google.common.collect.testing.features.CollectionSize;
+import com.google.common.collect.testing.features.MapFeature;
+import junit.framework.TestSuite;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Suite;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import static com.google.common.collect.testing.Helpers.mapEntry;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+
+@RunWith(Suite.class)
+@Suite.SuiteClasses({
+        HybridArrayMapTest.GuavaTests.class,
+        HybridArrayMapTest.AdditionalTests.class,
+})
+public class HybridArrayMapTest {
+
+    public static class AdditionalTests extends IntKeyMapContractTest {
+
+        @Override
+        protected <V> IntKeyMap<V> createMap() {
+            return new HybridArrayMap<>();
+        }
+
+        @Test
+        public void mixedDensity_denseRunAndSparseBuckets() {
+            final IntKeyMap<String> map = new HybridArrayMap<>();
+            final TreeMap<Integer, String> expected = new TreeMap<>();
+            for (int key = 0; key < 70000; ++key) {
+                map.put(key, "d" + key);
+                expected.put(key, "d" + key);
+            }
+            for (int key = 200000; key < 200000 + 65536; key += 2) {
+                map.put(key, "b" + key);
+                expected.put(key, "b" + key);
+            }
+            for (int key = 1000000; key < 100000000; key += 99991) {
+                map.put(key, "s" + key);
+                expected.put(key, "s" + key);
+            }
+            assertThat(map.size(), is(expected.size()));
+            assertThat(map.equals(expected), is(true));
+            assertThat(new ArrayList<>(map.keySet()), is(new ArrayList<>(expected.keySet())));
+            assertThat(map.subMap(60000, 230000).size(), is(expected.subMap(60000, 230000).size()));
+        }
+
+        @Test
+        public void mixedDensity_removeAndClearSplitsContainers() {
+            final IntKeyMap<String> map = new HybridArrayMap<>();
+            final TreeMap<Integer, String> expected = new TreeMap<>();
+            for (int key = 0; key < 150000; ++key) {
+                map.put(key, "v" + key);
+                expected.put(key, "v" + key);
+            }
+            for (int key = 100; key < 60000; key += 3) {
+                map.remove(key);
+                expected.remove(key);
+            }
+            map.subMap(65000, 140000).clear();
+            expected.subMap(65000, 140000).clear();
+            assertThat(map.size(), is(expected.size()));
+            assertThat(map.equals(expected), is(true));
+            assertThat(map.lastKey(), is(expected.lastKey()));
+            assertThat(map.headMap(65000).lastKey(), is(expected.headMap(65000).lastKey()));
+        }
+    }
+
+    public static class GuavaTests {
+        public static TestSuite suite() {
+            return SortedMapTestSuiteBuilder
+                    .using(new DefaultTestMapGenerator())
+                    .named("HybridArrayMapGuavaTest")
+                    .withFeatures(
+                            CollectionSize.ANY,
+                            MapFeature.SUPPORTS_REMOVE,
+                            MapFeature.ALLOWS_NULL_VALUE_QUERIES,
+                            MapFeature.ALLOWS_NULL_VALUES,
+                            MapFeature.RESTRICTS_KEYS,
+                            MapFeature.SUPPORTS_PUT,
+                            MapFeature.SUPPORTS_REMOVE,
+                            MapFeature.FAILS_FAST_ON_CONCURRENT_MODIFICATION,
+                            CollectionFeature.SUPPORTS_ITERATOR_REMOVE,
+                            CollectionFeature.SERIALIZABLE
+                    ).createTestSuite();
+        }
+    }
+
+    private static class DefaultTestMapGenerator implements TestSortedMapGenerator<Integer, Integer> {
+        @Override
+        public SampleElements<Map.Entry<Integer, Integer>> samples() {
+            return new SampleElements<>(
+                    mapEntry(10, 1),
+                    mapEntry(11, 3),
+                    mapEntry(12, 2),
+                    mapEntry(13, 4),
+                    mapEntry(20, 5));
+        }
+
+        @Override
+        public SortedMap<Integer, Integer> create(Object... elements) {
+            HybridArrayMap<Integer> map = new HybridArrayMap<>();
+            for (Object e : elements) {
+                Map.Entry<?, ?> entry = (Map.Entry<?, ?>) e;
+                if (entry == null) {
+                    map.put(null, null);
+                } else {
+                    map.put((Integer) entry.getKey(), (Integer) entry.getValue());
+                }
+            }
+            return map;
+        }
+
+        @Override
+        public Map.Entry<Integer, Integer> belowSamplesLesser() {
+            return mapEntry(1, 40);
+        }
+
+        @Override
+        public Map.Entry<Integer, Integer> belowSamplesGreater() {
+            return mapEntry(5, 20);
+        }
+
+        @Override
+        public Map.Entry<Integer, Integer> aboveSamplesLesser() {
+            return mapEntry(30, 10);
+        }
+
+        @Override
+        public Map.Entry<Integer, Integer> aboveSamplesGreater() {
+            return mapEntry(40, 7);
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        public Map.Entry<Integer, Integer>[] createArray(int length) {
+            return new Map.Entry[length];
+        }
+
+        @Override
+        public Iterable<Map.Entry<Integer, Integer>> order(
+                List<Map.Entry<Integer, Integer>> insertionOrder) {
+            return insertionOrder;
+        }
+
+        @Override
+        public Integer[] createKeyArray(int length) {
+            return new Integer[length];
+        }
+
+        @Override
+        public Integer[] createValueArray(int length) {
+            return new Integer[length];
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,170 @@
+package nl.mplatvoet.collections.map;
+
+import com.google.common.collect.testing.SampleElements;
+import com.google.common.collect.testing.SortedMapTestSuiteBuilder;
+import com.google.common.collect.testing.TestSortedMapGenerator;
+import com.google.common.collect.testing.features.CollectionFeature;
+import com.google.common.collect.testing.features.CollectionSize;
+import com.google.common.collect.testing.features.MapFeature;
+import junit.framework.TestSuite;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Suite;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import static com.google.common.collect.testing.Helpers.mapEntry;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+
+@RunWith(Suite.class)
+@Suite.SuiteClasses({
+        ImmutableIntKeyMapTest.GuavaTests.class,
+        ImmutableIntKeyMapTest.AdditionalTests.class,
+})
+public class ImmutableIntKeyMapTest {
+
+    public static class AdditionalTests {
+
+        @Test
+        public void freeze_matchesSourceForEverySize() {
+            final Random random = new Random(42);
+            for (int size = 0; size < 70; ++size) {
+                final CompactArrayMap<Integer> map = new CompactArrayMap<>();
+                final TreeMap<Integer, Integer> expected = new TreeMap<>();
+                while (map.size() < size) {
+                    final int key = random.nextInt(1000);
+                    map.put(key, (Integer) key);
+                    expected.put(key, key);
+                }
+                final ImmutableIntKeyMap<Integer> frozen = map.freeze();
+                assertThat(frozen.equals(expected), is(true));
+                assertThat(new ArrayList<>(frozen.keySet()), is(new ArrayList<>(expected.keySet())));
+                for (int key = -1; key <= 1001; ++key) {
+                    assertThat(frozen.get(key), is(expected.get(key)));
+                    assertThat(frozen.ceilingKey(key), is(orMinusOne(expected.ceilingKey(key))));
+                    assertThat(frozen.floorKey(key), is(orMinusOne(expected.floorKey(key))));
+                }
+                for (int key = 0; key <= 1001; ++key) {
+                    assertThat(frozen.headMap(key).size(), is(expected.headMap(key).size()));
+                }
+            }
+        }
+
+        private static int orMinusOne(Integer key) {
+            return key == null ? -1 : key;
+        }
+
+        @Test
+        public void freeze_isUnaffectedByLaterWrites() {
+            final CompactArrayMap<String> map = new CompactArrayMap<>();
+            map.put(1, "1");
+            map.put(2, null);
+            final ImmutableIntKeyMap<String> frozen = map.freeze();
+            map.put(3, "3");
+            map.remove(1);
+            assertThat(frozen.size(), is(2));
+            assertThat(frozen.get(1), is("1"));
+            assertThat(frozen.containsKey(2), is(true));
+            assertThat(frozen.freeze() == frozen, is(true));
+        }
+
+        @Test(expected = UnsupportedOperationException.class)
+        public void put_shouldThrow() {
+            new CompactArrayMap<String>().freeze().put(1, "1");
+        }
+
+        @Test(expected = UnsupportedOperationException.class)
+        public void shiftKeys_shouldThrow() {
+            new CompactArrayMap<String>().freeze().shiftKeys(0, 1);
+        }
+    }
+
+    public static class GuavaTests {
+        public static TestSuite suite() {
+            return SortedMapTestSuiteBuilder
+                    .using(new DefaultTestMapGenerator())
+                    .named("ImmutableIntKeyMapGuavaTest")
+                    .withFeatures(
+                            CollectionSize.ANY,
+                            MapFeature.ALLOWS_NULL_VALUE_QUERIES,
+                            MapFeature.ALLOWS_NULL_VALUES,
+                            MapFeature.RESTRICTS_KEYS,
+                            CollectionFeature.SERIALIZABLE
+                    ).createTestSuite();
+        }
+    }
+
+    private static class DefaultTestMapGenerator implements TestSortedMapGenerator<Integer, Integer> {
+        @Override
+        public SampleElements<Map.Entry<Integer, Integer>> samples() {
+            return new SampleElements<>(
+                    mapEntry(10, 1),
+                    mapEntry(11, 3),
+                    mapEntry(12, 2),
+                    mapEntry(13, 4),
+                    mapEntry(20, 5));
+        }
+
+        @Override
+        public SortedMap<Integer, Integer> create(Object... elements) {
+            CompactArrayMap<Integer> map = new CompactArrayMap<>();
+            for (Object e : elements) {
+                Map.Entry<?, ?> entry = (Map.Entry<?, ?>) e;
+                if (entry == null) {
+                    map.put(null, null);
+                } else {
+                    map.put((Integer) entry.getKey(), (Integer) entry.getValue());
+                }
+            }
+            return map.freeze();
+        }
+
+        @Override
+        public Map.Entry<Integer, Integer> belowSamplesLesser() {
+            return mapEntry(1, 40);
+        }
+
+        @Override
+        public Map.Entry<Integer, Integer> belowSamplesGreater() {
+            return mapEntry(5, 20);
+        }
+
+        @Override
+        public Map.Entry<Integer, Integer> aboveSamplesLesser() {
+            return mapEntry(30, 10);
+        }
+
+        @Override
+        public Map.Entry<Integer, Integer> aboveSamplesGreater() {
+            return mapEntry(40, 7);
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        public Map.Entry<Integer, Integer>[] createArray(int length) {
+            return new Map.Entry[length];
+        }
+
+        @Override
+        public Iterable<Map.Entry<Integer, Integer>> order(
+                List<Map.Entry<Integer, Integer>> insertionOrder) {
+            return insertionOrder;
+        }
+
+        @Override
+        public Integer[] createKeyArray(int length) {
+            return new Integer[length];
+        }
+
+        @Override
+        public Integer[] createValueArray(int length) {
+            return new Integer[length];
+        }
+    }
+}
\ No newline at end of file
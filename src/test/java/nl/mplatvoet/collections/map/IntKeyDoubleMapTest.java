@@ -0,0 +1,65 @@
+package nl.mplatvoet.collections.map;
+
+import com.google.common.testing.SerializableTester;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Supplier;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+
+/**
+ * Double specific edge cases, the shared behaviour is tested by {@link PrimitiveValueMapTest}.
+ */
+@RunWith(Parameterized.class)
+public class IntKeyDoubleMapTest {
+    private final Supplier<IntKeyDoubleMap> factory;
+
+    public IntKeyDoubleMapTest(String name, Supplier<IntKeyDoubleMap> factory) {
+        this.factory = factory;
+    }
+
+    @Parameterized.Parameters(name = "{0}")
+    public static List<Object[]> parameters() {
+        return Arrays.asList(
+                new Object[]{"CompactDoubleArrayMap", (Supplier<IntKeyDoubleMap>) CompactDoubleArrayMap::new},
+                new Object[]{"DirectDoubleArrayMap", (Supplier<IntKeyDoubleMap>) DirectDoubleArrayMap::new});
+    }
+
+    @Test
+    public void putDouble_nanIsAValue() {
+        final IntKeyDoubleMap map = factory.get();
+        map.putDouble(1, Double.NaN);
+        assertThat(map.containsKey(1), is(true));
+        assertThat(Double.isNaN(map.getDouble(1)), is(true));
+        assertThat(map.containsValue(Double.NaN), is(true));
+        assertThat(Double.isNaN(map.addTo(1, 1)), is(true));
+    }
+
+    @Test
+    public void putDouble_keepsNegativeZero() {
+        final IntKeyDoubleMap map = factory.get();
+        map.putDouble(1, -0.0);
+        assertThat(map.containsKey(1), is(true));
+        assertThat(1 / map.getDouble(1), is(Double.NEGATIVE_INFINITY));
+        assertThat("-0.0 and 0.0 are different values for Double.equals", map.containsValue(0.0), is(false));
+    }
+
+    @Test
+    public void serialization_keepsSpecialValues() {
+        final IntKeyDoubleMap map = factory.get();
+        map.putDouble(1, Double.NaN);
+        map.putDouble(2, -0.0);
+        map.putDouble(3, Double.NEGATIVE_INFINITY);
+        map.putDouble(4, Double.MIN_VALUE);
+        final IntKeyDoubleMap copy = SerializableTester.reserialize(map);
+        assertThat(Double.isNaN(copy.getDouble(1)), is(true));
+        assertThat(1 / copy.getDouble(2), is(Double.NEGATIVE_INFINITY));
+        assertThat(copy.getDouble(3), is(Double.NEGATIVE_INFINITY));
+        assertThat(copy.getDouble(4), is(Double.MIN_VALUE));
+    }
+}
@@ -0,0 +1,58 @@
+package nl.mplatvoet.collections.map;
+
+import com.google.common.testing.SerializableTester;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Supplier;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+
+/**
+ * Int specific edge cases, the shared behaviour is tested by {@link PrimitiveValueMapTest}.
+ */
+@RunWith(Parameterized.class)
+public class IntKeyIntMapTest {
+    private final Supplier<IntKeyIntMap> factory;
+
+    public IntKeyIntMapTest(String name, Supplier<IntKeyIntMap> factory) {
+        this.factory = factory;
+    }
+
+    @Parameterized.Parameters(name = "{0}")
+    public static List<Object[]> parameters() {
+        return Arrays.asList(
+                new Object[]{"CompactIntArrayMap", (Supplier<IntKeyIntMap>) CompactIntArrayMap::new},
+                new Object[]{"DirectIntArrayMap", (Supplier<IntKeyIntMap>) DirectIntArrayMap::new});
+    }
+
+    @Test
+    public void putInt_keepsExtremes() {
+        final IntKeyIntMap map = factory.get();
+        map.putInt(1, Integer.MIN_VALUE);
+        map.putInt(2, Integer.MAX_VALUE);
+        assertThat(map.getInt(1), is(Integer.MIN_VALUE));
+        assertThat(map.get(2), is(Integer.MAX_VALUE));
+        assertThat(map.removeInt(1), is(Integer.MIN_VALUE));
+    }
+
+    @Test
+    public void addTo_overflowWraps() {
+        final IntKeyIntMap map = factory.get();
+        map.putInt(1, Integer.MAX_VALUE);
+        assertThat(map.addTo(1, 1), is(Integer.MIN_VALUE));
+    }
+
+    @Test
+    public void putInt_zeroIsAValue() {
+        final IntKeyIntMap map = factory.get();
+        map.putInt(1, 0);
+        assertThat(map.containsKey(1), is(true));
+        assertThat(map.get(1), is(0));
+        assertThat(SerializableTester.reserialize(map).containsKey(1), is(true));
+    }
+}
@@ -0,0 +1,59 @@
+package nl.mplatvoet.collections.map;
+
+import com.google.common.testing.SerializableTester;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Supplier;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+
+/**
+ * Long specific edge cases, the shared behaviour is tested by {@link PrimitiveValueMapTest}.
+ */
+@RunWith(Parameterized.class)
+public class IntKeyLongMapTest {
+    private final Supplier<IntKeyLongMap> factory;
+
+    public IntKeyLongMapTest(String name, Supplier<IntKeyLongMap> factory) {
+        this.factory = factory;
+    }
+
+    @Parameterized.Parameters(name = "{0}")
+    public static List<Object[]> parameters() {
+        return Arrays.asList(
+                new Object[]{"CompactLongArrayMap", (Supplier<IntKeyLongMap>) CompactLongArrayMap::new},
+                new Object[]{"DirectLongArrayMap", (Supplier<IntKeyLongMap>) DirectLongArrayMap::new});
+    }
+
+    @Test
+    public void putLong_keepsValuesOutsideIntRange() {
+        final IntKeyLongMap map = factory.get();
+        map.putLong(1, Long.MIN_VALUE);
+        map.putLong(2, Long.MAX_VALUE);
+        assertThat(map.getLong(1), is(Long.MIN_VALUE));
+        assertThat(map.get(2), is(Long.MAX_VALUE));
+        assertThat(map.removeLong(1), is(Long.MIN_VALUE));
+    }
+
+    @Test
+    public void addTo_overflowWraps() {
+        final IntKeyLongMap map = factory.get();
+        map.putLong(1, Long.MAX_VALUE);
+        assertThat(map.addTo(1, 1), is(Long.MIN_VALUE));
+    }
+
+    @Test
+    public void serialization_keepsExtremes() {
+        final IntKeyLongMap map = factory.get();
+        map.putLong(1, Long.MIN_VALUE);
+        map.putLong(2, Long.MAX_VALUE);
+        final IntKeyLongMap copy = SerializableTester.reserialize(map);
+        assertThat(copy.getLong(1), is(Long.MIN_VALUE));
+        assertThat(copy.getLong(2), is(Long.MAX_VALUE));
+    }
+}
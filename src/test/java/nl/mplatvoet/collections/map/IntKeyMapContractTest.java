@@ -0,0 +1,322 @@
+package nl.mplatvoet.collections.map;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.List;
+import java.util.PrimitiveIterator;
+import java.util.SortedMap;
+
+import static com.google.common.collect.testing.Helpers.mapEntry;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * The IntKeyMap behaviour on top of the {@link SortedMap} contract the Guava suites test, shared by the additional
+ * tests of every mutable implementation.
+ */
+public abstract class IntKeyMapContractTest {
+
+    protected abstract <V> IntKeyMap<V> createMap();
+
+    //weakly consistent maps never throw ConcurrentModificationException, the fail fast tests are skipped for them
+    protected boolean failsFast() {
+        return true;
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void put_negativeKeyShouldThrow() throws Exception {
+        createMap().put(-1, "");
+    }
+
+    @Test
+    public void clear_tailMap() {
+        final SortedMap<Integer, Integer> map = createMap();
+        map.put(1, 5);
+        map.put(2, 5);
+        map.put(4, 5);
+        map.tailMap(2).clear();
+        assertThat("should only clear the tailMap portion", map.size(), is(1));
+    }
+
+    @Test
+    public void clear_headMap() {
+        final SortedMap<Integer, Integer> map = createMap();
+        map.put(1, 5);
+        map.put(2, 5);
+        map.put(4, 5);
+        map.headMap(2).clear();
+        assertThat("should only clear the headMap portion", map.size(), is(2));
+    }
+
+    @Test
+    public void clear_subMap() {
+        final SortedMap<Integer, Integer> map = createMap();
+        map.put(1, 5);
+        map.put(2, 5);
+        map.put(4, 5);
+        map.subMap(2, 3).clear();
+        assertThat("should only clear the subMap portion", map.size(), is(2));
+    }
+
+    @Test
+    public void shiftKeys_positiveDelta() {
+        final IntKeyMap<String> map = createMap();
+        map.put(1, "1");
+        map.put(2, "2");
+        map.put(4, "4");
+        map.shiftKeys(2, 3);
+        assertThat("keys before fromKey must stay", map.get(1), is("1"));
+        assertThat("keys from fromKey must move", map.get(5), is("2"));
+        assertThat("keys from fromKey must move", map.get(7), is("4"));
+        assertThat("size must not change", map.size(), is(3));
+        assertThat("old key must be vacated", map.containsKey(2), is(false));
+    }
+
+    @Test
+    public void shiftKeys_negativeDeltaOverwrites() {
+        final IntKeyMap<String> map = createMap();
+        map.put(1, "1");
+        map.put(2, "2");
+        map.put(4, "4");
+        map.shiftKeys(2, -1);
+        assertThat("overwritten key must be removed", map.size(), is(2));
+        assertThat("keys from fromKey must move", map.get(1), is("2"));
+        assertThat("keys from fromKey must move", map.get(3), is("4"));
+    }
+
+    @Test
+    public void shiftKeys_subMapOnlyShiftsWithinRange() {
+        final IntKeyMap<String> map = createMap();
+        map.put(1, "1");
+        map.put(2, "2");
+        map.put(10, "10");
+        map.subMap(0, 5).shiftKeys(1, 2);
+        assertThat("keys within the view must move", map.get(4), is("2"));
+        assertThat("keys outside the view must stay", map.get(10), is("10"));
+        assertThat("size must not change", map.size(), is(3));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shiftKeys_beyondSubMapShouldThrow() {
+        final IntKeyMap<String> map = createMap();
+        map.put(4, "4");
+        map.subMap(0, 5).shiftKeys(1, 1);
+    }
+
+    @Test
+    public void navigation_subMap() {
+        final IntKeyMap<String> map = createMap();
+        for (int key : new int[]{2, 5, 9, 14, 20}) {
+            map.put(key, Integer.toString(key));
+        }
+        final IntKeyMap<String> view = map.subMap(5, 15);
+        assertThat(view.floorKey(8), is(5));
+        assertThat(view.floorKey(4), is(-1));
+        assertThat(view.floorKey(100), is(14));
+        assertThat(view.ceilingKey(6), is(9));
+        assertThat(view.ceilingKey(-3), is(5));
+        assertThat(view.ceilingKey(15), is(-1));
+        assertThat(view.higherKey(9), is(14));
+        assertThat(view.higherKey(14), is(-1));
+        assertThat(view.lowerKey(9), is(5));
+        assertThat(view.lowerKey(5), is(-1));
+        assertThat(map.higherKey(Integer.MAX_VALUE), is(-1));
+        assertThat(map.lowerKey(Integer.MIN_VALUE), is(-1));
+    }
+
+    @Test
+    public void pollFirstAndLastEntry() {
+        final IntKeyMap<String> map = createMap();
+        map.put(3, "3");
+        map.put(1, "1");
+        map.put(8, "8");
+        assertThat(map.pollFirstEntry(), is(mapEntry(1, "1")));
+        assertThat(map.pollLastEntry(), is(mapEntry(8, "8")));
+        assertThat(map.size(), is(1));
+        assertThat(map.pollLastEntry(), is(mapEntry(3, "3")));
+        assertThat(map.pollFirstEntry() == null, is(true));
+    }
+
+    @Test
+    public void removeIf_subMap() {
+        final IntKeyMap<String> map = createMap();
+        for (int i = 0; i < 100; ++i) {
+            map.put(i, Integer.toString(i));
+        }
+        assertThat(map.subMap(10, 60).removeIf((key, value) -> key % 2 == 1), is(true));
+        assertThat(map.size(), is(75));
+        assertThat(map.containsKey(9), is(true));
+        assertThat(map.containsKey(11), is(false));
+        assertThat(map.containsKey(61), is(true));
+        assertThat(map.subMap(10, 60).size(), is(25));
+        assertThat(map.removeIf((key, value) -> false), is(false));
+    }
+
+    @Test
+    public void values_removeAllRemovesEveryOccurrence() {
+        final IntKeyMap<String> map = createMap();
+        for (int i = 0; i < 10; ++i) {
+            map.put(i, i % 3 == 0 ? "x" : "y");
+        }
+        assertThat(map.values().removeAll(Arrays.asList("x")), is(true));
+        assertThat(map.size(), is(6));
+        assertThat(map.containsValue("x"), is(false));
+    }
+
+    @Test
+    public void removeRange_clampsToSubMap() {
+        final IntKeyMap<String> map = createMap();
+        for (int i = 0; i < 20; ++i) {
+            map.put(i, Integer.toString(i));
+        }
+        map.subMap(5, 15).removeRange(0, 10);
+        assertThat(map.size(), is(15));
+        assertThat(map.containsKey(4), is(true));
+        assertThat(map.containsKey(5), is(false));
+        assertThat(map.containsKey(10), is(true));
+        map.removeRange(18, 100);
+        assertThat(map.lastKey(), is(17));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void removeRange_invertedShouldThrow() {
+        createMap().removeRange(5, 4);
+    }
+
+    @Test
+    public void cursor_walksSubMapInKeyOrder() {
+        final IntKeyMap<String> map = createMap();
+        for (int i = 0; i < 50; ++i) {
+            map.put(i * 3, Integer.toString(i * 3));
+        }
+        final IntKeyCursor<String> cursor = map.subMap(10, 40).cursor();
+        final List<Integer> keys = new ArrayList<>();
+        while (cursor.advance()) {
+            assertThat(cursor.value(), is(Integer.toString(cursor.key())));
+            keys.add(cursor.key());
+        }
+        assertThat(keys, is(new ArrayList<>(map.subMap(10, 40).keySet())));
+        assertThat(cursor.advance(), is(false));
+
+        cursor.reset();
+        assertThat(cursor.advance(), is(true));
+        assertThat(cursor.key(), is(12));
+    }
+
+    @Test
+    public void cursor_setValueWritesThrough() {
+        final IntKeyMap<String> map = createMap();
+        map.put(1, "1");
+        map.put(5, "5");
+        final IntKeyCursor<String> cursor = map.cursor();
+        while (cursor.advance()) {
+            cursor.setValue(cursor.value() + "!");
+        }
+        assertThat(map.get(1), is("1!"));
+        assertThat(map.get(5), is("5!"));
+    }
+
+    @Test(expected = ConcurrentModificationException.class)
+    public void cursor_setValueAfterModificationShouldThrow() {
+        assumeTrue(failsFast());
+        final IntKeyMap<String> map = createMap();
+        map.put(1, "1");
+        map.put(2, "2");
+        final IntKeyCursor<String> cursor = map.cursor();
+        cursor.advance();
+        map.remove(2);
+        cursor.setValue("one");
+    }
+
+    @Test(expected = ConcurrentModificationException.class)
+    public void cursor_modificationShouldThrow() {
+        assumeTrue(failsFast());
+        final IntKeyMap<String> map = createMap();
+        map.put(1, "1");
+        map.put(2, "2");
+        final IntKeyCursor<String> cursor = map.cursor();
+        cursor.advance();
+        map.remove(2);
+        cursor.advance();
+    }
+
+    @Test
+    public void cursor_seekPositionsOnOrInFrontOfKey() {
+        final IntKeyMap<String> map = createMap();
+        for (int key : new int[]{2, 5, 9, 14, 20}) {
+            map.put(key, Integer.toString(key));
+        }
+        final IntKeyCursor<String> cursor = map.subMap(5, 15).cursor();
+        assertThat(cursor.seek(9), is(true));
+        assertThat(cursor.value(), is("9"));
+        assertThat(cursor.seek(10), is(false));
+        assertThat(cursor.advance(), is(true));
+        assertThat(cursor.key(), is(14));
+        assertThat("seeking back", cursor.seek(5), is(true));
+        assertThat(cursor.advance(), is(true));
+        assertThat(cursor.key(), is(9));
+        assertThat("below the view", cursor.seek(2), is(false));
+        assertThat(cursor.advance(), is(true));
+        assertThat(cursor.key(), is(5));
+        assertThat("above the view", cursor.seek(20), is(false));
+        assertThat(cursor.advance(), is(false));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void cursor_keyAfterMissedSeekShouldThrow() {
+        final IntKeyMap<String> map = createMap();
+        map.put(1, "1");
+        map.put(3, "3");
+        final IntKeyCursor<String> cursor = map.cursor();
+        cursor.seek(2);
+        cursor.key();
+    }
+
+    @Test
+    public void cursor_seekContinuesAfterModification() {
+        final IntKeyMap<String> map = createMap();
+        for (int i = 0; i < 100; ++i) {
+            map.put(i * 2, Integer.toString(i * 2));
+        }
+        final IntKeyCursor<String> cursor = map.cursor();
+        assertThat(cursor.seek(50), is(true));
+        map.remove(52);
+        map.put(53, "53");
+        map.remove(0);
+        assertThat(cursor.seek(52), is(false));
+        assertThat(cursor.advance(), is(true));
+        assertThat(cursor.key(), is(53));
+        assertThat(cursor.setValue("x"), is("53"));
+        assertThat(map.get(53), is("x"));
+        for (int key = 54; key < 200; ++key) {
+            assertThat("key " + key, cursor.seek(key), is(key % 2 == 0));
+        }
+    }
+
+    @Test
+    public void forEachEntry_visitsAllInKeyOrder() {
+        final IntKeyMap<String> map = createMap();
+        map.put(7, "7");
+        map.put(2, null);
+        map.put(4, "4");
+        final StringBuilder sb = new StringBuilder();
+        map.forEachEntry((key, value) -> sb.append(key).append('=').append(value).append(' '));
+        assertThat(sb.toString(), is("2=null 4=4 7=7 "));
+    }
+
+    @Test
+    public void keyIterator_headMap() {
+        final IntKeyMap<String> map = createMap();
+        map.put(3, "3");
+        map.put(1, "1");
+        map.put(9, "9");
+        final PrimitiveIterator.OfInt keys = map.headMap(9).keyIterator();
+        assertThat(keys.nextInt(), is(1));
+        assertThat(keys.nextInt(), is(3));
+        assertThat(keys.hasNext(), is(false));
+    }
+}
@@ -0,0 +1,177 @@
+package nl.mplatvoet.collections.map;
+
+import com.google.common.collect.testing.SampleElements;
+import com.google.common.collect.testing.SortedMapTestSuiteBuilder;
+import com.google.common.collect.testing.TestSortedMapGenerator;
+import com.google.common.collect.testing.features.CollectionFeature;
+import com.google.common.collect.testing.features.CollectionSize;
+import com.google.common.collect.testing.features.MapFeature;
+import junit.framework.TestSuite;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Suite;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import static com.google.common.collect.testing.Helpers.mapEntry;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+
+@RunWith(Suite.class)
+@Suite.SuiteClasses({
+        PagedArrayMapTest.GuavaTests.class,
+        PagedArrayMapTest.AdditionalTests.class,
+})
+public class PagedArrayMapTest {
+
+    public static class AdditionalTests extends IntKeyMapContractTest {
+
+        @Override
+        protected <V> IntKeyMap<V> createMap() {
+            return new PagedArrayMap<>();
+        }
+
+        @Test
+        public void put_clusteredHighKeys() {
+            final PagedArrayMap<String> map = new PagedArrayMap<>();
+            final TreeMap<Integer, String> expected = new TreeMap<>();
+            final Set<Integer> pages = new HashSet<>();
+            for (int base : new int[]{0, 5000000, 900000000, Integer.MAX_VALUE - 10000}) {
+                for (int key = base; key < base + 3000; key += 7) {
+                    map.put(key, "v" + key);
+                    expected.put(key, "v" + key);
+                    pages.add(key / 1024);
+                }
+            }
+            assertThat(map.size(), is(expected.size()));
+            assertThat(map.equals(expected), is(true));
+            assertThat(new ArrayList<>(map.keySet()), is(new ArrayList<>(expected.keySet())));
+            assertThat(map.lastKey(), is(expected.lastKey()));
+            assertThat(map.subMap(4000000, 900001000).size(), is(expected.subMap(4000000, 900001000).size()));
+            assertThat("only touched pages must be allocated", map.pageCount(), is(pages.size()));
+        }
+
+        @Test
+        public void remove_releasesEmptyPages() {
+            final PagedArrayMap<String> map = new PagedArrayMap<>();
+            map.put(10, "10");
+            map.put(2000, "2000");
+            map.put(3000000, "3000000");
+            assertThat(map.pageCount(), is(3));
+            map.remove(2000);
+            assertThat(map.pageCount(), is(2));
+            map.remove(3000000);
+            assertThat(map.pageCount(), is(1));
+            assertThat(map.lastKey(), is(10));
+        }
+
+        @Test
+        public void clear_subMapReleasesEmptyPages() {
+            final PagedArrayMap<String> map = new PagedArrayMap<>();
+            final TreeMap<Integer, String> expected = new TreeMap<>();
+            for (int key = 0; key < 10000; key += 3) {
+                map.put(key, "v" + key);
+                expected.put(key, "v" + key);
+            }
+            map.subMap(1500, 8200).clear();
+            expected.subMap(1500, 8200).clear();
+            assertThat(map.equals(expected), is(true));
+            assertThat(map.headMap(8200).lastKey(), is(expected.headMap(8200).lastKey()));
+            assertThat("fully cleared pages must be released", map.pageCount(), is(4));
+        }
+    }
+
+    public static class GuavaTests {
+        public static TestSuite suite() {
+            return SortedMapTestSuiteBuilder
+                    .using(new DefaultTestMapGenerator())
+                    .named("PagedArrayMapGuavaTest")
+                    .withFeatures(
+                            CollectionSize.ANY,
+                            MapFeature.SUPPORTS_REMOVE,
+                            MapFeature.ALLOWS_NULL_VALUE_QUERIES,
+                            MapFeature.ALLOWS_NULL_VALUES,
+                            MapFeature.RESTRICTS_KEYS,
+                            MapFeature.SUPPORTS_PUT,
+                            MapFeature.SUPPORTS_REMOVE,
+                            MapFeature.FAILS_FAST_ON_CONCURRENT_MODIFICATION,
+                            CollectionFeature.SUPPORTS_ITERATOR_REMOVE,
+                            CollectionFeature.SERIALIZABLE
+                    ).createTestSuite();
+        }
+    }
+
+    private static class DefaultTestMapGenerator implements TestSortedMapGenerator<Integer, Integer> {
+        @Override
+        public SampleElements<Map.Entry<Integer, Integer>> samples() {
+            return new SampleElements<>(
+                    mapEntry(10, 1),
+                    mapEntry(11, 3),
+                    mapEntry(12, 2),
+                    mapEntry(13, 4),
+                    mapEntry(20, 5));
+        }
+
+        @Override
+        public SortedMap<Integer, Integer> create(Object... elements) {
+            PagedArrayMap<Integer> map = new PagedArrayMap<>();
+            for (Object e : elements) {
+                Map.Entry<?, ?> entry = (Map.Entry<?, ?>) e;
+                if (entry == null) {
+                    map.put(null, null);
+                } else {
+                    map.put((Integer) entry.getKey(), (Integer) entry.getValue());
+                }
+            }
+            return map;
+        }
+
+        @Override
+        public Map.Entry<Integer, Integer> belowSamplesLesser() {
+            return mapEntry(1, 40);
+        }
+
+        @Override
+        public Map.Entry<Integer, Integer> belowSamplesGreater() {
+            return mapEntry(5, 20);
+        }
+
+        @Override
+        public Map.Entry<Integer, Integer> aboveSamplesLesser() {
+            return mapEntry(30, 10);
+        }
+
+        @Override
+        public Map.Entry<Integer, Integer> aboveSamplesGreater() {
+            return mapEntry(40, 7);
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        public Map.Entry<Integer, Integer>[] createArray(int length) {
+            return new Map.Entry[length];
+        }
+
+        @Override
+        public Iterable<Map.Entry<Integer, Integer>> order(
+                List<Map.Entry<Integer, Integer>> insertionOrder) {
+            return insertionOrder;
+        }
+
+        @Override
+        public Integer[] createKeyArray(int length) {
+            return new Integer[length];
+        }
+
+        @Override
+        public Integer[] createValueArray(int length) {
+            return new Integer[length];
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,362 @@
+package nl.mplatvoet.collections.map;
+
+import com.google.common.collect.testing.SampleElements;
+import com.google.common.collect.testing.SortedMapTestSuiteBuilder;
+import com.google.common.collect.testing.TestSortedMapGenerator;
+import com.google.common.collect.testing.features.CollectionFeature;
+import com.google.common.collect.testing.features.CollectionSize;
+import com.google.common.collect.testing.features.MapFeature;
+import junit.framework.TestSuite;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Suite;
+
+import java.lang.reflect.Array;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.function.Supplier;
+
+import static com.google.common.collect.testing.Helpers.mapEntry;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+
+/**
+ * The behaviour all int, long and double valued maps share, run against every implementation. The type specific
+ * edge cases live in {@link IntKeyIntMapTest}, {@link IntKeyLongMapTest} and {@link IntKeyDoubleMapTest}.
+ */
+@RunWith(Suite.class)
+@Suite.SuiteClasses({
+        PrimitiveValueMapTest.GuavaTests.class,
+        PrimitiveValueMapTest.AdditionalTests.class,
+})
+public class PrimitiveValueMapTest {
+
+    static List<Object[]> implementations() {
+        return Arrays.asList(
+                implementation("CompactIntArrayMap", CompactIntArrayMap::new, INTS),
+                implementation("DirectIntArrayMap", DirectIntArrayMap::new, INTS),
+                implementation("CompactLongArrayMap", CompactLongArrayMap::new, LONGS),
+                implementation("DirectLongArrayMap", DirectLongArrayMap::new, LONGS),
+                implementation("CompactDoubleArrayMap", CompactDoubleArrayMap::new, DOUBLES),
+                implementation("DirectDoubleArrayMap", DirectDoubleArrayMap::new, DOUBLES));
+    }
+
+    private static <V extends Number> Object[] implementation(String name, Supplier<IntKeyMap<V>> factory,
+                                                              ValueType<V> type) {
+        return new Object[]{name, factory, type};
+    }
+
+    //the primitive accessors of one value type, the results are boxed so the tests can compare them
+    interface ValueType<V extends Number> {
+        Class<V> valueClass();
+
+        V box(int value);
+
+        Number put(IntKeyMap<V> map, int key, int value);
+
+        Number get(IntKeyMap<V> map, int key);
+
+        Number remove(IntKeyMap<V> map, int key);
+
+        Number addTo(IntKeyMap<V> map, int key, int increment);
+    }
+
+    static final ValueType<Integer> INTS = new ValueType<Integer>() {
+        @Override
+        public Class<Integer> valueClass() {
+            return Integer.class;
+        }
+
+        @Override
+        public Integer box(int value) {
+            return value;
+        }
+
+        @Override
+        public Number put(IntKeyMap<Integer> map, int key, int value) {
+            return ((IntKeyIntMap) map).putInt(key, value);
+        }
+
+        @Override
+        public Number get(IntKeyMap<Integer> map, int key) {
+            return ((IntKeyIntMap) map).getInt(key);
+        }
+
+        @Override
+        public Number remove(IntKeyMap<Integer> map, int key) {
+            return ((IntKeyIntMap) map).removeInt(key);
+        }
+
+        @Override
+        public Number addTo(IntKeyMap<Integer> map, int key, int increment) {
+            return ((IntKeyIntMap) map).addTo(key, increment);
+        }
+    };
+
+    static final ValueType<Long> LONGS = new ValueType<Long>() {
+        @Override
+        public Class<Long> valueClass() {
+            return Long.class;
+        }
+
+        @Override
+        public Long box(int value) {
+            return (long) value;
+        }
+
+        @Override
+        public Number put(IntKeyMap<Long> map, int key, int value) {
+            return ((IntKeyLongMap) map).putLong(key, value);
+        }
+
+        @Override
+        public Number get(IntKeyMap<Long> map, int key) {
+            return ((IntKeyLongMap) map).getLong(key);
+        }
+
+        @Override
+        public Number remove(IntKeyMap<Long> map, int key) {
+            return ((IntKeyLongMap) map).removeLong(key);
+        }
+
+        @Override
+        public Number addTo(IntKeyMap<Long> map, int key, int increment) {
+            return ((IntKeyLongMap) map).addTo(key, increment);
+        }
+    };
+
+    static final ValueType<Double> DOUBLES = new ValueType<Double>() {
+        @Override
+        public Class<Double> valueClass() {
+            return Double.class;
+        }
+
+        @Override
+        public Double box(int value) {
+            return (double) value;
+        }
+
+        @Override
+        public Number put(IntKeyMap<Double> map, int key, int value) {
+            return ((IntKeyDoubleMap) map).putDouble(key, value);
+        }
+
+        @Override
+        public Number get(IntKeyMap<Double> map, int key) {
+            return ((IntKeyDoubleMap) map).getDouble(key);
+        }
+
+        @Override
+        public Number remove(IntKeyMap<Double> map, int key) {
+            return ((IntKeyDoubleMap) map).removeDouble(key);
+        }
+
+        @Override
+        public Number addTo(IntKeyMap<Double> map, int key, int increment) {
+            return ((IntKeyDoubleMap) map).addTo(key, increment);
+        }
+    };
+
+    @RunWith(Parameterized.class)
+    public static class AdditionalTests<V extends Number> {
+        private final Supplier<IntKeyMap<V>> factory;
+        private final ValueType<V> type;
+
+        public AdditionalTests(String name, Supplier<IntKeyMap<V>> factory, ValueType<V> type) {
+            this.factory = factory;
+            this.type = type;
+        }
+
+        @Parameterized.Parameters(name = "{0}")
+        public static List<Object[]> parameters() {
+            return implementations();
+        }
+
+        @Test(expected = IllegalArgumentException.class)
+        public void put_negativeKeyShouldThrow() throws Exception {
+            type.put(factory.get(), -1, 1);
+        }
+
+        @Test(expected = NullPointerException.class)
+        public void put_nullValueShouldThrow() throws Exception {
+            factory.get().put(1, null);
+        }
+
+        @Test
+        public void get_absentKeyIsZero() {
+            final IntKeyMap<V> map = factory.get();
+            type.put(map, 1, 5);
+            assertThat(type.get(map, 2), is((Number) type.box(0)));
+            assertThat(map.get(2) == null, is(true));
+        }
+
+        @Test
+        public void put_returnsPrevious() {
+            final IntKeyMap<V> map = factory.get();
+            assertThat(type.put(map, 1, 5), is((Number) type.box(0)));
+            assertThat(type.put(map, 1, 7), is((Number) type.box(5)));
+            assertThat(map.size(), is(1));
+        }
+
+        @Test
+        public void addTo_accumulates() {
+            final IntKeyMap<V> map = factory.get();
+            assertThat(type.addTo(map, 3, 2), is((Number) type.box(2)));
+            assertThat(type.addTo(map, 3, 4), is((Number) type.box(6)));
+            assertThat(type.get(map, 3), is((Number) type.box(6)));
+            assertThat(map.size(), is(1));
+        }
+
+        @Test
+        public void remove_removesMapping() {
+            final IntKeyMap<V> map = factory.get();
+            type.put(map, 3, 2);
+            assertThat(type.remove(map, 3), is((Number) type.box(2)));
+            assertThat(type.remove(map, 3), is((Number) type.box(0)));
+            assertThat(map.isEmpty(), is(true));
+        }
+
+        @Test
+        public void subMap_writesThroughUnboxed() {
+            final IntKeyMap<V> map = factory.get();
+            type.put(map, 1, 1);
+            type.put(map, 10, 10);
+            final IntKeyMap<V> view = map.subMap(0, 5);
+            type.addTo(view, 1, 2);
+            type.put(view, 4, 4);
+            assertThat(type.get(map, 1), is((Number) type.box(3)));
+            assertThat(type.get(map, 4), is((Number) type.box(4)));
+            assertThat(type.get(view, 10), is((Number) type.box(0)));
+            assertThat(view.size(), is(2));
+            assertThat(view.headMap(2).size(), is(1));
+        }
+
+        @Test(expected = IllegalArgumentException.class)
+        public void subMap_putOutsideRangeShouldThrow() {
+            type.put(factory.get().subMap(0, 5), 5, 1);
+        }
+
+        @Test
+        public void shiftKeys_positiveDelta() {
+            final IntKeyMap<V> map = factory.get();
+            type.put(map, 1, 1);
+            type.put(map, 2, 2);
+            type.put(map, 4, 4);
+            map.shiftKeys(2, 3);
+            assertThat(type.get(map, 1), is((Number) type.box(1)));
+            assertThat(type.get(map, 5), is((Number) type.box(2)));
+            assertThat(type.get(map, 7), is((Number) type.box(4)));
+            assertThat(map.containsKey(2), is(false));
+            assertThat(map.size(), is(3));
+        }
+    }
+
+    public static class GuavaTests {
+        @SuppressWarnings("unchecked")
+        public static TestSuite suite() {
+            final TestSuite suite = new TestSuite("PrimitiveValueMapGuavaTests");
+            for (Object[] implementation : implementations()) {
+                suite.addTest(suite((String) implementation[0], (Supplier) implementation[1],
+                        (ValueType) implementation[2]));
+            }
+            return suite;
+        }
+
+        private static <V extends Number> TestSuite suite(String name, Supplier<IntKeyMap<V>> factory,
+                                                          ValueType<V> type) {
+            return SortedMapTestSuiteBuilder
+                    .using(new DefaultTestMapGenerator<>(factory, type))
+                    .named(name + "GuavaTest")
+                    .withFeatures(
+                            CollectionSize.ANY,
+                            MapFeature.SUPPORTS_REMOVE,
+                            MapFeature.ALLOWS_NULL_VALUE_QUERIES,
+                            MapFeature.RESTRICTS_KEYS,
+                            MapFeature.SUPPORTS_PUT,
+                            MapFeature.FAILS_FAST_ON_CONCURRENT_MODIFICATION,
+                            CollectionFeature.SUPPORTS_ITERATOR_REMOVE,
+                            CollectionFeature.SERIALIZABLE
+                    ).createTestSuite();
+        }
+    }
+
+    private static class DefaultTestMapGenerator<V extends Number> implements TestSortedMapGenerator<Integer, V> {
+        private final Supplier<IntKeyMap<V>> factory;
+        private final ValueType<V> type;
+
+        private DefaultTestMapGenerator(Supplier<IntKeyMap<V>> factory, ValueType<V> type) {
+            this.factory = factory;
+            this.type = type;
+        }
+
+        @Override
+        public SampleElements<Map.Entry<Integer, V>> samples() {
+            return new SampleElements<>(
+                    mapEntry(10, type.box(1)),
+                    mapEntry(11, type.box(3)),
+                    mapEntry(12, type.box(2)),
+                    mapEntry(13, type.box(4)),
+                    mapEntry(20, type.box(5)));
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        public SortedMap<Integer, V> create(Object... elements) {
+            final IntKeyMap<V> map = factory.get();
+            for (Object e : elements) {
+                Map.Entry<?, ?> entry = (Map.Entry<?, ?>) e;
+                if (entry == null) {
+                    map.put(null, null);
+                } else {
+                    map.put((Integer) entry.getKey(), (V) entry.getValue());
+                }
+            }
+            return map;
+        }
+
+        @Override
+        public Map.Entry<Integer, V> belowSamplesLesser() {
+            return mapEntry(1, type.box(40));
+        }
+
+        @Override
+        public Map.Entry<Integer, V> belowSamplesGreater() {
+            return mapEntry(5, type.box(20));
+        }
+
+        @Override
+        public Map.Entry<Integer, V> aboveSamplesLesser() {
+            return mapEntry(30, type.box(10));
+        }
+
+        @Override
+        public Map.Entry<Integer, V> aboveSamplesGreater() {
+            return mapEntry(40, type.box(7));
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        public Map.Entry<Integer, V>[] createArray(int length) {
+            return new Map.Entry[length];
+        }
+
+        @Override
+        public Iterable<Map.Entry<Integer, V>> order(List<Map.Entry<Integer, V>> insertionOrder) {
+            return insertionOrder;
+        }
+
+        @Override
+        public Integer[] createKeyArray(int length) {
+            return new Integer[length];
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        public V[] createValueArray(int length) {
+            return (V[]) Array.newInstance(type.valueClass(), length);
+        }
+    }
+}
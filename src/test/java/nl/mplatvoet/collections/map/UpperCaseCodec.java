@@ -0,0 +1,18 @@
+package nl.mplatvoet.collections.map;
+
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+
+//writes the values in upper case, so a round trip shows whether serialization went through the codec
+class UpperCaseCodec implements ValueCodec<String> {
+    @Override
+    public void write(ObjectOutput out, String value) throws IOException {
+        out.writeUTF(value.toUpperCase());
+    }
+
+    @Override
+    public String read(ObjectInput in) throws IOException {
+        return in.readUTF();
+    }
+}
@@ -0,0 +1,68 @@
+package nl.mplatvoet.collections.matrix;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+public class FlatMatrixTest {
+
+    @Test
+    public void testPutDouble_blankCellsReadAsZeroAndNull() {
+        DoubleMatrix matrix = Matrices.doubleOf(3, 4);
+        matrix.putDouble(1, 2, 2.5);
+        matrix.putDouble(2, 3, 0);
+
+        assertThat("primitive value must be stored", matrix.getDouble(1, 2), is(2.5));
+        assertThat("blank cell must read as 0", matrix.getDouble(0, 0), is(0.0));
+        assertThat("blank cell must be null", matrix.get(0, 0) == null, is(true));
+        assertThat("stored 0 must not be blank", matrix.get(2, 3), is(0.0));
+        assertThat(matrix.isBlank(2, 3), is(false));
+        assertThat(matrix.getCell(1, 2).getValue(), is(2.5));
+    }
+
+    @Test
+    public void testPut_nullBlanksTheCell() {
+        LongMatrix matrix = Matrices.longOf(2, 2);
+        matrix.put(1, 1, 7L);
+        assertThat("previous value must be returned", matrix.put(1, 1, null), is(7L));
+        assertThat(matrix.isBlank(1, 1), is(true));
+        assertThat(matrix.getLong(1, 1), is(0L));
+    }
+
+    @Test
+    public void testCopyOf_raggedRowsArePadded() {
+        IntMatrix matrix = Matrices.intOf(new int[][]{{1, 2, 3}, {4}});
+
+        assertThat(matrix.getRowSize(), is(2));
+        assertThat(matrix.getColumnSize(), is(3));
+        assertThat(matrix.getInt(1, 0), is(4));
+        assertThat("padding must be blank", matrix.getCell(1, 2).isBlank(), is(true));
+
+        List<Integer> column = new ArrayList<>();
+        for (Integer value : matrix.getColumn(1)) {
+            column.add(value);
+        }
+        assertThat(column.size(), is(2));
+        assertThat(column.get(0), is(2));
+        assertThat(column.get(1) == null, is(true));
+    }
+
+    @Test
+    public void testEquals_interopWithBoxedMatrices() {
+        IntMatrix matrix = Matrices.intOf(new int[][]{{1, 2}, {3, 4}});
+        Matrix<Integer> boxed = Matrices.copyOf(new Integer[][]{{1, 2}, {3, 4}});
+
+        assertThat("equal values must make equal matrices", matrix.equals(boxed), is(true));
+        assertThat("hashCode must match other matrices", matrix.hashCode(), is(boxed.hashCode()));
+        assertThat("map must copy the values", matrix.map().get(1, 1), is(4));
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void testGetDouble_outsideMatrixShouldThrow() {
+        Matrices.doubleOf(2, 2).getDouble(0, 2);
+    }
+}
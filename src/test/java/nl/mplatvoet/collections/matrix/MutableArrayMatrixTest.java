@@ -2,6 +2,9 @@ package nl.mplatvoet.collections.matrix;
 
 import org.junit.Test;
 
+import java.util.Iterator;
+import java.util.Random;
+
 import static org.hamcrest.core.Is.is;
 import static org.junit.Assert.assertThat;
 
@@ -130,4 +133,307 @@ public class MutableArrayMatrixTest {
         assertThat("Index must have shifted", matrix.get(0,0), is("A"));
     }
 
+    @Test
+    public void testConsolidateColumns_blankCellsAreEvicted() {
+        MutableMatrix<String> matrix = MutableArrayMatrix.of();
+        matrix.put(0,0, "A");
+        matrix.put(1,1, "B");
+        matrix.put(0,3, "C");
+        matrix.getCell(0,1).clear();
+        matrix.getCell(1,2).clear();
+
+        matrix.consolidateColumns();
+
+        assertThat("Max index must have changed", matrix.getColumnSize(), is(3));
+        assertThat("Index must have shifted", matrix.get(1,1), is("B"));
+        assertThat("Index must have shifted", matrix.get(0,2), is("C"));
+        assertThat("Blank cell must be gone", matrix.get(0,1), is((String) null));
+    }
+
+    @Test
+    public void testCompact_keepsValues() {
+        MutableMatrix<String> matrix = MutableArrayMatrix.of(100, 100);
+        matrix.put(0,0, "A");
+        matrix.put(50,60, "B");
+        matrix.deleteRow(10);
+
+        matrix.compact();
+
+        assertThat("Value must be kept", matrix.get(0,0), is("A"));
+        assertThat("Value must be kept", matrix.get(49,60), is("B"));
+        assertThat("Size must be kept", matrix.getRowSize(), is(99));
+    }
+
+    @Test
+    public void testCompact_afterColumnEdits() {
+        MutableMatrix<String> matrix = MutableArrayMatrix.of();
+        matrix.put(0,0, "A");
+        matrix.put(1,1, "B");
+        matrix.put(1,2, "C");
+        MutableMatrixCell<String> cell = matrix.getCell(1,2);
+
+        matrix.insertColumn(1);
+        matrix.swapColumn(0, 3);
+        matrix.deleteColumn(2);
+        matrix.compact();
+
+        assertThat("Value must have moved", matrix.get(0,2), is("A"));
+        assertThat("Value must have moved", matrix.get(1,0), is("C"));
+        assertThat("Moved column must be blank", matrix.getCell(0,0).isBlank(), is(true));
+        assertThat("cell must follow its column", cell.getColumnIndex(), is(0));
+        assertThat("Size must be kept", matrix.getColumnSize(), is(3));
+    }
+
+    @Test
+    public void testConsolidateColumns_afterSwap() {
+        MutableMatrix<String> matrix = MutableArrayMatrix.of();
+        matrix.put(0,0, "A");
+        matrix.put(0,3, "B");
+        matrix.swapColumn(0, 2);
+
+        matrix.consolidateColumns();
+
+        assertThat("Blank columns must be removed", matrix.getColumnSize(), is(2));
+        assertThat("Order must be kept", matrix.get(0,0), is("A"));
+        assertThat("Order must be kept", matrix.get(0,1), is("B"));
+    }
+
+    @Test
+    public void testSwapRow_cellFollowsValue() {
+        MutableMatrix<String> matrix = MutableArrayMatrix.of();
+        matrix.put(0,0, "A");
+        matrix.put(2,1, "B");
+        MutableMatrixCell<String> cell = matrix.getCell(2,1);
+
+        matrix.swapRow(0, 2);
+
+        assertThat("cell must follow its row", cell.getRowIndex(), is(0));
+        assertThat("cell must keep its value", cell.getValue(), is("B"));
+        assertThat("cleared cell must be blank", matrix.getCell(2,1).isBlank(), is(true));
+    }
+
+    @Test
+    public void testPut_nullIsNotBlank() {
+        MutableMatrix<String> matrix = MutableArrayMatrix.of();
+        matrix.put(1,1, null);
+        MutableMatrixCell<String> cell = matrix.getCell(1,1);
+
+        assertThat("null value must not be blank", cell.isBlank(), is(false));
+        cell.clear();
+        assertThat("cleared cell must be blank", cell.isBlank(), is(true));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testDeleteColumn_cellFails() {
+        MutableMatrix<String> matrix = MutableArrayMatrix.of();
+        matrix.put(0,1, "A");
+        MutableMatrixCell<String> cell = matrix.getCell(0,1);
+
+        matrix.deleteColumn(1);
+
+        cell.getValue();
+    }
+
+    @Test
+    public void testGet_blankDoesNotGrow() {
+        MutableMatrix<String> matrix = MutableArrayMatrix.of();
+        matrix.put(0,0, "A");
+
+        assertThat("blank must read as null", matrix.get(5,5) == null, is(true));
+        assertThat("row size must be kept", matrix.getRowSize(), is(1));
+        assertThat("column size must be kept", matrix.getColumnSize(), is(1));
+    }
+
+    @Test
+    public void testRows_blankRowReadsThroughMatrix() {
+        MutableMatrix<String> matrix = MutableArrayMatrix.of(3, 2);
+        matrix.put(0,0, "A");
+        Row<String> row = null;
+        for (Row<String> r : matrix.rows()) {
+            row = r;
+        }
+        MatrixCell<String> cell = row.getCell(1);
+
+        assertThat("cell must be blank", cell.isBlank(), is(true));
+        matrix.put(2,1, "B");
+        assertThat("cell must see the put", cell.getValue(), is("B"));
+        assertThat("row must see the put", row.get(1), is("B"));
+    }
+
+    @Test
+    public void testInsertRow_shiftsTrailingRows() {
+        MutableMatrix<String> matrix = MutableArrayMatrix.of();
+        matrix.put(0,0, "A");
+        matrix.put(1,0, "B");
+        MutableMatrixCell<String> cell = matrix.getCell(1, 0);
+
+        matrix.insertRow(1);
+
+        assertThat("row size must have grown", matrix.getRowSize(), is(3));
+        assertThat("inserted row must be blank", matrix.getCell(1,0).isBlank(), is(true));
+        assertThat("Index must have shifted", matrix.get(2,0), is("B"));
+        assertThat("cell must follow its row", cell.getRowIndex(), is(2));
+    }
+
+    @Test
+    public void testDeleteRow_shiftsTrailingRows() {
+        MutableMatrix<String> matrix = MutableArrayMatrix.of();
+        matrix.put(0,0, "A");
+        matrix.put(1,0, "B");
+        matrix.put(2,0, "C");
+
+        matrix.deleteRow(1);
+
+        assertThat("row size must have shrunk", matrix.getRowSize(), is(2));
+        assertThat("Index must have shifted", matrix.get(1,0), is("C"));
+        assertThat("Leading rows must stay", matrix.get(0,0), is("A"));
+    }
+
+    @Test
+    public void testInsertColumn_shiftsTrailingColumns() {
+        MutableMatrix<String> matrix = MutableArrayMatrix.of();
+        matrix.put(0,0, "A");
+        matrix.put(0,1, "B");
+        matrix.put(1,1, "C");
+        MutableMatrixCell<String> cell = matrix.getCell(1, 1);
+
+        matrix.insertColumn(1);
+
+        assertThat("column size must have grown", matrix.getColumnSize(), is(3));
+        assertThat("Index must have shifted", matrix.get(0,2), is("B"));
+        assertThat("Index must have shifted", matrix.get(1,2), is("C"));
+        assertThat("cell must follow its column", cell.getColumnIndex(), is(2));
+    }
+
+    @Test
+    public void testDeleteColumn_shiftsTrailingColumns() {
+        MutableMatrix<String> matrix = MutableArrayMatrix.of();
+        matrix.put(0,0, "A");
+        matrix.put(0,1, "B");
+        matrix.put(0,2, "C");
+        matrix.put(1,1, "D");
+
+        matrix.deleteColumn(1);
+
+        assertThat("column size must have shrunk", matrix.getColumnSize(), is(2));
+        assertThat("Index must have shifted", matrix.get(0,1), is("C"));
+        assertThat("deleted values must be gone", matrix.get(1,1) == null, is(true));
+    }
+
+    @Test
+    public void testClear_sparseRows() {
+        MutableMatrix<String> matrix = MutableArrayMatrix.of();
+        matrix.put(3,0, "A");
+        matrix.put(5,2, "B");
+
+        matrix.clear();
+
+        assertThat("values must be cleared", matrix.get(3,0) == null, is(true));
+        assertThat("values must be cleared", matrix.get(5,2) == null, is(true));
+    }
+
+    @Test
+    public void testClearColumn_sparseRows() {
+        MutableMatrix<String> matrix = MutableArrayMatrix.of();
+        matrix.put(3,1, "A");
+        matrix.put(5,1, "B");
+        matrix.put(5,0, "C");
+
+        matrix.getColumn(1).clear();
+
+        assertThat("column must be cleared", matrix.get(3,1) == null, is(true));
+        assertThat("column must be cleared", matrix.get(5,1) == null, is(true));
+        assertThat("other columns must stay", matrix.get(5,0), is("C"));
+    }
+
+    @Test
+    public void testDeleteColumn_leftBehindValuesStayInvisible() {
+        MutableMatrix<String> matrix = MutableArrayMatrix.of();
+        matrix.put(0,0, "A");
+        matrix.put(1,1, "B");
+        matrix.put(2,2, "C");
+
+        matrix.deleteColumn(1);
+        matrix.insertColumn(1);
+
+        assertThat("inserted column must be blank", matrix.get(1,1) == null, is(true));
+        matrix.consolidateRows();
+        assertThat("row with only deleted values must be blank", matrix.getRowSize(), is(2));
+        assertThat("Index must have shifted", matrix.get(1,2), is("C"));
+
+        MutableMatrix<String> copy = MutableArrayMatrix.of();
+        copy.putAll(matrix);
+        matrix.consolidateColumns();
+        assertThat("blank column must be dropped", matrix.getColumnSize(), is(2));
+        assertThat("Index must have shifted", matrix.get(1,1), is("C"));
+        assertThat("copy must not contain deleted values", copy.get(1,1) == null, is(true));
+        assertThat(copy.get(1,2), is("C"));
+    }
+
+    @Test
+    public void testDeleteColumn_reclaimsOrphanedSlots() {
+        MutableArrayMatrix<String> matrix = (MutableArrayMatrix<String>) MutableArrayMatrix.<String>of(1, 2);
+        matrix.put(0,1, "B");
+        for (int cycle = 0; cycle < 10000; ++cycle) {
+            matrix.insertColumn(0);
+            matrix.put(0,0, "A" + cycle);
+            matrix.deleteColumn(0);
+            assertThat("orphaned slots must be reclaimed", matrix.columnSlotCount() <= 2 * 2 + 1, is(true));
+        }
+        assertThat(matrix.getColumnSize(), is(2));
+        assertThat("deleted values must stay invisible", matrix.get(0,0) == null, is(true));
+        assertThat(matrix.get(0,1), is("B"));
+
+        MutableMatrix<String> copy = MutableArrayMatrix.of();
+        copy.putAll(matrix);
+        assertThat("copy must not contain deleted values", copy.get(0,0) == null, is(true));
+        assertThat(copy.get(0,1), is("B"));
+    }
+
+    @Test
+    public void testLineIterators_followEditsDuringTheWalk() {
+        //the walks keep their position in the row and column maps, every value must still be the current one
+        Random random = new Random(3);
+        for (int round = 0; round < 20; ++round) {
+            MutableMatrix<String> matrix = MutableArrayMatrix.of(300, 300);
+            for (int i = 0; i < 300; ++i) {
+                if (random.nextInt(4) == 0) matrix.put(1, i, "r" + i);
+                if (random.nextInt(4) == 0) matrix.put(i, 1, "c" + i);
+            }
+            //no column object yet, the first walk goes through the read only view
+            Iterator<Column<String>> columns = matrix.columns().iterator();
+            columns.next();
+            assertWalkSeesCurrentValues(columns.next().iterator(), false, matrix, random);
+            assertWalkSeesCurrentValues(matrix.getRow(1).iterator(), true, matrix, random);
+            assertWalkSeesCurrentValues(matrix.getColumn(1).iterator(), false, matrix, random);
+        }
+    }
+
+    //walks row 1 or column 1 while editing the positions ahead of the walk
+    private static void assertWalkSeesCurrentValues(Iterator<String> walk, boolean row, MutableMatrix<String> matrix,
+                                                    Random random) {
+        for (int idx = 0; walk.hasNext(); ++idx) {
+            String expected = row ? matrix.get(1, idx) : matrix.get(idx, 1);
+            assertThat("index " + idx, walk.next(), is(expected));
+            int target = idx + 1 + random.nextInt(5);
+            if (target + 1 >= 300) continue;
+            switch (random.nextInt(6)) {
+                case 0:
+                    matrix.put(row ? 1 : target, row ? target : 1, "n" + target);
+                    break;
+                case 1:
+                    matrix.getCell(row ? 1 : target, row ? target : 1).clear();
+                    break;
+                case 2:
+                    if (row) {
+                        matrix.swapColumn(target, target + 1);
+                    } else {
+                        matrix.swapRow(target, target + 1);
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
 }
\ No newline at end of file